@@ -0,0 +1,78 @@
+package main.java.PasswordManager;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CryptoBenchmark {
+    @Param({"16", "256", "4096"})
+    public int fieldLength;
+
+    private byte[] fieldKey;
+    private byte[] vaultKey;
+    private String field;
+    private SecretBuffer secret;
+    private String encryptedField;
+    private String encryptedLine;
+    private byte[] encryptedRecord;
+
+    @Setup
+    public void setup() throws Exception {
+        VaultFixtures.registerProvider();
+        SecureRandom random = new SecureRandom();
+
+        fieldKey = new byte[Constants.KEY_SIZE / 8];
+        random.nextBytes(fieldKey);
+        vaultKey = new byte[Constants.KEY_SIZE / 8];
+        random.nextBytes(vaultKey);
+
+        field = VaultFixtures.randomString(random, fieldLength);
+        encryptedField = AESEncryption.encryptField(fieldKey, field);
+        encryptedLine = AESEncryption.encryptWithUniqueKeys(vaultKey, field, field, field);
+        secret = SecretBuffer.of(field);
+        encryptedRecord = AESEncryption.encryptRecord(vaultKey, 1, field, field, secret);
+    }
+
+    @Benchmark
+    public String encryptField() throws Exception {
+        return AESEncryption.encryptField(fieldKey, field);
+    }
+
+    @Benchmark
+    public String decryptField() throws Exception {
+        return AESEncryption.decryptField(fieldKey, encryptedField);
+    }
+
+    @Benchmark
+    public String encryptWithUniqueKeys() throws Exception {
+        return AESEncryption.encryptWithUniqueKeys(vaultKey, field, field, field);
+    }
+
+    @Benchmark
+    public String decryptWithUniqueKeys() throws Exception {
+        return AESEncryption.decryptWithUniqueKeys(vaultKey, encryptedLine);
+    }
+
+    @Benchmark
+    public byte[] encryptRecord() throws Exception {
+        return AESEncryption.encryptRecord(vaultKey, 1, field, field, secret);
+    }
+
+    @Benchmark
+    public PasswordEntry decryptRecord() throws Exception {
+        return AESEncryption.decryptRecord(vaultKey, ByteBuffer.wrap(encryptedRecord));
+    }
+
+    @Benchmark
+    public String hash() {
+        return PasswordEntry.hash(field, "SHA3-256");
+    }
+}
@@ -0,0 +1,66 @@
+package main.java.PasswordManager;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+
+// Занимаемая кучей память: EntryStore против списка объектов PasswordEntry с теми же данными.
+// Записи имеют вид загруженных из хранилища: место и логин расшифрованы, пароль зашифрован.
+// Запуск: EntryStoreFootprint <число записей> [длина поля]
+public class EntryStoreFootprint {
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Использование: EntryStoreFootprint <число записей> [длина поля]");
+            return;
+        }
+        int entries = Integer.parseInt(args[0]);
+        int fieldLength = args.length > 1 ? Integer.parseInt(args[1]) : 24;
+
+        long baseline = usedHeap();
+        List<PasswordEntry> list = new ArrayList<>();
+        fill(entries, fieldLength, list::add);
+        long listBytes = usedHeap() - baseline;
+        report("ArrayList<PasswordEntry>", entries, listBytes);
+        list = null;
+
+        baseline = usedHeap();
+        EntryStore store = new EntryStore();
+        fill(entries, fieldLength, entry -> store.put(entry, -1));
+        store.trimToSize();
+        long storeBytes = usedHeap() - baseline;
+        report("EntryStore", entries, storeBytes);
+        System.out.println("Записей в хранилище: " + store.size());
+    }
+
+    private interface Sink {
+        void accept(PasswordEntry entry);
+    }
+
+    private static void fill(int entries, int fieldLength, Sink sink) {
+        SecureRandom random = new SecureRandom();
+        for (int i = 0; i < entries; i++) {
+            byte[] wrappedKey = new byte[CryptoEngine.sealedLength(Constants.KEY_SIZE / 8)];
+            byte[] ciphertext = new byte[CryptoEngine.sealedLength(fieldLength)];
+            random.nextBytes(wrappedKey);
+            random.nextBytes(ciphertext);
+            sink.accept(new PasswordEntry(i + 1,
+                    VaultFixtures.randomString(random, fieldLength),
+                    VaultFixtures.randomString(random, fieldLength),
+                    new SealedSecret(wrappedKey, ciphertext), null));
+        }
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void report(String name, int entries, long bytes) {
+        System.out.printf("%-26s %,12d записей: %8.1f МБ, %5d байт на запись%n",
+                name, entries, bytes / (1024.0 * 1024.0), bytes / Math.max(entries, 1));
+    }
+}
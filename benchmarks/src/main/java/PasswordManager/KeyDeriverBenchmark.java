@@ -0,0 +1,29 @@
+package main.java.PasswordManager;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class KeyDeriverBenchmark {
+    @Param({"10000", "100000", "500000"})
+    public int iterations;
+
+    private byte[] salt;
+
+    @Setup
+    public void setup() {
+        VaultFixtures.registerProvider();
+        salt = KeyDeriver.generateSalt(Constants.SALT_SIZE);
+    }
+
+    @Benchmark
+    public byte[] deriveKey() throws Exception {
+        return KeyDeriver.deriveKey(VaultFixtures.MASTER_PASSWORD.toCharArray(), salt, iterations, Constants.KEY_SIZE);
+    }
+}
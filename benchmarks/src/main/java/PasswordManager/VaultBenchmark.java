@@ -0,0 +1,76 @@
+package main.java.PasswordManager;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Каждая операция включает вывод ключа с Constants.ITERATIONS, поэтому измеряется одиночными вызовами
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class VaultBenchmark {
+    @Param({"10", "1000", "10000", "100000"})
+    public int vaultSize;
+
+    @Param({"32"})
+    public int fieldLength;
+
+    private Path directory;
+    private Path loadVault;
+    private Path rotationVault;
+    private PasswordManager loadedManager;
+    private PasswordManager rotationManager;
+    private String rotationPassword;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        directory = Files.createTempDirectory("pm-bench");
+        loadVault = directory.resolve("load.vault");
+        rotationVault = directory.resolve("rotation.vault");
+        VaultFixtures.generate(loadVault, vaultSize, fieldLength);
+        Files.copy(loadVault, rotationVault);
+
+        loadedManager = new PasswordManager(loadVault);
+        if (!loadedManager.loadEntries(VaultFixtures.MASTER_PASSWORD.toCharArray())) {
+            throw new IllegalStateException("Не удалось открыть тестовое хранилище.");
+        }
+        rotationManager = new PasswordManager(rotationVault);
+        rotationPassword = VaultFixtures.MASTER_PASSWORD;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean loadEntries() {
+        return new PasswordManager(loadVault).loadEntries(VaultFixtures.MASTER_PASSWORD.toCharArray());
+    }
+
+    @Benchmark
+    public void saveEntries() throws Exception {
+        loadedManager.saveEntries(VaultFixtures.MASTER_PASSWORD.toCharArray());
+    }
+
+    @Benchmark
+    public void reencryptWithNewMasterPassword() throws Exception {
+        String nextPassword = rotationPassword.equals(VaultFixtures.MASTER_PASSWORD)
+                ? VaultFixtures.MASTER_PASSWORD + "-rotated"
+                : VaultFixtures.MASTER_PASSWORD;
+        rotationManager.reencryptWithNewMasterPassword(rotationPassword.toCharArray(), nextPassword.toCharArray());
+        rotationPassword = nextPassword;
+    }
+}
@@ -0,0 +1,64 @@
+package main.java.PasswordManager;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.List;
+
+// Генератор синтетических хранилищ для бенчмарков: ключ выводится один раз, записи пишутся сразу в бинарном формате
+public class VaultFixtures {
+    public static final String MASTER_PASSWORD = "benchmark-master-password";
+    private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+
+    public static void registerProvider() {
+        if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+    }
+
+    public static void generate(Path vaultPath, int entries, int fieldLength) throws Exception {
+        registerProvider();
+
+        byte[] salt = KeyDeriver.generateSalt(Constants.SALT_SIZE);
+        byte[] key = KeyDeriver.deriveKey(MASTER_PASSWORD.toCharArray(), salt, Constants.ITERATIONS, Constants.KEY_SIZE);
+
+        SecureRandom random = new SecureRandom();
+        byte[] indexKey = BlindIndex.key(key);
+        List<byte[]> records = new ArrayList<>(entries);
+        List<byte[]> tags = new ArrayList<>(entries);
+        for (int i = 0; i < entries; i++) {
+            String place = randomString(random, fieldLength);
+            String login = randomString(random, fieldLength);
+            try (SecretBuffer password = SecretBuffer.of(randomString(random, fieldLength))) {
+                records.add(AESEncryption.encryptRecord(key, i + 1, place, login, password));
+            }
+            tags.add(BlindIndex.tag(indexKey, place, login));
+        }
+        VaultFile.write(vaultPath, KdfParams.legacy(salt), AESEncryption.createKeyCheck(key), records, tags, key,
+                Constants.LOAD_PARALLELISM);
+    }
+
+    public static String randomString(SecureRandom random, int length) {
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return builder.toString();
+    }
+
+    // Запуск: VaultFixtures <файл> <число записей> [длина поля]; мастер-пароль — MASTER_PASSWORD
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Использование: VaultFixtures <файл> <число записей> [длина поля]");
+            return;
+        }
+
+        int fieldLength = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+        generate(Paths.get(args[0]), Integer.parseInt(args[1]), fieldLength);
+        System.out.println("Хранилище создано: " + args[0]);
+    }
+}
@@ -1,11 +1,9 @@
 package main.java.PasswordManager;
 
-import javax.crypto.Cipher;
-import javax.crypto.spec.GCMParameterSpec;
-import javax.crypto.spec.SecretKeySpec;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.security.SecureRandom;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
 import java.util.Base64;
 
 public class AESEncryption {
@@ -15,17 +13,9 @@ public class AESEncryption {
         }
 
         try {
-            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
-            byte[] iv = new byte[Constants.IV_LENGTH];
-            new SecureRandom().nextBytes(iv);
-            GCMParameterSpec spec = new GCMParameterSpec(Constants.GCM_TAG_LENGTH, iv);
-
-            cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(encryptionKey, "AES"), spec);
-            byte[] cipherText = cipher.doFinal(field.getBytes(StandardCharsets.UTF_8));
-
-            byte[] combined = new byte[iv.length + cipherText.length];
-            System.arraycopy(iv, 0, combined, 0, iv.length);
-            System.arraycopy(cipherText, 0, combined, iv.length, cipherText.length);
+            byte[] plain = field.getBytes(StandardCharsets.UTF_8);
+            byte[] combined = new byte[CryptoEngine.sealedLength(plain.length)];
+            CryptoEngine.encrypt(encryptionKey, null, plain, 0, plain.length, combined, 0);
 
             return Base64.getEncoder().encodeToString(combined);
         } catch (Exception e) {
@@ -41,104 +31,288 @@ public class AESEncryption {
 
         try {
             byte[] decoded = Base64.getDecoder().decode(encryptedField);
-            ByteBuffer buffer = ByteBuffer.wrap(decoded);
-
-            byte[] iv = new byte[Constants.IV_LENGTH];
-            if (buffer.remaining() < Constants.IV_LENGTH) {
+            if (decoded.length < CryptoEngine.OVERHEAD) {
                 throw new IllegalArgumentException("Недостаточно данных для извлечения IV.");
             }
-            buffer.get(iv);
-
-            byte[] cipherText = new byte[buffer.remaining()];
-            buffer.get(cipherText);
 
-            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
-            GCMParameterSpec spec = new GCMParameterSpec(Constants.GCM_TAG_LENGTH, iv);
-            cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(encryptionKey, "AES"), spec);
-
-            byte[] decryptedBytes = cipher.doFinal(cipherText);
-            return new String(decryptedBytes, StandardCharsets.UTF_8);
+            // Расшифровываем на месте: открытый текст короче шифротекста
+            int length = CryptoEngine.decrypt(encryptionKey, null, decoded, 0, decoded.length, decoded, 0);
+            return new String(decoded, 0, length, StandardCharsets.UTF_8);
         } catch (Exception e) {
             System.err.println("Ошибка дешифрования поля: " + e.getMessage());
             throw e;
         }
     }
 
-    public static byte[] encryptKey(String masterPassword, byte[] key) throws Exception {
-        // Генерируем IV
-        byte[] iv = new byte[Constants.IV_LENGTH];
-        new SecureRandom().nextBytes(iv);
-
+    public static byte[] encryptKey(char[] masterPassword, byte[] key) throws Exception {
         // Генерируем salt
-        byte[] salt = new byte[16];
-        new SecureRandom().nextBytes(salt);
+        byte[] salt = CryptoEngine.randomBytes(16);
 
         // Генерируем ключ из мастер-пароля
         byte[] derivedKey = KeyDeriver.deriveKey(masterPassword, salt, Constants.ITERATIONS, Constants.KEY_SIZE);
 
-        // Инициализируем шифр AES/GCM
-        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
-        GCMParameterSpec spec = new GCMParameterSpec(Constants.GCM_TAG_LENGTH, iv);
-        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(derivedKey, "AES"), spec);
-
-        // Шифруем ключ
-        byte[] encrypted = cipher.doFinal(key);
+        // Шифруем ключ: IV | ключ | тег
+        byte[] sealed = new byte[CryptoEngine.sealedLength(key.length)];
+        CryptoEngine.encrypt(derivedKey, null, key, 0, key.length, sealed, 0);
+        Arrays.fill(derivedKey, (byte) 0);
 
-        // Объединяем IV и зашифрованный ключ
-        byte[] combined = new byte[iv.length + salt.length + encrypted.length];
-        System.arraycopy(iv, 0, combined, 0, iv.length);
-        System.arraycopy(salt, 0, combined, iv.length, salt.length);
-        System.arraycopy(encrypted, 0, combined, iv.length + salt.length, encrypted.length);
+        // Формат v1: IV | salt | зашифрованный ключ
+        byte[] combined = new byte[sealed.length + salt.length];
+        System.arraycopy(sealed, 0, combined, 0, Constants.IV_LENGTH);
+        System.arraycopy(salt, 0, combined, Constants.IV_LENGTH, salt.length);
+        System.arraycopy(sealed, Constants.IV_LENGTH, combined, Constants.IV_LENGTH + salt.length,
+                sealed.length - Constants.IV_LENGTH);
 
         return combined;
     }
 
-    public static byte[] decryptKey(String masterPassword, byte[] encryptedKey) throws Exception {
-        ByteBuffer buffer = ByteBuffer.wrap(encryptedKey);
-        byte[] iv = new byte[Constants.IV_LENGTH];
-        buffer.get(iv);
-
+    public static byte[] decryptKey(char[] masterPassword, byte[] encryptedKey) throws Exception {
         byte[] salt = new byte[16];
-        buffer.get(salt);
+        System.arraycopy(encryptedKey, Constants.IV_LENGTH, salt, 0, salt.length);
 
-        byte[] cipherText = new byte[buffer.remaining()];
-        buffer.get(cipherText);
+        // Формат v1: IV | salt | зашифрованный ключ; собираем IV | зашифрованный ключ
+        byte[] sealed = new byte[encryptedKey.length - salt.length];
+        System.arraycopy(encryptedKey, 0, sealed, 0, Constants.IV_LENGTH);
+        System.arraycopy(encryptedKey, Constants.IV_LENGTH + salt.length, sealed, Constants.IV_LENGTH,
+                sealed.length - Constants.IV_LENGTH);
 
         // Генерируем ключ из мастер-пароля
         byte[] derivedKey = KeyDeriver.deriveKey(masterPassword, salt, Constants.ITERATIONS, Constants.KEY_SIZE);
 
-        // Инициализируем шифр AES/GCM
-        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
-        GCMParameterSpec spec = new GCMParameterSpec(Constants.GCM_TAG_LENGTH, iv);
-        cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(derivedKey, "AES"), spec);
+        byte[] key = new byte[CryptoEngine.openedLength(sealed.length)];
+        try {
+            CryptoEngine.decrypt(derivedKey, null, sealed, 0, sealed.length, key, 0);
+        } finally {
+            Arrays.fill(derivedKey, (byte) 0);
+        }
+        return key;
+    }
 
-        return cipher.doFinal(cipherText);
+    public static byte[] wrapKey(byte[] vaultKey, byte[] key) throws Exception {
+        byte[] combined = new byte[CryptoEngine.sealedLength(key.length)];
+        CryptoEngine.encrypt(vaultKey, null, key, 0, key.length, combined, 0);
+        return combined;
     }
 
-    public static String encryptWithUniqueKeys(String masterPassword, String place, String login, String password) throws Exception {
+    public static byte[] unwrapKey(byte[] vaultKey, byte[] wrappedKey) throws Exception {
+        if (wrappedKey.length < CryptoEngine.OVERHEAD) {
+            throw new IllegalArgumentException("Недостаточно данных для извлечения IV.");
+        }
+
+        byte[] key = new byte[CryptoEngine.openedLength(wrappedKey.length)];
+        CryptoEngine.decrypt(vaultKey, null, wrappedKey, 0, wrappedKey.length, key, 0);
+        return key;
+    }
+
+    public static byte[] createKeyCheck(byte[] vaultKey) throws Exception {
+        return wrapKey(vaultKey, Constants.KEY_CHECK_VALUE.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static boolean verifyKeyCheck(byte[] vaultKey, byte[] keyCheck) throws Exception {
+        try {
+            byte[] value = unwrapKey(vaultKey, keyCheck);
+            return Constants.KEY_CHECK_VALUE.equals(new String(value, StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            return false;
+        }
+    }
+
+    // Тело записи v4: id (8) | длина обёрнутого ключа (1) | обёрнутый ключ | длина метаданных (4) |
+    // метаданные (IV | шифротекст места и логина) | IV | шифротекст пароля.
+    // Место и логин расшифровываются отдельно от пароля, целостность обеспечивают теги GCM вместо отдельных хэшей.
+    public static byte[] encryptRecord(byte[] vaultKey, long id, String place, String login, SecretBuffer password) throws Exception {
+        byte[] recordKey = CryptoEngine.randomBytes(Constants.KEY_SIZE / 8);
+        try {
+            byte[] secret = new byte[CryptoEngine.sealedLength(password.length())];
+            CryptoEngine.encrypt(recordKey, VaultFile.associatedData(id, VaultFile.PART_SECRET),
+                    password.view(), ByteBuffer.wrap(secret));
+            return sealRecord(recordKey, vaultKey, id, place, login, secret);
+        } finally {
+            Arrays.fill(recordKey, (byte) 0);
+        }
+    }
+
+    // Шифрует только пароль: место и логин дошифровываются при сохранении снимка, а открытый пароль
+    // можно затереть сразу (массовый импорт)
+    public static SealedSecret sealSecret(byte[] vaultKey, long id, SecretBuffer password) throws Exception {
+        byte[] recordKey = CryptoEngine.randomBytes(Constants.KEY_SIZE / 8);
+        try {
+            byte[] secret = new byte[CryptoEngine.sealedLength(password.length())];
+            CryptoEngine.encrypt(recordKey, VaultFile.associatedData(id, VaultFile.PART_SECRET),
+                    password.view(), ByteBuffer.wrap(secret));
+            return new SealedSecret(wrapKey(vaultKey, recordKey), secret);
+        } finally {
+            Arrays.fill(recordKey, (byte) 0);
+        }
+    }
+
+    // Зашифрованный пароль записи из хранилища переносится как есть, без расшифровки
+    public static byte[] encryptRecord(byte[] vaultKey, PasswordEntry entry) throws Exception {
+        SealedSecret sealed = entry.getSealedPassword();
+        if (sealed == null) {
+            return encryptRecord(vaultKey, entry.getId(), entry.getPlace(), entry.getLogin(), entry.getPassword());
+        }
+        byte[] recordKey = unwrapKey(vaultKey, sealed.wrappedKey());
+        try {
+            return sealRecord(recordKey, vaultKey, entry.getId(), entry.getPlace(), entry.getLogin(), sealed.ciphertext());
+        } finally {
+            Arrays.fill(recordKey, (byte) 0);
+        }
+    }
+
+    private static byte[] sealRecord(byte[] recordKey, byte[] vaultKey, long id, String place, String login,
+                                     byte[] secret) throws Exception {
+        byte[] placeBytes = place.getBytes(StandardCharsets.UTF_8);
+        byte[] loginBytes = login.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer plain = ByteBuffer.allocate(2 * Short.BYTES + placeBytes.length + loginBytes.length);
+        putField(plain, placeBytes);
+        putField(plain, loginBytes);
+        plain.flip();
+
+        int wrappedLength = CryptoEngine.sealedLength(recordKey.length);
+        int metadataLength = CryptoEngine.sealedLength(plain.remaining());
+        ByteBuffer record = ByteBuffer.allocate(Long.BYTES + 1 + wrappedLength + Integer.BYTES + metadataLength + secret.length);
+        record.putLong(id).put((byte) wrappedLength);
+        CryptoEngine.encrypt(vaultKey, null, ByteBuffer.wrap(recordKey), record);
+        record.putInt(metadataLength);
+        CryptoEngine.encrypt(recordKey, VaultFile.associatedData(id, VaultFile.PART_METADATA), plain, record);
+        record.put(secret);
+        return record.array();
+    }
+
+    // Расшифровывает только место и логин; обёрнутый ключ и шифротекст пароля копируются из буфера в запись
+    public static PasswordEntry decryptRecord(byte[] vaultKey, ByteBuffer record) throws Exception {
+        long id = record.getLong();
+        byte[] wrappedKey = new byte[Byte.toUnsignedInt(record.get())];
+        record.get(wrappedKey);
+        byte[] recordKey = unwrapKey(vaultKey, wrappedKey);
+
+        int metadataLength = record.getInt();
+        if (metadataLength < CryptoEngine.OVERHEAD || metadataLength > record.remaining() - CryptoEngine.OVERHEAD) {
+            throw new IllegalArgumentException("Некорректная длина метаданных записи " + id + ".");
+        }
+        byte[] plain = new byte[CryptoEngine.openedLength(metadataLength)];
+        try {
+            CryptoEngine.decrypt(recordKey, VaultFile.associatedData(id, VaultFile.PART_METADATA),
+                    record.slice(record.position(), metadataLength), ByteBuffer.wrap(plain));
+        } finally {
+            Arrays.fill(recordKey, (byte) 0);
+        }
+        record.position(record.position() + metadataLength);
+
+        byte[] secret = new byte[record.remaining()];
+        record.get(secret);
+
+        ByteBuffer fields = ByteBuffer.wrap(plain);
+        return new PasswordEntry(id, readField(fields), readField(fields), new SealedSecret(wrappedKey, secret),
+                secretOpener(vaultKey));
+    }
+
+    public static PasswordEntry.SecretOpener secretOpener(byte[] vaultKey) {
+        return (id, sealed) -> openSecret(vaultKey, id, sealed);
+    }
+
+    public static SealedSecret rewrapSecret(byte[] oldVaultKey, byte[] newVaultKey, SealedSecret sealed) throws Exception {
+        byte[] recordKey = unwrapKey(oldVaultKey, sealed.wrappedKey());
+        try {
+            return new SealedSecret(wrapKey(newVaultKey, recordKey), sealed.ciphertext());
+        } finally {
+            Arrays.fill(recordKey, (byte) 0);
+        }
+    }
+
+    // Пароль расшифровывается сразу в буфер вне кучи
+    public static SecretBuffer openSecret(byte[] vaultKey, long id, SealedSecret sealed) throws Exception {
+        byte[] recordKey = unwrapKey(vaultKey, sealed.wrappedKey());
+        SecretBuffer password = SecretBuffer.allocate(CryptoEngine.openedLength(sealed.ciphertext().length));
+        try {
+            CryptoEngine.decrypt(recordKey, VaultFile.associatedData(id, VaultFile.PART_SECRET),
+                    ByteBuffer.wrap(sealed.ciphertext()), password.target());
+            return password.seal();
+        } catch (Exception e) {
+            password.destroy();
+            throw e;
+        } finally {
+            Arrays.fill(recordKey, (byte) 0);
+        }
+    }
+
+    public static byte[] rewrapRecord(byte[] oldVaultKey, byte[] newVaultKey, ByteBuffer record) throws Exception {
+        long id = record.getLong();
+        int wrappedLength = Byte.toUnsignedInt(record.get());
+
+        byte[] recordKey = new byte[CryptoEngine.openedLength(wrappedLength)];
+        CryptoEngine.decrypt(oldVaultKey, null, record.slice(record.position(), wrappedLength), ByteBuffer.wrap(recordKey));
+        record.position(record.position() + wrappedLength);
+
+        int rewrappedLength = CryptoEngine.sealedLength(recordKey.length);
+        ByteBuffer result = ByteBuffer.allocate(Long.BYTES + 1 + rewrappedLength + record.remaining());
+        result.putLong(id).put((byte) rewrappedLength);
+        CryptoEngine.encrypt(newVaultKey, null, ByteBuffer.wrap(recordKey), result);
+        Arrays.fill(recordKey, (byte) 0);
+        result.put(record);
+        return result.array();
+    }
+
+    private static void putField(ByteBuffer buffer, byte[] field) {
+        if (field.length > 0xFFFF) {
+            throw new IllegalArgumentException("Поле слишком длинное: " + field.length + " байт.");
+        }
+        buffer.putShort((short) field.length).put(field);
+    }
+
+    private static String readField(ByteBuffer buffer) {
+        int length = Short.toUnsignedInt(buffer.getShort());
+        String field = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return field;
+    }
+
+    // Формат v2: ключи записи шифруются ключом хранилища, выведенным один раз за сессию
+    public static String encryptWithUniqueKeys(byte[] vaultKey, String place, String login, String password) throws Exception {
         // Генерируем первый AES-ключ (для полей)
         byte[] aesKey = new byte[32];
-        new SecureRandom().nextBytes(aesKey);
+        CryptoEngine.nextBytes(aesKey);
 
-        // Шифруем поля
-        String encryptedPlace = encryptField(aesKey, place);
-        String encryptedLogin = encryptField(aesKey, login);
-        String encryptedPassword = encryptField(aesKey, password);
+        // Генерируем второй AES-ключ (для всей строки)
+        byte[] stringKey = new byte[32];
+        CryptoEngine.nextBytes(stringKey);
 
-        // Добавляем хэши
-        String hashPlace = encryptField(aesKey, PasswordEntry.hash(place, "SHA3-256"));
-        String hashLogin = encryptField(aesKey, PasswordEntry.hash(login, "SHA3-256"));
-        String hashPassword = encryptField(aesKey, PasswordEntry.hash(password, "SHA3-256"));
+        String encryptedFullData = sealFields(aesKey, stringKey, place, login, password);
 
-        // Объединяем поля и хэши в одну строку
-        String combinedFields = String.join(",", encryptedPlace, encryptedLogin, encryptedPassword, hashPlace, hashLogin, hashPassword);
+        // Шифруем оба ключа ключом хранилища
+        byte[] encryptedAesKey = wrapKey(vaultKey, aesKey);
+        byte[] encryptedStringKey = wrapKey(vaultKey, stringKey);
+
+        return Base64.getEncoder().encodeToString(encryptedFullData.getBytes(StandardCharsets.UTF_8)) + "," +
+                Base64.getEncoder().encodeToString(encryptedAesKey) + "," +
+                Base64.getEncoder().encodeToString(encryptedStringKey);
+    }
+
+    public static String decryptWithUniqueKeys(byte[] vaultKey, String encryptedLine) throws Exception {
+        String[] parts = encryptedLine.split(",");
+        if (parts.length != 3) {
+            throw new Exception("Некорректный формат строки.");
+        }
+
+        byte[] encryptedFullData = Base64.getDecoder().decode(parts[0]);
+        byte[] aesKey = unwrapKey(vaultKey, Base64.getDecoder().decode(parts[1]));
+        byte[] stringKey = unwrapKey(vaultKey, Base64.getDecoder().decode(parts[2]));
+
+        return openFields(aesKey, stringKey, new String(encryptedFullData, StandardCharsets.UTF_8));
+    }
+
+    // Формат v1: каждый ключ записи защищён отдельным выводом PBKDF2, используется только для чтения и миграции
+    public static String encryptWithUniqueKeys(char[] masterPassword, String place, String login, String password) throws Exception {
+        // Генерируем первый AES-ключ (для полей)
+        byte[] aesKey = new byte[32];
+        CryptoEngine.nextBytes(aesKey);
 
         // Генерируем второй AES-ключ (для всей строки)
         byte[] stringKey = new byte[32];
-        new SecureRandom().nextBytes(stringKey);
+        CryptoEngine.nextBytes(stringKey);
 
-        // Шифруем всю строку
-        String encryptedFullData = encryptField(stringKey, combinedFields);
+        String encryptedFullData = sealFields(aesKey, stringKey, place, login, password);
 
         // Шифруем оба ключа мастер-паролем
         byte[] encryptedAesKey = encryptKey(masterPassword, aesKey);
@@ -149,7 +323,7 @@ public class AESEncryption {
                 Base64.getEncoder().encodeToString(encryptedStringKey);
     }
 
-    public static String decryptWithUniqueKeys(String masterPassword, String encryptedLine) throws Exception {
+    public static String decryptWithUniqueKeys(char[] masterPassword, String encryptedLine) throws Exception {
         String[] parts = encryptedLine.split(",");
         if (parts.length != 3) {
             throw new Exception("Некорректный формат строки.");
@@ -163,9 +337,30 @@ public class AESEncryption {
         byte[] aesKey = decryptKey(masterPassword, encryptedAesKey);
         byte[] stringKey = decryptKey(masterPassword, encryptedStringKey);
 
+        return openFields(aesKey, stringKey, new String(encryptedFullData, StandardCharsets.UTF_8));
+    }
+
+    private static String sealFields(byte[] aesKey, byte[] stringKey, String place, String login, String password) throws Exception {
+        // Шифруем поля
+        String encryptedPlace = encryptField(aesKey, place);
+        String encryptedLogin = encryptField(aesKey, login);
+        String encryptedPassword = encryptField(aesKey, password);
+
+        // Добавляем хэши
+        String hashPlace = encryptField(aesKey, PasswordEntry.hash(place, "SHA3-256"));
+        String hashLogin = encryptField(aesKey, PasswordEntry.hash(login, "SHA3-256"));
+        String hashPassword = encryptField(aesKey, PasswordEntry.hash(password, "SHA3-256"));
+
+        // Объединяем поля и хэши в одну строку
+        String combinedFields = String.join(",", encryptedPlace, encryptedLogin, encryptedPassword, hashPlace, hashLogin, hashPassword);
+
+        // Шифруем всю строку
+        return encryptField(stringKey, combinedFields);
+    }
+
+    private static String openFields(byte[] aesKey, byte[] stringKey, String encryptedFullData) throws Exception {
         // Расшифровываем всю строку
-        String decodedEncryptedFullData = new String(encryptedFullData, StandardCharsets.UTF_8);
-        String decryptedFullData = decryptField(stringKey, decodedEncryptedFullData);
+        String decryptedFullData = decryptField(stringKey, encryptedFullData);
 
         // Разделяем на поля и хэши
         String[] fields = decryptedFullData.split(",");
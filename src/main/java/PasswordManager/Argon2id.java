@@ -0,0 +1,297 @@
+package main.java.PasswordManager;
+
+import org.bouncycastle.crypto.digests.Blake2bDigest;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+// Argon2id версии 1.3 (RFC 9106) с параллельным заполнением полос. Память делится на полосы (lanes), каждая —
+// на 4 отрезка; в пределах отрезка полосы друг на друга не ссылаются, поэтому отрезки всех полос заполняются
+// одновременно в общем пуле (ParallelTasks), а между отрезками потоки синхронизируются.
+// Argon2BytesGenerator из Bouncy Castle заполняет полосы по очереди; ключ у обеих реализаций одинаковый.
+final class Argon2id {
+    private static final int VERSION = 0x13;
+    private static final int TYPE = 2;
+    private static final int SYNC_POINTS = 4;
+    private static final int BLOCK_BYTES = 1024;
+    private static final int BLOCK_WORDS = BLOCK_BYTES / Long.BYTES;
+    private static final int PREHASH_BYTES = 64;
+
+    private final int lanes;
+    private final int passes;
+    private final int memoryKiB;
+    private final int memoryBlocks;
+    private final int segmentLength;
+    private final int laneLength;
+    private final long[][] memory;
+
+    private Argon2id(int lanes, int passes, int memoryKiB) {
+        this.lanes = lanes;
+        this.passes = passes;
+        this.memoryKiB = memoryKiB;
+        // Как в эталонной реализации: не меньше 8 блоков на полосу, кратно числу полос и отрезков
+        int blocks = Math.max(memoryKiB, 2 * SYNC_POINTS * lanes);
+        segmentLength = blocks / (lanes * SYNC_POINTS);
+        laneLength = segmentLength * SYNC_POINTS;
+        memoryBlocks = segmentLength * lanes * SYNC_POINTS;
+        memory = new long[memoryBlocks][BLOCK_WORDS];
+    }
+
+    // Пароль — байты UTF-8, как у Argon2BytesGenerator по умолчанию; вызывающий код затирает их сам
+    static byte[] derive(byte[] password, byte[] salt, int passes, int memoryKiB, int lanes, int keyLength)
+            throws Exception {
+        Argon2id argon = new Argon2id(lanes, passes, memoryKiB);
+        try {
+            return argon.hash(password, salt, keyLength);
+        } finally {
+            for (long[] block : argon.memory) {
+                Arrays.fill(block, 0L);
+            }
+        }
+    }
+
+    private byte[] hash(byte[] password, byte[] salt, int keyLength) throws Exception {
+        byte[] prehash = prehash(password, salt, keyLength);
+        byte[] seed = Arrays.copyOf(prehash, PREHASH_BYTES + 8);
+        byte[] block = new byte[BLOCK_BYTES];
+        for (int lane = 0; lane < lanes; lane++) {
+            for (int column = 0; column < 2; column++) {
+                ByteBuffer.wrap(seed, PREHASH_BYTES, 8).order(ByteOrder.LITTLE_ENDIAN).putInt(column).putInt(lane);
+                variableHash(seed, block);
+                load(block, memory[lane * laneLength + column]);
+            }
+        }
+        Arrays.fill(seed, (byte) 0);
+        Arrays.fill(prehash, (byte) 0);
+
+        for (int pass = 0; pass < passes; pass++) {
+            for (int slice = 0; slice < SYNC_POINTS; slice++) {
+                int currentPass = pass;
+                int currentSlice = slice;
+                ParallelTasks.forEach(lanes, lanes, lane -> fillSegment(currentPass, currentSlice, lane));
+            }
+        }
+
+        // Последние блоки полос складываются по XOR и сжимаются до ключа
+        long[] last = new long[BLOCK_WORDS];
+        for (int lane = 0; lane < lanes; lane++) {
+            long[] lastBlock = memory[lane * laneLength + laneLength - 1];
+            for (int i = 0; i < BLOCK_WORDS; i++) {
+                last[i] ^= lastBlock[i];
+            }
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(block).order(ByteOrder.LITTLE_ENDIAN);
+        for (long word : last) {
+            bytes.putLong(word);
+        }
+        Arrays.fill(last, 0L);
+        byte[] key = new byte[keyLength];
+        variableHash(block, key);
+        Arrays.fill(block, (byte) 0);
+        return key;
+    }
+
+    // H0: BLAKE2b-512 от параметров, пароля и соли; секрет и связанные данные пустые
+    private byte[] prehash(byte[] password, byte[] salt, int keyLength) {
+        Blake2bDigest digest = new Blake2bDigest(PREHASH_BYTES * 8);
+        for (int value : new int[]{lanes, keyLength, memoryKiB, passes, VERSION, TYPE}) {
+            updateInt(digest, value);
+        }
+        updateInt(digest, password.length);
+        digest.update(password, 0, password.length);
+        updateInt(digest, salt.length);
+        digest.update(salt, 0, salt.length);
+        updateInt(digest, 0);
+        updateInt(digest, 0);
+        byte[] out = new byte[PREHASH_BYTES];
+        digest.doFinal(out, 0);
+        return out;
+    }
+
+    // Хэш произвольной длины H' (RFC 9106, 3.3): длинный выход собирается из половин цепочки BLAKE2b-512
+    private static void variableHash(byte[] input, byte[] out) {
+        if (out.length <= PREHASH_BYTES) {
+            Blake2bDigest digest = new Blake2bDigest(out.length * 8);
+            updateInt(digest, out.length);
+            digest.update(input, 0, input.length);
+            digest.doFinal(out, 0);
+            return;
+        }
+        Blake2bDigest digest = new Blake2bDigest(PREHASH_BYTES * 8);
+        byte[] chain = new byte[PREHASH_BYTES];
+        updateInt(digest, out.length);
+        digest.update(input, 0, input.length);
+        digest.doFinal(chain, 0);
+        int position = 0;
+        System.arraycopy(chain, 0, out, position, PREHASH_BYTES / 2);
+        position += PREHASH_BYTES / 2;
+        while (out.length - position > PREHASH_BYTES) {
+            digest.update(chain, 0, chain.length);
+            digest.doFinal(chain, 0);
+            System.arraycopy(chain, 0, out, position, PREHASH_BYTES / 2);
+            position += PREHASH_BYTES / 2;
+        }
+        Blake2bDigest tail = new Blake2bDigest((out.length - position) * 8);
+        tail.update(chain, 0, chain.length);
+        tail.doFinal(out, position);
+        Arrays.fill(chain, (byte) 0);
+    }
+
+    private static void updateInt(Blake2bDigest digest, int value) {
+        digest.update((byte) value);
+        digest.update((byte) (value >>> 8));
+        digest.update((byte) (value >>> 16));
+        digest.update((byte) (value >>> 24));
+    }
+
+    private static void load(byte[] bytes, long[] block) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < BLOCK_WORDS; i++) {
+            block[i] = buffer.getLong();
+        }
+    }
+
+    // Заполняет отрезок slice полосы lane. Первая половина первого прохода адресуется независимо от данных
+    // (блоками адресов из счётчика), остальное — по первому слову предыдущего блока
+    private void fillSegment(int pass, int slice, int lane) {
+        boolean independent = pass == 0 && slice < SYNC_POINTS / 2;
+        long[] scratch = new long[BLOCK_WORDS];
+        long[] next = new long[BLOCK_WORDS];
+        long[] addresses = null;
+        long[] input = null;
+        long[] zero = null;
+        if (independent) {
+            addresses = new long[BLOCK_WORDS];
+            input = new long[BLOCK_WORDS];
+            zero = new long[BLOCK_WORDS];
+            input[0] = pass;
+            input[1] = lane;
+            input[2] = slice;
+            input[3] = memoryBlocks;
+            input[4] = passes;
+            input[5] = TYPE;
+        }
+
+        int start = 0;
+        if (pass == 0 && slice == 0) {
+            start = 2;
+            if (independent) nextAddresses(input, addresses, zero, scratch);
+        }
+
+        int laneStart = lane * laneLength;
+        for (int index = start; index < segmentLength; index++) {
+            int column = slice * segmentLength + index;
+            int previous = laneStart + (column == 0 ? laneLength - 1 : column - 1);
+
+            long random;
+            if (independent) {
+                if (index % BLOCK_WORDS == 0) nextAddresses(input, addresses, zero, scratch);
+                random = addresses[index % BLOCK_WORDS];
+            } else {
+                random = memory[previous][0];
+            }
+
+            int referenceLane = pass == 0 && slice == 0 ? lane : (int) ((random >>> 32) % lanes);
+            int reference = referenceLane * laneLength
+                    + referenceColumn(pass, slice, index, random & 0xFFFFFFFFL, referenceLane == lane);
+
+            compress(memory[previous], memory[reference], memory[laneStart + column], pass > 0, scratch, next);
+        }
+    }
+
+    // Номер опорного блока в полосе (RFC 9106, 3.4.1.2): распределение смещено к недавно заполненным блокам
+    private int referenceColumn(int pass, int slice, int index, long j1, boolean sameLane) {
+        long area;
+        if (pass == 0) {
+            area = sameLane ? (long) slice * segmentLength + index - 1
+                    : (long) slice * segmentLength + (index == 0 ? -1 : 0);
+        } else {
+            area = sameLane ? laneLength - segmentLength + index - 1
+                    : laneLength - segmentLength + (index == 0 ? -1 : 0);
+        }
+        long x = (j1 * j1) >>> 32;
+        long y = (area * x) >>> 32;
+        long relative = area - 1 - y;
+        long startColumn = pass != 0 && slice != SYNC_POINTS - 1 ? (long) (slice + 1) * segmentLength : 0;
+        return (int) ((startColumn + relative) % laneLength);
+    }
+
+    private static void nextAddresses(long[] input, long[] addresses, long[] zero, long[] scratch) {
+        input[6]++;
+        compressBlocks(zero, input, addresses, scratch);
+        compressBlocks(zero, addresses, addresses, scratch);
+    }
+
+    // Функция сжатия G: блок = P(X xor Y) xor X xor Y; на повторных проходах добавляется прежнее содержимое блока
+    private static void compress(long[] previous, long[] reference, long[] target, boolean xorOld, long[] r,
+                                 long[] z) {
+        for (int i = 0; i < BLOCK_WORDS; i++) {
+            r[i] = previous[i] ^ reference[i];
+        }
+        System.arraycopy(r, 0, z, 0, BLOCK_WORDS);
+        permute(z);
+        if (xorOld) {
+            for (int i = 0; i < BLOCK_WORDS; i++) {
+                target[i] ^= z[i] ^ r[i];
+            }
+        } else {
+            for (int i = 0; i < BLOCK_WORDS; i++) {
+                target[i] = z[i] ^ r[i];
+            }
+        }
+    }
+
+    private static void compressBlocks(long[] x, long[] y, long[] out, long[] r) {
+        for (int i = 0; i < BLOCK_WORDS; i++) {
+            r[i] = x[i] ^ y[i];
+        }
+        System.arraycopy(r, 0, out, 0, BLOCK_WORDS);
+        permute(out);
+        for (int i = 0; i < BLOCK_WORDS; i++) {
+            out[i] ^= r[i];
+        }
+    }
+
+    // Перестановка P по 8 строкам из 16 слов, затем по 8 столбцам из пар слов
+    private static void permute(long[] v) {
+        for (int row = 0; row < 8; row++) {
+            int b = row * 16;
+            round(v, b, b + 1, b + 2, b + 3, b + 4, b + 5, b + 6, b + 7,
+                    b + 8, b + 9, b + 10, b + 11, b + 12, b + 13, b + 14, b + 15);
+        }
+        for (int column = 0; column < 8; column++) {
+            int b = column * 2;
+            round(v, b, b + 1, b + 16, b + 17, b + 32, b + 33, b + 48, b + 49,
+                    b + 64, b + 65, b + 80, b + 81, b + 96, b + 97, b + 112, b + 113);
+        }
+    }
+
+    private static void round(long[] v, int v0, int v1, int v2, int v3, int v4, int v5, int v6, int v7,
+                              int v8, int v9, int v10, int v11, int v12, int v13, int v14, int v15) {
+        mix(v, v0, v4, v8, v12);
+        mix(v, v1, v5, v9, v13);
+        mix(v, v2, v6, v10, v14);
+        mix(v, v3, v7, v11, v15);
+        mix(v, v0, v5, v10, v15);
+        mix(v, v1, v6, v11, v12);
+        mix(v, v2, v7, v8, v13);
+        mix(v, v3, v4, v9, v14);
+    }
+
+    // GB из BLAKE2b с умножением младших половин слов (BlaMka)
+    private static void mix(long[] v, int a, int b, int c, int d) {
+        v[a] = blamka(v[a], v[b]);
+        v[d] = Long.rotateRight(v[d] ^ v[a], 32);
+        v[c] = blamka(v[c], v[d]);
+        v[b] = Long.rotateRight(v[b] ^ v[c], 24);
+        v[a] = blamka(v[a], v[b]);
+        v[d] = Long.rotateRight(v[d] ^ v[a], 16);
+        v[c] = blamka(v[c], v[d]);
+        v[b] = Long.rotateRight(v[b] ^ v[c], 63);
+    }
+
+    private static long blamka(long x, long y) {
+        return x + y + 2 * (x & 0xFFFFFFFFL) * (y & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,336 @@
+package main.java.PasswordManager;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+// Вложения записей (ключи SSH, хранилища ключей TLS, файлы кодов восстановления) лежат рядом с хранилищем,
+// в каталоге <хранилище>.attachments, по файлу на вложение: <id записи>-<случайный id>.pma. В файл хранилища
+// они не входят, поэтому разблокировка от них не зависит: вложение читается, только когда его открывают.
+// Файл вложения: "PMAS" | версия (1) | размер сегмента (4) | префикс IV (7) | длина + обёрнутый ключ файла (1 + N) |
+// длина + имя (2 + IV | шифротекст | тег) | содержимое в формате StreamingAead.
+// Ключ файла случайный и обёрнут ключом каталога, а ключ каталога — ключом хранилища в store.key
+// ("PMAK" | версия (1) | длина + обёрнутый ключ), поэтому смена мастер-пароля переписывает только store.key.
+// Связанные данные имени и содержимого — сигнатура, версия, id записи и часть файла: вложение нельзя
+// незаметно перенести к другой записи.
+public class AttachmentStore {
+    public record Attachment(long entryId, String fileId, String name, long size) {}
+
+    private static final byte[] MAGIC = {'P', 'M', 'A', 'S'};
+    private static final byte[] KEY_MAGIC = {'P', 'M', 'A', 'K'};
+    private static final byte VERSION = 1;
+    private static final byte PART_NAME = 'N';
+    private static final byte PART_CONTENT = 'C';
+    private static final String SUFFIX = ".pma";
+    private static final String KEY_FILE = "store.key";
+    private static final String ROTATION_SUFFIX = ".rotation";
+    private static final int MAX_SEGMENT_SIZE = 1 << 24;
+    private static final int MAX_NAME_LENGTH = 1024;
+
+    private record Header(int segmentSize, byte[] prefix, byte[] wrappedKey, byte[] sealedName, int length) {}
+
+    private final Path directory;
+    private final Path keyFile;
+    private final Path pendingKeyFile;
+
+    public AttachmentStore(Path directory) {
+        this.directory = directory;
+        this.keyFile = directory.resolve(KEY_FILE);
+        this.pendingKeyFile = directory.resolve(KEY_FILE + ROTATION_SUFFIX);
+    }
+
+    // Вложения записи по имени; читаются только заголовки файлов, содержимое не расшифровывается
+    public List<Attachment> list(byte[] vaultKey, long entryId) throws Exception {
+        List<Attachment> attachments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) return attachments;
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, entryId + "-*" + SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        if (files.isEmpty()) return attachments;
+
+        byte[] storeKey = storeKey(vaultKey, false);
+        try {
+            for (Path file : files) {
+                Header header;
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                    header = readHeader(in, file);
+                }
+                byte[] fileKey = unwrapFileKey(storeKey, header, file);
+                try {
+                    long size = StreamingAead.plainLength(Files.size(file) - header.length(), header.segmentSize());
+                    attachments.add(new Attachment(entryId, fileId(file), openName(fileKey, entryId, header, file), size));
+                } finally {
+                    Arrays.fill(fileKey, (byte) 0);
+                }
+            }
+        } finally {
+            Arrays.fill(storeKey, (byte) 0);
+        }
+        attachments.sort(Comparator.comparing(Attachment::name));
+        return attachments;
+    }
+
+    // Содержимое шифруется по мере чтения content во временный файл, который после fsync атомарно
+    // становится вложением: прерванная запись не оставляет неполного вложения
+    public Attachment add(byte[] vaultKey, long entryId, String name, InputStream content) throws Exception {
+        if (name == null || name.isBlank()) {
+            throw new IllegalArgumentException("Имя вложения не должно быть пустым.");
+        }
+        if (name.getBytes(StandardCharsets.UTF_8).length > MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException("Имя вложения длиннее " + MAX_NAME_LENGTH + " байт.");
+        }
+        Files.createDirectories(directory);
+        byte[] storeKey = storeKey(vaultKey, true);
+        byte[] fileKey = CryptoEngine.randomBytes(Constants.KEY_SIZE / 8);
+        String fileId = CryptoEngine.toHex(CryptoEngine.randomBytes(8));
+        Path file = directory.resolve(entryId + "-" + fileId + SUFFIX);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            byte[] prefix = CryptoEngine.randomBytes(StreamingAead.PREFIX_LENGTH);
+            byte[] wrappedKey = AESEncryption.wrapKey(storeKey, fileKey);
+            byte[] plainName = name.getBytes(StandardCharsets.UTF_8);
+            byte[] sealedName = new byte[CryptoEngine.sealedLength(plainName.length)];
+            CryptoEngine.encrypt(fileKey, associatedData(entryId, PART_NAME), plainName, 0, plainName.length, sealedName, 0);
+
+            ByteBuffer header = ByteBuffer.allocate(MAGIC.length + 1 + Integer.BYTES + prefix.length
+                    + 1 + wrappedKey.length + Short.BYTES + sealedName.length);
+            header.put(MAGIC).put(VERSION).putInt(Constants.ATTACHMENT_SEGMENT_SIZE).put(prefix);
+            header.put((byte) wrappedKey.length).put(wrappedKey);
+            header.putShort((short) sealedName.length).put(sealedName);
+            header.flip();
+
+            long size;
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                while (header.hasRemaining()) {
+                    channel.write(header);
+                }
+                StreamingAead.Encryptor out = StreamingAead.encrypt(Channels.newOutputStream(channel), fileKey, prefix,
+                        associatedData(entryId, PART_CONTENT), Constants.ATTACHMENT_SEGMENT_SIZE);
+                try {
+                    size = content.transferTo(out);
+                } finally {
+                    // Затирает буфер сегмента и при ошибке чтения; временный файл всё равно удаляется
+                    out.finish();
+                }
+                channel.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+            return new Attachment(entryId, fileId, name, size);
+        } finally {
+            Files.deleteIfExists(temp);
+            Arrays.fill(fileKey, (byte) 0);
+            Arrays.fill(storeKey, (byte) 0);
+        }
+    }
+
+    // Пишет расшифрованное содержимое в out по сегментам; данные сегмента попадают в out только после
+    // проверки его тега, но при ошибке в середине в out уже могут быть проверенные начальные сегменты
+    public long read(byte[] vaultKey, Attachment attachment, OutputStream out) throws Exception {
+        Path file = file(attachment);
+        byte[] storeKey = storeKey(vaultKey, false);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            Header header = readHeader(in, file);
+            byte[] fileKey = unwrapFileKey(storeKey, header, file);
+            try {
+                // Имя проверяется тегом GCM, прежде чем читать содержимое
+                openName(fileKey, attachment.entryId(), header, file);
+                try (InputStream content = StreamingAead.decrypt(in, fileKey, header.prefix(),
+                        associatedData(attachment.entryId(), PART_CONTENT), header.segmentSize())) {
+                    return content.transferTo(out);
+                }
+            } finally {
+                Arrays.fill(fileKey, (byte) 0);
+            }
+        } finally {
+            Arrays.fill(storeKey, (byte) 0);
+        }
+    }
+
+    public void remove(Attachment attachment) throws IOException {
+        Files.deleteIfExists(file(attachment));
+    }
+
+    // Удаляет вложения записей, которых нет в хранилище, и временные файлы прерванных записей.
+    // Вызывается после записи снимка: удаление записи окончательно, только когда оно в снимке
+    public int retain(Set<Long> ids) throws IOException {
+        if (!Files.isDirectory(directory)) return 0;
+
+        int removed = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                int dash = name.indexOf('-');
+                boolean orphan;
+                if (name.endsWith(SUFFIX + ".tmp")) {
+                    orphan = true;
+                } else if (name.endsWith(SUFFIX) && dash > 0) {
+                    try {
+                        orphan = !ids.contains(Long.parseLong(name.substring(0, dash)));
+                    } catch (NumberFormatException e) {
+                        orphan = false;
+                    }
+                } else {
+                    orphan = false;
+                }
+                if (orphan && Files.deleteIfExists(file)) {
+                    removed++;
+                }
+            }
+        }
+        return removed;
+    }
+
+    // Смена ключа хранилища в два шага: ключ каталога заранее обёртывается новым ключом в store.key.rotation,
+    // а после замены файла хранилища этот файл заменяет store.key. Если смена прервана между ними,
+    // store.key.rotation подхватывается при первом обращении с новым ключом (см. storeKey)
+    public void prepareRotation(byte[] currentKey, byte[] newKey) throws Exception {
+        if (!Files.exists(keyFile) && !Files.exists(pendingKeyFile)) return;
+
+        byte[] storeKey = storeKey(currentKey, false);
+        try {
+            writeKeyFile(pendingKeyFile, newKey, storeKey);
+        } finally {
+            Arrays.fill(storeKey, (byte) 0);
+        }
+    }
+
+    public void completeRotation() throws IOException {
+        if (Files.exists(pendingKeyFile)) {
+            Files.move(pendingKeyFile, keyFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    private byte[] storeKey(byte[] vaultKey, boolean create) throws Exception {
+        if (Files.exists(keyFile)) {
+            try {
+                return readKeyFile(keyFile, vaultKey);
+            } catch (GeneralSecurityException e) {
+                if (!Files.exists(pendingKeyFile)) throw e;
+            }
+        }
+        // Смена мастер-пароля прервана после замены файла хранилища: ключ каталога уже обёрнут новым ключом
+        if (Files.exists(pendingKeyFile)) {
+            byte[] key = readKeyFile(pendingKeyFile, vaultKey);
+            completeRotation();
+            return key;
+        }
+        if (!create) {
+            throw new IOException("Ключ каталога вложений не найден: " + keyFile);
+        }
+        byte[] key = CryptoEngine.randomBytes(Constants.KEY_SIZE / 8);
+        writeKeyFile(keyFile, vaultKey, key);
+        return key;
+    }
+
+    private static byte[] readKeyFile(Path file, byte[] vaultKey) throws Exception {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        try {
+            byte[] magic = new byte[KEY_MAGIC.length];
+            buffer.get(magic);
+            if (!Arrays.equals(magic, KEY_MAGIC) || buffer.get() != VERSION) {
+                throw new IOException("Некорректный формат ключа каталога вложений: " + file);
+            }
+            byte[] wrapped = new byte[Byte.toUnsignedInt(buffer.get())];
+            buffer.get(wrapped);
+            return AESEncryption.unwrapKey(vaultKey, wrapped);
+        } catch (RuntimeException e) {
+            throw new IOException("Ключ каталога вложений повреждён: " + file, e);
+        }
+    }
+
+    private static void writeKeyFile(Path file, byte[] vaultKey, byte[] key) throws Exception {
+        byte[] wrapped = AESEncryption.wrapKey(vaultKey, key);
+        ByteBuffer buffer = ByteBuffer.allocate(KEY_MAGIC.length + 1 + 1 + wrapped.length);
+        buffer.put(KEY_MAGIC).put(VERSION).put((byte) wrapped.length).put(wrapped).flip();
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Header readHeader(DataInputStream in, Path file) throws IOException {
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC) || in.readByte() != VERSION) {
+                throw new IOException("Некорректный формат вложения: " + file.getFileName());
+            }
+            int segmentSize = in.readInt();
+            if (segmentSize <= 0 || segmentSize > MAX_SEGMENT_SIZE) {
+                throw new IOException("Некорректный размер сегмента вложения: " + file.getFileName());
+            }
+            byte[] prefix = new byte[StreamingAead.PREFIX_LENGTH];
+            in.readFully(prefix);
+            byte[] wrappedKey = new byte[in.readUnsignedByte()];
+            in.readFully(wrappedKey);
+            byte[] sealedName = new byte[in.readUnsignedShort()];
+            in.readFully(sealedName);
+            int length = MAGIC.length + 1 + Integer.BYTES + prefix.length + 1 + wrappedKey.length
+                    + Short.BYTES + sealedName.length;
+            return new Header(segmentSize, prefix, wrappedKey, sealedName, length);
+        } catch (EOFException e) {
+            throw new IOException("Вложение обрезано: " + file.getFileName(), e);
+        }
+    }
+
+    private static byte[] unwrapFileKey(byte[] storeKey, Header header, Path file) throws Exception {
+        try {
+            return AESEncryption.unwrapKey(storeKey, header.wrappedKey());
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            throw new IOException("Ключ вложения повреждён или от другого хранилища: " + file.getFileName(), e);
+        }
+    }
+
+    private static String openName(byte[] fileKey, long entryId, Header header, Path file) throws Exception {
+        byte[] sealed = header.sealedName();
+        byte[] plain = new byte[Math.max(0, CryptoEngine.openedLength(sealed.length))];
+        try {
+            int length = CryptoEngine.decrypt(fileKey, associatedData(entryId, PART_NAME), sealed, 0, sealed.length, plain, 0);
+            return new String(plain, 0, length, StandardCharsets.UTF_8);
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            throw new IOException("Вложение повреждено или относится к другой записи: " + file.getFileName(), e);
+        }
+    }
+
+    private Path file(Attachment attachment) {
+        if (!attachment.fileId().matches("[0-9a-f]+")) {
+            throw new IllegalArgumentException("Некорректный id вложения: " + attachment.fileId());
+        }
+        return directory.resolve(attachment.entryId() + "-" + attachment.fileId() + SUFFIX);
+    }
+
+    private static String fileId(Path file) {
+        String name = file.getFileName().toString();
+        return name.substring(name.indexOf('-') + 1, name.length() - SUFFIX.length());
+    }
+
+    private static byte[] associatedData(long id, byte part) {
+        return ByteBuffer.allocate(MAGIC.length + 1 + Long.BYTES + 1).put(MAGIC).put(VERSION).putLong(id).put(part).array();
+    }
+}
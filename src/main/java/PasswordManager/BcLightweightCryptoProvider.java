@@ -0,0 +1,197 @@
+package main.java.PasswordManager;
+
+import org.bouncycastle.crypto.Digest;
+import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.bouncycastle.crypto.PBEParametersGenerator;
+import org.bouncycastle.crypto.digests.SHA1Digest;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.digests.SHA3Digest;
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.generators.PKCS5S2ParametersGenerator;
+import org.bouncycastle.crypto.macs.HMac;
+import org.bouncycastle.crypto.modes.GCMBlockCipher;
+import org.bouncycastle.crypto.modes.GCMModeCipher;
+import org.bouncycastle.crypto.params.AEADParameters;
+import org.bouncycastle.crypto.params.KeyParameter;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.ShortBufferException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+// Легковесный API Bouncy Castle напрямую, без JCA: без поиска провайдера и проверок при каждом getInstance/init.
+// Движки работают с массивами, поэтому данные из буферов вне кучи копируются во временный массив,
+// который затирается сразу после операции.
+final class BcLightweightCryptoProvider implements CryptoProvider {
+    private static final int SCRATCH_SIZE = 4096;
+
+    @Override
+    public String name() { return "bc-lightweight"; }
+
+    @Override
+    public Aead aead() {
+        GCMModeCipher cipher = GCMBlockCipher.newInstance(AESEngine.newInstance());
+        return new Aead() {
+            @Override
+            public int encrypt(byte[] key, byte[] iv, byte[] aad, byte[] in, int inOffset, int inLength,
+                               byte[] out, int outOffset) throws GeneralSecurityException {
+                return process(true, key, iv, aad, in, inOffset, inLength, out, outOffset);
+            }
+
+            @Override
+            public int decrypt(byte[] key, byte[] iv, byte[] aad, byte[] in, int inOffset, int inLength,
+                               byte[] out, int outOffset) throws GeneralSecurityException {
+                return process(false, key, iv, aad, in, inOffset, inLength, out, outOffset);
+            }
+
+            @Override
+            public int encrypt(byte[] key, byte[] iv, byte[] aad, ByteBuffer in, ByteBuffer out) throws GeneralSecurityException {
+                return process(true, key, iv, aad, in, out);
+            }
+
+            @Override
+            public int decrypt(byte[] key, byte[] iv, byte[] aad, ByteBuffer in, ByteBuffer out) throws GeneralSecurityException {
+                return process(false, key, iv, aad, in, out);
+            }
+
+            private int process(boolean encrypt, byte[] key, byte[] iv, byte[] aad, ByteBuffer in, ByteBuffer out)
+                    throws GeneralSecurityException {
+                int length = in.remaining();
+                boolean copyIn = !in.hasArray();
+                byte[] input = copyIn ? new byte[length] : in.array();
+                int inOffset = copyIn ? 0 : in.arrayOffset() + in.position();
+                if (copyIn) in.duplicate().get(input);
+
+                int outLength = encrypt ? length + CryptoEngine.TAG_LENGTH : Math.max(0, length - CryptoEngine.TAG_LENGTH);
+                if (out.remaining() < outLength) {
+                    throw new ShortBufferException("Недостаточно места для результата: " + outLength);
+                }
+                boolean copyOut = !out.hasArray() || out.isReadOnly();
+                byte[] output = copyOut ? new byte[outLength] : out.array();
+                int outOffset = copyOut ? 0 : out.arrayOffset() + out.position();
+                try {
+                    int written = process(encrypt, key, iv, aad, input, inOffset, length, output, outOffset);
+                    if (copyOut) out.put(output, 0, written);
+                    else out.position(out.position() + written);
+                    in.position(in.limit());
+                    return written;
+                } finally {
+                    if (copyIn) Arrays.fill(input, (byte) 0);
+                    if (copyOut) Arrays.fill(output, (byte) 0);
+                }
+            }
+
+            private int process(boolean encrypt, byte[] key, byte[] iv, byte[] aad, byte[] in, int inOffset, int inLength,
+                                byte[] out, int outOffset) throws GeneralSecurityException {
+                // Движок GCM пишет результат блоками по мере чтения; пересекающиеся области нужно развести
+                if (in == out && inOffset != outOffset) {
+                    in = Arrays.copyOfRange(in, inOffset, inOffset + inLength);
+                    inOffset = 0;
+                }
+                cipher.init(encrypt, new AEADParameters(new KeyParameter(key), Constants.GCM_TAG_LENGTH, iv, aad));
+                int written = cipher.processBytes(in, inOffset, inLength, out, outOffset);
+                try {
+                    return written + cipher.doFinal(out, outOffset + written);
+                } catch (InvalidCipherTextException e) {
+                    // Расшифрованные до проверки тега данные не оставляются вызывающему коду
+                    Arrays.fill(out, outOffset, outOffset + written, (byte) 0);
+                    throw new AEADBadTagException(e.getMessage());
+                }
+            }
+        };
+    }
+
+    @Override
+    public MessageDigest digest(String algorithm) throws NoSuchAlgorithmException {
+        Digest digest = switch (algorithm.toUpperCase()) {
+            case "SHA3-256" -> new SHA3Digest(256);
+            case "SHA3-512" -> new SHA3Digest(512);
+            case "SHA-256" -> new SHA256Digest();
+            case "SHA-1" -> new SHA1Digest();
+            default -> throw new NoSuchAlgorithmException(algorithm + " недоступен в " + name());
+        };
+        return new DigestAdapter(algorithm, digest);
+    }
+
+    @Override
+    public Hmac hmac() {
+        HMac mac = new HMac(new SHA3Digest(256));
+        return (key, data) -> {
+            mac.init(new KeyParameter(key));
+            mac.update(data, 0, data.length);
+            byte[] result = new byte[mac.getMacSize()];
+            mac.doFinal(result, 0);
+            return result;
+        };
+    }
+
+    // Как PBKDF2WithHmacSHA3-512 у провайдера BC: пароль кодируется в UTF-8
+    @Override
+    public byte[] pbkdf2(char[] password, byte[] salt, int iterations, int keyBits) {
+        byte[] encoded = PBEParametersGenerator.PKCS5PasswordToUTF8Bytes(password);
+        PKCS5S2ParametersGenerator generator = new PKCS5S2ParametersGenerator(new SHA3Digest(512));
+        try {
+            generator.init(encoded, salt, iterations);
+            return ((KeyParameter) generator.generateDerivedParameters(keyBits)).getKey();
+        } finally {
+            Arrays.fill(encoded, (byte) 0);
+        }
+    }
+
+    // Дайджест Bouncy Castle под интерфейсом MessageDigest, чтобы вызывающий код не зависел от реализации
+    private static final class DigestAdapter extends MessageDigest {
+        private final Digest digest;
+        private byte[] scratch;
+
+        DigestAdapter(String algorithm, Digest digest) {
+            super(algorithm);
+            this.digest = digest;
+        }
+
+        @Override
+        protected int engineGetDigestLength() {
+            return digest.getDigestSize();
+        }
+
+        @Override
+        protected void engineUpdate(byte input) {
+            digest.update(input);
+        }
+
+        @Override
+        protected void engineUpdate(byte[] input, int offset, int length) {
+            digest.update(input, offset, length);
+        }
+
+        @Override
+        protected void engineUpdate(ByteBuffer input) {
+            if (input.hasArray()) {
+                digest.update(input.array(), input.arrayOffset() + input.position(), input.remaining());
+                input.position(input.limit());
+                return;
+            }
+            if (scratch == null) scratch = new byte[SCRATCH_SIZE];
+            while (input.hasRemaining()) {
+                int chunk = Math.min(input.remaining(), scratch.length);
+                input.get(scratch, 0, chunk);
+                digest.update(scratch, 0, chunk);
+            }
+            Arrays.fill(scratch, (byte) 0);
+        }
+
+        @Override
+        protected byte[] engineDigest() {
+            byte[] result = new byte[digest.getDigestSize()];
+            digest.doFinal(result, 0);
+            return result;
+        }
+
+        @Override
+        protected void engineReset() {
+            digest.reset();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package main.java.PasswordManager;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Locale;
+
+// Слепой индекс по месту и логину: тег записи — HMAC-SHA3-256 нормализованных места и логина под ключом индекса,
+// усечённый до TAG_LENGTH байт. Ключ индекса выводится из ключа хранилища (HMAC с меткой), поэтому теги меняются
+// вместе с мастер-паролем. VaultFile хранит теги в заголовке отсортированными, и запись находится двоичным поиском
+// без расшифровки остальных. Тег раскрывает только то, что у двух записей одного файла совпадают место и логин;
+// совпадение тега вызывающий код проверяет по расшифрованной записи.
+final class BlindIndex {
+    static final int TAG_LENGTH = 16;
+    // Строка индекса в файле: тег | номер записи (4)
+    static final int ROW_LENGTH = TAG_LENGTH + Integer.BYTES;
+
+    private static final byte[] KEY_LABEL = "PasswordManager:blind-index".getBytes(StandardCharsets.UTF_8);
+
+    private BlindIndex() {}
+
+    static byte[] key(byte[] vaultKey) throws GeneralSecurityException {
+        return CryptoEngine.hmac(vaultKey, KEY_LABEL);
+    }
+
+    static byte[] tag(byte[] indexKey, PasswordEntry entry) throws GeneralSecurityException {
+        return tag(indexKey, entry.getPlace(), entry.getLogin());
+    }
+
+    // Поля с длиной, чтобы пары ("ab", "c") и ("a", "bc") давали разные теги
+    static byte[] tag(byte[] indexKey, String place, String login) throws GeneralSecurityException {
+        byte[] placeBytes = normalize(place, Constants.DEFAULT_PLACE).getBytes(StandardCharsets.UTF_8);
+        byte[] loginBytes = normalize(login, Constants.DEFAULT_LOGIN).getBytes(StandardCharsets.UTF_8);
+        ByteBuffer data = ByteBuffer.allocate(2 * Integer.BYTES + placeBytes.length + loginBytes.length)
+                .putInt(placeBytes.length).put(placeBytes)
+                .putInt(loginBytes.length).put(loginBytes);
+        return Arrays.copyOf(CryptoEngine.hmac(indexKey, data.array()), TAG_LENGTH);
+    }
+
+    static boolean matches(PasswordEntry entry, String place, String login) {
+        return normalize(entry.getPlace(), Constants.DEFAULT_PLACE).equals(normalize(place, Constants.DEFAULT_PLACE))
+                && normalize(entry.getLogin(), Constants.DEFAULT_LOGIN).equals(normalize(login, Constants.DEFAULT_LOGIN));
+    }
+
+    // Регистр, пробелы по краям и разные записи одного символа Unicode (NFKC) не различаются;
+    // пустое значение заменяется значением по умолчанию, как в PasswordEntry
+    private static String normalize(String value, String defaultValue) {
+        String stripped = value != null ? value.strip() : "";
+        return Normalizer.normalize(stripped.isEmpty() ? defaultValue : stripped, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+    }
+}
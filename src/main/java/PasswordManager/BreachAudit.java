@@ -0,0 +1,71 @@
+package main.java.PasswordManager;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+// Неинтерактивная проверка паролей хранилища по локальной базе утечек (см. BreachCorpus), без обращения к сети.
+//   breach-audit <база> [--build-filter]
+// --build-filter строит фильтр Блума <база>.bloom один раз перед проверкой; после обновления базы его нужно
+// построить заново, устаревший фильтр не используется.
+public final class BreachAudit {
+    private BreachAudit() {}
+
+    // Запуск из Main: код возврата 0 — утёкших паролей нет, 1 — найдены, 2 — проверка не выполнена
+    public static int run(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Использование: breach-audit <база> [--build-filter]");
+            return 2;
+        }
+        boolean buildFilter = false;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--build-filter")) {
+                buildFilter = true;
+            } else {
+                System.err.println("Неизвестный параметр: " + args[i]);
+                return 2;
+            }
+        }
+
+        Path file = Paths.get(args[0]);
+        try (BreachCorpus corpus = BreachCorpus.open(file)) {
+            if (buildFilter) {
+                long started = System.nanoTime();
+                corpus.setFilter(BreachFilter.build(corpus, Constants.BREACH_FILTER_FPP, Constants.LOAD_PARALLELISM));
+                System.out.printf("Фильтр Блума построен: %s (%.1f с)%n",
+                        BreachFilter.sidecar(file), (System.nanoTime() - started) / 1e9);
+            } else if (!corpus.hasFilter()) {
+                System.err.println("Фильтр Блума не построен, каждый пароль ищется в файле базы (--build-filter).");
+            }
+            return audit(corpus);
+        } catch (Exception e) {
+            System.err.println("Ошибка: " + e.getMessage());
+            return 2;
+        }
+    }
+
+    private static int audit(BreachCorpus corpus) throws Exception {
+        PasswordManager manager = new PasswordManager();
+        char[] masterPassword = PasswordManagerUI.readSecret("Введите мастер-пароль: ");
+        try {
+            if (!manager.loadEntries(masterPassword)) {
+                System.err.println("Неверный мастер-пароль или повреждённое хранилище.");
+                return 2;
+            }
+
+            long started = System.nanoTime();
+            List<PasswordManager.BreachFinding> findings = manager.auditBreaches(corpus);
+            for (PasswordManager.BreachFinding finding : findings) {
+                System.out.printf("%s - %s: встречается в утечках %d раз%n",
+                        finding.place(), finding.login(), finding.occurrences());
+            }
+            System.out.printf("Проверено записей: %d, найдено в утечках: %d (%.2f с)%n",
+                    manager.getEntriesCount(), findings.size(), (System.nanoTime() - started) / 1e9);
+            return findings.isEmpty() ? 0 : 1;
+        } finally {
+            manager.lock();
+            Arrays.fill(masterPassword, '\0');
+        }
+    }
+}
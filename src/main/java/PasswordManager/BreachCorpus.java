@@ -0,0 +1,211 @@
+package main.java.PasswordManager;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Локальная база утёкших паролей в формате Pwned Passwords: текстовый файл, отсортированный по хэшу,
+// строка "SHA-1 (40 шестнадцатеричных цифр):число вхождений". Файл в десятки гигабайт отображается в память
+// частями по SEGMENT байт (с перекрытием на длину строки) и не читается целиком.
+// Хэши распределены равномерно, поэтому строка ищется интерполяционным поиском: положение предсказывается
+// по первым 8 байтам хэша, и на поиск уходит несколько обращений к файлу. Перед файлом стоит фильтр Блума
+// (BreachFilter), если он построен: пароли, которых в базе нет, отсекаются без обращения к файлу.
+public final class BreachCorpus implements Closeable {
+    public static final int HASH_LENGTH = 20;
+    private static final int HEX_LENGTH = HASH_LENGTH * 2;
+    private static final long SEGMENT = 1L << 30;
+    private static final int MAX_LINE = 256;
+    // Диапазон, который дешевле просмотреть подряд, чем продолжать поиск
+    private static final int SCAN_THRESHOLD = 4096;
+    // После стольких шагов интерполяции поиск продолжается делением пополам
+    private static final int MAX_INTERPOLATION_STEPS = 32;
+
+    @FunctionalInterface
+    public interface HashConsumer {
+        void accept(byte[] hash) throws Exception;
+    }
+
+    private final Path path;
+    private final FileChannel channel;
+    private final long size;
+    private final MappedByteBuffer[] segments;
+    private volatile BreachFilter filter;
+
+    private BreachCorpus(Path path, FileChannel channel, long size, MappedByteBuffer[] segments) {
+        this.path = path;
+        this.channel = channel;
+        this.size = size;
+        this.segments = segments;
+    }
+
+    // Фильтр Блума подключается, если рядом с базой лежит актуальный файл фильтра
+    public static BreachCorpus open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((size + SEGMENT - 1) / SEGMENT)];
+            for (int i = 0; i < segments.length; i++) {
+                long start = i * SEGMENT;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT + MAX_LINE, size - start));
+            }
+            BreachCorpus corpus = new BreachCorpus(path, channel, size, segments);
+            corpus.filter = BreachFilter.open(path);
+            return corpus;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public Path getPath() { return path; }
+    public long size() { return size; }
+    public boolean hasFilter() { return filter != null; }
+
+    void setFilter(BreachFilter filter) {
+        this.filter = filter;
+    }
+
+    // Число вхождений пароля с данным SHA-1 в базе или 0
+    public long lookup(byte[] hash) throws IOException {
+        BreachFilter current = filter;
+        if (current != null && !current.mightContain(hash)) return 0;
+
+        byte[] line = new byte[HASH_LENGTH];
+        long target = prefix(hash);
+        long lo = 0;
+        long hi = size;
+        long loValue = 0;
+        long hiValue = Long.MAX_VALUE;
+        for (int step = 0; hi - lo > SCAN_THRESHOLD; step++) {
+            long position;
+            if (step < MAX_INTERPOLATION_STEPS && hiValue > loValue) {
+                double fraction = (double) (target - loValue) / (hiValue - loValue);
+                position = lo + (long) (fraction * (hi - lo));
+                position = Math.max(lo, Math.min(position, hi - 1));
+            } else {
+                position = lo + (hi - lo) / 2;
+            }
+            long start = lineStart(position);
+            if (start >= hi) {
+                start = lineStart(lo + (hi - lo) / 2);
+                if (start >= hi) break;
+            }
+
+            readHash(start, line);
+            int cmp = Arrays.compareUnsigned(line, hash);
+            if (cmp == 0) return occurrences(start);
+            if (cmp < 0) {
+                lo = nextLine(start);
+                loValue = prefix(line);
+            } else {
+                hi = start;
+                hiValue = prefix(line);
+            }
+        }
+
+        for (long start = lo; start < hi; start = nextLine(start)) {
+            readHash(start, line);
+            int cmp = Arrays.compareUnsigned(line, hash);
+            if (cmp == 0) return occurrences(start);
+            if (cmp > 0) break;
+        }
+        return 0;
+    }
+
+    // Все хэши базы по порядку частей; части обрабатываются параллельно. Массив хэша переиспользуется.
+    public void forEachHash(int parallelism, long chunkSize, HashConsumer consumer) throws Exception {
+        int chunks = (int) Math.max(1, (size + chunkSize - 1) / chunkSize);
+        ParallelTasks.forEach(chunks, parallelism, c -> {
+            long start = lineStart(c * chunkSize);
+            long end = c + 1 == chunks ? size : lineStart((c + 1) * chunkSize);
+            byte[] hash = new byte[HASH_LENGTH];
+            for (long line = start; line < end; line = nextLine(line)) {
+                if (isBlank(line)) continue;
+                readHash(line, hash);
+                consumer.accept(hash);
+            }
+        });
+    }
+
+    // Средняя длина строки по первому мегабайту: по ней оценивается число хэшей для размера фильтра
+    public long estimateCount() throws IOException {
+        long sample = Math.min(size, 1 << 20);
+        long lines = 0;
+        for (long line = 0; line < sample; line = nextLine(line)) {
+            lines++;
+        }
+        return lines == 0 ? 0 : size * lines / sample + 1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // Первые 8 байт хэша без знакового бита: порядок совпадает с порядком хэшей, разность не переполняется
+    private static long prefix(byte[] hash) {
+        return ByteBuffer.wrap(hash).getLong() >>> 1;
+    }
+
+    private byte at(long offset) {
+        int segment = (int) (offset / SEGMENT);
+        return segments[segment].get((int) (offset - segment * SEGMENT));
+    }
+
+    // Начало первой строки, которая начинается в position или после него
+    private long lineStart(long position) {
+        if (position <= 0) return 0;
+        if (position >= size) return size;
+        if (at(position - 1) == '\n') return position;
+        return nextLine(position);
+    }
+
+    private long nextLine(long position) {
+        long limit = Math.min(size, position + MAX_LINE);
+        for (long i = position; i < limit; i++) {
+            if (at(i) == '\n') return i + 1;
+        }
+        return limit;
+    }
+
+    private boolean isBlank(long start) {
+        byte b = at(start);
+        return b == '\n' || b == '\r';
+    }
+
+    // Строка читается из части, в которой начинается: части перекрываются на MAX_LINE байт
+    private void readHash(long start, byte[] out) throws IOException {
+        if (start + HEX_LENGTH > size) {
+            throw new IOException("Некорректная строка базы утечек по смещению " + start + ".");
+        }
+        int segment = (int) (start / SEGMENT);
+        MappedByteBuffer buffer = segments[segment];
+        int offset = (int) (start - segment * SEGMENT);
+        for (int i = 0; i < HASH_LENGTH; i++) {
+            int high = Character.digit(buffer.get(offset + 2 * i), 16);
+            int low = Character.digit(buffer.get(offset + 2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IOException("Некорректная строка базы утечек по смещению " + start + ".");
+            }
+            out[i] = (byte) (high << 4 | low);
+        }
+    }
+
+    // Число после двоеточия; строка без числа считается одним вхождением
+    private long occurrences(long start) {
+        long position = start + HEX_LENGTH;
+        if (position >= size || at(position) != ':') return 1;
+        long count = 0;
+        for (position++; position < size; position++) {
+            int digit = Character.digit(at(position), 10);
+            if (digit < 0) break;
+            count = count * 10 + digit;
+        }
+        return Math.max(count, 1);
+    }
+}
@@ -0,0 +1,113 @@
+package main.java.PasswordManager;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Фильтр Блума по хэшам базы утечек в соседнем файле <база>.bloom. Строится один раз проходом по базе
+// и отображается в память при каждой проверке. SHA-1 уже равномерно распределён, поэтому позиции битов
+// берутся двойным хэшированием из первых 16 байт хэша, без отдельных хэш-функций.
+// Формат: "PMBF" | число позиций на хэш (4) | число битов (8) | размер базы (8) | время изменения базы (8) |
+// биты (выравнены на 8 байт от начала файла)
+public final class BreachFilter {
+    private static final byte[] MAGIC = {'P', 'M', 'B', 'F'};
+    private static final int HEADER_SIZE = 32;
+    private static final long MAX_BITS = (Integer.MAX_VALUE - HEADER_SIZE) / Long.BYTES * (long) Long.SIZE;
+    // Строка базы не длиннее сотни байт, поэтому части по 64 МиБ дают сотни тысяч хэшей на задачу
+    private static final long BUILD_CHUNK = 64L << 20;
+    private static final VarHandle WORDS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private final ByteBuffer bits;
+    private final long bitCount;
+    private final int hashes;
+
+    private BreachFilter(ByteBuffer bits, long bitCount, int hashes) {
+        this.bits = bits;
+        this.bitCount = bitCount;
+        this.hashes = hashes;
+    }
+
+    public static Path sidecar(Path corpus) {
+        return corpus.resolveSibling(corpus.getFileName() + ".bloom");
+    }
+
+    // null, если фильтра нет или он построен по другой версии базы
+    static BreachFilter open(Path corpus) throws IOException {
+        Path path = sidecar(corpus);
+        if (!Files.exists(path)) return null;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            int hashes = buffer.getInt();
+            long bitCount = buffer.getLong();
+            long corpusSize = buffer.getLong();
+            long corpusModified = buffer.getLong();
+            if (!Arrays.equals(magic, MAGIC) || hashes < 1 || bitCount < Long.SIZE
+                    || HEADER_SIZE + bitCount / Byte.SIZE > channel.size()) {
+                throw new IOException("Файл фильтра Блума повреждён: " + path);
+            }
+            if (corpusSize != Files.size(corpus) || corpusModified != Files.getLastModifiedTime(corpus).toMillis()) {
+                System.err.println("Фильтр Блума построен по другой версии базы и не используется: " + path);
+                return null;
+            }
+            return new BreachFilter(buffer.slice(HEADER_SIZE, (int) (bitCount / Byte.SIZE)), bitCount, hashes);
+        }
+    }
+
+    // Размер под ожидаемую долю ложных срабатываний: m = -n ln p / ln² 2, k = m / n ln 2.
+    // Биты ставятся атомарно прямо в отображённый временный файл, который затем заменяет прежний фильтр.
+    public static BreachFilter build(BreachCorpus corpus, double falsePositiveRate, int parallelism) throws Exception {
+        long expected = Math.max(1, corpus.estimateCount());
+        long bitCount = (long) Math.ceil(-expected * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        bitCount = Math.min(MAX_BITS, Math.max(Long.SIZE, (bitCount + Long.SIZE - 1) / Long.SIZE * Long.SIZE));
+        int hashes = (int) Math.max(1, Math.round((double) bitCount / expected * Math.log(2)));
+
+        Path path = sidecar(corpus.getPath());
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        long fileSize = HEADER_SIZE + bitCount / Byte.SIZE;
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+            BreachFilter filter = new BreachFilter(buffer.slice(HEADER_SIZE, (int) (bitCount / Byte.SIZE)), bitCount, hashes);
+            corpus.forEachHash(parallelism, BUILD_CHUNK, filter::add);
+
+            buffer.put(MAGIC).putInt(hashes).putLong(bitCount);
+            buffer.putLong(Files.size(corpus.getPath())).putLong(Files.getLastModifiedTime(corpus.getPath()).toMillis());
+            buffer.force();
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return open(corpus.getPath());
+    }
+
+    public boolean mightContain(byte[] hash) {
+        ByteBuffer key = ByteBuffer.wrap(hash);
+        long h1 = key.getLong(0);
+        long h2 = key.getLong(Long.BYTES) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+            if ((bits.getLong((int) (bit >>> 6) * Long.BYTES) & (1L << (bit & 63))) == 0) return false;
+        }
+        return true;
+    }
+
+    private void add(byte[] hash) {
+        ByteBuffer key = ByteBuffer.wrap(hash);
+        long h1 = key.getLong(0);
+        long h2 = key.getLong(Long.BYTES) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+            WORDS.getAndBitwiseOr(bits, (int) (bit >>> 6) * Long.BYTES, 1L << (bit & 63));
+        }
+    }
+}
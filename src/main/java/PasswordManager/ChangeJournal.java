@@ -0,0 +1,230 @@
+package main.java.PasswordManager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+// Журнал изменений снимка: "PMVJ" | версия (1) | записи.
+// Запись: длина (4) | CRC32C шифротекста (4) | шифротекст ключом хранилища (IV | операция (1) | id (8) | [запись] | тег).
+// Связанные данные GCM — сигнатура, версия, идентификатор снимка (HMAC корня его дерева Меркла) и номер записи
+// в журнале, поэтому записи нельзя переставить, повторить или применить к другому снимку.
+// Контрольная сумма отличает оборванную при сбое запись от подменённой или чужой. Любая из них завершает журнал:
+// при открытии файл обрезается до последней целой записи, чтобы следующие записи не дописывались за ней.
+public class ChangeJournal {
+    public enum Operation { ADD, UPDATE, DELETE }
+
+    public record Change(Operation operation, long id, PasswordEntry entry) {
+        static Change of(Operation operation, PasswordEntry entry) {
+            return new Change(operation, entry.getId(), entry);
+        }
+
+        static Change delete(long id) {
+            return new Change(Operation.DELETE, id, null);
+        }
+    }
+
+    private static final byte[] MAGIC = {'P', 'M', 'V', 'J'};
+    private static final byte VERSION = 1;
+    private static final int HEADER_LENGTH = MAGIC.length + 1;
+    private static final int FRAME_HEADER_LENGTH = 2 * Integer.BYTES;
+
+    // Целые записи журнала и конец последней из них
+    private record Scan(List<Change> changes, long validLength) {}
+
+    private final Path path;
+    // Снимок, к которому дописывается журнал, номер следующей записи и конец последней целой записи;
+    // известны после open или reset
+    private byte[] snapshotId;
+    private long sequence;
+    private long validLength;
+
+    public ChangeJournal(Path path) {
+        this.path = path;
+    }
+
+    public void append(byte[] vaultKey, List<Change> changes) throws Exception {
+        if (changes.isEmpty()) return;
+        if (snapshotId == null) {
+            throw new IllegalStateException("Журнал не открыт для снимка.");
+        }
+        long started = Metrics.start();
+        long bytes = 0;
+
+        List<byte[]> frames = new ArrayList<>(changes.size());
+        int length = validLength == 0 ? HEADER_LENGTH : 0;
+        for (int i = 0; i < changes.size(); i++) {
+            byte[] frame = frame(vaultKey, sequence + i, changes.get(i));
+            frames.add(frame);
+            length += frame.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        if (validLength == 0) {
+            buffer.put(MAGIC).put(VERSION);
+        }
+        for (byte[] frame : frames) {
+            buffer.put(frame);
+        }
+        buffer.flip();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            // Оборванный хвост прежней записи отбрасывается до записи новой
+            if (channel.size() > validLength) {
+                channel.truncate(validLength);
+            }
+            bytes = buffer.remaining();
+            long position = validLength;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            channel.force(true);
+            validLength = position;
+            sequence += changes.size();
+        } finally {
+            Metrics.stop(Metrics.Operation.JOURNAL_APPEND, started, bytes);
+        }
+    }
+
+    // Изменения снимка snapshotId без изменения файла (для чтения без загрузки: get, экспорт)
+    public List<Change> replay(byte[] vaultKey, byte[] snapshotId) throws IOException {
+        return scan(vaultKey, snapshotId).changes();
+    }
+
+    // Открывает журнал для дописывания к снимку snapshotId: возвращает его изменения и обрезает файл
+    // до конца последней целой записи
+    public List<Change> open(byte[] vaultKey, byte[] snapshotId) throws IOException {
+        Scan scan = scan(vaultKey, snapshotId);
+        if (Files.exists(path) && Files.size(path) > scan.validLength()) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(scan.validLength());
+                channel.force(true);
+            }
+        }
+        this.snapshotId = snapshotId.clone();
+        sequence = scan.changes().size();
+        validLength = scan.validLength();
+        return scan.changes();
+    }
+
+    // Удаляет журнал: снимок snapshotId содержит все изменения, следующие записи относятся к нему
+    public void reset(byte[] snapshotId) throws IOException {
+        clear();
+        this.snapshotId = snapshotId.clone();
+    }
+
+    public boolean isOpen() {
+        return snapshotId != null;
+    }
+
+    public void clear() throws IOException {
+        Files.deleteIfExists(path);
+        snapshotId = null;
+        sequence = 0;
+        validLength = 0;
+    }
+
+    // Чтение останавливается на первой записи, которая оборвана, не сходится с контрольной суммой
+    // или не расшифровывается с этим снимком и номером; предыдущие изменения сохраняются
+    private Scan scan(byte[] vaultKey, byte[] snapshotId) throws IOException {
+        List<Change> changes = new ArrayList<>();
+        if (!Files.exists(path)) return new Scan(changes, 0);
+
+        long started = Metrics.start();
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            if (buffer.remaining() < HEADER_LENGTH || !Arrays.equals(readMagic(buffer, magic), MAGIC)
+                    || buffer.get() != VERSION) {
+                if (buffer.capacity() > 0) {
+                    System.err.println("Журнал изменений в неизвестном формате и пропущен.");
+                }
+                return new Scan(changes, 0);
+            }
+            CRC32C checksum = new CRC32C();
+            while (buffer.hasRemaining()) {
+                if (buffer.remaining() < FRAME_HEADER_LENGTH) {
+                    System.err.println("Журнал изменений оборван, неполная запись отброшена.");
+                    break;
+                }
+                int length = buffer.getInt(buffer.position());
+                int expected = buffer.getInt(buffer.position() + Integer.BYTES);
+                if (length < CryptoEngine.OVERHEAD || length > buffer.remaining() - FRAME_HEADER_LENGTH) {
+                    System.err.println("Журнал изменений оборван, неполная запись отброшена.");
+                    break;
+                }
+                ByteBuffer sealed = buffer.slice(buffer.position() + FRAME_HEADER_LENGTH, length);
+                checksum.reset();
+                checksum.update(sealed.duplicate());
+                if ((int) checksum.getValue() != expected) {
+                    System.err.println("Журнал изменений оборван, повреждённая запись отброшена.");
+                    break;
+                }
+                try {
+                    changes.add(parse(vaultKey, associatedData(snapshotId, changes.size()), sealed));
+                } catch (Exception e) {
+                    System.err.println("Журнал изменений не относится к этому снимку или изменён, последующие записи"
+                            + " пропущены: " + e.getMessage());
+                    break;
+                }
+                buffer.position(buffer.position() + FRAME_HEADER_LENGTH + length);
+            }
+            return new Scan(changes, buffer.position());
+        } finally {
+            Metrics.stop(Metrics.Operation.JOURNAL_REPLAY, started, buffer.capacity());
+        }
+    }
+
+    private static byte[] readMagic(ByteBuffer buffer, byte[] magic) {
+        buffer.get(magic);
+        return magic;
+    }
+
+    private byte[] frame(byte[] vaultKey, long number, Change change) throws Exception {
+        byte[] record = change.operation() != Operation.DELETE
+                ? AESEncryption.encryptRecord(vaultKey, change.entry()) : new byte[0];
+        byte[] payload = ByteBuffer.allocate(1 + Long.BYTES + record.length)
+                .put((byte) change.operation().ordinal()).putLong(change.id()).put(record).array();
+
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_LENGTH + CryptoEngine.sealedLength(payload.length));
+        int length = CryptoEngine.encrypt(vaultKey, associatedData(snapshotId, number), payload, 0, payload.length,
+                frame.array(), FRAME_HEADER_LENGTH);
+        CRC32C checksum = new CRC32C();
+        checksum.update(frame.array(), FRAME_HEADER_LENGTH, length);
+        frame.putInt(length).putInt((int) checksum.getValue());
+        return frame.array();
+    }
+
+    private static Change parse(byte[] vaultKey, byte[] associatedData, ByteBuffer sealed) throws Exception {
+        ByteBuffer payload = ByteBuffer.allocate(CryptoEngine.openedLength(sealed.remaining()));
+        CryptoEngine.decrypt(vaultKey, associatedData, sealed, payload);
+        payload.flip();
+        if (payload.remaining() < 1 + Long.BYTES) {
+            throw new IOException("Некорректный формат записи журнала.");
+        }
+
+        int operation = payload.get();
+        if (operation < 0 || operation >= Operation.values().length) {
+            throw new IOException("Некорректная операция в журнале: " + operation + ".");
+        }
+        long id = payload.getLong();
+        if (Operation.values()[operation] == Operation.DELETE) {
+            return Change.delete(id);
+        }
+        PasswordEntry entry = AESEncryption.decryptRecord(vaultKey, payload.slice());
+        if (entry.getId() != id) {
+            throw new IOException("id записи журнала не совпадает.");
+        }
+        return new Change(Operation.values()[operation], id, entry);
+    }
+
+    private static byte[] associatedData(byte[] snapshotId, long number) {
+        return ByteBuffer.allocate(HEADER_LENGTH + snapshotId.length + Long.BYTES)
+                .put(MAGIC).put(VERSION).put(snapshotId).putLong(number).array();
+    }
+}
@@ -1,13 +1,59 @@
 package main.java.PasswordManager;
 
 public class Constants {
-    protected static final String FILE_NAME = "mineSecurePasswords.txt";
+    protected static final String FILE_NAME = "mineSecurePasswords.vault";
+    protected static final String JOURNAL_SUFFIX = ".journal";
+    protected static final String ATTACHMENTS_SUFFIX = ".attachments";
+    protected static final String LEGACY_FILE_NAME = "mineSecurePasswords.txt";
+    protected static final int JOURNAL_COMPACT_THRESHOLD = 256;
+    protected static final int PERSIST_WINDOW_MILLIS = Integer.getInteger("pm.persist.window", 200);
     protected static final int SALT_SIZE = 16;
+    // Итерации PBKDF2 в текстовых хранилищах; новые параметры подбираются калибровкой
     protected static final int ITERATIONS = 500_000;
+    protected static final String KDF_ALGORITHM = System.getProperty("pm.kdf", "pbkdf2");
+    protected static final int KDF_TARGET_MILLIS = Integer.getInteger("pm.kdf.target", 500);
+    protected static final int KDF_MIN_ITERATIONS = 100_000;
+    protected static final int KDF_CALIBRATION_ITERATIONS = 20_000;
+    protected static final int ARGON2_MEMORY_KIB = 64 * 1024;
+    protected static final int ARGON2_MIN_MEMORY_KIB = 19 * 1024;
+    protected static final int ARGON2_MIN_ITERATIONS = 2;
+    protected static final int ARGON2_PARALLELISM =
+            Integer.getInteger("pm.kdf.lanes", Math.min(4, Runtime.getRuntime().availableProcessors()));
+    // Реализация криптографии: auto (замер при первом обращении), jdk, bc или bc-lightweight; см. CryptoProviders
+    protected static final String CRYPTO_PROVIDER = System.getProperty("pm.crypto", CryptoProviders.AUTO);
+    protected static final int CRYPTO_BENCHMARK_MILLIS = Integer.getInteger("pm.crypto.benchmark", 40);
     protected static final int KEY_SIZE = 256;
     protected static final int IV_LENGTH = 12;
     protected static final int GCM_TAG_LENGTH = 128;
     protected static final int MAX_ATTEMPTS = 3;
+    protected static final String VAULT_HEADER_V2 = "PMV2";
+    protected static final String KEY_CHECK_VALUE = "PasswordManager:key-check";
+    protected static final double SEARCH_MIN_SIMILARITY = 0.5;
+    protected static final int SEARCH_PREFIX_SCAN = 256;
+    protected static final int SEARCH_RESULT_LIMIT = 20;
+    protected static final int LOAD_PARALLELISM =
+            Integer.getInteger("pm.load.parallelism", Runtime.getRuntime().availableProcessors());
+    // Потоковая загрузка: первая пачка записей маленькая, чтобы записи появлялись сразу, следующие вдвое больше
+    protected static final int LOAD_FIRST_BATCH = 64;
+    protected static final int LOAD_MAX_BATCH = 4096;
+    protected static final int ROTATION_WINDOW = 1024;
+    protected static final int ROTATION_CHECKPOINT_INTERVAL = 4096;
+    protected static final int TRANSFER_BATCH_SIZE = 1024;
+    // Размер сегмента потокового шифрования вложений: столько открытого текста держится в памяти при записи и чтении
+    protected static final int ATTACHMENT_SEGMENT_SIZE = Integer.getInteger("pm.attachment.segment", 64 * 1024);
+    // Поиск похожих паролей: триграммы, MinHash-подпись из 32 полос по 3 значения и порог сходства по Жаккару.
+    // Пара со сходством 0,5 становится кандидатом с вероятностью 98,6 %
+    protected static final int REUSE_SHINGLE_LENGTH = 3;
+    protected static final int REUSE_MINHASH_BANDS = 32;
+    protected static final int REUSE_MINHASH_ROWS = 3;
+    protected static final double REUSE_MIN_SIMILARITY = 0.5;
+    protected static final int REUSE_REPORT_LIMIT = 20;
+    // Доля ложных срабатываний фильтра Блума перед базой утечек: около 9,6 бита на хэш
+    protected static final double BREACH_FILTER_FPP = 0.01;
+    protected static final boolean METRICS_ENABLED = Boolean.getBoolean("pm.metrics");
+    protected static final String DAEMON_SOCKET_NAME = "mineSecurePasswords.sock";
+    protected static final int DAEMON_MAX_CONNECTIONS = 64;
+    protected static final int DAEMON_MAX_LINE = 1 << 19;
     protected static final String DEFAULT_PLACE = "[Нет адреса]";
     protected static final String DEFAULT_LOGIN = "[Нет логина]";
     protected static final String DEFAULT_PASSWORD = "[Нет пароля]";
@@ -0,0 +1,212 @@
+package main.java.PasswordManager;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Map;
+
+// Общий движок AES-GCM и хэширования: экземпляры примитивов кэшируются на поток, реализацию каждого примитива
+// выбирает CryptoProviders, случайные данные берутся из одного DRBG, результат пишется в буферы вызывающего кода.
+// Формат шифротекста: IV | данные | тег GCM.
+public final class CryptoEngine {
+    public static final int TAG_LENGTH = Constants.GCM_TAG_LENGTH / 8;
+    public static final int OVERHEAD = Constants.IV_LENGTH + TAG_LENGTH;
+
+    private static final SecureRandom RANDOM = createRandom();
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<CryptoProvider.Aead> GCM = ThreadLocal.withInitial(() -> {
+        try {
+            return CryptoProviders.get(CryptoProvider.Primitive.AEAD).aead();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES/GCM недоступен", e);
+        }
+    });
+    private static final ThreadLocal<Map<String, MessageDigest>> DIGESTS = ThreadLocal.withInitial(HashMap::new);
+    private static final ThreadLocal<CryptoProvider.Hmac> HMAC = ThreadLocal.withInitial(() -> {
+        try {
+            return CryptoProviders.get(CryptoProvider.Primitive.HMAC).hmac();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA3-256 недоступен", e);
+        }
+    });
+    private static final ThreadLocal<byte[]> IV = ThreadLocal.withInitial(() -> new byte[Constants.IV_LENGTH]);
+
+    private CryptoEngine() {}
+
+    private static SecureRandom createRandom() {
+        try {
+            return SecureRandom.getInstance("DRBG");
+        } catch (NoSuchAlgorithmException e) {
+            return new SecureRandom();
+        }
+    }
+
+    public static void nextBytes(byte[] bytes) {
+        RANDOM.nextBytes(bytes);
+    }
+
+    public static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        RANDOM.nextBytes(bytes);
+        return bytes;
+    }
+
+    public static int sealedLength(int plainLength) {
+        return plainLength + OVERHEAD;
+    }
+
+    public static int openedLength(int sealedLength) {
+        return sealedLength - OVERHEAD;
+    }
+
+    public static int encrypt(byte[] key, byte[] aad, byte[] in, int inOffset, int inLength,
+                              byte[] out, int outOffset) throws GeneralSecurityException {
+        long started = Metrics.start();
+        try {
+            byte[] iv = IV.get();
+            RANDOM.nextBytes(iv);
+            System.arraycopy(iv, 0, out, outOffset, iv.length);
+            return iv.length + GCM.get().encrypt(key, iv, aad, in, inOffset, inLength, out, outOffset + iv.length);
+        } finally {
+            Metrics.stop(Metrics.Operation.ENCRYPT, started, inLength);
+        }
+    }
+
+    public static int encrypt(byte[] key, byte[] aad, ByteBuffer in, ByteBuffer out) throws GeneralSecurityException {
+        long started = Metrics.start();
+        int length = in.remaining();
+        try {
+            byte[] iv = IV.get();
+            RANDOM.nextBytes(iv);
+            out.put(iv);
+            return iv.length + GCM.get().encrypt(key, iv, aad, in, out);
+        } finally {
+            Metrics.stop(Metrics.Operation.ENCRYPT, started, length);
+        }
+    }
+
+    public static int decrypt(byte[] key, byte[] aad, byte[] in, int inOffset, int inLength,
+                              byte[] out, int outOffset) throws GeneralSecurityException {
+        if (inLength < OVERHEAD) {
+            throw new IllegalArgumentException("Недостаточно данных для извлечения IV.");
+        }
+
+        long started = Metrics.start();
+        try {
+            byte[] iv = IV.get();
+            System.arraycopy(in, inOffset, iv, 0, iv.length);
+            return GCM.get().decrypt(key, iv, aad, in, inOffset + iv.length, inLength - iv.length, out, outOffset);
+        } finally {
+            Metrics.stop(Metrics.Operation.DECRYPT, started, inLength);
+        }
+    }
+
+    // Читает in до конца: IV, затем шифротекст с тегом
+    public static int decrypt(byte[] key, byte[] aad, ByteBuffer in, ByteBuffer out) throws GeneralSecurityException {
+        if (in.remaining() < OVERHEAD) {
+            throw new IllegalArgumentException("Недостаточно данных для извлечения IV.");
+        }
+        long started = Metrics.start();
+        int length = in.remaining();
+        try {
+            byte[] iv = IV.get();
+            in.get(iv);
+            return GCM.get().decrypt(key, iv, aad, in, out);
+        } finally {
+            Metrics.stop(Metrics.Operation.DECRYPT, started, length);
+        }
+    }
+
+    // IV задаёт вызывающий код и в результат не пишется (сегменты StreamingAead, IV из номера сегмента).
+    // Вызывающий код отвечает за то, чтобы IV с тем же ключом не повторялся
+    public static int encrypt(byte[] key, byte[] iv, byte[] aad, byte[] in, int inOffset, int inLength,
+                              byte[] out, int outOffset) throws GeneralSecurityException {
+        long started = Metrics.start();
+        try {
+            return GCM.get().encrypt(key, iv, aad, in, inOffset, inLength, out, outOffset);
+        } finally {
+            Metrics.stop(Metrics.Operation.ENCRYPT, started, inLength);
+        }
+    }
+
+    public static int decrypt(byte[] key, byte[] iv, byte[] aad, byte[] in, int inOffset, int inLength,
+                              byte[] out, int outOffset) throws GeneralSecurityException {
+        long started = Metrics.start();
+        try {
+            return GCM.get().decrypt(key, iv, aad, in, inOffset, inLength, out, outOffset);
+        } finally {
+            Metrics.stop(Metrics.Operation.DECRYPT, started, inLength);
+        }
+    }
+
+    public static byte[] digest(String algorithm, byte[] data) {
+        long started = Metrics.start();
+        try {
+            return digester(algorithm).digest(data);
+        } finally {
+            Metrics.stop(Metrics.Operation.DIGEST, started, data.length);
+        }
+    }
+
+    public static byte[] digest(String algorithm, String data) {
+        return digest(algorithm, data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Хэширует секрет прямо из буфера вне кучи
+    public static byte[] digest(String algorithm, ByteBuffer data) {
+        long started = Metrics.start();
+        int length = data.remaining();
+        try {
+            MessageDigest digest = digester(algorithm);
+            digest.update(data);
+            return digest.digest();
+        } finally {
+            Metrics.stop(Metrics.Operation.DIGEST, started, length);
+        }
+    }
+
+    public static String hashHex(String data, String algorithm) {
+        return toHex(digest(algorithm, data));
+    }
+
+    public static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0x0F];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0x0F];
+        }
+        return new String(chars);
+    }
+
+    public static byte[] hmac(byte[] key, byte[] data) throws GeneralSecurityException {
+        long started = Metrics.start();
+        try {
+            return HMAC.get().mac(key, data);
+        } finally {
+            Metrics.stop(Metrics.Operation.HMAC, started, data.length);
+        }
+    }
+
+    // Экземпляр потока; вызывающий код не должен передавать его другим потокам. Алгоритм, которого нет
+    // в выбранной реализации, берётся у провайдеров JCA
+    static MessageDigest digester(String algorithm) {
+        return DIGESTS.get().computeIfAbsent(algorithm, name -> {
+            try {
+                return CryptoProviders.get(CryptoProvider.Primitive.DIGEST).digest(name);
+            } catch (NoSuchAlgorithmException e) {
+                try {
+                    return MessageDigest.getInstance(name);
+                } catch (NoSuchAlgorithmException fallback) {
+                    throw new RuntimeException("Ошибка хэширования с алгоритмом " + name, fallback);
+                }
+            } catch (GeneralSecurityException e) {
+                throw new RuntimeException("Ошибка хэширования с алгоритмом " + name, e);
+            }
+        });
+    }
+}
@@ -0,0 +1,41 @@
+package main.java.PasswordManager;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+// Реализация криптографических примитивов одной библиотекой. Результат у всех реализаций совпадает байт в байт:
+// AES-256-GCM (IV 96 бит, тег 128 бит), SHA-3 и SHA-1, HMAC-SHA3-256, PBKDF2-HMAC-SHA3-512 (пароль в UTF-8).
+// Возвращаемые объекты не потокобезопасны: CryptoEngine держит по экземпляру на поток.
+// Реализация, которая не поддерживает примитив, бросает NoSuchAlgorithmException.
+public interface CryptoProvider {
+    enum Primitive { AEAD, DIGEST, HMAC, KDF }
+
+    interface Aead {
+        // Возвращают число байт, записанных в out; при шифровании тег дописывается после шифротекста
+        int encrypt(byte[] key, byte[] iv, byte[] aad, byte[] in, int inOffset, int inLength,
+                    byte[] out, int outOffset) throws GeneralSecurityException;
+
+        int decrypt(byte[] key, byte[] iv, byte[] aad, byte[] in, int inOffset, int inLength,
+                    byte[] out, int outOffset) throws GeneralSecurityException;
+
+        // Читают in до конца
+        int encrypt(byte[] key, byte[] iv, byte[] aad, ByteBuffer in, ByteBuffer out) throws GeneralSecurityException;
+
+        int decrypt(byte[] key, byte[] iv, byte[] aad, ByteBuffer in, ByteBuffer out) throws GeneralSecurityException;
+    }
+
+    interface Hmac {
+        byte[] mac(byte[] key, byte[] data) throws GeneralSecurityException;
+    }
+
+    String name();
+
+    Aead aead() throws GeneralSecurityException;
+
+    MessageDigest digest(String algorithm) throws GeneralSecurityException;
+
+    Hmac hmac() throws GeneralSecurityException;
+
+    byte[] pbkdf2(char[] password, byte[] salt, int iterations, int keyBits) throws GeneralSecurityException;
+}
@@ -0,0 +1,215 @@
+package main.java.PasswordManager;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+// Выбор реализации каждого примитива (см. CryptoProvider):
+//   jdk            — SunJCE/SUN, интринсики AES-NI/CLMUL; PBKDF2-HMAC-SHA3-512 в JDK нет
+//   bc             — провайдер Bouncy Castle через JCA
+//   bc-lightweight — движки Bouncy Castle напрямую
+// -Dpm.crypto задаёт реализацию для всех примитивов, -Dpm.crypto.aead|digest|hmac|kdf — для одного.
+// В режиме auto (по умолчанию) при первом обращении к примитиву реализации, которые его поддерживают,
+// сравниваются коротким замером на этой машине, и выбирается самая быстрая; bc в замере не участвует,
+// Bouncy Castle представляет bc-lightweight. Выбор пишется в журнал
+// (java.util.logging, уровень CONFIG) и доступен через selected().
+public final class CryptoProviders {
+    public static final String AUTO = "auto";
+
+    private static final Logger logger = Logger.getLogger(CryptoProviders.class.getName());
+    private static final Map<String, CryptoProvider> PROVIDERS = new LinkedHashMap<>();
+    private static final Map<CryptoProvider.Primitive, CryptoProvider> selected = new EnumMap<>(CryptoProvider.Primitive.class);
+    private static final Map<CryptoProvider.Primitive, String> reasons = new EnumMap<>(CryptoProvider.Primitive.class);
+    // Реализации, которые выбираются только настройкой. Провайдер bc работает на тех же движках, что bc-lightweight,
+    // а его создание и регистрация в Security при замере отменили бы отложенную загрузку провайдера
+    private static final Set<String> CONFIGURED_ONLY = Set.of("bc");
+    // Замеры повторяются по кругу, первый круг уходит на прогрев JIT
+    private static final int BENCHMARK_ROUNDS = 4;
+
+    static {
+        register(new JcaCryptoProvider("jdk", () -> new Provider[]{Security.getProvider("SunJCE"), Security.getProvider("SUN")}));
+        register(new JcaCryptoProvider("bc", () -> new Provider[]{BouncyCastle.provider()}));
+        register(new BcLightweightCryptoProvider());
+    }
+
+    @FunctionalInterface
+    private interface Probe {
+        void run() throws GeneralSecurityException;
+    }
+
+    // Провайдер Bouncy Castle регистрируется в Security при первом обращении, а не при запуске программы:
+    // проверка подписи bcprov и создание провайдера занимают сотни миллисекунд. Код вынесен в отдельный класс,
+    // чтобы классы Bouncy Castle не загружались уже при проверке байт-кода CryptoProviders
+    static final class BouncyCastle {
+        private BouncyCastle() {}
+
+        static synchronized Provider provider() {
+            Provider provider = Security.getProvider(BouncyCastleProvider.PROVIDER_NAME);
+            if (provider == null) {
+                provider = new BouncyCastleProvider();
+                Security.addProvider(provider);
+            }
+            return provider;
+        }
+    }
+
+    private CryptoProviders() {}
+
+    private static void register(CryptoProvider provider) {
+        PROVIDERS.put(provider.name(), provider);
+    }
+
+    public static synchronized CryptoProvider get(CryptoProvider.Primitive primitive) {
+        CryptoProvider provider = selected.get(primitive);
+        if (provider == null) {
+            provider = select(primitive);
+            selected.put(primitive, provider);
+            logger.config("Криптография: " + primitive + " — " + provider.name() + " (" + reasons.get(primitive) + ")");
+        }
+        return provider;
+    }
+
+    // Выбранные к этому моменту реализации и причина выбора
+    public static synchronized Map<CryptoProvider.Primitive, String> selected() {
+        Map<CryptoProvider.Primitive, String> result = new EnumMap<>(CryptoProvider.Primitive.class);
+        selected.forEach((primitive, provider) -> result.put(primitive, provider.name() + " (" + reasons.get(primitive) + ")"));
+        return result;
+    }
+
+    private static CryptoProvider select(CryptoProvider.Primitive primitive) {
+        String configured = System.getProperty("pm.crypto." + primitive.name().toLowerCase(Locale.ROOT),
+                Constants.CRYPTO_PROVIDER).toLowerCase(Locale.ROOT);
+        if (!configured.equals(AUTO) && !PROVIDERS.containsKey(configured)) {
+            throw new IllegalArgumentException("Неизвестная реализация криптографии: " + configured
+                    + " (ожидается " + AUTO + ", " + String.join(", ", PROVIDERS.keySet()) + ").");
+        }
+
+        // Заданная реализация проверяется первой: если она подходит, остальные не создаются
+        // (провайдер Bouncy Castle не регистрируется, если выбрана другая реализация)
+        CryptoProvider forced = PROVIDERS.get(configured);
+        if (forced != null && supportedProbe(forced, primitive) != null) {
+            reasons.put(primitive, "задано настройкой");
+            return forced;
+        }
+
+        Map<CryptoProvider, Probe> candidates = new LinkedHashMap<>();
+        for (CryptoProvider provider : PROVIDERS.values()) {
+            if (provider == forced || CONFIGURED_ONLY.contains(provider.name())) continue;
+            Probe probe = supportedProbe(provider, primitive);
+            if (probe != null) {
+                candidates.put(provider, probe);
+            }
+        }
+        if (candidates.isEmpty()) {
+            throw new IllegalStateException("Нет реализации " + primitive + ".");
+        }
+
+        String note = forced != null ? forced.name() + " не поддерживает примитив, " : "";
+        if (candidates.size() == 1) {
+            CryptoProvider only = candidates.keySet().iterator().next();
+            reasons.put(primitive, note + "единственная реализация");
+            return only;
+        }
+        return benchmark(primitive, candidates, note);
+    }
+
+    // Проба заодно проверяет, что реализация поддерживает примитив; null — не поддерживает
+    private static Probe supportedProbe(CryptoProvider provider, CryptoProvider.Primitive primitive) {
+        try {
+            Probe probe = probe(provider, primitive);
+            probe.run();
+            return probe;
+        } catch (GeneralSecurityException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    // Число операций в секунду по лучшему кругу; реализации чередуются, чтобы прогрев и фоновые задачи
+    // не доставались одной из них. Весь замер примитива укладывается в CRYPTO_BENCHMARK_MILLIS
+    private static CryptoProvider benchmark(CryptoProvider.Primitive primitive, Map<CryptoProvider, Probe> candidates,
+                                            String note) {
+        long slice = Constants.CRYPTO_BENCHMARK_MILLIS * 1_000_000L / ((long) BENCHMARK_ROUNDS * candidates.size());
+        Map<CryptoProvider, Double> rates = new LinkedHashMap<>();
+        for (int round = 0; round < BENCHMARK_ROUNDS; round++) {
+            for (Map.Entry<CryptoProvider, Probe> candidate : candidates.entrySet()) {
+                double rate;
+                try {
+                    rate = measure(candidate.getValue(), slice);
+                } catch (GeneralSecurityException e) {
+                    rate = 0;
+                }
+                if (round > 0) rates.merge(candidate.getKey(), rate, Math::max);
+            }
+        }
+
+        CryptoProvider best = null;
+        List<String> results = new ArrayList<>();
+        for (Map.Entry<CryptoProvider, Double> rate : rates.entrySet()) {
+            if (best == null || rate.getValue() > rates.get(best)) best = rate.getKey();
+            results.add(String.format("%s %.0f оп/с", rate.getKey().name(), rate.getValue()));
+        }
+        reasons.put(primitive, note + "замер: " + String.join(", ", results));
+        return best;
+    }
+
+    private static double measure(Probe probe, long nanos) throws GeneralSecurityException {
+        long started = System.nanoTime();
+        long elapsed;
+        long operations = 0;
+        do {
+            probe.run();
+            operations++;
+            elapsed = System.nanoTime() - started;
+        } while (elapsed < nanos);
+        return operations * 1e9 / elapsed;
+    }
+
+    // Типичная для хранилища операция: запись хранилища, узел дерева Меркла, HMAC корня,
+    // вывод ключа с уменьшенным числом итераций
+    private static Probe probe(CryptoProvider provider, CryptoProvider.Primitive primitive) throws GeneralSecurityException {
+        byte[] key = new byte[Constants.KEY_SIZE / 8];
+        switch (primitive) {
+            case AEAD -> {
+                CryptoProvider.Aead aead = provider.aead();
+                byte[] iv = new byte[Constants.IV_LENGTH];
+                byte[] in = new byte[256];
+                byte[] out = new byte[in.length + CryptoEngine.TAG_LENGTH];
+                return () -> {
+                    // Повтор IV с тем же ключом реализации GCM запрещают
+                    for (int i = 0; i < iv.length; i++) {
+                        if (++iv[i] != 0) break;
+                    }
+                    aead.encrypt(key, iv, null, in, 0, in.length, out, 0);
+                };
+            }
+            case DIGEST -> {
+                MessageDigest digest = provider.digest("SHA3-256");
+                byte[] data = new byte[2 * MerkleTree.HASH_LENGTH + 1];
+                return () -> digest.digest(data);
+            }
+            case HMAC -> {
+                CryptoProvider.Hmac hmac = provider.hmac();
+                byte[] data = new byte[MerkleTree.HASH_LENGTH];
+                return () -> hmac.mac(key, data);
+            }
+            case KDF -> {
+                char[] password = "probe".toCharArray();
+                byte[] salt = new byte[Constants.SALT_SIZE];
+                return () -> provider.pbkdf2(password, salt, 100, Constants.KEY_SIZE);
+            }
+            default -> throw new NoSuchAlgorithmException(primitive.name());
+        }
+    }
+}
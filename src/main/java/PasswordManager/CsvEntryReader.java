@@ -0,0 +1,151 @@
+package main.java.PasswordManager;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+// CSV по RFC 4180: поля через запятую, в кавычках допускаются запятые, переводы строк и удвоенные кавычки.
+// Первая строка считается заголовком, если в ней есть столбец password: место, логин и пароль ищутся по имени,
+// иначе столбцы идут в порядке место, логин, пароль.
+class CsvEntryReader implements EntryTransfer.RowReader {
+    private final BufferedReader in;
+    private final EntryTransfer.FieldBuffer field = new EntryTransfer.FieldBuffer();
+    private long line = 1;
+    private String rowError;
+    private boolean headerChecked;
+    private int columns = 3;
+    private int placeColumn = 0;
+    private int loginColumn = 1;
+    private int passwordColumn = 2;
+
+    CsvEntryReader(BufferedReader in) {
+        this.in = in;
+    }
+
+    @Override
+    public EntryTransfer.Row next() throws IOException {
+        while (true) {
+            long rowLine = line;
+            List<char[]> fields = readRow();
+            if (fields == null) return null;
+
+            if (fields.size() == 1 && fields.get(0).length == 0 && rowError == null) {
+                continue; // пустая строка
+            }
+            if (!headerChecked) {
+                headerChecked = true;
+                if (readHeader(fields)) {
+                    wipe(fields);
+                    continue;
+                }
+            }
+            return toRow(rowLine, fields);
+        }
+    }
+
+    private EntryTransfer.Row toRow(long rowLine, List<char[]> fields) {
+        if (rowError != null) {
+            wipe(fields);
+            return EntryTransfer.Row.invalid(rowLine, rowError);
+        }
+        if (fields.size() != columns) {
+            int found = fields.size();
+            wipe(fields);
+            return EntryTransfer.Row.invalid(rowLine, "ожидается столбцов: " + columns + ", найдено: " + found);
+        }
+
+        String place = placeColumn < 0 ? null : new String(fields.get(placeColumn)).strip();
+        String login = loginColumn < 0 ? null : new String(fields.get(loginColumn)).strip();
+        char[] password = fields.get(passwordColumn);
+        fields.set(passwordColumn, new char[0]);
+        wipe(fields);
+        return EntryTransfer.validate(rowLine, place, login, password);
+    }
+
+    private boolean readHeader(List<char[]> fields) {
+        int place = -1;
+        int login = -1;
+        int password = -1;
+        for (int i = 0; i < fields.size(); i++) {
+            switch (new String(fields.get(i)).strip().toLowerCase(Locale.ROOT)) {
+                case "place", "url", "site" -> place = i;
+                case "login", "username", "user" -> login = i;
+                case "password" -> password = i;
+                default -> { }
+            }
+        }
+        if (password < 0) return false;
+
+        columns = fields.size();
+        placeColumn = place;
+        loginColumn = login;
+        passwordColumn = password;
+        return true;
+    }
+
+    // Одна логическая строка CSV; null в конце файла. Ошибка разбора запоминается в rowError,
+    // строка при этом дочитывается до конца, чтобы следующая начиналась с начала записи
+    private List<char[]> readRow() throws IOException {
+        List<char[]> fields = new ArrayList<>(4);
+        rowError = null;
+        boolean quoted = false;
+        boolean afterQuote = false;
+        boolean any = false;
+
+        int c;
+        while ((c = in.read()) >= 0) {
+            any = true;
+            if (quoted) {
+                if (c == '"') {
+                    quoted = false;
+                    afterQuote = true;
+                } else {
+                    if (c == '\n') line++;
+                    field.append((char) c);
+                }
+                continue;
+            }
+            if (c == '"' && afterQuote) {
+                // Удвоенная кавычка внутри поля в кавычках
+                field.append('"');
+                quoted = true;
+                afterQuote = false;
+            } else if (c == ',') {
+                fields.add(field.takeChars());
+                afterQuote = false;
+            } else if (c == '\n') {
+                line++;
+                fields.add(field.takeChars());
+                return fields;
+            } else if (c == '\r') {
+                // CRLF: перевод строки обрабатывается по \n
+            } else if (afterQuote) {
+                if (rowError == null) rowError = "символы после закрывающей кавычки";
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else {
+                field.append((char) c);
+            }
+        }
+
+        if (!any) return null;
+        if (quoted) rowError = "незакрытая кавычка";
+        fields.add(field.takeChars());
+        return fields;
+    }
+
+    private static void wipe(List<char[]> fields) {
+        for (char[] value : fields) {
+            Arrays.fill(value, '\0');
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        field.clear();
+        in.close();
+    }
+}
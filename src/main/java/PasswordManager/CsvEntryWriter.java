@@ -0,0 +1,57 @@
+package main.java.PasswordManager;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.util.Arrays;
+
+// Заголовок place,login,password и по строке на запись; поля с запятой, кавычкой, переводом строки
+// или пробелами по краям берутся в кавычки
+class CsvEntryWriter implements EntryTransfer.RowWriter {
+    private final BufferedWriter out;
+
+    CsvEntryWriter(BufferedWriter out) throws IOException {
+        this.out = out;
+        out.write("place,login,password\n");
+    }
+
+    @Override
+    public void write(String place, String login, SecretBuffer password) throws IOException {
+        writeField(place.toCharArray());
+        out.write(',');
+        writeField(login.toCharArray());
+        out.write(',');
+        char[] chars = password.toChars();
+        try {
+            writeField(chars);
+        } finally {
+            Arrays.fill(chars, '\0');
+        }
+        out.write('\n');
+    }
+
+    private void writeField(char[] value) throws IOException {
+        if (!needsQuotes(value)) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        for (char c : value) {
+            if (c == '"') out.write('"');
+            out.write(c);
+        }
+        out.write('"');
+    }
+
+    private static boolean needsQuotes(char[] value) {
+        if (value.length > 0 && (value[0] == ' ' || value[value.length - 1] == ' ')) return true;
+        for (char c : value) {
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
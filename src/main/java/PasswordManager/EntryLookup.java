@@ -0,0 +1,41 @@
+package main.java.PasswordManager;
+
+import java.util.Arrays;
+
+// Команда get <место> <логин>: пароль одной записи без загрузки хранилища (см. PasswordManager.get).
+// Пароль печатается в стандартный вывод одной строкой, сообщения — в поток ошибок, чтобы вывод можно было
+// передать другой программе. Код выхода: 0 — запись найдена, 1 — не найдена, 2 — ошибка.
+public final class EntryLookup {
+    private EntryLookup() {}
+
+    public static int run(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Использование: get <место> <логин>");
+            return 2;
+        }
+
+        PasswordManager manager = new PasswordManager();
+        char[] masterPassword = PasswordManagerUI.readSecret("Введите мастер-пароль: ");
+        try {
+            PasswordEntry entry = manager.get(masterPassword, args[0], args[1]);
+            if (entry == null) {
+                System.err.println("Запись не найдена: " + args[0] + " - " + args[1]);
+                return 1;
+            }
+            char[] password = entry.getPassword().toChars();
+            try {
+                System.out.println(password);
+                System.out.flush();
+            } finally {
+                Arrays.fill(password, '\0');
+                entry.destroy();
+            }
+            return 0;
+        } catch (Exception e) {
+            System.err.println("Ошибка: " + e.getMessage());
+            return 2;
+        } finally {
+            Arrays.fill(masterPassword, '\0');
+        }
+    }
+}
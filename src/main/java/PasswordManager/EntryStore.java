@@ -0,0 +1,673 @@
+package main.java.PasswordManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongPredicate;
+
+// Записи хранилища по столбцам: id в long[], место и логин подряд в общем массиве UTF-8, зашифрованный пароль
+// (длина обёрнутого ключа, ключ, шифротекст) — во втором таком массиве. Слот удаляется пометкой, порядок записей
+// для меню даёт дерево Фенвика над живыми слотами. PasswordEntry создаётся только при обращении к записи
+// и разделяет с хранилищем буфер расшифрованного пароля.
+// Читатели работают с неизменяемой копией (snapshot): столбцы копируются, а массивы байтов общие, потому что
+// в них только дописывают. Буферы паролей, которые копия ещё может видеть, затираются после её замены (destroyRetired).
+public class EntryStore implements Iterable<PasswordEntry> {
+    @FunctionalInterface
+    public interface SecretRewrapper {
+        SealedSecret rewrap(SealedSecret secret) throws Exception;
+    }
+
+    private static final int INITIAL_CAPACITY = 16;
+    // Пустые слоты и устаревшие байты убираются, когда их больше, чем живых данных
+    private static final int COMPACT_MIN_SLOTS = 1024;
+
+    private long[] ids;
+    private int[] textOffsets;
+    private int[] placeLengths;
+    private int[] loginLengths;
+    private int[] sealedOffsets;
+    private int[] sealedLengths;
+    // Номер записи в текущем файле хранилища, пока запись не менялась, иначе -1
+    private int[] snapshotRecords;
+    private SecretBuffer[] passwords;
+    // Индексы с 1: fenwick[i] — число живых слотов в (i - (i & -i), i]
+    private int[] fenwick;
+    private final BitSet live = new BitSet();
+    private final LongIntMap slotsById = new LongIntMap();
+    private Slab text = new Slab();
+    private Slab sealed = new Slab();
+    private int slots;
+    private int size;
+    private volatile PasswordEntry.SecretOpener opener;
+    // Блокировка владельца хранилища: под ней представления запоминают расшифрованный пароль в слоте
+    private final StampedLock guard;
+    // У копии для читателей — хранилище, с которого она снята: расшифрованные пароли запоминаются в нём
+    private final EntryStore owner;
+    // После первой копии пароли заменённых и удалённых записей не затираются сразу, а ждут destroyRetired
+    private boolean snapshotted;
+    private final List<SecretBuffer> retired = new ArrayList<>();
+
+    public EntryStore() {
+        this((StampedLock) null);
+    }
+
+    // Все изменения и чтения хранилища владелец выполняет под блокировкой записи guard, другие потоки читают
+    // копии из snapshot; сами методы хранилища не синхронизированы и при чтении ничего не меняют
+    public EntryStore(StampedLock guard) {
+        this.guard = guard;
+        this.owner = null;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    private EntryStore(EntryStore source) {
+        guard = null;
+        owner = source;
+        opener = source.opener;
+        ids = Arrays.copyOf(source.ids, source.slots);
+        textOffsets = Arrays.copyOf(source.textOffsets, source.slots);
+        placeLengths = Arrays.copyOf(source.placeLengths, source.slots);
+        loginLengths = Arrays.copyOf(source.loginLengths, source.slots);
+        sealedOffsets = Arrays.copyOf(source.sealedOffsets, source.slots);
+        sealedLengths = Arrays.copyOf(source.sealedLengths, source.slots);
+        snapshotRecords = Arrays.copyOf(source.snapshotRecords, source.slots);
+        passwords = Arrays.copyOf(source.passwords, source.slots);
+        fenwick = Arrays.copyOf(source.fenwick, source.slots + 1);
+        live.or(source.live);
+        slotsById.copyFrom(source.slotsById);
+        text = new Slab(source.text);
+        sealed = new Slab(source.sealed);
+        slots = source.slots;
+        size = source.size;
+    }
+
+    // Неизменяемая копия для читателей без блокировки: O(N) на копирование столбцов, байты мест, логинов
+    // и зашифрованных паролей не копируются. Вызывается под блокировкой записи guard
+    public EntryStore snapshot() {
+        snapshotted = true;
+        return new EntryStore(this);
+    }
+
+    // Затирает пароли заменённых и удалённых записей; вызывается, когда читателям уже доступна новая копия
+    public void destroyRetired() {
+        for (SecretBuffer password : retired) {
+            password.destroy();
+        }
+        retired.clear();
+    }
+
+    // Открывает пароли из хранилища; задаётся после вывода ключа и при его смене
+    public void setOpener(PasswordEntry.SecretOpener opener) {
+        this.opener = opener;
+    }
+
+    public int size() { return size; }
+
+    // Добавляет запись в конец или заменяет запись с тем же id на её месте; расшифрованный пароль
+    // записи переходит во владение хранилища
+    public void put(PasswordEntry entry, int snapshotRecord) {
+        long id = entry.getId();
+        if (id == 0) {
+            throw new IllegalArgumentException("Запись без id нельзя добавить в хранилище.");
+        }
+
+        int slot = slotsById.get(id);
+        if (slot < 0) {
+            slot = appendSlot(id);
+        } else {
+            text.garbage += placeLengths[slot] + loginLengths[slot];
+            if (sealedOffsets[slot] >= 0) sealed.garbage += sealedLengths[slot];
+        }
+
+        byte[] place = entry.getPlace().getBytes(StandardCharsets.UTF_8);
+        byte[] login = entry.getLogin().getBytes(StandardCharsets.UTF_8);
+        textOffsets[slot] = text.append(place);
+        text.append(login);
+        placeLengths[slot] = place.length;
+        loginLengths[slot] = login.length;
+
+        SealedSecret secret = entry.getSealedPassword();
+        if (secret != null) {
+            sealedOffsets[slot] = sealed.append(secret);
+            sealedLengths[slot] = 1 + secret.wrappedKey().length + secret.ciphertext().length;
+        } else {
+            sealedOffsets[slot] = -1;
+            sealedLengths[slot] = 0;
+        }
+
+        SecretBuffer password = entry.isPasswordDecrypted() ? entry.getPassword() : null;
+        if (passwords[slot] != null && passwords[slot] != password) {
+            retire(passwords[slot]);
+        }
+        passwords[slot] = password;
+        snapshotRecords[slot] = snapshotRecord;
+        compactIfSparse();
+    }
+
+    // Удаление за O(1) по id плюс O(log N) на дерево Фенвика; пароль записи затирается
+    public boolean remove(long id) {
+        int slot = slotsById.get(id);
+        if (slot < 0) return false;
+
+        slotsById.remove(id);
+        live.clear(slot);
+        updateFenwick(slot, -1);
+        size--;
+        text.garbage += placeLengths[slot] + loginLengths[slot];
+        if (sealedOffsets[slot] >= 0) sealed.garbage += sealedLengths[slot];
+        if (passwords[slot] != null) {
+            retire(passwords[slot]);
+            passwords[slot] = null;
+        }
+        compactIfSparse();
+        return true;
+    }
+
+    public boolean contains(long id) {
+        return slotsById.get(id) >= 0;
+    }
+
+    public PasswordEntry get(long id) {
+        int slot = slotsById.get(id);
+        return slot < 0 ? null : view(slot);
+    }
+
+    // Независимая копия пароля записи; слот не меняется, поэтому метод годится для копии хранилища.
+    // Если буфер уже затёрт писателем, а зашифрованного пароля нет, — IllegalStateException
+    public SecretBuffer copyPassword(long id) throws Exception {
+        int slot = slotsById.get(id);
+        if (slot < 0) {
+            throw new IllegalArgumentException("Запись не найдена.");
+        }
+        SecretBuffer cached = passwords[slot];
+        if (cached != null) {
+            try {
+                return cached.copy();
+            } catch (IllegalStateException e) {
+                // Буфер затёрт после замены копии хранилища
+            }
+        }
+        if (sealedOffsets[slot] < 0) {
+            throw new IllegalStateException("Пароль записи " + id + " уничтожен.");
+        }
+        PasswordEntry.SecretOpener current = opener;
+        if (current == null) {
+            throw new IllegalStateException("Хранилище заблокировано.");
+        }
+        return current.open(id, sealed.secret(sealedOffsets[slot], sealedLengths[slot]));
+    }
+
+    // Запись по порядковому номеру в меню (с 0)
+    public PasswordEntry getAt(int position) {
+        if (position < 0 || position >= size) return null;
+        return view(select(position));
+    }
+
+    public int positionOf(long id) {
+        int slot = slotsById.get(id);
+        return slot < 0 ? -1 : prefixSum(slot);
+    }
+
+    // id живых записей по порядку
+    public long[] ids() {
+        long[] result = new long[size];
+        int i = 0;
+        for (int slot = live.nextSetBit(0); slot >= 0; slot = live.nextSetBit(slot + 1)) {
+            result[i++] = ids[slot];
+        }
+        return result;
+    }
+
+    public int snapshotRecord(long id) {
+        int slot = slotsById.get(id);
+        return slot < 0 ? -1 : snapshotRecords[slot];
+    }
+
+    // Номера записей в текущем файле в порядке ids()
+    public int[] snapshotRecords() {
+        int[] result = new int[size];
+        int i = 0;
+        for (int slot = live.nextSetBit(0); slot >= 0; slot = live.nextSetBit(slot + 1)) {
+            result[i++] = snapshotRecords[slot];
+        }
+        return result;
+    }
+
+    // После записи снимка из записей snapshotIds номер записи в файле — её номер в массиве; записи, изменённые
+    // после снятия снимка, и удалённые пропускаются
+    public void markSnapshot(long[] snapshotIds, LongPredicate changedSince) {
+        for (int record = 0; record < snapshotIds.length; record++) {
+            int slot = slotsById.get(snapshotIds[record]);
+            if (slot >= 0 && !changedSince.test(snapshotIds[record])) {
+                snapshotRecords[slot] = record;
+            }
+        }
+    }
+
+    // Запись сохранена на диск: открытый пароль заменяется тем же зашифрованным, что записан в файл, и при
+    // обращении расшифровывается, как у загруженных записей. Буфер затирается после публикации новой копии
+    public void seal(long id, SealedSecret secret) {
+        int slot = slotsById.get(id);
+        if (slot < 0 || sealedOffsets[slot] >= 0) return;
+        sealedOffsets[slot] = sealed.append(secret);
+        sealedLengths[slot] = 1 + secret.wrappedKey().length + secret.ciphertext().length;
+        if (passwords[slot] != null) {
+            retire(passwords[slot]);
+            passwords[slot] = null;
+        }
+    }
+
+    // Переобёртывает ключи паролей; длина обёрнутого ключа не меняется, поэтому он пишется на прежнее место.
+    // Байты, общие с копиями для читателей, не меняются: перед этим массив копируется
+    public void rewrapSecrets(SecretRewrapper rewrapper) throws Exception {
+        if (snapshotted) {
+            sealed = new Slab(sealed).detach();
+        }
+        for (int slot = live.nextSetBit(0); slot >= 0; slot = live.nextSetBit(slot + 1)) {
+            if (sealedOffsets[slot] < 0) continue;
+            SealedSecret rewrapped = rewrapper.rewrap(sealed.secret(sealedOffsets[slot], sealedLengths[slot]));
+            if (1 + rewrapped.wrappedKey().length + rewrapped.ciphertext().length == sealedLengths[slot]) {
+                sealed.write(sealedOffsets[slot], rewrapped);
+            } else {
+                sealed.garbage += sealedLengths[slot];
+                sealedOffsets[slot] = sealed.append(rewrapped);
+                sealedLengths[slot] = 1 + rewrapped.wrappedKey().length + rewrapped.ciphertext().length;
+            }
+        }
+        compactIfSparse();
+    }
+
+    // Отдаёт запас ёмкости столбцов и массивов байтов после массовой загрузки: при удвоении он доходит до половины
+    public void trimToSize() {
+        grow(Math.max(slots, INITIAL_CAPACITY));
+        text.trim();
+        sealed.trim();
+    }
+
+    // Затирает расшифрованные пароли и освобождает столбцы
+    public void clear() {
+        for (int slot = 0; slot < slots; slot++) {
+            if (passwords[slot] != null) {
+                retire(passwords[slot]);
+            }
+        }
+        live.clear();
+        slotsById.clear();
+        text = new Slab();
+        sealed = new Slab();
+        slots = 0;
+        size = 0;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    @Override
+    public Iterator<PasswordEntry> iterator() {
+        return new Iterator<>() {
+            private int next = live.nextSetBit(0);
+
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            @Override
+            public PasswordEntry next() {
+                if (next < 0) throw new NoSuchElementException();
+                PasswordEntry entry = view(next);
+                next = live.nextSetBit(next + 1);
+                return entry;
+            }
+        };
+    }
+
+    private PasswordEntry view(int slot) {
+        String place = text.string(textOffsets[slot], placeLengths[slot]);
+        String login = text.string(textOffsets[slot] + placeLengths[slot], loginLengths[slot]);
+        SealedSecret secret = sealedOffsets[slot] < 0 ? null : sealed.secret(sealedOffsets[slot], sealedLengths[slot]);
+
+        SecretBuffer password = passwords[slot];
+        if (password != null && password.isDestroyed()) {
+            password = null;
+        }
+        return new PasswordEntry(ids[slot], place, login, password, secret, this::open);
+    }
+
+    // Расшифровка идёт без блокировки. Пароль запоминается в слоте хранилища-владельца, если запись не изменилась
+    // с момента создания представления и блокировку записи удалось взять сразу (поток, который уже держит блокировку,
+    // не ждёт сам себя); иначе буфер принадлежит только представлению. Копии для читателей он попадёт со следующей.
+    private SecretBuffer open(long id, SealedSecret secret) throws Exception {
+        PasswordEntry.SecretOpener current = opener;
+        if (current == null) {
+            throw new IllegalStateException("Хранилище заблокировано.");
+        }
+        SecretBuffer password = current.open(id, secret);
+        return owner != null ? owner.remember(id, secret, password) : remember(id, secret, password);
+    }
+
+    private SecretBuffer remember(long id, SealedSecret secret, SecretBuffer password) {
+        long stamp = 0;
+        if (guard != null && (stamp = guard.tryWriteLock()) == 0) {
+            return password;
+        }
+        try {
+            int slot = slotsById.get(id);
+            if (slot >= 0 && sealedOffsets[slot] >= 0 && sealed.matches(sealedOffsets[slot], secret)) {
+                if (passwords[slot] != null && !passwords[slot].isDestroyed()) {
+                    password.destroy();
+                    return passwords[slot];
+                }
+                passwords[slot] = password;
+            }
+            return password;
+        } finally {
+            if (stamp != 0) guard.unlockWrite(stamp);
+        }
+    }
+
+    private void retire(SecretBuffer password) {
+        if (snapshotted) {
+            retired.add(password);
+        } else {
+            password.destroy();
+        }
+    }
+
+    private int appendSlot(long id) {
+        if (slots == ids.length) {
+            grow(ids.length * 2);
+        }
+        int slot = slots++;
+        ids[slot] = id;
+        slotsById.put(id, slot);
+        live.set(slot);
+        size++;
+
+        // Новый узел дерева: сам слот плюс сумма покрываемого им диапазона до него
+        int node = slot + 1;
+        fenwick[node] = 1 + prefixSum(slot) - prefixSum(node - (node & -node));
+        return slot;
+    }
+
+    private void updateFenwick(int slot, int delta) {
+        for (int node = slot + 1; node <= slots; node += node & -node) {
+            fenwick[node] += delta;
+        }
+    }
+
+    // Число живых слотов среди первых count
+    private int prefixSum(int count) {
+        int sum = 0;
+        for (int node = count; node > 0; node -= node & -node) {
+            sum += fenwick[node];
+        }
+        return sum;
+    }
+
+    // Слот живой записи с данным порядковым номером: спуск по дереву за O(log N)
+    private int select(int position) {
+        int node = 0;
+        int remaining = position + 1;
+        for (int step = Integer.highestOneBit(slots); step > 0; step >>= 1) {
+            if (node + step <= slots && fenwick[node + step] < remaining) {
+                node += step;
+                remaining -= fenwick[node];
+            }
+        }
+        return node;
+    }
+
+    private void compactIfSparse() {
+        boolean sparseSlots = slots >= COMPACT_MIN_SLOTS && slots - size > size;
+        if (sparseSlots || text.isSparse() || sealed.isSparse()) {
+            compact();
+        }
+    }
+
+    // Переписывает живые слоты подряд в новые столбцы; порядок записей сохраняется
+    private void compact() {
+        long[] oldIds = ids;
+        int[] oldTextOffsets = textOffsets;
+        int[] oldPlaceLengths = placeLengths;
+        int[] oldLoginLengths = loginLengths;
+        int[] oldSealedOffsets = sealedOffsets;
+        int[] oldSealedLengths = sealedLengths;
+        int[] oldSnapshotRecords = snapshotRecords;
+        SecretBuffer[] oldPasswords = passwords;
+        Slab oldText = text;
+        Slab oldSealed = sealed;
+
+        allocate(Math.max(INITIAL_CAPACITY, Integer.highestOneBit(Math.max(1, size)) * 2));
+        text = new Slab(oldText.length - (int) oldText.garbage);
+        sealed = new Slab(oldSealed.length - (int) oldSealed.garbage);
+        slotsById.clear();
+
+        int slot = 0;
+        for (int old = live.nextSetBit(0); old >= 0; old = live.nextSetBit(old + 1)) {
+            ids[slot] = oldIds[old];
+            textOffsets[slot] = text.append(oldText.data, oldTextOffsets[old], oldPlaceLengths[old] + oldLoginLengths[old]);
+            placeLengths[slot] = oldPlaceLengths[old];
+            loginLengths[slot] = oldLoginLengths[old];
+            sealedOffsets[slot] = oldSealedOffsets[old] < 0 ? -1
+                    : sealed.append(oldSealed.data, oldSealedOffsets[old], oldSealedLengths[old]);
+            sealedLengths[slot] = oldSealedLengths[old];
+            snapshotRecords[slot] = oldSnapshotRecords[old];
+            passwords[slot] = oldPasswords[old];
+            slotsById.put(ids[slot], slot);
+            slot++;
+        }
+
+        slots = size;
+        live.clear();
+        live.set(0, size);
+        // Построение дерева Фенвика за O(N): каждый узел добавляет свою сумму в родителя
+        for (int node = 1; node <= slots; node++) {
+            fenwick[node] += 1;
+            int parent = node + (node & -node);
+            if (parent <= slots) fenwick[parent] += fenwick[node];
+        }
+    }
+
+    private void allocate(int capacity) {
+        ids = new long[capacity];
+        textOffsets = new int[capacity];
+        placeLengths = new int[capacity];
+        loginLengths = new int[capacity];
+        sealedOffsets = new int[capacity];
+        sealedLengths = new int[capacity];
+        snapshotRecords = new int[capacity];
+        passwords = new SecretBuffer[capacity];
+        fenwick = new int[capacity + 1];
+    }
+
+    private void grow(int capacity) {
+        ids = Arrays.copyOf(ids, capacity);
+        textOffsets = Arrays.copyOf(textOffsets, capacity);
+        placeLengths = Arrays.copyOf(placeLengths, capacity);
+        loginLengths = Arrays.copyOf(loginLengths, capacity);
+        sealedOffsets = Arrays.copyOf(sealedOffsets, capacity);
+        sealedLengths = Arrays.copyOf(sealedLengths, capacity);
+        snapshotRecords = Arrays.copyOf(snapshotRecords, capacity);
+        passwords = Arrays.copyOf(passwords, capacity);
+        fenwick = Arrays.copyOf(fenwick, capacity + 1);
+    }
+
+    // Массив байтов с дозаписью в конец; заменённые и удалённые данные только учитываются до уплотнения
+    private static final class Slab {
+        private static final int MIN_SPARSE_BYTES = 64 * 1024;
+
+        private byte[] data;
+        private int length;
+        private long garbage;
+
+        Slab() {
+            this(256);
+        }
+
+        Slab(int capacity) {
+            data = new byte[Math.max(capacity, 16)];
+        }
+
+        // Копия разделяет массив: исходный только дописывается за length или заменяется новым
+        Slab(Slab source) {
+            data = source.data;
+            length = source.length;
+            garbage = source.garbage;
+        }
+
+        Slab detach() {
+            data = Arrays.copyOf(data, data.length);
+            return this;
+        }
+
+        int append(byte[] bytes) {
+            return append(bytes, 0, bytes.length);
+        }
+
+        int append(byte[] bytes, int offset, int count) {
+            ensure(count);
+            int at = length;
+            System.arraycopy(bytes, offset, data, at, count);
+            length += count;
+            return at;
+        }
+
+        int append(SealedSecret secret) {
+            ensure(1 + secret.wrappedKey().length + secret.ciphertext().length);
+            int at = length;
+            write(at, secret);
+            length += 1 + secret.wrappedKey().length + secret.ciphertext().length;
+            return at;
+        }
+
+        void write(int offset, SealedSecret secret) {
+            byte[] wrappedKey = secret.wrappedKey();
+            data[offset] = (byte) wrappedKey.length;
+            System.arraycopy(wrappedKey, 0, data, offset + 1, wrappedKey.length);
+            System.arraycopy(secret.ciphertext(), 0, data, offset + 1 + wrappedKey.length, secret.ciphertext().length);
+        }
+
+        SealedSecret secret(int offset, int count) {
+            int wrappedLength = Byte.toUnsignedInt(data[offset]);
+            byte[] wrappedKey = Arrays.copyOfRange(data, offset + 1, offset + 1 + wrappedLength);
+            byte[] ciphertext = Arrays.copyOfRange(data, offset + 1 + wrappedLength, offset + count);
+            return new SealedSecret(wrappedKey, ciphertext);
+        }
+
+        boolean matches(int offset, SealedSecret secret) {
+            byte[] wrappedKey = secret.wrappedKey();
+            return data[offset] == (byte) wrappedKey.length
+                    && Arrays.equals(data, offset + 1, offset + 1 + wrappedKey.length, wrappedKey, 0, wrappedKey.length);
+        }
+
+        String string(int offset, int count) {
+            return new String(data, offset, count, StandardCharsets.UTF_8);
+        }
+
+        void trim() {
+            data = Arrays.copyOf(data, Math.max(length, 16));
+        }
+
+        boolean isSparse() {
+            return garbage >= MIN_SPARSE_BYTES && garbage > length - garbage;
+        }
+
+        private void ensure(int count) {
+            if (length + count > data.length) {
+                long capacity = Math.max((long) data.length * 2, (long) length + count);
+                if (capacity > Integer.MAX_VALUE - 8) {
+                    throw new IllegalStateException("Превышен размер хранилища записей в памяти.");
+                }
+                data = Arrays.copyOf(data, (int) capacity);
+            }
+        }
+    }
+
+    // Открытая адресация с линейным пробированием: id -> слот без упаковки в Long/Integer.
+    // Ключ 0 означает пустую ячейку, поэтому записи без id в хранилище не попадают.
+    private static final class LongIntMap {
+        private long[] keys = new long[INITIAL_CAPACITY];
+        private int[] values = new int[INITIAL_CAPACITY];
+        private int size;
+
+        int get(long key) {
+            int mask = keys.length - 1;
+            for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+                if (keys[i] == key) return values[i];
+                if (keys[i] == 0) return -1;
+            }
+        }
+
+        void put(long key, int value) {
+            if ((size + 1) * 2 > keys.length) {
+                resize(keys.length * 2);
+            }
+            int mask = keys.length - 1;
+            for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+                if (keys[i] == 0) {
+                    keys[i] = key;
+                    values[i] = value;
+                    size++;
+                    return;
+                }
+                if (keys[i] == key) {
+                    values[i] = value;
+                    return;
+                }
+            }
+        }
+
+        // Удаление со сдвигом следующих элементов цепочки назад, без надгробий
+        void remove(long key) {
+            int mask = keys.length - 1;
+            int hole = mix(key) & mask;
+            while (keys[hole] != key) {
+                if (keys[hole] == 0) return;
+                hole = (hole + 1) & mask;
+            }
+
+            for (int i = (hole + 1) & mask; keys[i] != 0; i = (i + 1) & mask) {
+                int home = mix(keys[i]) & mask;
+                boolean reachable = hole <= i ? home <= hole || home > i : home <= hole && home > i;
+                if (reachable) {
+                    keys[hole] = keys[i];
+                    values[hole] = values[i];
+                    hole = i;
+                }
+            }
+            keys[hole] = 0;
+            size--;
+        }
+
+        void copyFrom(LongIntMap source) {
+            keys = source.keys.clone();
+            values = source.values.clone();
+            size = source.size;
+        }
+
+        void clear() {
+            keys = new long[INITIAL_CAPACITY];
+            values = new int[INITIAL_CAPACITY];
+            size = 0;
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[capacity];
+            values = new int[capacity];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) put(oldKeys[i], oldValues[i]);
+            }
+        }
+
+        private static int mix(long key) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32));
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package main.java.PasswordManager;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Locale;
+
+// Неинтерактивный импорт и экспорт записей в CSV и JSON. Файлы читаются и пишутся потоково, по строке;
+// пароль импортируемой строки существует только в массиве символов, который затирается после шифрования.
+//   import <файл> [--format csv|json]
+//   export <файл> [--format csv|json]
+public final class EntryTransfer {
+    public enum Format {
+        CSV, JSON;
+
+        public static Format of(Path path, String explicit) {
+            String name = explicit != null ? explicit : extension(path);
+            try {
+                return valueOf(name.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Неизвестный формат: " + name + " (ожидается csv или json).");
+            }
+        }
+
+        private static String extension(Path path) {
+            String fileName = path.getFileName().toString();
+            int dot = fileName.lastIndexOf('.');
+            return dot < 0 ? "" : fileName.substring(dot + 1);
+        }
+    }
+
+    // Строка файла импорта; при ошибке разбора или проверки поля пустые, а error содержит причину
+    public record Row(long line, String place, String login, char[] password, String error) {
+        static Row invalid(long line, String error) {
+            return new Row(line, null, null, null, error);
+        }
+
+        public boolean isValid() {
+            return error == null;
+        }
+
+        public void wipe() {
+            if (password != null) {
+                Arrays.fill(password, '\0');
+            }
+        }
+    }
+
+    public interface RowReader extends Closeable {
+        // null в конце файла; некорректная строка возвращается с ошибкой, чтение продолжается со следующей
+        Row next() throws IOException;
+    }
+
+    public interface RowWriter extends Closeable {
+        void write(String place, String login, SecretBuffer password) throws IOException;
+    }
+
+    public record ImportResult(int imported, int rejected) {}
+
+    // Поля записи хранятся с длиной в 2 байта
+    private static final int MAX_FIELD_BYTES = 0xFFFF;
+
+    private EntryTransfer() {}
+
+    public static RowReader reader(Format format, BufferedReader in) {
+        return format == Format.CSV ? new CsvEntryReader(in) : new JsonEntryReader(in);
+    }
+
+    public static RowWriter writer(Format format, BufferedWriter out) throws IOException {
+        return format == Format.CSV ? new CsvEntryWriter(out) : new JsonEntryWriter(out);
+    }
+
+    // Общие правила для обоих форматов: пароль обязателен, поля укладываются в формат записи
+    static Row validate(long line, String place, String login, char[] password) {
+        String error = null;
+        if (password == null || password.length == 0) {
+            error = "пустой пароль";
+        } else if (utf8Length(password) > MAX_FIELD_BYTES) {
+            error = "пароль длиннее " + MAX_FIELD_BYTES + " байт";
+        } else if (place != null && utf8Length(place.toCharArray()) > MAX_FIELD_BYTES) {
+            error = "место длиннее " + MAX_FIELD_BYTES + " байт";
+        } else if (login != null && utf8Length(login.toCharArray()) > MAX_FIELD_BYTES) {
+            error = "логин длиннее " + MAX_FIELD_BYTES + " байт";
+        }
+        if (error != null) {
+            if (password != null) Arrays.fill(password, '\0');
+            return Row.invalid(line, error);
+        }
+        return new Row(line, place, login, password, null);
+    }
+
+    private static int utf8Length(char[] chars) {
+        int length = 0;
+        for (int i = 0; i < chars.length; i++) {
+            char c = chars[i];
+            if (c < 0x80) length += 1;
+            else if (c < 0x800) length += 2;
+            else if (Character.isHighSurrogate(c) && i + 1 < chars.length && Character.isLowSurrogate(chars[i + 1])) {
+                length += 4;
+                i++;
+            } else length += 3;
+        }
+        return length;
+    }
+
+    // Запуск из Main: код возврата 0 — успех, 1 — часть строк отклонена, 2 — операция не выполнена
+    public static int run(String[] args) {
+        if (args.length < 2 || !(args[0].equals("import") || args[0].equals("export"))) {
+            System.err.println("Использование: import|export <файл> [--format csv|json]");
+            return 2;
+        }
+        String explicitFormat = null;
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].equals("--format") && i + 1 < args.length) {
+                explicitFormat = args[++i];
+            } else {
+                System.err.println("Неизвестный параметр: " + args[i]);
+                return 2;
+            }
+        }
+
+        Path file = Paths.get(args[1]);
+        PasswordManager manager = new PasswordManager();
+        char[] masterPassword = PasswordManagerUI.readSecret("Введите мастер-пароль: ");
+        try {
+            Format format = Format.of(file, explicitFormat);
+            return args[0].equals("import")
+                    ? runImport(manager, masterPassword, file, format)
+                    : runExport(manager, masterPassword, file, format);
+        } catch (Exception e) {
+            System.err.println("Ошибка: " + e.getMessage());
+            return 2;
+        } finally {
+            manager.lock();
+            Arrays.fill(masterPassword, '\0');
+        }
+    }
+
+    private static int runImport(PasswordManager manager, char[] masterPassword, Path file, Format format) throws Exception {
+        if (!manager.loadEntries(masterPassword)) {
+            System.err.println("Неверный мастер-пароль или повреждённое хранилище.");
+            return 2;
+        }
+
+        long started = System.nanoTime();
+        ImportResult result;
+        try (RowReader reader = reader(format, Files.newBufferedReader(file, StandardCharsets.UTF_8))) {
+            result = manager.importEntries(masterPassword, reader,
+                    row -> System.err.println("Строка " + row.line() + ": " + row.error()));
+        }
+        System.out.printf("Импортировано записей: %d, отклонено: %d (%.1f с)%n",
+                result.imported(), result.rejected(), (System.nanoTime() - started) / 1e9);
+        return result.rejected() > 0 ? 1 : 0;
+    }
+
+    private static int runExport(PasswordManager manager, char[] masterPassword, Path file, Format format) throws Exception {
+        // Файл с открытыми паролями создаётся заново и, где это поддерживается, доступен только владельцу
+        if (Files.exists(file)) {
+            System.err.println("Файл уже существует: " + file);
+            return 2;
+        }
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            Files.createFile(file);
+        }
+
+        long started = System.nanoTime();
+        int exported;
+        try (RowWriter writer = writer(format, Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))) {
+            exported = manager.exportEntries(masterPassword, writer);
+        } catch (Exception e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        System.out.printf("Экспортировано записей: %d (%.1f с)%n", exported, (System.nanoTime() - started) / 1e9);
+        return 0;
+    }
+
+    // Накопитель символов поля, который можно затереть; String для пароля не создаётся
+    static final class FieldBuffer {
+        private char[] chars = new char[64];
+        private int length;
+
+        void append(char c) {
+            if (length == chars.length) {
+                char[] grown = Arrays.copyOf(chars, chars.length * 2);
+                Arrays.fill(chars, '\0');
+                chars = grown;
+            }
+            chars[length++] = c;
+        }
+
+        int length() {
+            return length;
+        }
+
+        String takeString() {
+            String value = new String(chars, 0, length);
+            clear();
+            return value;
+        }
+
+        char[] takeChars() {
+            char[] value = Arrays.copyOf(chars, length);
+            clear();
+            return value;
+        }
+
+        void clear() {
+            Arrays.fill(chars, 0, length, '\0');
+            length = 0;
+        }
+    }
+}
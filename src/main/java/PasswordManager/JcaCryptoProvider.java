@@ -0,0 +1,113 @@
+package main.java.PasswordManager;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.util.function.Supplier;
+
+// Примитивы через JCA у заданных провайдеров (по порядку): SunJCE/SUN с интринсиками AES-NI, CLMUL и SHA
+// или Bouncy Castle. Провайдеры запрашиваются при первом обращении и в Security не регистрируются.
+final class JcaCryptoProvider implements CryptoProvider {
+    private final String name;
+    private final Supplier<Provider[]> providers;
+    private volatile Provider[] resolved;
+
+    JcaCryptoProvider(String name, Supplier<Provider[]> providers) {
+        this.name = name;
+        this.providers = providers;
+    }
+
+    @Override
+    public String name() { return name; }
+
+    @Override
+    public Aead aead() throws GeneralSecurityException {
+        Cipher cipher = instance("AES/GCM/NoPadding", Cipher::getInstance);
+        return new Aead() {
+            @Override
+            public int encrypt(byte[] key, byte[] iv, byte[] aad, byte[] in, int inOffset, int inLength,
+                               byte[] out, int outOffset) throws GeneralSecurityException {
+                init(Cipher.ENCRYPT_MODE, key, iv, aad);
+                return cipher.doFinal(in, inOffset, inLength, out, outOffset);
+            }
+
+            @Override
+            public int decrypt(byte[] key, byte[] iv, byte[] aad, byte[] in, int inOffset, int inLength,
+                               byte[] out, int outOffset) throws GeneralSecurityException {
+                init(Cipher.DECRYPT_MODE, key, iv, aad);
+                return cipher.doFinal(in, inOffset, inLength, out, outOffset);
+            }
+
+            @Override
+            public int encrypt(byte[] key, byte[] iv, byte[] aad, ByteBuffer in, ByteBuffer out) throws GeneralSecurityException {
+                init(Cipher.ENCRYPT_MODE, key, iv, aad);
+                return cipher.doFinal(in, out);
+            }
+
+            @Override
+            public int decrypt(byte[] key, byte[] iv, byte[] aad, ByteBuffer in, ByteBuffer out) throws GeneralSecurityException {
+                init(Cipher.DECRYPT_MODE, key, iv, aad);
+                return cipher.doFinal(in, out);
+            }
+
+            private void init(int mode, byte[] key, byte[] iv, byte[] aad) throws GeneralSecurityException {
+                cipher.init(mode, new SecretKeySpec(key, "AES"), new GCMParameterSpec(Constants.GCM_TAG_LENGTH, iv));
+                if (aad != null) cipher.updateAAD(aad);
+            }
+        };
+    }
+
+    @Override
+    public MessageDigest digest(String algorithm) throws GeneralSecurityException {
+        return instance(algorithm, MessageDigest::getInstance);
+    }
+
+    @Override
+    public Hmac hmac() throws GeneralSecurityException {
+        Mac mac = instance("HmacSHA3-256", Mac::getInstance);
+        return (key, data) -> {
+            mac.init(new SecretKeySpec(key, "HmacSHA3-256"));
+            return mac.doFinal(data);
+        };
+    }
+
+    @Override
+    public byte[] pbkdf2(char[] password, byte[] salt, int iterations, int keyBits) throws GeneralSecurityException {
+        SecretKeyFactory factory = instance("PBKDF2WithHmacSHA3-512", SecretKeyFactory::getInstance);
+        PBEKeySpec spec = new PBEKeySpec(password, salt, iterations, keyBits);
+        try {
+            return factory.generateSecret(spec).getEncoded();
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Factory<T> {
+        T get(String algorithm, Provider provider) throws GeneralSecurityException;
+    }
+
+    private <T> T instance(String algorithm, Factory<T> factory) throws GeneralSecurityException {
+        Provider[] current = resolved;
+        if (current == null) {
+            resolved = current = providers.get();
+        }
+        for (Provider provider : current) {
+            if (provider == null) continue;
+            try {
+                return factory.get(algorithm, provider);
+            } catch (NoSuchAlgorithmException | IllegalArgumentException e) {
+                // У следующего провайдера
+            }
+        }
+        throw new NoSuchAlgorithmException(algorithm + " недоступен в " + name);
+    }
+}
@@ -0,0 +1,214 @@
+package main.java.PasswordManager;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.Arrays;
+
+// Массив JSON из объектов {"place": ..., "login": ..., "password": ...}; прочие ключи пропускаются.
+// Объект с неверными значениями отклоняется как строка импорта, синтаксическая ошибка прерывает чтение файла.
+class JsonEntryReader implements EntryTransfer.RowReader {
+    private final BufferedReader in;
+    private final EntryTransfer.FieldBuffer field = new EntryTransfer.FieldBuffer();
+    private long line = 1;
+    private int peeked = -2;
+    private boolean started;
+    private boolean finished;
+
+    JsonEntryReader(BufferedReader in) {
+        this.in = in;
+    }
+
+    @Override
+    public EntryTransfer.Row next() throws IOException {
+        if (finished) return null;
+
+        skipWhitespace();
+        if (!started) {
+            expect('[');
+            started = true;
+            skipWhitespace();
+            if (peek() == ']') {
+                read();
+                return finish();
+            }
+        } else {
+            int c = read();
+            if (c == ']') return finish();
+            if (c != ',') throw syntax("ожидается ',' или ']'");
+            skipWhitespace();
+        }
+
+        long rowLine = line;
+        if (peek() != '{') {
+            skipValue();
+            return EntryTransfer.Row.invalid(rowLine, "элемент массива не является объектом");
+        }
+        return readObject(rowLine);
+    }
+
+    private EntryTransfer.Row readObject(long rowLine) throws IOException {
+        String place = null;
+        String login = null;
+        char[] password = null;
+        String error = null;
+
+        expect('{');
+        skipWhitespace();
+        if (peek() == '}') {
+            read();
+        } else {
+            while (true) {
+                skipWhitespace();
+                String key = readString();
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+                boolean isString = peek() == '"';
+                switch (key) {
+                    case "place", "login" -> {
+                        String value = isString ? readString() : null;
+                        if (!isString && !skipNull()) error = "поле " + key + " должно быть строкой";
+                        if (key.equals("place")) place = value; else login = value;
+                    }
+                    case "password" -> {
+                        if (isString) {
+                            if (password != null) Arrays.fill(password, '\0');
+                            readInto();
+                            password = field.takeChars();
+                        } else {
+                            skipValue();
+                            error = "поле password должно быть строкой";
+                        }
+                    }
+                    default -> skipValue();
+                }
+                skipWhitespace();
+                int c = read();
+                if (c == '}') break;
+                if (c != ',') throw syntax("ожидается ',' или '}'");
+            }
+        }
+
+        if (error != null) {
+            if (password != null) Arrays.fill(password, '\0');
+            return EntryTransfer.Row.invalid(rowLine, error);
+        }
+        return EntryTransfer.validate(rowLine, place != null ? place.strip() : null,
+                login != null ? login.strip() : null, password);
+    }
+
+    private EntryTransfer.Row finish() throws IOException {
+        finished = true;
+        skipWhitespace();
+        if (peek() >= 0) throw syntax("данные после конца массива");
+        return null;
+    }
+
+    private String readString() throws IOException {
+        readInto();
+        return field.takeString();
+    }
+
+    // Строка читается в буфер поля; пароль вызывающий код забирает из него через takeChars
+    private void readInto() throws IOException {
+        expect('"');
+        field.clear();
+        while (true) {
+            int c = read();
+            if (c < 0) throw syntax("незакрытая строка");
+            if (c == '"') break;
+            if (c < 0x20) throw syntax("управляющий символ в строке");
+            if (c != '\\') {
+                field.append((char) c);
+                continue;
+            }
+            int escape = read();
+            switch (escape) {
+                case '"', '\\', '/' -> field.append((char) escape);
+                case 'b' -> field.append('\b');
+                case 'f' -> field.append('\f');
+                case 'n' -> field.append('\n');
+                case 'r' -> field.append('\r');
+                case 't' -> field.append('\t');
+                case 'u' -> {
+                    int code = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(read(), 16);
+                        if (digit < 0) throw syntax("некорректная последовательность \\u");
+                        code = code * 16 + digit;
+                    }
+                    field.append((char) code);
+                }
+                default -> throw syntax("некорректная escape-последовательность");
+            }
+        }
+    }
+
+    private boolean skipNull() throws IOException {
+        if (peek() != 'n') return false;
+        skipValue();
+        return true;
+    }
+
+    private void skipValue() throws IOException {
+        int c = peek();
+        if (c == '"') {
+            readInto();
+            field.clear();
+        } else if (c == '{' || c == '[') {
+            int depth = 0;
+            do {
+                c = peek();
+                if (c == '"') {
+                    readInto();
+                    field.clear();
+                    continue;
+                }
+                c = read();
+                if (c < 0) throw syntax("незакрытый объект или массив");
+                if (c == '{' || c == '[') depth++;
+                if (c == '}' || c == ']') depth--;
+            } while (depth > 0);
+        } else {
+            boolean any = false;
+            while ((c = peek()) >= 0 && (Character.isLetterOrDigit(c) || c == '-' || c == '+' || c == '.')) {
+                read();
+                any = true;
+            }
+            if (!any) throw syntax("ожидается значение");
+        }
+    }
+
+    private void skipWhitespace() throws IOException {
+        int c;
+        while ((c = peek()) == ' ' || c == '\t' || c == '\n' || c == '\r') {
+            read();
+        }
+    }
+
+    private void expect(char expected) throws IOException {
+        if (read() != expected) throw syntax("ожидается '" + expected + "'");
+    }
+
+    private int peek() throws IOException {
+        if (peeked == -2) peeked = in.read();
+        return peeked;
+    }
+
+    private int read() throws IOException {
+        int c = peek();
+        peeked = -2;
+        if (c == '\n') line++;
+        return c;
+    }
+
+    private IOException syntax(String message) {
+        return new IOException("Ошибка JSON в строке " + line + ": " + message + ".");
+    }
+
+    @Override
+    public void close() throws IOException {
+        field.clear();
+        in.close();
+    }
+}
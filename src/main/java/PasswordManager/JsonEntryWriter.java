@@ -0,0 +1,65 @@
+package main.java.PasswordManager;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.util.Arrays;
+
+// Массив JSON, по объекту {"place", "login", "password"} на строку
+class JsonEntryWriter implements EntryTransfer.RowWriter {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final BufferedWriter out;
+    private boolean first = true;
+
+    JsonEntryWriter(BufferedWriter out) throws IOException {
+        this.out = out;
+        out.write('[');
+    }
+
+    @Override
+    public void write(String place, String login, SecretBuffer password) throws IOException {
+        out.write(first ? "\n  " : ",\n  ");
+        first = false;
+        out.write("{\"place\": ");
+        writeString(place.toCharArray());
+        out.write(", \"login\": ");
+        writeString(login.toCharArray());
+        out.write(", \"password\": ");
+        char[] chars = password.toChars();
+        try {
+            writeString(chars);
+        } finally {
+            Arrays.fill(chars, '\0');
+        }
+        out.write('}');
+    }
+
+    private void writeString(char[] value) throws IOException {
+        out.write('"');
+        for (char c : value) {
+            switch (c) {
+                case '"' -> out.write("\\\"");
+                case '\\' -> out.write("\\\\");
+                case '\n' -> out.write("\\n");
+                case '\r' -> out.write("\\r");
+                case '\t' -> out.write("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        out.write("\\u00");
+                        out.write(HEX[c >> 4]);
+                        out.write(HEX[c & 0x0F]);
+                    } else {
+                        out.write(c);
+                    }
+                }
+            }
+        }
+        out.write('"');
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.write(first ? "]\n" : "\n]\n");
+        out.close();
+    }
+}
@@ -0,0 +1,69 @@
+package main.java.PasswordManager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// Параметры вывода ключа хранилища из мастер-пароля. Хранятся в заголовке файла (VaultFile) сразу после версии:
+// алгоритм (1) | итерации (4) | память, КиБ (4) | потоки (1) | целевое время, мс (4) | длина соли (1) | соль
+// Целевое время — то, под которое подобрана стоимость; по нему видно, что настройки изменились.
+public record KdfParams(byte algorithm, int iterations, int memoryKiB, int parallelism, int targetMillis, byte[] salt) {
+    public static final byte PBKDF2 = 1;
+    public static final byte ARGON2ID = 2;
+    public static final int FIXED_LENGTH = 1 + Integer.BYTES + Integer.BYTES + 1 + Integer.BYTES;
+    // Ограничение памяти Argon2id при чтении заголовка, чтобы подменённый файл не исчерпал память (4 ГиБ)
+    private static final int MAX_MEMORY_KIB = 1 << 22;
+
+    // Текстовые хранилища: PBKDF2 с фиксированным числом итераций
+    public static KdfParams legacy(byte[] salt) {
+        return new KdfParams(PBKDF2, Constants.ITERATIONS, 0, 1, 0, salt);
+    }
+
+    public static byte algorithmOf(String name) {
+        return switch (name.toLowerCase()) {
+            case "pbkdf2" -> PBKDF2;
+            case "argon2id" -> ARGON2ID;
+            default -> throw new IllegalArgumentException("Неизвестный алгоритм вывода ключа: " + name);
+        };
+    }
+
+    public KdfParams withNewSalt() {
+        return new KdfParams(algorithm, iterations, memoryKiB, parallelism, targetMillis,
+                KeyDeriver.generateSalt(Constants.SALT_SIZE));
+    }
+
+    public int encodedLength() {
+        return FIXED_LENGTH + 1 + salt.length;
+    }
+
+    public void write(ByteBuffer buffer) {
+        buffer.put(algorithm).putInt(iterations).putInt(memoryKiB).put((byte) parallelism).putInt(targetMillis);
+        buffer.put((byte) salt.length).put(salt);
+    }
+
+    public static KdfParams read(ByteBuffer buffer) throws IOException {
+        byte algorithm = buffer.get();
+        int iterations = buffer.getInt();
+        int memoryKiB = buffer.getInt();
+        int parallelism = Byte.toUnsignedInt(buffer.get());
+        int targetMillis = buffer.getInt();
+        byte[] salt = new byte[Byte.toUnsignedInt(buffer.get())];
+        buffer.get(salt);
+
+        boolean valid = iterations > 0 && parallelism > 0 && switch (algorithm) {
+            case PBKDF2 -> true;
+            case ARGON2ID -> memoryKiB >= 8 * parallelism && memoryKiB <= MAX_MEMORY_KIB;
+            default -> false;
+        };
+        if (!valid) {
+            throw new IOException("Некорректные параметры вывода ключа.");
+        }
+        return new KdfParams(algorithm, iterations, memoryKiB, parallelism, targetMillis, salt);
+    }
+
+    @Override
+    public String toString() {
+        return algorithm == ARGON2ID
+                ? String.format("Argon2id, %d прох., %d МиБ, %d потоков", iterations, memoryKiB / 1024, parallelism)
+                : String.format("PBKDF2-HMAC-SHA3-512, %d итераций", iterations);
+    }
+}
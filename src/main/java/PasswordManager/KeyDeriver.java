@@ -1,24 +1,97 @@
 package main.java.PasswordManager;
 
-import javax.crypto.SecretKeyFactory;
-import javax.crypto.spec.PBEKeySpec;
-import java.security.SecureRandom;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 public class KeyDeriver {
+    private static final char[] CALIBRATION_PASSWORD = "calibration".toCharArray();
+
     public static byte[] generateSalt(int length) {
-        byte[] salt = new byte[length];
-        new SecureRandom().nextBytes(salt);
-        return salt;
+        return CryptoEngine.randomBytes(length);
     }
 
-    public static byte[] deriveKey(String password, byte[] salt, int iterations, int keyLength) throws Exception {
+    // Пароль передаётся массивом символов, чтобы вызывающий код мог затереть его после вывода ключа
+    public static byte[] deriveKey(char[] password, byte[] salt, int iterations, int keyLength) throws Exception {
         if (salt == null) {
             throw new IllegalArgumentException("Salt must not be null");
         }
 
-        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, keyLength);
-        // Используем PBKDF2 с HMAC-SHA3-512 через Bouncy Castle
-        SecretKeyFactory skf = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA3-512", "BC");
-        return skf.generateSecret(spec).getEncoded();
+        long started = Metrics.start();
+        try {
+            // PBKDF2 с HMAC-SHA3-512; реализацию выбирает CryptoProviders
+            return CryptoProviders.get(CryptoProvider.Primitive.KDF).pbkdf2(password, salt, iterations, keyLength);
+        } finally {
+            Metrics.stop(Metrics.Operation.KDF, started, 0);
+        }
+    }
+
+    public static byte[] deriveKey(char[] password, KdfParams params) throws Exception {
+        if (params.algorithm() == KdfParams.PBKDF2) {
+            return deriveKey(password, params.salt(), params.iterations(), Constants.KEY_SIZE);
+        }
+
+        // Argon2id (RFC 9106): полосы памяти заполняются параллельно, по потоку на полосу (Argon2id)
+        ByteBuffer encoded = StandardCharsets.UTF_8.encode(CharBuffer.wrap(password));
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.get(bytes);
+        Arrays.fill(encoded.array(), (byte) 0);
+        long started = Metrics.start();
+        try {
+            return Argon2id.derive(bytes, params.salt(), params.iterations(), params.memoryKiB(), params.parallelism(),
+                    Constants.KEY_SIZE / 8);
+        } finally {
+            Arrays.fill(bytes, (byte) 0);
+            Metrics.stop(Metrics.Operation.KDF, started, 0);
+        }
+    }
+
+    // Параметры хранилища устарели, если настроен другой алгоритм или другое целевое время разблокировки
+    public static boolean isOutdated(KdfParams params) {
+        return params.algorithm() != KdfParams.algorithmOf(Constants.KDF_ALGORITHM)
+                || params.targetMillis() != Constants.KDF_TARGET_MILLIS;
+    }
+
+    // Подбирает стоимость настроенного алгоритма так, чтобы вывод ключа на этой машине занимал около
+    // KDF_TARGET_MILLIS. Пробный вывод повторяется дважды, первый прогон уходит на прогрев JIT.
+    public static KdfParams calibrate() throws Exception {
+        byte algorithm = KdfParams.algorithmOf(Constants.KDF_ALGORITHM);
+        long target = Constants.KDF_TARGET_MILLIS * 1_000_000L;
+        byte[] salt = generateSalt(Constants.SALT_SIZE);
+
+        if (algorithm == KdfParams.PBKDF2) {
+            KdfParams probe = new KdfParams(algorithm, Constants.KDF_CALIBRATION_ITERATIONS, 0, 1, 0, salt);
+            long perIteration = Math.max(1, measure(probe) / Constants.KDF_CALIBRATION_ITERATIONS);
+            long iterations = Math.max(Constants.KDF_MIN_ITERATIONS, target / perIteration / 1000 * 1000);
+            return new KdfParams(algorithm, (int) Math.min(iterations, Integer.MAX_VALUE), 0, 1,
+                    Constants.KDF_TARGET_MILLIS, salt);
+        }
+
+        // Argon2id: память уменьшается вдвое, пока два прохода не уложатся в целевое время,
+        // затем число проходов растёт до целевого времени
+        int lanes = Math.max(1, Math.min(Constants.ARGON2_PARALLELISM, 255));
+        int memory = Constants.ARGON2_MEMORY_KIB;
+        long perPass;
+        while (true) {
+            perPass = Math.max(1, measure(new KdfParams(algorithm, 1, memory, lanes, 0, salt)));
+            if (perPass * Constants.ARGON2_MIN_ITERATIONS <= target || memory / 2 < Constants.ARGON2_MIN_MEMORY_KIB) {
+                break;
+            }
+            memory /= 2;
+        }
+        long passes = Math.max(Constants.ARGON2_MIN_ITERATIONS, target / perPass);
+        return new KdfParams(algorithm, (int) Math.min(passes, 64), memory, lanes, Constants.KDF_TARGET_MILLIS, salt);
+    }
+
+    private static long measure(KdfParams params) throws Exception {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 2; i++) {
+            long started = System.nanoTime();
+            byte[] key = deriveKey(CALIBRATION_PASSWORD, params);
+            best = Math.min(best, System.nanoTime() - started);
+            Arrays.fill(key, (byte) 0);
+        }
+        return best;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,130 @@
+package main.java.PasswordManager;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+// Текстовые хранилища до бинарного формата: v1 (первая строка — соль) и PMV2 (заголовок с контрольным значением).
+// Используются только для чтения при переводе в бинарный формат.
+public class LegacyTextVault {
+    private final List<String> lines;
+    private final boolean versioned;
+    private char[] masterPassword;
+    private byte[] salt;
+    private byte[] key;
+    private PasswordEntry firstRecord;
+
+    private LegacyTextVault(List<String> lines) {
+        this.lines = lines;
+        this.versioned = !lines.isEmpty() && lines.get(0).startsWith(Constants.VAULT_HEADER_V2 + ":");
+    }
+
+    public static LegacyTextVault read(Path path) throws Exception {
+        return new LegacyTextVault(Files.readAllLines(path));
+    }
+
+    public boolean unlock(char[] masterPassword) throws Exception {
+        this.masterPassword = masterPassword;
+
+        if (lines.isEmpty()) {
+            salt = KeyDeriver.generateSalt(Constants.SALT_SIZE);
+        } else if (versioned) {
+            // Заголовок v2: PMV2:<соль>:<контрольное значение ключа хранилища>
+            String[] parts = lines.get(0).split(":");
+            if (parts.length != 3) {
+                throw new Exception("Некорректный формат заголовка хранилища.");
+            }
+            salt = Base64.getDecoder().decode(parts[1]);
+            key = KeyDeriver.deriveKey(masterPassword, salt, Constants.ITERATIONS, Constants.KEY_SIZE);
+            return AESEncryption.verifyKeyCheck(key, Base64.getDecoder().decode(parts[2]));
+        } else {
+            try {
+                salt = Base64.getDecoder().decode(lines.get(0));
+            } catch (Exception e) {
+                return false;
+            }
+
+            // Первая запись служит проверкой пароля и сразу попадает в результат
+            if (lines.size() > 1) {
+                try {
+                    firstRecord = decrypt(0);
+                } catch (Exception e) {
+                    return false;
+                }
+            }
+        }
+
+        // Соль из заголовка становится солью ключа нового хранилища
+        key = KeyDeriver.deriveKey(masterPassword, salt, Constants.ITERATIONS, Constants.KEY_SIZE);
+        return true;
+    }
+
+    public byte[] getSalt() { return salt; }
+    public byte[] getKey() { return key; }
+
+    public int getRecordCount() {
+        return Math.max(0, lines.size() - 1);
+    }
+
+    // Журнал текстового хранилища: строки "операция,id[,запись в текстовом формате]", зашифрованные ключом
+    // хранилища. Оборванный хвост отбрасывается: файл после перевода удаляется и больше не дописывается
+    public List<ChangeJournal.Change> readJournal(Path journalPath) throws Exception {
+        List<ChangeJournal.Change> changes = new ArrayList<>();
+        if (!Files.exists(journalPath)) return changes;
+
+        for (String line : Files.readAllLines(journalPath)) {
+            if (line.isEmpty()) continue;
+            try {
+                changes.add(parseJournalLine(AESEncryption.decryptField(key, line)));
+            } catch (Exception e) {
+                System.err.println("Журнал изменений повреждён, последующие записи пропущены: " + e.getMessage());
+                break;
+            }
+        }
+        return changes;
+    }
+
+    private ChangeJournal.Change parseJournalLine(String payload) throws Exception {
+        String[] parts = payload.split(",", 3);
+        if (parts.length < 2) {
+            throw new Exception("Некорректный формат записи журнала.");
+        }
+        ChangeJournal.Operation operation = ChangeJournal.Operation.valueOf(parts[0]);
+        long id = Long.parseLong(parts[1]);
+        if (operation == ChangeJournal.Operation.DELETE) {
+            return ChangeJournal.Change.delete(id);
+        }
+        if (parts.length != 3) {
+            throw new Exception("Некорректный формат записи журнала.");
+        }
+        String[] fields = AESEncryption.decryptWithUniqueKeys(key, parts[2]).split(",");
+        if (fields.length != 3) {
+            throw new Exception("Некорректный формат расшифрованных данных.");
+        }
+        return new ChangeJournal.Change(operation, id, new PasswordEntry(id, fields[0], fields[1], fields[2]));
+    }
+
+    // Строка записи: [id,]зашифрованные_данные,ключ_1,ключ_2; в файлах v1 id отсутствует
+    public PasswordEntry decrypt(int index) throws Exception {
+        if (index == 0 && firstRecord != null) {
+            return firstRecord;
+        }
+
+        String line = lines.get(index + 1);
+        long id = 0;
+        if (line.chars().filter(c -> c == ',').count() == 3) {
+            int separator = line.indexOf(',');
+            id = Long.parseLong(line.substring(0, separator));
+            line = line.substring(separator + 1);
+        }
+
+        String decryptedLine = versioned
+                ? AESEncryption.decryptWithUniqueKeys(key, line)
+                : AESEncryption.decryptWithUniqueKeys(masterPassword, line);
+        String[] fields = decryptedLine.split(",");
+        if (fields.length != 3) return null;
+        return new PasswordEntry(id, fields[0], fields[1], fields[2]);
+    }
+}
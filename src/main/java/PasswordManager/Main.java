@@ -1,11 +1,68 @@
 package main.java.PasswordManager;
 
-import org.bouncycastle.jce.provider.BouncyCastleProvider;
-import java.security.Security;
+import java.util.Arrays;
+import java.util.List;
 
 public class Main {
     public static void main(String[] args) {
-        Security.addProvider(new BouncyCastleProvider());
+        // Флаги перед командой, в любом порядке
+        int flags = 0;
+        while (flags < args.length && (args[flags].equals("--metrics") || args[flags].equals("--startup-report"))) {
+            flags++;
+        }
+        List<String> options = Arrays.asList(args).subList(0, flags);
+        args = Arrays.copyOfRange(args, flags, args.length);
+
+        // --startup-report: время запуска по этапам, см. StartupReport. Включается первым,
+        // чтобы в отчёт попало и время включения метрик
+        boolean startupReport = options.contains("--startup-report");
+        if (startupReport) {
+            StartupReport.enable();
+        }
+
+        // --metrics: метрики операций. Флаг читается раньше всех классов,
+        // потому что Constants фиксирует pm.metrics при загрузке
+        boolean metrics = options.contains("--metrics");
+        if (metrics) {
+            System.setProperty("pm.metrics", "true");
+        }
+
+        // Отчёты печатаются при выходе одним потоком, чтобы их строки не перемешались
+        if (startupReport || metrics) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                if (startupReport) StartupReport.report(System.err);
+                if (metrics) Metrics.report(System.err);
+            }, "exit-reports"));
+        }
+
+        // Провайдер Bouncy Castle здесь не регистрируется: проверка подписи bcprov и создание провайдера
+        // занимают больше времени, чем весь остальной запуск. Он регистрируется при первом обращении
+        // к реализации bc (см. CryptoProviders.BouncyCastle); клиенту демона криптография не нужна вовсе
+
+        // client <команда>: запрос к запущенному демону, см. VaultClient
+        if (args.length > 0 && args[0].equals("client")) {
+            System.exit(VaultClient.run(Arrays.copyOfRange(args, 1, args.length)));
+        }
+
+        // daemon [--socket путь]: хранилище разблокируется один раз и обслуживает запросы, см. VaultDaemon
+        if (args.length > 0 && args[0].equals("daemon")) {
+            System.exit(VaultDaemon.run(Arrays.copyOfRange(args, 1, args.length)));
+        }
+
+        // breach-audit <база> [--build-filter]: проверка паролей по локальной базе утечек, см. BreachAudit
+        if (args.length > 0 && args[0].equals("breach-audit")) {
+            System.exit(BreachAudit.run(Arrays.copyOfRange(args, 1, args.length)));
+        }
+
+        // get <место> <логин>: пароль одной записи без загрузки хранилища, см. EntryLookup
+        if (args.length > 0 && args[0].equals("get")) {
+            System.exit(EntryLookup.run(Arrays.copyOfRange(args, 1, args.length)));
+        }
+
+        // import/export <файл>: неинтерактивный обмен записями, см. EntryTransfer
+        if (args.length > 0) {
+            System.exit(EntryTransfer.run(args));
+        }
 
         PasswordManager manager = new PasswordManager();
         PasswordManagerUI ui = new PasswordManagerUI(manager);
@@ -0,0 +1,125 @@
+package main.java.PasswordManager;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Дерево Меркла над хэшами шифротекстов записей. Лист — SHA3-256(0x00 | запись), узел — SHA3-256(0x01 | левый | правый),
+// непарный последний узел уровня переносится вверх без изменений. Корень подписывается HMAC ключом хранилища.
+public class MerkleTree {
+    public static final int HASH_LENGTH = 32;
+
+    private static final String ALGORITHM = "SHA3-256";
+    private static final byte LEAF = 0;
+    private static final byte NODE = 1;
+    private static final byte[] MAC_LABEL = "PasswordManager:merkle-root".getBytes(StandardCharsets.UTF_8);
+    // Уровни меньше этого размера считаются в одном потоке: накладные расходы пула больше выигрыша
+    private static final int PARALLEL_THRESHOLD = 4096;
+
+    // Уровень 0 — листья; каждый уровень хранится одним массивом по HASH_LENGTH байт на узел
+    private final List<byte[]> levels;
+
+    private MerkleTree(List<byte[]> levels) {
+        this.levels = levels;
+    }
+
+    public static byte[] leafHash(ByteBuffer record) {
+        MessageDigest digest = CryptoEngine.digester(ALGORITHM);
+        digest.update(LEAF);
+        digest.update(record);
+        return digest.digest();
+    }
+
+    // leaves — хэши листьев подряд; массив переходит во владение дерева
+    public static MerkleTree build(byte[] leaves, int parallelism) throws Exception {
+        if (leaves.length % HASH_LENGTH != 0) {
+            throw new IllegalArgumentException("Некорректная длина таблицы листьев: " + leaves.length);
+        }
+
+        List<byte[]> levels = new ArrayList<>();
+        levels.add(leaves);
+        byte[] level = leaves;
+        while (level.length > HASH_LENGTH) {
+            byte[] current = level;
+            int count = current.length / HASH_LENGTH;
+            byte[] parent = new byte[(count + 1) / 2 * HASH_LENGTH];
+            ParallelTasks.forEach(parent.length / HASH_LENGTH, count < PARALLEL_THRESHOLD ? 1 : parallelism,
+                    i -> combine(current, count, i, parent));
+            levels.add(parent);
+            level = parent;
+        }
+        return new MerkleTree(levels);
+    }
+
+    public int size() {
+        return levels.get(0).length / HASH_LENGTH;
+    }
+
+    public byte[] root() {
+        if (size() == 0) {
+            return CryptoEngine.digest(ALGORITHM, new byte[] {NODE});
+        }
+        return Arrays.copyOf(levels.get(levels.size() - 1), HASH_LENGTH);
+    }
+
+    public byte[] leaf(int index) {
+        return Arrays.copyOfRange(levels.get(0), index * HASH_LENGTH, (index + 1) * HASH_LENGTH);
+    }
+
+    // Проверка одной записи за O(log N): от переданного листа по соседним узлам до корня
+    public boolean verify(int index, byte[] leaf) {
+        if (index < 0 || index >= size()) return false;
+
+        MessageDigest digest = CryptoEngine.digester(ALGORITHM);
+        byte[] node = leaf;
+        int position = index;
+        for (int depth = 0; depth < levels.size() - 1; depth++) {
+            byte[] level = levels.get(depth);
+            int count = level.length / HASH_LENGTH;
+            int sibling = position ^ 1;
+            if (sibling < count) {
+                digest.update(NODE);
+                if ((position & 1) == 0) {
+                    digest.update(node);
+                    digest.update(level, sibling * HASH_LENGTH, HASH_LENGTH);
+                } else {
+                    digest.update(level, sibling * HASH_LENGTH, HASH_LENGTH);
+                    digest.update(node);
+                }
+                node = digest.digest();
+            }
+            position /= 2;
+        }
+        return MessageDigest.isEqual(node, root());
+    }
+
+    // Ключ HMAC выводится из ключа хранилища, чтобы один ключ не использовался и для AES-GCM, и для HMAC
+    public static byte[] rootMac(byte[] vaultKey, byte[] root) throws Exception {
+        byte[] macKey = CryptoEngine.hmac(vaultKey, MAC_LABEL);
+        try {
+            return CryptoEngine.hmac(macKey, root);
+        } finally {
+            Arrays.fill(macKey, (byte) 0);
+        }
+    }
+
+    public boolean verifyRoot(byte[] vaultKey, byte[] mac) throws Exception {
+        return MessageDigest.isEqual(rootMac(vaultKey, root()), mac);
+    }
+
+    private static void combine(byte[] level, int count, int index, byte[] parent) {
+        int left = index * 2;
+        if (left + 1 >= count) {
+            System.arraycopy(level, left * HASH_LENGTH, parent, index * HASH_LENGTH, HASH_LENGTH);
+            return;
+        }
+        MessageDigest digest = CryptoEngine.digester(ALGORITHM);
+        digest.update(NODE);
+        digest.update(level, left * HASH_LENGTH, 2 * HASH_LENGTH);
+        byte[] hash = digest.digest();
+        System.arraycopy(hash, 0, parent, index * HASH_LENGTH, HASH_LENGTH);
+    }
+}
@@ -0,0 +1,109 @@
+package main.java.PasswordManager;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import jdk.jfr.EventType;
+
+// Задержки криптографических операций и работы с файлами: счётчики и гистограммы (-Dpm.metrics=true
+// или --metrics), события JFR (passwordmanager.Operation) и отчёт при выходе (--metrics).
+// Когда метрики и событие JFR выключены, start() возвращает 0 и stop() сразу выходит: флаг метрик — константа,
+// которую JIT сворачивает, остаётся одна проверка состояния события.
+//   long started = Metrics.start();
+//   try { ... } finally { Metrics.stop(Metrics.Operation.KDF, started, 0); }
+public final class Metrics {
+    public enum Operation {
+        KDF("Вывод ключа (PBKDF2)"),
+        ENCRYPT("Шифрование AES-GCM"),
+        DECRYPT("Расшифровка AES-GCM"),
+        HMAC("HMAC-SHA3-256"),
+        DIGEST("Хэширование"),
+        VAULT_OPEN("Открытие файла хранилища"),
+        VAULT_WRITE("Запись файла хранилища"),
+        JOURNAL_APPEND("Запись в журнал"),
+        JOURNAL_REPLAY("Чтение журнала"),
+        LOAD("Загрузка хранилища"),
+        SAVE("Сохранение снимка"),
+        ROTATION("Смена мастер-пароля"),
+        LOOKUP("Поиск записи (get)");
+
+        private final String description;
+
+        Operation(String description) {
+            this.description = description;
+        }
+    }
+
+    private static final boolean ENABLED = Constants.METRICS_ENABLED;
+    private static final EventType EVENT = EventType.getEventType(OperationEvent.class);
+    private static final Map<Operation, OperationMetrics> OPERATIONS = ENABLED ? createOperations() : Map.of();
+
+    private Metrics() {}
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    public static long start() {
+        return ENABLED || EVENT.isEnabled() ? System.nanoTime() : 0;
+    }
+
+    public static void stop(Operation operation, long started, long bytes) {
+        if (started == 0) return;
+        long elapsed = System.nanoTime() - started;
+        if (ENABLED) {
+            OPERATIONS.get(operation).record(elapsed, bytes);
+        }
+        OperationEvent event = new OperationEvent();
+        if (event.shouldCommit()) {
+            event.operation = operation.name();
+            event.latency = elapsed;
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    public static OperationMetrics get(Operation operation) {
+        return OPERATIONS.get(operation);
+    }
+
+    // Текстовый отчёт; операции, которые не выполнялись, пропускаются
+    public static void report(PrintStream out) {
+        if (!ENABLED) return;
+        out.println("Метрики операций (время в мс):");
+        out.printf("%-28s %10s %10s %9s %9s %9s %9s %9s %12s%n",
+                "Операция", "Число", "Всего", "Среднее", "p50", "p99", "p99.9", "Макс.", "Байт");
+        for (Operation operation : Operation.values()) {
+            OperationMetrics metrics = OPERATIONS.get(operation);
+            if (metrics.getCount() == 0) continue;
+            out.printf("%-28s %10d %10.1f %9.3f %9.3f %9.3f %9.3f %9.3f %12d%n",
+                    operation.description, metrics.getCount(), millis(metrics.getTotalNanos()),
+                    millis(metrics.getMeanNanos()), millis(metrics.getP50Nanos()), millis(metrics.getP99Nanos()),
+                    millis(metrics.getP999Nanos()), millis(metrics.getMaxNanos()), metrics.getBytes());
+        }
+        out.flush();
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static Map<Operation, OperationMetrics> createOperations() {
+        Map<Operation, OperationMetrics> operations = new EnumMap<>(Operation.class);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (Operation operation : Operation.values()) {
+            OperationMetrics metrics = new OperationMetrics();
+            operations.put(operation, metrics);
+            try {
+                server.registerMBean(metrics, new ObjectName("PasswordManager:type=Metrics,operation=" + operation.name()));
+            } catch (JMException e) {
+                System.err.println("Не удалось зарегистрировать MBean метрик " + operation.name() + ": " + e.getMessage());
+            }
+        }
+        return operations;
+    }
+}
@@ -0,0 +1,31 @@
+package main.java.PasswordManager;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+// Событие JFR на каждую измеренную операцию. По умолчанию выключено: включается в настройках записи,
+// например -XX:StartFlightRecording:filename=pm.jfr,+passwordmanager.Operation#enabled=true
+@Name("passwordmanager.Operation")
+@Label("Password Manager Operation")
+@Category("Password Manager")
+@Description("Криптографическая операция или обращение к файлам хранилища")
+@Enabled(false)
+@StackTrace(false)
+final class OperationEvent extends jdk.jfr.Event {
+    @Label("Operation")
+    String operation;
+
+    @Label("Latency")
+    @Timespan(Timespan.NANOSECONDS)
+    long latency;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+}
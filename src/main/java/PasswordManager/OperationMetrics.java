@@ -0,0 +1,128 @@
+package main.java.PasswordManager;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Счётчики и гистограмма задержек одной операции. Гистограмма в духе HdrHistogram: корзины по степеням двойки,
+// каждая разделена на SUB_BUCKETS равных частей, поэтому перцентиль отличается от точного не больше чем на 1/8.
+// Все счётчики — LongAdder: параллельные потоки расшифровки не конкурируют за одну ячейку.
+public final class OperationMetrics implements OperationMetricsMXBean {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+    OperationMetrics() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    void record(long nanos, long size) {
+        long value = Math.max(nanos, 0);
+        count.increment();
+        totalNanos.add(value);
+        bytes.add(size);
+        maxNanos.accumulate(value);
+        buckets[bucket(value)].increment();
+    }
+
+    // Значения меньше SUB_BUCKETS попадают в свои корзины, остальные — по старшему биту и следующим SUB_BITS битам
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int mantissa = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + mantissa;
+    }
+
+    static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int exponent = bucket / SUB_BUCKETS - 1 + SUB_BITS;
+        long mantissa = bucket % SUB_BUCKETS;
+        return (SUB_BUCKETS + mantissa) << (exponent - SUB_BITS);
+    }
+
+    // Верхняя граница корзины, в которую попадает доля fraction наблюдений, но не больше максимума
+    long percentile(double fraction) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        if (total == 0) return 0;
+
+        long target = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                long upper = i + 1 < BUCKETS ? lowerBound(i + 1) - 1 : Long.MAX_VALUE;
+                return Math.min(upper, getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    @Override
+    public long getMeanNanos() {
+        long n = getCount();
+        return n == 0 ? 0 : getTotalNanos() / n;
+    }
+
+    @Override
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    @Override
+    public long getP50Nanos() {
+        return percentile(0.50);
+    }
+
+    @Override
+    public long getP90Nanos() {
+        return percentile(0.90);
+    }
+
+    @Override
+    public long getP99Nanos() {
+        return percentile(0.99);
+    }
+
+    @Override
+    public long getP999Nanos() {
+        return percentile(0.999);
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    @Override
+    public void reset() {
+        count.reset();
+        totalNanos.reset();
+        bytes.reset();
+        maxNanos.reset();
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+    }
+}
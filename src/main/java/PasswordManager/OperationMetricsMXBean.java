@@ -0,0 +1,15 @@
+package main.java.PasswordManager;
+
+// Метрики одной операции в JMX: PasswordManager:type=Metrics,operation=<имя>. Время в наносекундах.
+public interface OperationMetricsMXBean {
+    long getCount();
+    long getTotalNanos();
+    long getMeanNanos();
+    long getMaxNanos();
+    long getP50Nanos();
+    long getP90Nanos();
+    long getP99Nanos();
+    long getP999Nanos();
+    long getBytes();
+    void reset();
+}
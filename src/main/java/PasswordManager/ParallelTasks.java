@@ -0,0 +1,69 @@
+package main.java.PasswordManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Обработка независимых элементов по индексу: диапазон делится на части, которые выполняются в общем пуле.
+// Пул один на процесс и живёт долго, поэтому кэши шифров, хэшей и HMAC в потоках (CryptoEngine)
+// переиспользуются между вызовами, а не создаются заново на каждую загрузку или сохранение
+public final class ParallelTasks {
+    @FunctionalInterface
+    public interface IndexTask {
+        void run(int index) throws Exception;
+    }
+
+    // Создаётся при первом параллельном вызове; потоки фоновые и не мешают завершению JVM
+    private static final class Pool {
+        static final ForkJoinPool INSTANCE = new ForkJoinPool(
+                Math.max(Constants.LOAD_PARALLELISM, Runtime.getRuntime().availableProcessors()),
+                pool -> {
+                    ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                    thread.setName("vault-parallel-" + thread.getPoolIndex());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                null, false);
+    }
+
+    private ParallelTasks() {}
+
+    public static ForkJoinPool pool() {
+        return Pool.INSTANCE;
+    }
+
+    // Одновременно выполняется не больше parallelism частей (и не больше размера общего пула)
+    public static void forEach(int count, int parallelism, IndexTask task) throws Exception {
+        int chunks = Math.min(count, parallelism * 4);
+        if (chunks == 0) return;
+        if (parallelism == 1) {
+            for (int i = 0; i < count; i++) {
+                task.run(i);
+            }
+            return;
+        }
+
+        AtomicInteger nextChunk = new AtomicInteger();
+        int workers = Math.min(parallelism, chunks);
+        List<Callable<Void>> tasks = new ArrayList<>(workers);
+        for (int w = 0; w < workers; w++) {
+            tasks.add(() -> {
+                for (int c = nextChunk.getAndIncrement(); c < chunks; c = nextChunk.getAndIncrement()) {
+                    int from = (int) ((long) count * c / chunks);
+                    int to = (int) ((long) count * (c + 1) / chunks);
+                    for (int i = from; i < to; i++) {
+                        task.run(i);
+                    }
+                }
+                return null;
+            });
+        }
+        for (Future<Void> future : pool().invokeAll(tasks)) {
+            future.get();
+        }
+    }
+}
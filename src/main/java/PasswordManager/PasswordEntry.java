@@ -1,71 +1,102 @@
 package main.java.PasswordManager;
 
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
-
 public class PasswordEntry {
-    private String place;
-    private String login;
-    private String password;
-    private String hashPlace;
-    private String hashLogin;
-    private String hashPassword;
-    private byte[] salt;
-    private byte[] aesKey;
+    @FunctionalInterface
+    public interface SecretOpener {
+        SecretBuffer open(long id, SealedSecret secret) throws Exception;
+    }
+
+    private static final String HASH_ALGORITHM = "SHA3-256";
+
+    // Место и логин хранятся столбцами в EntryStore; объект записи — лёгкое представление для вызывающего кода.
+    // Хэши не хранятся и считаются по запросу.
+    private final long id;
+    private final String place;
+    private final String login;
+    private SecretBuffer password;
+    private final SealedSecret sealedPassword;
+    private final SecretOpener opener;
 
     public PasswordEntry(String place, String login, String password) {
+        this(0, place, login, password);
+    }
+
+    public PasswordEntry(long id, String place, String login, String password) {
+        this(id, place, login, SecretBuffer.of(password != null && !password.isEmpty() ? password : Constants.DEFAULT_PASSWORD));
+    }
+
+    // Буфер пароля переходит во владение записи и затирается вместе с ней
+    public PasswordEntry(long id, String place, String login, SecretBuffer password) {
+        this(id, place, login, password != null && !password.isEmpty() ? password : SecretBuffer.of(Constants.DEFAULT_PASSWORD),
+                null, null);
+    }
+
+    // Запись из хранилища: место и логин уже расшифрованы, пароль расшифровывается при первом обращении
+    public PasswordEntry(long id, String place, String login, SealedSecret sealedPassword, SecretOpener opener) {
+        this(id, place, login, null, sealedPassword, opener);
+    }
+
+    PasswordEntry(long id, String place, String login, SecretBuffer password,
+                  SealedSecret sealedPassword, SecretOpener opener) {
+        this.id = id;
         this.place = place != null && !place.isEmpty() ? place : Constants.DEFAULT_PLACE;
         this.login = login != null && !login.isEmpty() ? login : Constants.DEFAULT_LOGIN;
-        this.password = password != null && !password.isEmpty() ? password : Constants.DEFAULT_PASSWORD;
-
-        this.hashPlace = hash(this.place, "SHA3-256");
-        this.hashLogin = hash(this.login, "SHA3-256");
-        this.hashPassword = hash(this.password, "SHA3-256");
+        this.password = password;
+        this.sealedPassword = sealedPassword;
+        this.opener = opener;
+    }
 
-        this.salt = KeyDeriver.generateSalt(Constants.SALT_SIZE);
-        this.aesKey = new byte[Constants.KEY_SIZE / 8]; // AES-256 требует 32 байта
-        new SecureRandom().nextBytes(aesKey);
+    // Копия с новыми местом и логином; пароль остаётся в том же виде, в каком был (открытым или зашифрованным),
+    // и переходит к копии, поэтому исходную запись после этого не уничтожают
+    public synchronized PasswordEntry withDetails(String place, String login) {
+        return new PasswordEntry(id, place, login, password, sealedPassword, opener);
     }
 
+    public long getId() { return id; }
+
     public String getPlace() { return place; }
     public String getLogin() { return login; }
-    public String getPassword() { return password; }
 
-    public String getHashPlace() { return hashPlace; }
-    public String getHashLogin() { return hashLogin; }
-    public String getHashPassword() { return hashPassword; }
+    // Буфер принадлежит записи (или хранилищу, из которого она получена): вызывающий код его не уничтожает
+    public synchronized SecretBuffer getPassword() {
+        if (password == null || password.isDestroyed()) {
+            if (sealedPassword == null) {
+                throw new IllegalStateException("Пароль записи " + id + " уничтожен.");
+            }
+            try {
+                password = opener.open(id, sealedPassword);
+            } catch (Exception e) {
+                throw new IllegalStateException("Не удалось расшифровать пароль записи " + id + ": " + e.getMessage(), e);
+            }
+        }
+        return password;
+    }
+
+    public synchronized boolean isPasswordDecrypted() { return password != null && !password.isDestroyed(); }
+    public SealedSecret getSealedPassword() { return sealedPassword; }
 
-    // Задел на будущее
-    public byte[] getSalt() { return salt; }
-    public byte[] getAesKey() { return aesKey; }
-    public void setSalt(byte[] salt) { this.salt = salt; }
-    public void setAesKey(byte[] aesKey) { this.aesKey = aesKey; }
+    // Затирает расшифрованный пароль; зашифрованный пароль из хранилища можно открыть снова
+    public synchronized void destroy() {
+        if (password != null) {
+            password.destroy();
+            password = null;
+        }
+    }
 
-    public void setHashPlace(String hashPlace) { this.hashPlace = hashPlace; }
-    public void setHashLogin(String hashLogin) { this.hashLogin = hashLogin; }
-    public void setHashPassword(String hashPassword) { this.hashPassword = hashPassword; }
+    public String getHashPlace() { return hash(place, HASH_ALGORITHM); }
+    public String getHashLogin() { return hash(login, HASH_ALGORITHM); }
 
+    public String getHashPassword() {
+        return CryptoEngine.toHex(CryptoEngine.digest(HASH_ALGORITHM, getPassword().view()));
+    }
 
     public static String hash(String data, String algorithm) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance(algorithm);
-            byte[] hashBytes = digest.digest(data.getBytes(StandardCharsets.UTF_8));
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : hashBytes) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) hexString.append('0');
-                hexString.append(hex);
-            }
-            return hexString.toString();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("Ошибка хэширования с алгоритмом " + algorithm, e);
-        }
+        return CryptoEngine.hashHex(data, algorithm);
     }
 
+    // Пароль не входит в строковое представление: строку нельзя затереть
     @Override
     public String toString() {
-        return String.format("%s,%s,%s", place, login, password);
+        return String.format("%s,%s", place, login);
     }
-}
\ No newline at end of file
+}
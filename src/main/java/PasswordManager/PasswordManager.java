@@ -1,230 +1,1318 @@
 package main.java.PasswordManager;
 
 import java.io.*;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.Base64;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 public class PasswordManager {
-    private List<PasswordEntry> entries;
-    private byte[] salt;
+    // Результат проверки файла хранилища: подлинность корня дерева Меркла и id записей, чьи шифротексты изменены
+    public record IntegrityReport(boolean rootAuthentic, List<Long> tamperedRecords) {
+        public boolean isIntact() {
+            return rootAuthentic && tamperedRecords.isEmpty();
+        }
+    }
+
+    // Запись, пароль которой найден в базе утечек, и число его вхождений в базу
+    public record BreachFinding(long id, String place, String login, long occurrences) {}
+
+    // Запись файла, которую не удалось расшифровать при загрузке: номер в файле (с 0), id (-1, если не прочитан)
+    // и причина. Запись снимка (kept) переносится в следующие снимки без изменений; строка текстового хранилища
+    // остаётся только в его резервной копии
+    public record UnreadableRecord(int position, long id, String reason, boolean kept) {}
+
+    // Получатель записей при загрузке. Вызывается из потока загрузки вне блокировок менеджера;
+    // менять хранилище из него нельзя, читать (listEntries, search) можно
+    @FunctionalInterface
+    public interface LoadListener {
+        // Ключ проверен; total — число записей в файле без учёта журнала. Вызывается до первой записи
+        default void unlocked(int total) {}
+
+        void loaded(PasswordEntry entry);
+    }
+
+    private final Path vaultPath;
+    // Записи, индекс поиска, несохранённые изменения и nextId меняются и читаются писателями только под блокировкой
+    // записи lock. Читатели (getEntry, search, listEntries, readPassword и др.) её не берут и никого не ждут:
+    // писатель перед снятием блокировки публикует в view неизменяемые копии записей и индекса (publish),
+    // читатель берёт их одним чтением volatile-поля и видит состояние целиком до или целиком после изменения.
+    private final StampedLock lock = new StampedLock();
+    // Работа с файлами (снимок, журнал, смена пароля, импорт, экспорт) идёт по одной операции за раз;
+    // параметры вывода ключа, ключ и размер журнала меняются только под этой блокировкой
+    private final ReentrantLock persistLock = new ReentrantLock();
+    private final EntryStore entries;
+    private KdfParams kdf;
     private byte[] encryptionKey;
+    private volatile int loadParallelism;
+    private long nextId;
+    private final ChangeJournal journal;
+    private final List<ChangeJournal.Change> pendingChanges;
+    private int journalSize;
+    private final SearchIndex searchIndex;
+    // Записи и индекс для читателей заменяются вместе, одной записью поля
+    private record ReadView(EntryStore entries, SearchIndex index) {}
+    private volatile ReadView view;
+    private final AttachmentStore attachments;
+    // Меняется под persistLock целиком, читается без блокировки
+    private volatile List<UnreadableRecord> unreadable;
 
     public PasswordManager() {
-        entries = new ArrayList<>();
-        salt = null;
+        this(Paths.get(Constants.FILE_NAME));
+    }
+
+    public PasswordManager(Path vaultPath) {
+        this.vaultPath = vaultPath;
+        entries = new EntryStore(lock);
+        kdf = null;
         encryptionKey = null;
+        loadParallelism = Constants.LOAD_PARALLELISM;
+        nextId = 1;
+        journal = new ChangeJournal(withSuffix(vaultPath, Constants.JOURNAL_SUFFIX));
+        pendingChanges = new ArrayList<>();
+        journalSize = 0;
+        searchIndex = new SearchIndex(entries::get);
+        publish();
+        attachments = new AttachmentStore(withSuffix(vaultPath, Constants.ATTACHMENTS_SUFFIX));
+        unreadable = List.of();
     }
 
-    public boolean loadEntries(String masterPassword) {
+    public boolean loadEntries(char[] masterPassword) {
+        return loadEntries(masterPassword, entry -> {});
+    }
+
+    // Потоковая загрузка: после проверки ключа записи расшифровываются пачками в порядке файла, и каждая пачка
+    // сразу видна читателям (listEntries, search) и передаётся listener. Первая запись готова через время вывода
+    // ключа и одной небольшой пачки, независимо от размера хранилища. Менять хранилище можно после возврата;
+    // мастер-пароль нужен до конца загрузки (сворачивание журнала, обновление параметров вывода ключа).
+    // Текстовые хранилища загружаются целиком и передаются listener после перевода в бинарный формат.
+    public boolean loadEntries(char[] masterPassword, LoadListener listener) {
+        persistLock.lock();
+        long started = Metrics.start();
         try {
-            if (!Files.exists(Paths.get(Constants.FILE_NAME))) {
-                salt = KeyDeriver.generateSalt(Constants.SALT_SIZE);
+            if (!Files.exists(vaultPath) || Files.size(vaultPath) == 0) {
+                if (!Files.exists(legacyVaultPath())) {
+                    kdf = KeyDeriver.calibrate();
+                    listener.unlocked(0);
+                    return true;
+                }
+                if (!convertLegacyVault(masterPassword)) {
+                    return false;
+                }
+                publishAll(listener);
+                upgradeKdf(masterPassword);
                 return true;
             }
 
-            List<String> lines = Files.readAllLines(Paths.get(Constants.FILE_NAME));
+            try (VaultFile vault = VaultFile.open(vaultPath)) {
+                byte[] key = KeyDeriver.deriveKey(masterPassword, vault.getKdf());
+                if (!AESEncryption.verifyKeyCheck(key, vault.getKeyCheck())) {
+                    return false;
+                }
+                kdf = vault.getKdf();
+                encryptionKey = key;
+                // Пароли остаются зашифрованными до первого обращения; целостность каждой части записи проверяет тег GCM.
+                // Записи при сохранении копируются из файла, пока их не изменят
+                listener.unlocked(vault.getRecordCount());
+                streamRecords(vault, listener);
+            }
 
-            if (lines.isEmpty()) {
-                salt = KeyDeriver.generateSalt(Constants.SALT_SIZE);
-                return true;
+            if (journalSize >= Constants.JOURNAL_COMPACT_THRESHOLD) {
+                saveEntries(masterPassword);
             }
+            upgradeKdf(masterPassword);
+            return true;
+        } catch (Exception e) {
+            System.err.println("Ошибка загрузки данных: " + e.getMessage());
+            // Частично загруженное хранилище не должно попасть в снимок
+            lock();
+            return false;
+        } finally {
+            Metrics.stop(Metrics.Operation.LOAD, started, 0);
+            persistLock.unlock();
+        }
+    }
+
+    // Та же загрузка как Flow.Publisher: она начинается в отдельном потоке при подписке, записи доставляются
+    // с учётом запросов подписчика (загрузка ждёт, пока подписчик не запросит следующие). Поток завершается
+    // onComplete или onError, если пароль неверен или файл не прочитан. Массив пароля нужен до завершения.
+    public Flow.Publisher<PasswordEntry> streamEntries(char[] masterPassword) {
+        return subscriber -> {
+            SubmissionPublisher<PasswordEntry> publisher = new SubmissionPublisher<>();
+            publisher.subscribe(subscriber);
+            Thread loader = new Thread(() -> {
+                if (loadEntries(masterPassword, publisher::submit)) {
+                    publisher.close();
+                } else {
+                    publisher.closeExceptionally(new IOException("Неверный мастер-пароль или повреждённое хранилище."));
+                }
+            }, "vault-loader");
+            loader.setDaemon(true);
+            loader.start();
+        };
+    }
+
+    // Изменения из журнала известны до расшифровки снимка: запись снимка сразу заменяется последней версией
+    // из журнала или пропускается, если удалена, а записи, добавленные журналом, идут после снимка.
+    // Пачки растут от LOAD_FIRST_BATCH до LOAD_MAX_BATCH: первая готова быстро, дальше пул занят полностью.
+    private void streamRecords(VaultFile vault, LoadListener listener) throws Exception {
+        List<ChangeJournal.Change> changes = journal.open(encryptionKey, vault.getRootMac());
+        Map<Long, ChangeJournal.Change> latest = new LinkedHashMap<>();
+        for (ChangeJournal.Change change : changes) {
+            latest.put(change.id(), change);
+            nextId = Math.max(nextId, change.id() + 1);
+        }
 
+        long stamp = lock.writeLock();
+        try {
+            entries.clear();
+            entries.setOpener(AESEncryption.secretOpener(encryptionKey));
+            searchIndex.clear();
+            publish();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+        byte[] key = encryptionKey;
+        int count = vault.getRecordCount();
+        int batch = Constants.LOAD_FIRST_BATCH;
+        List<UnreadableRecord> failed = new ArrayList<>();
+        for (int from = 0; from < count; from += batch, batch = Math.min(batch * 2, Constants.LOAD_MAX_BATCH)) {
+            int start = from;
+            Exception[] errors = new Exception[Math.min(batch, count - from)];
+            PasswordEntry[] loaded = decryptRecords(errors.length,
+                    i -> AESEncryption.decryptRecord(key, vault.record(start + i)), errors);
+
+            List<PasswordEntry> ready = new ArrayList<>(loaded.length);
+            stamp = lock.writeLock();
             try {
-                salt = Base64.getDecoder().decode(lines.get(0));
-            } catch (Exception e) {
-                return false;
+                for (int i = 0; i < loaded.length; i++) {
+                    if (errors[i] != null) {
+                        // Нечитаемая запись остаётся в файле, если журнал не заменил и не удалил её
+                        long id = recordId(vault.record(start + i));
+                        if (id < 0 || !latest.containsKey(id)) {
+                            failed.add(new UnreadableRecord(start + i, id, reason(errors[i]), true));
+                            nextId = Math.max(nextId, id + 1);
+                        }
+                        continue;
+                    }
+                    ChangeJournal.Change change = latest.remove(loaded[i].getId());
+                    if (change != null && change.operation() == ChangeJournal.Operation.DELETE) continue;
+                    PasswordEntry entry = change != null ? change.entry() : loaded[i];
+                    entries.put(entry, change != null ? -1 : start + i);
+                    nextId = Math.max(nextId, entry.getId() + 1);
+                    ready.add(entry);
+                }
+                searchIndex.addAll(ready);
+                publish();
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            for (PasswordEntry entry : ready) {
+                listener.loaded(entry);
             }
+        }
 
-            if (lines.size() > 1) {
-                String firstEncryptedLine = lines.get(1);
-                try {
-                    AESEncryption.decryptWithUniqueKeys(masterPassword, firstEncryptedLine);
-                } catch (Exception e) {
-                    return false;
+        List<PasswordEntry> added = new ArrayList<>();
+        stamp = lock.writeLock();
+        try {
+            for (ChangeJournal.Change change : latest.values()) {
+                if (change.operation() != ChangeJournal.Operation.DELETE) {
+                    entries.put(change.entry(), -1);
+                    added.add(change.entry());
                 }
             }
+            searchIndex.addAll(added);
+            entries.trimToSize();
+            publish();
+            journalSize = changes.size();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        unreadable = List.copyOf(failed);
+        for (PasswordEntry entry : added) {
+            listener.loaded(entry);
+        }
+    }
+
+    // id записи хранится перед шифротекстом и читается без ключа; -1, если запись короче
+    private static long recordId(ByteBuffer record) {
+        return record.remaining() >= Long.BYTES ? record.getLong(0) : -1;
+    }
+
+    private static String reason(Exception e) {
+        return e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+    }
 
-            entries = new ArrayList<>();
+    private void publishAll(LoadListener listener) {
+        List<PasswordEntry> loaded = listEntries();
+        listener.unlocked(loaded.size());
+        for (PasswordEntry entry : loaded) {
+            listener.loaded(entry);
+        }
+    }
+
+    // Переводит текстовое хранилище в бинарный формат, исходный файл сохраняется с суффиксом .bak
+    private boolean convertLegacyVault(char[] masterPassword) throws Exception {
+        Path legacyPath = legacyVaultPath();
+        Path legacyJournalPath = withSuffix(legacyPath, Constants.JOURNAL_SUFFIX);
+        LegacyTextVault legacy = LegacyTextVault.read(legacyPath);
+        if (!legacy.unlock(masterPassword)) {
+            return false;
+        }
+        kdf = KdfParams.legacy(legacy.getSalt());
+        encryptionKey = legacy.getKey();
+        // Хэши полей текстового формата сверяются при расшифровке каждой строки. Нечитаемые строки в новый
+        // формат не переносятся, но исходный файл остаётся резервной копией
+        Exception[] errors = new Exception[legacy.getRecordCount()];
+        install(decryptRecords(errors.length, legacy::decrypt, errors), legacy.readJournal(legacyJournalPath));
+        List<UnreadableRecord> failed = new ArrayList<>();
+        for (int i = 0; i < errors.length; i++) {
+            if (errors[i] != null) {
+                failed.add(new UnreadableRecord(i, -1, reason(errors[i]), false));
+            }
+        }
+
+        saveEntries(masterPassword);
+        Files.deleteIfExists(legacyJournalPath);
+        Files.move(legacyPath, withSuffix(legacyPath, ".bak"), StandardCopyOption.REPLACE_EXISTING);
+        unreadable = List.copyOf(failed);
+        System.out.println("Хранилище преобразовано в бинарный формат: " + vaultPath.getFileName());
+        return true;
+    }
 
-            for (int i = 1; i < lines.size(); i++) {
-                String encryptedLine = lines.get(i);
+    // Снимок пишется, не задерживая читателей: под блокировкой записи копируются только порядок записей,
+    // их номера в текущем файле, изменённые записи и очередь изменений; шифрование и запись файла идут без неё
+    public void saveEntries(char[] masterPassword) throws Exception {
+        persistLock.lock();
+        long started = Metrics.start();
+        try {
+            if (kdf == null || encryptionKey == null) {
+                KdfParams kdfToUse = kdf == null ? KeyDeriver.calibrate() : kdf;
+                byte[] key = KeyDeriver.deriveKey(masterPassword, kdfToUse);
+                long stamp = lock.writeLock();
+                try {
+                    entries.setOpener(AESEncryption.secretOpener(key));
+                    publish();
+                } finally {
+                    lock.unlockWrite(stamp);
+                }
+                kdf = kdfToUse;
+                encryptionKey = key;
+            }
 
+            try (VaultFile current = openSnapshot()) {
+                // Нечитаемые записи копируются из текущего файла; без него их пришлось бы потерять
+                List<UnreadableRecord> carried = new ArrayList<>();
+                for (UnreadableRecord record : unreadable) {
+                    if (record.kept()) carried.add(record);
+                }
+                if (current == null && !carried.isEmpty()) {
+                    throw new IOException("Хранилище содержит записи, которые не удалось расшифровать ("
+                            + carried.size() + "), а исходный файл недоступен; сохранение отменено, чтобы их не потерять.");
+                }
+                long[] ids;
+                int[] snapshotRecords;
+                List<Integer> rewritten = new ArrayList<>();
+                List<PasswordEntry> changed = new ArrayList<>();
+                List<ChangeJournal.Change> saved;
+                long stamp = lock.writeLock();
                 try {
-                    String decryptedLine = AESEncryption.decryptWithUniqueKeys(masterPassword, encryptedLine);
-                    String[] fields = decryptedLine.split(",");
-                    if (fields.length != 3) continue;
+                    ids = entries.ids();
+                    snapshotRecords = entries.snapshotRecords();
+                    for (int i = 0; i < ids.length; i++) {
+                        if (current == null || snapshotRecords[i] < 0) {
+                            rewritten.add(i);
+                            changed.add(detach(entries.get(ids[i])));
+                        }
+                    }
+                    saved = new ArrayList<>(pendingChanges);
+                    pendingChanges.clear();
+                } finally {
+                    lock.unlockWrite(stamp);
+                }
 
-                    PasswordEntry entry = new PasswordEntry(fields[0], fields[1], fields[2]);
-                    entries.add(entry);
+                byte[] snapshotId;
+                try {
+                    snapshotId = writeSnapshot(current, snapshotRecords, rewritten, changed, carried);
                 } catch (Exception e) {
-                    System.err.println("Ошибка при загрузке записи: " + e.getMessage());
+                    // Снимок не записан: изменения возвращаются в очередь перед сделанными за время записи
+                    stamp = lock.writeLock();
+                    try {
+                        pendingChanges.addAll(0, saved);
+                    } finally {
+                        lock.unlockWrite(stamp);
+                    }
+                    throw e;
+                } finally {
+                    for (PasswordEntry entry : changed) {
+                        entry.destroy();
+                    }
                 }
+
+                // Записи, изменённые за время записи файла, остаются несохранёнными
+                stamp = lock.writeLock();
+                try {
+                    Set<Long> changedSince = changedSince();
+                    entries.markSnapshot(ids, changedSince::contains);
+                    Map<Long, SealedSecret> sealed = new HashMap<>(changed.size() * 2);
+                    for (PasswordEntry entry : changed) {
+                        sealed.put(entry.getId(), entry.getSealedPassword());
+                    }
+                    sealSaved(sealed, changedSince);
+                } finally {
+                    lock.unlockWrite(stamp);
+                }
+                // Нечитаемые записи записаны после остальных в прежнем порядке
+                List<UnreadableRecord> moved = new ArrayList<>(unreadable.size());
+                int position = ids.length;
+                for (UnreadableRecord record : unreadable) {
+                    moved.add(record.kept() ? new UnreadableRecord(position++, record.id(), record.reason(), true) : record);
+                }
+                unreadable = List.copyOf(moved);
+                removeOrphanAttachments(ids, carried);
+
+                // Снимок содержит все изменения до его снятия: журнал начинается заново для нового снимка
+                journal.reset(snapshotId);
+                journalSize = 0;
             }
+        } finally {
+            Metrics.stop(Metrics.Operation.SAVE, started, 0);
+            persistLock.unlock();
+        }
+    }
 
-            verifyIntegrity();
-            return true;
-        } catch (Exception e) {
-            System.err.println("Ошибка загрузки данных: " + e.getMessage());
-            return false;
+    // Неизменённые записи копируются из текущего файла вместе с тегами слепого индекса,
+    // шифруются только новые и изменённые. Возвращает идентификатор нового снимка для журнала (HMAC корня)
+    private byte[] writeSnapshot(VaultFile current, int[] snapshotRecords, List<Integer> rewritten,
+                                 List<PasswordEntry> changed, List<UnreadableRecord> carried) throws Exception {
+        List<byte[]> records = new ArrayList<>(snapshotRecords.length + carried.size());
+        byte[][] tags = new byte[snapshotRecords.length + carried.size()][];
+        byte[] currentTags = current != null ? current.getTags() : null;
+        for (int i = 0; i < snapshotRecords.length; i++) {
+            if (current != null && snapshotRecords[i] >= 0) {
+                ByteBuffer record = current.record(snapshotRecords[i]);
+                byte[] copy = new byte[record.remaining()];
+                record.get(copy);
+                records.add(copy);
+                int from = snapshotRecords[i] * BlindIndex.TAG_LENGTH;
+                tags[i] = Arrays.copyOfRange(currentTags, from, from + BlindIndex.TAG_LENGTH);
+            } else {
+                records.add(null);
+            }
+        }
+        for (UnreadableRecord record : carried) {
+            ByteBuffer raw = current.record(record.position());
+            byte[] copy = new byte[raw.remaining()];
+            raw.get(copy);
+            int from = record.position() * BlindIndex.TAG_LENGTH;
+            tags[records.size()] = Arrays.copyOfRange(currentTags, from, from + BlindIndex.TAG_LENGTH);
+            records.add(copy);
+        }
+        // Записи независимы, поэтому шифруются параллельно; каждая задача пишет только в свою позицию.
+        // Открытые пароли заменяются в changed зашифрованными, которые после записи перейдут в хранилище
+        byte[] key = encryptionKey;
+        byte[] indexKey = BlindIndex.key(key);
+        try {
+            ParallelTasks.forEach(changed.size(), loadParallelism, i -> {
+                PasswordEntry entry = seal(key, changed.get(i));
+                changed.set(i, entry);
+                records.set(rewritten.get(i), AESEncryption.encryptRecord(key, entry));
+                tags[rewritten.get(i)] = BlindIndex.tag(indexKey, entry);
+            });
+        } finally {
+            Arrays.fill(indexKey, (byte) 0);
+        }
+
+        MerkleTree tree;
+        try {
+            tree = VaultFile.write(vaultPath, kdf, AESEncryption.createKeyCheck(encryptionKey), records,
+                    Arrays.asList(tags), encryptionKey, loadParallelism);
+        } catch (IOException e) {
+            throw new RuntimeException("Ошибка записи в файл", e);
         }
+        verifyRewritten(tree, rewritten);
+        return MerkleTree.rootMac(encryptionKey, tree.root());
     }
 
-    public void saveEntries(String masterPassword) throws Exception {
-        boolean isNewFile = !Files.exists(Paths.get(Constants.FILE_NAME));
-        byte[] saltToUse = isNewFile || salt == null ? KeyDeriver.generateSalt(Constants.SALT_SIZE) : salt;
-        this.encryptionKey = KeyDeriver.deriveKey(masterPassword, saltToUse, Constants.ITERATIONS, Constants.KEY_SIZE);
+    // Вложения удалённых записей удаляются, когда удаление попало в снимок; ошибка не мешает сохранению
+    private void removeOrphanAttachments(long[] ids, List<UnreadableRecord> carried) {
+        Set<Long> live = new HashSet<>(ids.length * 2);
+        for (long id : ids) {
+            live.add(id);
+        }
+        for (UnreadableRecord record : carried) {
+            live.add(record.id());
+        }
+        try {
+            attachments.retain(live);
+        } catch (IOException e) {
+            System.err.println("Не удалось удалить вложения удалённых записей: " + e.getMessage());
+        }
+    }
 
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(Constants.FILE_NAME))) {
-            writer.write(Base64.getEncoder().encodeToString(saltToUse));
-            writer.newLine();
+    // Копия записи с зашифрованным паролем; открытый пароль копии затирается
+    private static PasswordEntry seal(byte[] key, PasswordEntry entry) throws Exception {
+        if (entry.getSealedPassword() != null) return entry;
+        SealedSecret secret = AESEncryption.sealSecret(key, entry.getId(), entry.getPassword());
+        entry.destroy();
+        return new PasswordEntry(entry.getId(), entry.getPlace(), entry.getLogin(), secret, null);
+    }
+
+    // id записей с несохранёнными изменениями; вызывается под блокировкой записи
+    private Set<Long> changedSince() {
+        Set<Long> changed = new HashSet<>();
+        for (ChangeJournal.Change change : pendingChanges) {
+            changed.add(change.id());
+        }
+        return changed;
+    }
 
-            for (PasswordEntry entry : entries) {
-                String line = AESEncryption.encryptWithUniqueKeys(
-                        masterPassword,
-                        entry.getPlace(),
-                        entry.getLogin(),
-                        entry.getPassword()
-                );
-                writer.write(line);
-                writer.newLine();
+    // Сохранённые записи, которые с тех пор не менялись, получают зашифрованный пароль из файла вместо открытого
+    // (saved: id записи -> пароль из её последнего сохранённого состояния, null — удалена). Вызывается
+    // под блокировкой записи
+    private void sealSaved(Map<Long, SealedSecret> saved, Set<Long> changedSince) {
+        saved.forEach((id, secret) -> {
+            if (secret != null && !changedSince.contains(id)) {
+                entries.seal(id, secret);
             }
-        } catch (IOException e) {
-            throw new RuntimeException("Ошибка записи в файл", e);
+        });
+        publish();
+    }
+
+    // Копия записи, которую писатели не могут затереть: открытый пароль копируется, зашифрованный
+    // переносится без расшифровки. Её уничтожение не затрагивает буферы хранилища.
+    private static PasswordEntry detach(PasswordEntry entry) {
+        if (entry.getSealedPassword() != null) {
+            return new PasswordEntry(entry.getId(), entry.getPlace(), entry.getLogin(), entry.getSealedPassword(), null);
         }
+        return new PasswordEntry(entry.getId(), entry.getPlace(), entry.getLogin(), entry.getPassword().copy());
+    }
+
+    // Сохраняет изменения с последнего сохранения: дописывает их в журнал или сворачивает журнал в снимок
+    public void saveChanges(char[] masterPassword) throws Exception {
+        persistLock.lock();
+        try {
+            if (encryptionKey == null || !Files.exists(vaultPath) || !journal.isOpen()) {
+                saveEntries(masterPassword);
+                return;
+            }
+
+            List<ChangeJournal.Change> changes = new ArrayList<>();
+            long stamp = lock.writeLock();
+            try {
+                for (ChangeJournal.Change change : pendingChanges) {
+                    changes.add(new ChangeJournal.Change(change.operation(), change.id(),
+                            change.entry() != null ? detach(change.entry()) : null));
+                }
+                pendingChanges.clear();
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            if (changes.isEmpty()) return;
+
+            try {
+                for (int i = 0; i < changes.size(); i++) {
+                    ChangeJournal.Change change = changes.get(i);
+                    if (change.entry() != null) {
+                        changes.set(i, new ChangeJournal.Change(change.operation(), change.id(),
+                                seal(encryptionKey, change.entry())));
+                    }
+                }
+                journal.append(encryptionKey, changes);
+            } catch (Exception e) {
+                stamp = lock.writeLock();
+                try {
+                    pendingChanges.addAll(0, changes);
+                } finally {
+                    lock.unlockWrite(stamp);
+                }
+                throw e;
+            }
+            journalSize += changes.size();
 
-        this.salt = saltToUse;
+            // Из нескольких изменений одной записи действует последнее
+            Map<Long, SealedSecret> saved = new HashMap<>(changes.size() * 2);
+            for (ChangeJournal.Change change : changes) {
+                saved.put(change.id(), change.entry() != null ? change.entry().getSealedPassword() : null);
+            }
+            stamp = lock.writeLock();
+            try {
+                sealSaved(saved, changedSince());
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+
+            if (journalSize >= Constants.JOURNAL_COMPACT_THRESHOLD) {
+                saveEntries(masterPassword);
+            }
+        } finally {
+            persistLock.unlock();
+        }
     }
 
-    public void reencryptWithNewMasterPassword(String currentMasterPassword, String newMasterPassword)
+    public void reencryptWithNewMasterPassword(char[] currentMasterPassword, char[] newMasterPassword)
             throws Exception {
-        String tempFile = Constants.FILE_NAME + ".tmp";
-        Files.deleteIfExists(Paths.get(tempFile));
+        persistLock.lock();
+        long started = Metrics.start();
+        try {
+            // Журнал зашифрован текущим ключом, поэтому перед сменой пароля сворачиваем его в снимок
+            if (journalSize > 0 || !readLocked(pendingChanges::isEmpty)) {
+                saveEntries(currentMasterPassword);
+            }
 
-        List<String> lines = Files.readAllLines(Paths.get(Constants.FILE_NAME));
-        if (lines.isEmpty()) return;
+            if (!Files.exists(vaultPath)) return;
 
-        byte[] newSalt = KeyDeriver.generateSalt(Constants.SALT_SIZE);
-        byte[] newEncryptionKey = KeyDeriver.deriveKey(newMasterPassword, newSalt, Constants.ITERATIONS,
-                Constants.KEY_SIZE);
+            byte[] currentKey;
+            KdfParams newKdf;
+            try (VaultFile vault = VaultFile.open(vaultPath)) {
+                currentKey = KeyDeriver.deriveKey(currentMasterPassword, vault.getKdf());
+                if (!AESEncryption.verifyKeyCheck(currentKey, vault.getKeyCheck())) {
+                    throw new Exception("Неверный текущий мастер-пароль.");
+                }
+                newKdf = nextKdf(vault);
+            }
 
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(tempFile))) {
-            writer.write(Base64.getEncoder().encodeToString(newSalt));
-            writer.newLine();
+            try {
+                rotate(currentKey, newMasterPassword, newKdf);
+            } finally {
+                Arrays.fill(currentKey, (byte) 0);
+            }
+        } finally {
+            Metrics.stop(Metrics.Operation.ROTATION, started, 0);
+            persistLock.unlock();
+        }
+    }
 
-            for (int i = 1; i < lines.size(); i++) {
-                String encryptedLine = lines.get(i);
-                String decryptedLine = AESEncryption.decryptWithUniqueKeys(currentMasterPassword, encryptedLine);
-                String[] fields = decryptedLine.split(",");
-                if (fields.length != 3) continue;
+    // Если настроены другой алгоритм вывода ключа или другое целевое время, хранилище после разблокировки
+    // перешифровывается тем же мастер-паролем с заново подобранными параметрами. Неудача не мешает работе:
+    // файл заменяется только целиком, и попытка повторится при следующей разблокировке.
+    private void upgradeKdf(char[] masterPassword) {
+        if (!KeyDeriver.isOutdated(kdf)) return;
 
-                String newEncryptedLine = AESEncryption.encryptWithUniqueKeys(newMasterPassword, fields[0], fields[1], fields[2]);
-                writer.write(newEncryptedLine);
-                writer.newLine();
+        long started = Metrics.start();
+        try {
+            if (journalSize > 0 || !readLocked(pendingChanges::isEmpty)) {
+                saveEntries(masterPassword);
             }
+            KdfParams newKdf;
+            try (VaultFile vault = VaultFile.open(vaultPath)) {
+                newKdf = nextKdf(vault);
+            }
+            System.out.println("Параметры вывода ключа обновляются: " + kdf + " -> " + newKdf);
+            rotate(encryptionKey, masterPassword, newKdf);
+        } catch (Exception e) {
+            System.err.println("Не удалось обновить параметры вывода ключа: " + e.getMessage());
+        } finally {
+            Metrics.stop(Metrics.Operation.ROTATION, started, 0);
+        }
+    }
+
+    // Параметры нового ключа: из прерванной смены ключа, если они соответствуют настройкам; иначе прежние
+    // с новой солью или, если настройки изменились, подобранные заново
+    private KdfParams nextKdf(VaultFile vault) throws Exception {
+        KdfParams resumed = new VaultRotation(vaultPath, loadParallelism).resumedKdf(vault);
+        if (resumed != null && !KeyDeriver.isOutdated(resumed)) {
+            return resumed;
         }
+        return KeyDeriver.isOutdated(vault.getKdf()) ? KeyDeriver.calibrate() : vault.getKdf().withNewSalt();
+    }
 
-        Files.move(Paths.get(tempFile), Paths.get(Constants.FILE_NAME), StandardCopyOption.REPLACE_EXISTING);
+    // Перешифровывает файл хранилища ключом, выведенным из newPassword с параметрами newKdf.
+    // Журнал к этому моменту свёрнут в снимок.
+    private void rotate(byte[] currentKey, char[] newPassword, KdfParams newKdf) throws Exception {
+        long kept = unreadable.stream().filter(UnreadableRecord::kept).count();
+        if (kept > 0) {
+            throw new IllegalStateException("Хранилище содержит записи, которые не удалось расшифровать ("
+                    + kept + "); перешифрование отменено, чтобы их не потерять.");
+        }
+        byte[] newEncryptionKey = KeyDeriver.deriveKey(newPassword, newKdf);
+        // Вложения не перешифровываются: новым ключом заново обёртывается только ключ каталога вложений
+        attachments.prepareRotation(currentKey, newEncryptionKey);
+        MerkleTree tree = new VaultRotation(vaultPath, loadParallelism).run(currentKey, newKdf, newEncryptionKey);
+        attachments.completeRotation();
+        journal.reset(MerkleTree.rootMac(newEncryptionKey, tree.root()));
+        journalSize = 0;
 
-        entries.clear();
-        salt = newSalt;
+        // Записи в памяти остаются: зашифрованные пароли переобёртываются новым ключом
+        if (encryptionKey != null) {
+            byte[] oldKey = encryptionKey;
+            long stamp = lock.writeLock();
+            try {
+                entries.rewrapSecrets(secret -> AESEncryption.rewrapSecret(oldKey, newEncryptionKey, secret));
+                entries.setOpener(AESEncryption.secretOpener(newEncryptionKey));
+                publish();
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            Arrays.fill(oldKey, (byte) 0);
+        }
+        kdf = newKdf;
         encryptionKey = newEncryptionKey;
     }
 
-    public void addEntry(String place, String login, String password) {
-        entries.add(new PasswordEntry(place, login, password));
+    // Массовый импорт: строки читаются пачками, пароли пачки шифруются параллельно и сразу затираются,
+    // а хранилище записывается одним снимком в конце. При ошибке чтения файла ничего не сохраняется.
+    public EntryTransfer.ImportResult importEntries(char[] masterPassword, EntryTransfer.RowReader reader,
+                                                    Consumer<EntryTransfer.Row> rejected) throws Exception {
+        persistLock.lock();
+        try {
+            if (encryptionKey == null) {
+                if (kdf == null) {
+                    kdf = KeyDeriver.calibrate();
+                }
+                encryptionKey = KeyDeriver.deriveKey(masterPassword, kdf);
+                long stamp = lock.writeLock();
+                try {
+                    entries.setOpener(AESEncryption.secretOpener(encryptionKey));
+                    publish();
+                } finally {
+                    lock.unlockWrite(stamp);
+                }
+            }
+
+            int imported = 0;
+            int rejectedCount = 0;
+            List<EntryTransfer.Row> batch = new ArrayList<>(Constants.TRANSFER_BATCH_SIZE);
+            try {
+                EntryTransfer.Row row;
+                do {
+                    row = reader.next();
+                    if (row != null && row.isValid()) {
+                        batch.add(row);
+                    } else if (row != null) {
+                        rejected.accept(row);
+                        rejectedCount++;
+                    }
+                    if (batch.size() == Constants.TRANSFER_BATCH_SIZE || (row == null && !batch.isEmpty())) {
+                        importBatch(batch);
+                        imported += batch.size();
+                        batch.clear();
+                    }
+                } while (row != null);
+            } finally {
+                for (EntryTransfer.Row row : batch) {
+                    row.wipe();
+                }
+            }
+
+            if (imported > 0) {
+                saveEntries(masterPassword);
+            }
+            return new EntryTransfer.ImportResult(imported, rejectedCount);
+        } finally {
+            persistLock.unlock();
+        }
     }
 
-    public void removeEntry(int index) {
-        if (index >= 0 && index < entries.size()) {
-            entries.remove(index);
+    private void importBatch(List<EntryTransfer.Row> batch) throws Exception {
+        byte[] key = encryptionKey;
+        long firstId;
+        long stamp = lock.writeLock();
+        try {
+            firstId = nextId;
+            nextId += batch.size();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+        SealedSecret[] sealed = new SealedSecret[batch.size()];
+        ParallelTasks.forEach(batch.size(), loadParallelism, i -> {
+            EntryTransfer.Row row = batch.get(i);
+            try (SecretBuffer password = SecretBuffer.of(row.password())) {
+                sealed[i] = AESEncryption.sealSecret(key, firstId + i, password);
+            } finally {
+                row.wipe();
+            }
+        });
+
+        List<PasswordEntry> added = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            EntryTransfer.Row row = batch.get(i);
+            added.add(new PasswordEntry(firstId + i, row.place(), row.login(), sealed[i], null));
+        }
+        stamp = lock.writeLock();
+        try {
+            for (PasswordEntry entry : added) {
+                entries.put(entry, -1);
+            }
+            searchIndex.addAll(added);
+            publish();
+        } finally {
+            lock.unlockWrite(stamp);
         }
     }
 
-    public PasswordEntry getEntry(int index) {
-        return (index >= 0 && index < entries.size()) ? entries.get(index) : null;
+    // Экспорт без загрузки хранилища в память: записи снимка расшифровываются пачками в пуле и сразу пишутся,
+    // изменения из журнала подставляются по id, добавленные в журнале записи идут в конце
+    public int exportEntries(char[] masterPassword, EntryTransfer.RowWriter writer) throws Exception {
+        persistLock.lock();
+        try {
+            if (!Files.exists(vaultPath) || Files.size(vaultPath) == 0) {
+                throw new IOException("Хранилище не найдено: " + vaultPath);
+            }
+
+            try (VaultFile vault = VaultFile.open(vaultPath)) {
+                byte[] key = KeyDeriver.deriveKey(masterPassword, vault.getKdf());
+                PasswordEntry[] batch = new PasswordEntry[Constants.TRANSFER_BATCH_SIZE];
+                try {
+                    if (!AESEncryption.verifyKeyCheck(key, vault.getKeyCheck())) {
+                        throw new Exception("Неверный мастер-пароль.");
+                    }
+                    Map<Long, ChangeJournal.Change> changes = new LinkedHashMap<>();
+                    for (ChangeJournal.Change change : journal.replay(key, vault.getRootMac())) {
+                        changes.put(change.id(), change);
+                    }
+
+                    int exported = 0;
+                    int count = vault.getRecordCount();
+                    for (int from = 0; from < count; from += batch.length) {
+                        int offset = from;
+                        int size = Math.min(batch.length, count - from);
+                        ParallelTasks.forEach(size, loadParallelism, i -> {
+                            batch[i] = AESEncryption.decryptRecord(key, vault.record(offset + i));
+                            batch[i].getPassword();
+                        });
+
+                        for (int i = 0; i < size; i++) {
+                            ChangeJournal.Change change = changes.remove(batch[i].getId());
+                            PasswordEntry current = change == null ? batch[i] : change.entry();
+                            if (current != null) {
+                                writer.write(current.getPlace(), current.getLogin(), current.getPassword());
+                                exported++;
+                                current.destroy();
+                            }
+                            batch[i].destroy();
+                            batch[i] = null;
+                        }
+                    }
+                    for (ChangeJournal.Change change : changes.values()) {
+                        if (change.entry() != null) {
+                            writer.write(change.entry().getPlace(), change.entry().getLogin(), change.entry().getPassword());
+                            exported++;
+                            change.entry().destroy();
+                        }
+                    }
+                    return exported;
+                } finally {
+                    for (PasswordEntry entry : batch) {
+                        if (entry != null) entry.destroy();
+                    }
+                    Arrays.fill(key, (byte) 0);
+                }
+            }
+        } finally {
+            persistLock.unlock();
+        }
     }
 
-    public void displayEntries() {
-        for (int i = 0; i < entries.size(); i++) {
-            System.out.println((i+1) + ": " + entries.get(i).getPlace() + " - " + entries.get(i).getLogin());
+    // Одна запись по месту и логину без загрузки хранилища: вывод ключа, чтение журнала и расшифровка только
+    // записей снимка с тем же тегом слепого индекса (обычно одной). Место и логин сравниваются без учёта регистра
+    // и пробелов по краям. Журнал читается целиком: изменения после снимка в индекс файла не попали.
+    // Возвращает запись с открытым паролем или null,
+    // если записи нет; при нескольких подходящих — первую в порядке файла. Вызывающий код уничтожает запись.
+    public PasswordEntry get(char[] masterPassword, String place, String login) throws Exception {
+        persistLock.lock();
+        long started = Metrics.start();
+        try {
+            if (!Files.exists(vaultPath) || Files.size(vaultPath) == 0) {
+                throw new IOException("Хранилище не найдено: " + vaultPath);
+            }
+
+            try (VaultFile vault = VaultFile.open(vaultPath)) {
+                byte[] key = KeyDeriver.deriveKey(masterPassword, vault.getKdf());
+                Map<Long, ChangeJournal.Change> changes = new LinkedHashMap<>();
+                PasswordEntry found = null;
+                try {
+                    if (!AESEncryption.verifyKeyCheck(key, vault.getKeyCheck())) {
+                        throw new Exception("Неверный мастер-пароль.");
+                    }
+                    for (ChangeJournal.Change change : journal.replay(key, vault.getRootMac())) {
+                        ChangeJournal.Change previous = changes.put(change.id(), change);
+                        if (previous != null && previous.entry() != null) previous.entry().destroy();
+                    }
+
+                    int[] candidates;
+                    byte[] indexKey = BlindIndex.key(key);
+                    try {
+                        candidates = vault.findRecords(BlindIndex.tag(indexKey, place, login));
+                    } finally {
+                        Arrays.fill(indexKey, (byte) 0);
+                    }
+                    Arrays.sort(candidates);
+
+                    for (int i = 0; i < candidates.length && found == null; i++) {
+                        PasswordEntry record = AESEncryption.decryptRecord(key, vault.record(candidates[i]));
+                        ChangeJournal.Change change = changes.remove(record.getId());
+                        PasswordEntry current = change == null ? record : change.entry();
+                        if (current != record) record.destroy();
+                        if (current != null && BlindIndex.matches(current, place, login)) {
+                            found = current;
+                        } else if (current != null) {
+                            current.destroy();
+                        }
+                    }
+                    // Записи, добавленные или изменённые после снимка
+                    for (ChangeJournal.Change change : changes.values()) {
+                        if (found == null && change.entry() != null && BlindIndex.matches(change.entry(), place, login)) {
+                            found = change.entry();
+                        }
+                    }
+                    // Пароль открывается, пока ключ не затёрт
+                    if (found != null) found.getPassword();
+                    return found;
+                } finally {
+                    for (ChangeJournal.Change change : changes.values()) {
+                        PasswordEntry entry = change.entry();
+                        if (entry != null && entry != found) entry.destroy();
+                    }
+                    Arrays.fill(key, (byte) 0);
+                }
+            }
+        } finally {
+            Metrics.stop(Metrics.Operation.LOOKUP, started, 0);
+            persistLock.unlock();
+        }
+    }
+
+    // Вложения записи с номером index (с 0), см. AttachmentStore. Содержимое читается и пишется потоком
+    // по сегментам, без загрузки файла в память; список читает только заголовки файлов вложений
+    public List<AttachmentStore.Attachment> listAttachments(int index) throws Exception {
+        persistLock.lock();
+        try {
+            return attachments.list(requireKey(), entryIdAt(index));
+        } finally {
+            persistLock.unlock();
+        }
+    }
+
+    public AttachmentStore.Attachment addAttachment(int index, String name, InputStream content) throws Exception {
+        persistLock.lock();
+        try {
+            return attachments.add(requireKey(), entryIdAt(index), name, content);
+        } finally {
+            persistLock.unlock();
+        }
+    }
+
+    public long readAttachment(AttachmentStore.Attachment attachment, OutputStream out) throws Exception {
+        persistLock.lock();
+        try {
+            return attachments.read(requireKey(), attachment, out);
+        } finally {
+            persistLock.unlock();
+        }
+    }
+
+    public void removeAttachment(AttachmentStore.Attachment attachment) throws IOException {
+        persistLock.lock();
+        try {
+            attachments.remove(attachment);
+        } finally {
+            persistLock.unlock();
+        }
+    }
+
+    private byte[] requireKey() {
+        if (encryptionKey == null) {
+            throw new IllegalStateException("Хранилище заблокировано или ещё не сохранено.");
+        }
+        return encryptionKey;
+    }
+
+    private long entryIdAt(int index) {
+        PasswordEntry entry = getEntry(index);
+        if (entry == null) {
+            throw new IllegalArgumentException("Неверный номер записи.");
+        }
+        return entry.getId();
+    }
+
+    // Затирает расшифрованные пароли и ключ хранилища; несохранённые изменения теряются
+    public void lock() {
+        persistLock.lock();
+        try {
+            long stamp = lock.writeLock();
+            try {
+                entries.clear();
+                entries.setOpener(null);
+                searchIndex.clear();
+                pendingChanges.clear();
+                publish();
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            unreadable = List.of();
+            if (encryptionKey != null) {
+                Arrays.fill(encryptionKey, (byte) 0);
+                encryptionKey = null;
+            }
+            kdf = null;
+        } finally {
+            persistLock.unlock();
+        }
+    }
+
+    // Текущий файл хранилища, если его записи можно копировать без перешифрования
+    private VaultFile openSnapshot() throws Exception {
+        if (!Files.exists(vaultPath)) return null;
+
+        VaultFile vault = VaultFile.open(vaultPath);
+        if (!AESEncryption.verifyKeyCheck(encryptionKey, vault.getKeyCheck())) {
+            vault.close();
+            return null;
+        }
+        return vault;
+    }
+
+    // Записи текстового хранилища переходят в хранилище записей; поверх применяется журнал и строится индекс поиска
+    private void install(PasswordEntry[] loaded, List<ChangeJournal.Change> changes) {
+        long stamp = lock.writeLock();
+        try {
+            entries.clear();
+            entries.setOpener(AESEncryption.secretOpener(encryptionKey));
+            assignMissingIds(loaded);
+            for (PasswordEntry entry : loaded) {
+                if (entry != null) {
+                    entries.put(entry, -1);
+                }
+            }
+            entries.trimToSize();
+            applyJournal(changes);
+            searchIndex.rebuild(entries);
+            publish();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // После сохранения проверяются только пути от перезаписанных листьев к корню: записи читаются
+    // обратно с диска, остальные листья скопированы из уже проверенного файла
+    private void verifyRewritten(MerkleTree tree, List<Integer> rewritten) throws Exception {
+        if (rewritten.isEmpty()) return;
+
+        try (VaultFile vault = VaultFile.open(vaultPath)) {
+            for (int index : rewritten) {
+                if (!tree.verify(index, MerkleTree.leafHash(vault.record(index)))) {
+                    throw new IOException("Запись " + (index + 1) + " не совпадает с деревом Меркла после сохранения.");
+                }
+            }
+        }
+    }
+
+    // Полная проверка файла без расшифровки записей: HMAC корня дерева, построенного по таблице листьев,
+    // затем параллельное сравнение хэша каждой записи с её листом
+    public IntegrityReport verifyIntegrity() throws Exception {
+        persistLock.lock();
+        try {
+            if (!Files.exists(vaultPath) || Files.size(vaultPath) == 0) {
+                return new IntegrityReport(true, List.of());
+            }
+            if (encryptionKey == null) {
+                throw new IllegalStateException("Хранилище заблокировано.");
+            }
+
+            try (VaultFile vault = VaultFile.open(vaultPath)) {
+                byte[] leaves = vault.getLeaves();
+                boolean rootAuthentic = MerkleTree.build(leaves.clone(), loadParallelism)
+                        .verifyRoot(encryptionKey, vault.getRootMac());
+
+                int count = vault.getRecordCount();
+                boolean[] tampered = new boolean[count];
+                ParallelTasks.forEach(count, loadParallelism, i -> {
+                    byte[] leaf = MerkleTree.leafHash(vault.record(i));
+                    tampered[i] = !Arrays.equals(leaf, 0, MerkleTree.HASH_LENGTH,
+                            leaves, i * MerkleTree.HASH_LENGTH, (i + 1) * MerkleTree.HASH_LENGTH);
+                });
+
+                List<Long> tamperedRecords = new ArrayList<>();
+                for (int i = 0; i < count; i++) {
+                    if (tampered[i]) {
+                        ByteBuffer record = vault.record(i);
+                        tamperedRecords.add(record.remaining() >= Long.BYTES ? record.getLong(0) : -(i + 1L));
+                    }
+                }
+                return new IntegrityReport(rootAuthentic, tamperedRecords);
+            }
+        } finally {
+            persistLock.unlock();
         }
     }
 
-    public void updateEntry(int index, String newPlace, String newLogin, String newPassword) {
-        if (index < 0 || index >= entries.size()) {
-            throw new IllegalArgumentException("Неверный индекс: " + index);
+    // Проверка всех паролей по локальной базе утечек: SHA-1 пароля считается от копии, которая затирается сразу,
+    // записи проверяются параллельно. Записи, удалённые во время проверки, пропускаются.
+    // Результат упорядочен по числу вхождений, самые распространённые пароли первыми.
+    public List<BreachFinding> auditBreaches(BreachCorpus corpus) throws Exception {
+        List<PasswordEntry> snapshot = listEntries();
+        long[] occurrences = new long[snapshot.size()];
+        ParallelTasks.forEach(snapshot.size(), loadParallelism, i -> {
+            byte[] hash;
+            try {
+                hash = readPassword(snapshot.get(i).getId(), password -> CryptoEngine.digest("SHA-1", password));
+            } catch (IllegalArgumentException e) {
+                return;
+            }
+            occurrences[i] = corpus.lookup(hash);
+        });
+
+        List<BreachFinding> findings = new ArrayList<>();
+        for (int i = 0; i < occurrences.length; i++) {
+            if (occurrences[i] > 0) {
+                PasswordEntry entry = snapshot.get(i);
+                findings.add(new BreachFinding(entry.getId(), entry.getPlace(), entry.getLogin(), occurrences[i]));
+            }
         }
+        findings.sort((a, b) -> Long.compare(b.occurrences(), a.occurrences()));
+        return findings;
+    }
 
-        PasswordEntry oldEntry = entries.get(index);
+    // Повторно используемые и похожие пароли (см. PasswordReuse). Пароли открываются параллельно по одному,
+    // от каждого остаётся только отпечаток; записи, удалённые во время проверки, пропускаются.
+    public PasswordReuse.Report auditReuse() throws Exception {
+        List<PasswordEntry> snapshot = listEntries();
+        PasswordReuse.Fingerprint[] fingerprints = new PasswordReuse.Fingerprint[snapshot.size()];
+        ParallelTasks.forEach(snapshot.size(), loadParallelism, i -> {
+            try {
+                fingerprints[i] = readPassword(snapshot.get(i).getId(), PasswordReuse::fingerprint);
+            } catch (IllegalArgumentException e) {
+                // Запись удалена
+            }
+        });
+        return PasswordReuse.analyze(snapshot, fingerprints);
+    }
+
+    private Path legacyVaultPath() {
+        return vaultPath.resolveSibling(Constants.LEGACY_FILE_NAME);
+    }
+
+    private static Path withSuffix(Path path, String suffix) {
+        return path.resolveSibling(path.getFileName() + suffix);
+    }
 
-        String place = newPlace != null && !newPlace.isEmpty() ? newPlace : oldEntry.getPlace();
-        String login = newLogin != null && !newLogin.isEmpty() ? newLogin : oldEntry.getLogin();
-        String password = newPassword != null && !newPassword.isEmpty() ? newPassword : oldEntry.getPassword();
+    @FunctionalInterface
+    private interface RecordDecryptor {
+        PasswordEntry decrypt(int index) throws Exception;
+    }
 
-        PasswordEntry newEntry = new PasswordEntry(
-                place.isEmpty() ? Constants.DEFAULT_PLACE : place,
-                login.isEmpty() ? Constants.DEFAULT_LOGIN : login,
-                password.isEmpty() ? Constants.DEFAULT_PASSWORD : password
-        );
+    public void setLoadParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Степень параллелизма должна быть положительной: " + parallelism);
+        }
+        this.loadParallelism = parallelism;
+    }
 
-        newEntry.setHashPlace(oldEntry.getHashPlace());
-        newEntry.setHashLogin(oldEntry.getHashLogin());
-        newEntry.setHashPassword(oldEntry.getHashPassword());
+    // Записи независимы, поэтому расшифровываются частями в отдельном пуле; порядок сохраняется.
+    // На месте записи, которую не удалось расшифровать, остаётся null, а в errors — причина
+    private PasswordEntry[] decryptRecords(int count, RecordDecryptor decryptor, Exception[] errors) throws Exception {
+        PasswordEntry[] results = new PasswordEntry[count];
+        ParallelTasks.forEach(count, loadParallelism, i -> {
+            try {
+                results[i] = decryptor.decrypt(i);
+                if (results[i] == null) {
+                    errors[i] = new IOException("Некорректный формат записи.");
+                }
+            } catch (Exception e) {
+                errors[i] = e;
+            }
+        });
+        return results;
+    }
 
-        entries.set(index, newEntry);
+    // Записи, которые не удалось расшифровать при последней загрузке (см. UnreadableRecord)
+    public List<UnreadableRecord> getUnreadableRecords() {
+        return unreadable;
     }
 
-    public void verifyIntegrity() {
-        boolean hasErrors = false;
+    private void assignMissingIds(PasswordEntry[] loaded) {
+        for (PasswordEntry entry : loaded) {
+            if (entry != null) {
+                nextId = Math.max(nextId, entry.getId() + 1);
+            }
+        }
+        for (int i = 0; i < loaded.length; i++) {
+            PasswordEntry entry = loaded[i];
+            if (entry != null && entry.getId() == 0) {
+                loaded[i] = new PasswordEntry(nextId++, entry.getPlace(), entry.getLogin(), entry.getPassword());
+            }
+        }
+    }
 
-        for (PasswordEntry entry : entries) {
-            String currentPlaceHash = hash(entry.getPlace(), "SHA3-256");
-            String currentLoginHash = hash(entry.getLogin(), "SHA3-256");
-            String currentPasswordHash = hash(entry.getPassword(), "SHA3-256");
+    // Применяет журнал поверх снимка; добавление и изменение идемпотентны по id
+    private void applyJournal(List<ChangeJournal.Change> changes) {
+        journalSize = changes.size();
+        if (changes.isEmpty()) return;
 
-            if (!entry.getHashPlace().equals(currentPlaceHash)) {
-                System.err.println("Хэш места не совпадает для записи: " + entry.getPlace());
-                hasErrors = true;
+        // Изменённая запись остаётся на своём месте, новая добавляется в конец
+        for (ChangeJournal.Change change : changes) {
+            if (change.operation() == ChangeJournal.Operation.DELETE) {
+                entries.remove(change.id());
+            } else {
+                entries.put(change.entry(), -1);
             }
-            if (!entry.getHashLogin().equals(currentLoginHash)) {
-                System.err.println("Хэш логина не совпадает для записи: " + entry.getLogin());
-                hasErrors = true;
+            nextId = Math.max(nextId, change.id() + 1);
+        }
+    }
+
+    // Возвращает id новой записи
+    public long addEntry(String place, String login, SecretBuffer password) {
+        long stamp = lock.writeLock();
+        try {
+            PasswordEntry entry = new PasswordEntry(nextId++, place, login, password);
+            entries.put(entry, -1);
+            searchIndex.add(entry);
+            pendingChanges.add(ChangeJournal.Change.of(ChangeJournal.Operation.ADD, entry));
+            publish();
+            return entry.getId();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void removeEntry(int index) {
+        long stamp = lock.writeLock();
+        try {
+            PasswordEntry removed = entries.getAt(index);
+            if (removed != null) {
+                searchIndex.remove(removed);
+                // Несохранённые изменения этой записи больше не нужны, а её пароль затирается
+                pendingChanges.removeIf(change -> change.id() == removed.getId());
+                pendingChanges.add(ChangeJournal.Change.delete(removed.getId()));
+                entries.remove(removed.getId());
+                publish();
             }
-            if (!entry.getHashPassword().equals(currentPasswordHash)) {
-                System.err.println("Хэш пароля не совпадает для записи: " + entry.getPassword());
-                hasErrors = true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Буфер пароля представления действителен, пока запись не изменят, не удалят или не сохранят; для чтения пароля
+    // параллельно с писателями есть readPassword
+    public PasswordEntry getEntry(int index) {
+        return view.entries().getAt(index);
+    }
+
+    @FunctionalInterface
+    public interface SecretReader<T> {
+        T read(ByteBuffer password) throws Exception;
+    }
+
+    // Пароль копируется во временный буфер из опубликованной копии записей, без блокировки. Если писатель
+    // за это время заменил копию и затёр прежний буфер или сменил ключ, копирование повторяется по новой.
+    // Копию параллельное изменение записи не затрёт; после чтения она затирается.
+    public <T> T readPassword(long id, SecretReader<T> reader) throws Exception {
+        SecretBuffer password;
+        for (ReadView current = view; ; current = view) {
+            try {
+                password = current.entries().copyPassword(id);
+                break;
+            } catch (Exception e) {
+                if (view == current) throw e;
             }
         }
+        try (SecretBuffer copy = password) {
+            return reader.read(copy.view());
+        }
+    }
+
+    public List<PasswordEntry> search(String query, int limit) {
+        return view.index().search(query, limit);
+    }
+
+    public List<PasswordEntry> findExact(String term) {
+        return view.index().findExact(term);
+    }
+
+    public List<PasswordEntry> findByPrefix(String prefix, int limit) {
+        return view.index().findByPrefix(prefix, limit);
+    }
+
+    // Согласованный список всех записей на момент вызова
+    public List<PasswordEntry> listEntries() {
+        EntryStore current = view.entries();
+        List<PasswordEntry> result = new ArrayList<>(current.size());
+        for (PasswordEntry entry : current) {
+            result.add(entry);
+        }
+        return result;
+    }
 
-        if (!hasErrors) {
-            System.out.println("Все хэши совпадают.");
+    public int indexOf(PasswordEntry entry) {
+        return view.entries().positionOf(entry.getId());
+    }
+
+    public void displayEntries() {
+        int position = 0;
+        for (PasswordEntry entry : listEntries()) {
+            System.out.println((++position) + ": " + entry.getPlace() + " - " + entry.getLogin());
         }
     }
 
-    private String hash(String data, String algorithm) {
+    public void updateEntry(int index, String newPlace, String newLogin, SecretBuffer newPassword) {
+        long stamp = lock.writeLock();
         try {
-            MessageDigest digest = MessageDigest.getInstance(algorithm);
-            byte[] hashBytes = digest.digest(data.getBytes(StandardCharsets.UTF_8));
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : hashBytes) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) hexString.append('0');
-                hexString.append(hex);
+            if (index < 0 || index >= entries.size()) {
+                throw new IllegalArgumentException("Неверный индекс: " + index);
             }
-            return hexString.toString();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("Ошибка хэширования с алгоритмом " + algorithm, e);
+
+            PasswordEntry oldEntry = entries.getAt(index);
+
+            String place = newPlace != null && !newPlace.isEmpty() ? newPlace : oldEntry.getPlace();
+            String login = newLogin != null && !newLogin.isEmpty() ? newLogin : oldEntry.getLogin();
+
+            // Без нового пароля запись сохраняет прежний, не расшифровывая его
+            PasswordEntry newEntry;
+            if (newPassword != null && !newPassword.isEmpty()) {
+                newEntry = new PasswordEntry(oldEntry.getId(), place, login, newPassword);
+                pendingChanges.removeIf(change -> change.id() == oldEntry.getId());
+            } else {
+                newEntry = oldEntry.withDetails(place, login);
+            }
+
+            // Прежний пароль затирает хранилище при замене записи
+            entries.put(newEntry, -1);
+            searchIndex.remove(oldEntry);
+            searchIndex.add(newEntry);
+            pendingChanges.add(ChangeJournal.Change.of(ChangeJournal.Operation.UPDATE, newEntry));
+            publish();
+        } finally {
+            lock.unlockWrite(stamp);
         }
     }
 
     public int getEntriesCount() {
-        return entries.size();
+        return view.entries().size();
+    }
+
+    // Вызывается писателем под блокировкой записи после изменения записей, индекса или ключа. Пароли заменённых
+    // и удалённых записей затираются, когда новая копия уже опубликована: читатель, взявший прежнюю,
+    // повторяет чтение по новой (readPassword)
+    private void publish() {
+        EntryStore snapshot = entries.snapshot();
+        view = new ReadView(snapshot, searchIndex.snapshot(snapshot::get));
+        entries.destroyRetired();
+    }
+
+    private <T> T readLocked(Supplier<T> reader) {
+        long stamp = lock.readLock();
+        try {
+            return reader.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
     }
 }
\ No newline at end of file
@@ -1,17 +1,30 @@
 package main.java.PasswordManager;
 
+import java.io.Console;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Logger;
 
 public class PasswordManagerUI {
     private static final Scanner scanner = new Scanner(System.in);
-    private static final Logger logger = Logger.getLogger(PasswordManagerUI.class.getName());
-    private static String masterPassword;
+    private static char[] masterPassword;
     private final PasswordManager manager;
+    private WriteBehindPersister persister;
     private boolean isLoggedIn = false;
+    // Записи загружаются в фоне после проверки пароля; просмотр и поиск работают сразу, остальное ждёт загрузки
+    private CompletableFuture<Boolean> loading = CompletableFuture.completedFuture(true);
+    private volatile int expectedEntries;
+    private boolean unreadableReported = false;
 
     public PasswordManagerUI(PasswordManager manager) {
         this.manager = manager;
@@ -24,25 +37,31 @@ public class PasswordManagerUI {
 
     private void initializeApplication() {
         for (int attempt = 0; attempt < Constants.MAX_ATTEMPTS; attempt++) {
-            if (attempt == 0) {
-                System.out.print("Введите мастер-пароль: ");
-            } else {
+            String prompt = "Введите мастер-пароль: ";
+            if (attempt > 0) {
                 System.out.printf("Ошибка: Проверьте пароль. У вас осталось %d попыток.\n", Constants.MAX_ATTEMPTS - attempt);
-                System.out.print("Повторите ввод: ");
+                prompt = "Повторите ввод: ";
             }
 
-            String inputPass = scanner.nextLine();
+            if (attempt == 0) {
+                StartupReport.mark(StartupReport.Mark.PROMPT);
+            }
+            char[] inputPass = readSecret(prompt);
 
-            if (inputPass.isEmpty()) {
+            if (inputPass.length == 0) {
                 System.out.println("\nМастер-пароль не может быть пустым.");
                 continue;
             }
 
-            if (manager.loadEntries(inputPass)) {
+            if (unlock(inputPass)) {
                 isLoggedIn = true;
                 masterPassword = inputPass;
+                // Изменения сохраняются в фоне; при завершении по Ctrl+C оставшиеся дописываются в хуке
+                persister = new WriteBehindPersister(manager, () -> masterPassword, Constants.PERSIST_WINDOW_MILLIS);
+                Runtime.getRuntime().addShutdownHook(new Thread(persister::close, "vault-persister-flush"));
                 return;
             } else {
+                Arrays.fill(inputPass, '\0');
                 if (attempt == Constants.MAX_ATTEMPTS - 1) {
                     System.out.println("Попытки истекли.");
                     return;
@@ -51,6 +70,59 @@ public class PasswordManagerUI {
         }
     }
 
+    // Загрузка запускается в отдельном потоке; метод возвращается, как только пароль проверен
+    private boolean unlock(char[] password) {
+        CompletableFuture<Boolean> unlocked = new CompletableFuture<>();
+        CompletableFuture<Boolean> done = new CompletableFuture<>();
+        StartupReport.mark(StartupReport.Mark.UNLOCK_STARTED);
+        Thread loader = new Thread(() -> {
+            boolean loaded = manager.loadEntries(password, new PasswordManager.LoadListener() {
+                @Override
+                public void unlocked(int total) {
+                    StartupReport.mark(StartupReport.Mark.UNLOCKED);
+                    expectedEntries = total;
+                    unlocked.complete(true);
+                }
+
+                @Override
+                public void loaded(PasswordEntry entry) {
+                }
+            });
+            if (loaded) {
+                StartupReport.mark(StartupReport.Mark.LOADED);
+            }
+            unlocked.complete(loaded);
+            done.complete(loaded);
+        }, "vault-loader");
+        loader.setDaemon(true);
+        loader.start();
+
+        loading = done;
+        return unlocked.join();
+    }
+
+    private boolean awaitLoaded() {
+        if (!loading.isDone()) {
+            System.out.println("\nДождитесь окончания загрузки записей...");
+        }
+        if (!loading.join()) {
+            System.out.println("Хранилище загружено не полностью, изменения недоступны.");
+            return false;
+        }
+        return true;
+    }
+
+    private void printLoadingProgress() {
+        if (!loading.isDone()) {
+            System.out.printf("(загружено %d из %d записей, загрузка продолжается)%n",
+                    manager.getEntriesCount(), expectedEntries);
+        }
+    }
+
+    private boolean hasEntriesOrLoading() {
+        return manager.getEntriesCount() > 0 || !loading.isDone();
+    }
+
     private void showMainMenu() {
         if (!isLoggedIn) {
             System.out.println("Доступ запрещён. Неверный мастер-пароль.");
@@ -58,8 +130,16 @@ public class PasswordManagerUI {
         }
 
         while (true) {
+            if (loading.isDone()) {
+                reportUnreadableRecords();
+            }
             printMenu();
             int choice = getMenuChoice();
+            // Просмотр и поиск работают по уже загруженным записям, остальные действия ждут окончания загрузки
+            if (choice != 3 && choice != 4 && choice != 8 && !awaitLoaded()) {
+                exitProgram();
+                return;
+            }
             switch (choice) {
                 case 1 -> addEntry();
                 case 2 -> deleteEntry();
@@ -68,7 +148,10 @@ public class PasswordManagerUI {
                 case 5 -> editEntry();
                 case 6 -> changeMasterPassword();
                 case 7 -> verifyDataIntegrity();
-                case 8 -> {
+                case 8 -> searchEntries();
+                case 9 -> auditPasswordReuse();
+                case 10 -> manageAttachments();
+                case 11 -> {
                     exitProgram();
                     return;
                 }
@@ -77,6 +160,27 @@ public class PasswordManagerUI {
         }
     }
 
+    // Записи, которые не удалось расшифровать, не показываются в списке, но и не теряются; сообщается один раз
+    private void reportUnreadableRecords() {
+        if (unreadableReported) return;
+        unreadableReported = true;
+        List<PasswordManager.UnreadableRecord> unreadable = manager.getUnreadableRecords();
+        if (unreadable.isEmpty()) return;
+
+        System.out.println("\nВнимание: не удалось расшифровать записей: " + unreadable.size());
+        for (PasswordManager.UnreadableRecord record : unreadable) {
+            System.out.println("  запись " + (record.position() + 1)
+                    + (record.id() >= 0 ? " (id " + record.id() + ")" : "") + ": " + record.reason());
+        }
+        if (unreadable.get(0).kept()) {
+            System.out.println("Эти записи остаются в файле хранилища без изменений и переносятся при сохранении.");
+            System.out.println("Смена мастер-пароля недоступна, пока они есть.");
+        } else {
+            System.out.println("Эти строки не перенесены в новый формат и остались в резервной копии "
+                    + Constants.LEGACY_FILE_NAME + ".bak.");
+        }
+    }
+
     public void verifyDataIntegrity() {
         if (manager.getEntriesCount() == 0) {
             System.out.println("\nНет записей для проверки целостности.");
@@ -84,8 +188,17 @@ public class PasswordManagerUI {
         }
 
         try {
-            manager.verifyIntegrity();
-            System.out.println("\nЦелостность данных подтверждена.");
+            PasswordManager.IntegrityReport report = manager.verifyIntegrity();
+            if (report.isIntact()) {
+                System.out.println("\nЦелостность данных подтверждена.");
+                return;
+            }
+            if (!report.rootAuthentic()) {
+                System.err.println("\nПодпись корня дерева Меркла не совпадает: заголовок файла изменён.");
+            }
+            for (long id : report.tamperedRecords()) {
+                System.err.println("Запись с id " + id + " изменена вне программы.");
+            }
         } catch (Exception e) {
             System.err.println("\nОшибка при проверке целостности: " + e.getMessage());
         }
@@ -100,7 +213,10 @@ public class PasswordManagerUI {
         System.out.println("5. Редактировать запись");
         System.out.println("6. Изменить мастер-пароль");
         System.out.println("7. Проверить целостность данных");
-        System.out.println("8. Выйти");
+        System.out.println("8. Поиск записей");
+        System.out.println("9. Найти повторяющиеся пароли");
+        System.out.println("10. Вложения записи");
+        System.out.println("11. Выйти");
         System.out.print("\nВыберите действие: ");
     }
 
@@ -108,28 +224,54 @@ public class PasswordManagerUI {
         try {
             return Integer.parseInt(scanner.nextLine());
         } catch (NumberFormatException e) {
-            System.out.println("\nПожалуйста, введите число от 1 до 7.");
+            System.out.println("\nПожалуйста, введите число от 1 до 11.");
             return 0;
         }
     }
 
-    private record EntryData(String place, String login, String password) {}
+    private record EntryData(String place, String login, char[] password) {}
 
     private EntryData readPasswordEntry() {
         System.out.print("Место: ");
         var place = scanner.nextLine().trim();
         System.out.print("Логин: ");
         var login = scanner.nextLine().trim();
-        System.out.print("Пароль: ");
-        var password = scanner.nextLine().trim();
+        var password = trim(readSecret("Пароль: "));
 
         place = place.isEmpty() ? Constants.DEFAULT_PLACE : place;
         login = login.isEmpty() ? Constants.DEFAULT_LOGIN : login;
-        password = password.isEmpty() ? Constants.DEFAULT_PASSWORD : password;
+        password = password.length == 0 ? Constants.DEFAULT_PASSWORD.toCharArray() : password;
 
         return new EntryData(place, login, password);
     }
 
+    // Секреты читаются в массив символов: с консоли без эха, при перенаправленном вводе — через Scanner
+    static char[] readSecret(String prompt) {
+        Console console = System.console();
+        if (console != null) {
+            char[] secret = console.readPassword("%s", prompt);
+            return secret != null ? secret : new char[0];
+        }
+        System.out.print(prompt);
+        return scanner.hasNextLine() ? scanner.nextLine().toCharArray() : new char[0];
+    }
+
+    // java.util.logging нужен только при ошибке; его инициализация заметно задерживает первое приглашение
+    private static Logger logger() {
+        return Logger.getLogger(PasswordManagerUI.class.getName());
+    }
+
+    // Аналог String.trim() для массива; исходный массив затирается
+    private static char[] trim(char[] chars) {
+        int from = 0;
+        int to = chars.length;
+        while (from < to && chars[from] <= ' ') from++;
+        while (to > from && chars[to - 1] <= ' ') to--;
+        char[] trimmed = Arrays.copyOfRange(chars, from, to);
+        Arrays.fill(chars, '\0');
+        return trimmed;
+    }
+
     private int validateIndex(String prompt) {
         System.out.print(prompt);
         try {
@@ -146,7 +288,8 @@ public class PasswordManagerUI {
         System.out.println("\nДобавление новой записи:");
         System.out.println("Место: " + data.place());
         System.out.println("Логин: " + data.login());
-        System.out.println("Пароль: " + data.password());
+        System.out.print("Пароль: ");
+        System.out.println(data.password());
 
         System.out.print("\nПодтвердить? (Y/N): ");
         String choice = scanner.nextLine().trim().toUpperCase();
@@ -156,16 +299,14 @@ public class PasswordManagerUI {
             choice = scanner.nextLine().trim().toUpperCase();
         }
 
+        SecretBuffer password = SecretBuffer.of(data.password());
+        Arrays.fill(data.password(), '\0');
         if (choice.equals("Y")) {
-            manager.addEntry(data.place(), data.login(), data.password());
-            try {
-                manager.saveEntries(masterPassword);
-                System.out.println("\nЗапись добавлена.");
-            } catch (Exception ex) {
-                System.out.println("Ошибка сохранения.");
-                logger.severe("Не удалось сохранить запись: " + ex.getMessage());
-            }
+            manager.addEntry(data.place(), data.login(), password);
+            persister.changed();
+            System.out.println("\nЗапись добавлена.");
         } else {
+            password.destroy();
             System.out.println("Добавление отменено.");
         }
     }
@@ -201,11 +342,11 @@ public class PasswordManagerUI {
         if (choice.equals("Y")) {
             try {
                 manager.removeEntry(index-1);
-                manager.saveEntries(masterPassword);
+                persister.changed();
                 System.out.println("\nЗапись удалена.");
             } catch (Exception ex) {
                 System.out.println("\nОшибка при удалении.");
-                logger.severe("Не удалось удалить запись: " + ex.getMessage());
+                logger().severe("Не удалось удалить запись: " + ex.getMessage());
             }
         } else {
             System.out.println("Удаление отменено.");
@@ -213,7 +354,7 @@ public class PasswordManagerUI {
     }
 
     private void displayAllEntries() {
-        if (manager.getEntriesCount() == 0) {
+        if (!hasEntriesOrLoading()) {
             System.out.println("\nНет записей для отображения.");
             return;
         }
@@ -221,17 +362,19 @@ public class PasswordManagerUI {
         System.out.println("-".repeat(20));
         System.out.println("Все записи:");
         manager.displayEntries();
+        printLoadingProgress();
         System.out.println("-".repeat(20));
     }
 
     private void viewSpecificEntry() {
-        if (manager.getEntriesCount() == 0) {
+        if (!hasEntriesOrLoading()) {
             System.out.println("\nНет записей для просмотра.");
             return;
         }
 
         System.out.println("\n");
         manager.displayEntries();
+        printLoadingProgress();
         int index = validateIndex("\nВведите номер записи для просмотра: ");
         if (index < 0) return;
 
@@ -240,15 +383,209 @@ public class PasswordManagerUI {
             System.out.println("-".repeat(20));
             System.out.println("Место: " + entry.getPlace());
             System.out.println("Логин: " + entry.getLogin());
-            System.out.println("Пароль: " +
-                    (entry.getPassword() == null || entry.getPassword().isEmpty()
-                            ? "[не указан]" : entry.getPassword()));
+            // Пароль выводится из временного массива, который сразу затирается. Он читается через readPassword:
+            // после фонового сохранения открытый буфер записи затирается, а пароль расшифровывается заново
+            char[] password;
+            try {
+                password = manager.readPassword(entry.getId(), SecretBuffer::toChars);
+            } catch (Exception e) {
+                System.err.println("\nОшибка при чтении пароля: " + e.getMessage());
+                return;
+            }
+            System.out.print("Пароль: ");
+            if (password.length == 0) {
+                System.out.println("[не указан]");
+            } else {
+                System.out.println(password);
+            }
+            Arrays.fill(password, '\0');
             System.out.println("-".repeat(20));
         } else {
             System.out.println("Неверный номер записи.");
         }
     }
 
+    private void searchEntries() {
+        if (!hasEntriesOrLoading()) {
+            System.out.println("\nНет записей для поиска.");
+            return;
+        }
+
+        System.out.print("\nПоиск (место или логин): ");
+        String query = scanner.nextLine().trim();
+        if (query.isEmpty()) {
+            System.out.println("Пустой запрос.");
+            return;
+        }
+
+        var results = manager.search(query, Constants.SEARCH_RESULT_LIMIT);
+        if (results.isEmpty()) {
+            System.out.println("Ничего не найдено.");
+            printLoadingProgress();
+            return;
+        }
+
+        System.out.println("-".repeat(20));
+        for (var entry : results) {
+            System.out.println((manager.indexOf(entry) + 1) + ": " + entry.getPlace() + " - " + entry.getLogin());
+        }
+        printLoadingProgress();
+        System.out.println("-".repeat(20));
+    }
+
+    private void auditPasswordReuse() {
+        if (manager.getEntriesCount() < 2) {
+            System.out.println("\nНедостаточно записей для сравнения паролей.");
+            return;
+        }
+
+        try {
+            PasswordReuse.Report report = manager.auditReuse();
+            if (report.isEmpty()) {
+                System.out.println("\nПовторяющихся и похожих паролей не найдено.");
+                return;
+            }
+            printReuseGroups("Одинаковые пароли", report.reused());
+            printReuseGroups("Похожие пароли", report.similar());
+        } catch (Exception e) {
+            System.err.println("\nОшибка при проверке паролей: " + e.getMessage());
+        }
+    }
+
+    private void printReuseGroups(String title, List<PasswordReuse.Group> groups) {
+        if (groups.isEmpty()) return;
+
+        System.out.println("\n" + title + " (групп: " + groups.size() + "):");
+        System.out.println("-".repeat(20));
+        for (var group : groups.subList(0, Math.min(groups.size(), Constants.REUSE_REPORT_LIMIT))) {
+            System.out.printf("%d записей, сходство %.0f%%:%n", group.entries().size(), group.similarity() * 100);
+            for (var entry : group.entries().subList(0, Math.min(group.entries().size(), Constants.REUSE_REPORT_LIMIT))) {
+                System.out.println("  " + (manager.indexOf(entry) + 1) + ": " + entry.getPlace() + " - " + entry.getLogin());
+            }
+            if (group.entries().size() > Constants.REUSE_REPORT_LIMIT) {
+                System.out.println("  ... и ещё записей: " + (group.entries().size() - Constants.REUSE_REPORT_LIMIT));
+            }
+        }
+        if (groups.size() > Constants.REUSE_REPORT_LIMIT) {
+            System.out.println("... и ещё групп: " + (groups.size() - Constants.REUSE_REPORT_LIMIT));
+        }
+        System.out.println("-".repeat(20));
+    }
+
+    // Файлы, прикреплённые к записи (ключи SSH, хранилища ключей, коды восстановления), см. AttachmentStore
+    private void manageAttachments() {
+        if (manager.getEntriesCount() == 0) {
+            System.out.println("\nНет записей для вложений.");
+            return;
+        }
+
+        manager.displayEntries();
+        int index = validateIndex("\nВведите номер записи: ");
+        if (index < 0) return;
+
+        var entry = manager.getEntry(index - 1);
+        if (entry == null) {
+            System.out.println("\nНеверный номер записи.");
+            return;
+        }
+
+        try {
+            // Вложения шифруются ключом хранилища: новая запись сначала записывается на диск
+            persister.flush();
+            while (true) {
+                List<AttachmentStore.Attachment> attachments = manager.listAttachments(index - 1);
+                System.out.println("\nВложения записи " + entry.getPlace() + " - " + entry.getLogin() + ":");
+                if (attachments.isEmpty()) {
+                    System.out.println("  нет");
+                }
+                for (int i = 0; i < attachments.size(); i++) {
+                    System.out.printf("  %d. %s (%s)%n", i + 1, attachments.get(i).name(), formatSize(attachments.get(i).size()));
+                }
+                System.out.println("1. Добавить файл");
+                System.out.println("2. Сохранить вложение в файл");
+                System.out.println("3. Удалить вложение");
+                System.out.println("4. Назад");
+                System.out.print("Ваш выбор: ");
+                String choice = scanner.nextLine().trim();
+                switch (choice) {
+                    case "1" -> addAttachment(index - 1);
+                    case "2" -> {
+                        var attachment = selectAttachment(attachments, "Номер вложения для сохранения: ");
+                        if (attachment != null) saveAttachment(attachment);
+                    }
+                    case "3" -> {
+                        var attachment = selectAttachment(attachments, "Номер вложения для удаления: ");
+                        if (attachment != null) {
+                            manager.removeAttachment(attachment);
+                            System.out.println("Вложение удалено: " + attachment.name());
+                        }
+                    }
+                    case "4" -> {
+                        return;
+                    }
+                    default -> System.out.println("Неверный выбор.");
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("\nОшибка при работе с вложениями: " + e.getMessage());
+        }
+    }
+
+    private void addAttachment(int index) throws Exception {
+        System.out.print("Путь к файлу: ");
+        Path source = Paths.get(scanner.nextLine().trim());
+        if (!Files.isRegularFile(source)) {
+            System.out.println("Файл не найден: " + source);
+            return;
+        }
+        try (InputStream in = Files.newInputStream(source)) {
+            var attachment = manager.addAttachment(index, source.getFileName().toString(), in);
+            System.out.println("Вложение добавлено: " + attachment.name() + " (" + formatSize(attachment.size()) + ")");
+        }
+    }
+
+    // Расшифрованное вложение пишется в новый файл, доступный, где это поддерживается, только владельцу
+    private void saveAttachment(AttachmentStore.Attachment attachment) throws Exception {
+        System.out.print("Сохранить в файл: ");
+        Path target = Paths.get(scanner.nextLine().trim());
+        if (Files.exists(target)) {
+            System.out.println("Файл уже существует: " + target);
+            return;
+        }
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(target, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            Files.createFile(target);
+        }
+        try (OutputStream out = Files.newOutputStream(target, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = manager.readAttachment(attachment, out);
+            System.out.println("Вложение сохранено: " + target + " (" + formatSize(size) + ")");
+        } catch (Exception e) {
+            // Повреждённое вложение не оставляет частично расшифрованного файла
+            Files.deleteIfExists(target);
+            throw e;
+        }
+    }
+
+    private AttachmentStore.Attachment selectAttachment(List<AttachmentStore.Attachment> attachments, String prompt) {
+        if (attachments.isEmpty()) {
+            System.out.println("У записи нет вложений.");
+            return null;
+        }
+        int number = validateIndex(prompt);
+        if (number < 1 || number > attachments.size()) {
+            System.out.println("Неверный номер вложения.");
+            return null;
+        }
+        return attachments.get(number - 1);
+    }
+
+    private static String formatSize(long bytes) {
+        if (bytes < 1024) return bytes + " Б";
+        if (bytes < 1024 * 1024) return String.format("%.1f КиБ", bytes / 1024.0);
+        return String.format("%.1f МиБ", bytes / (1024.0 * 1024));
+    }
+
     public void editEntry() {
         if (manager.getEntriesCount() == 0) {
             System.out.println("\nНет записей для редактирования.");
@@ -265,7 +602,7 @@ public class PasswordManagerUI {
             return;
         }
 
-        System.out.println("\nВыберите, что хотите изменить в записи " + manager.getEntry(index - 1) + " :");
+        System.out.println("\nВыберите, что хотите изменить в записи " + entry.getPlace() + " - " + entry.getLogin() + " :");
         System.out.println("1. Место");
         System.out.println("2. Логин");
         System.out.println("3. Пароль");
@@ -277,7 +614,7 @@ public class PasswordManagerUI {
 
         String newPlace = entry.getPlace();
         String newLogin = entry.getLogin();
-        String newPassword = entry.getPassword();
+        SecretBuffer newPassword = null; // прежний пароль сохраняется без расшифровки
 
         switch (choice) {
             case 1 -> {
@@ -290,11 +627,7 @@ public class PasswordManagerUI {
                 newLogin = scanner.nextLine().trim();
                 newLogin = newLogin.isEmpty() ? Constants.DEFAULT_LOGIN : newLogin;
             }
-            case 3 -> {
-                System.out.print("Новый пароль: ");
-                newPassword = scanner.nextLine().trim();
-                newPassword = newPassword.isEmpty() ? Constants.DEFAULT_PASSWORD : newPassword;
-            }
+            case 3 -> newPassword = readNewPassword();
             case 4 -> {
                 System.out.print("Новое место: ");
                 newPlace = scanner.nextLine().trim();
@@ -304,9 +637,7 @@ public class PasswordManagerUI {
                 newLogin = scanner.nextLine().trim();
                 newLogin = newLogin.isEmpty() ? Constants.DEFAULT_LOGIN : newLogin;
 
-                System.out.print("Новый пароль: ");
-                newPassword = scanner.nextLine().trim();
-                newPassword = newPassword.isEmpty() ? Constants.DEFAULT_PASSWORD : newPassword;
+                newPassword = readNewPassword();
             }
             case 5 -> {
                 System.out.println("Редактирование отменено.");
@@ -319,59 +650,68 @@ public class PasswordManagerUI {
         }
 
         manager.updateEntry(index-1, newPlace, newLogin, newPassword);
+        persister.changed();
+        System.out.println("Запись обновлена.");
+    }
+
+    private static SecretBuffer readNewPassword() {
+        char[] password = trim(readSecret("Новый пароль: "));
         try {
-            manager.saveEntries(masterPassword);
-            System.out.println("Запись обновлена.");
-        } catch (Exception ex) {
-            System.out.println("Ошибка при обновлении.");
-            logger.severe("Не удалось обновить запись: " + ex.getMessage());
+            return SecretBuffer.of(password.length == 0 ? Constants.DEFAULT_PASSWORD.toCharArray() : password);
+        } finally {
+            Arrays.fill(password, '\0');
         }
     }
 
     public void changeMasterPassword() {
-        System.out.print("\nТекущий мастер-пароль: ");
-        var currentPass = scanner.nextLine();
+        System.out.println();
+        char[] currentPass = readSecret("Текущий мастер-пароль: ");
 
-        if (!currentPass.equals(masterPassword)) {
+        if (!Arrays.equals(currentPass, masterPassword)) {
+            Arrays.fill(currentPass, '\0');
             System.out.println("\nНеверный мастер-пароль.");
             return;
         }
 
-        String newMasterPass = "";
-        String confirmNewPass = "";
+        char[] newMasterPass;
 
         while (true) {
-            System.out.print("Новый мастер-пароль: ");
-            newMasterPass = scanner.nextLine();
-            System.out.print("Подтвердите новый мастер-пароль: ");
-            confirmNewPass = scanner.nextLine();
+            newMasterPass = readSecret("Новый мастер-пароль: ");
+            char[] confirmNewPass = readSecret("Подтвердите новый мастер-пароль: ");
 
-            if (newMasterPass.isEmpty() || confirmNewPass.isEmpty()) {
+            boolean empty = newMasterPass.length == 0 || confirmNewPass.length == 0;
+            boolean matches = Arrays.equals(newMasterPass, confirmNewPass);
+            Arrays.fill(confirmNewPass, '\0');
+            if (empty) {
                 System.out.println("Пароли не могут быть пустыми.");
                 continue;
             }
 
-            if (!newMasterPass.equals(confirmNewPass)) {
+            if (!matches) {
+                Arrays.fill(newMasterPass, '\0');
                 System.out.println("Пароли не совпадают.");
                 continue;
             }
             break;
         }
 
-        masterPassword = newMasterPass;
-
         try {
+            // Отложенные изменения записываются до перешифрования
+            persister.flush();
             Path filePath = Paths.get(Constants.FILE_NAME);
             if (Files.exists(filePath) && Files.size(filePath) > 0) {
                 manager.reencryptWithNewMasterPassword(currentPass, newMasterPass);
-                System.out.println("\nМастер-пароль успешно изменён.");
-            } else {
-                masterPassword = newMasterPass;
-                System.out.println("\nМастер-пароль успешно изменён.");
             }
+            // Пароль сессии меняется только после успешного перешифрования: прерванную смену можно повторить
+            Arrays.fill(masterPassword, '\0');
+            masterPassword = newMasterPass;
+            System.out.println("\nМастер-пароль успешно изменён.");
         } catch (Exception ex) {
+            Arrays.fill(newMasterPass, '\0');
             System.out.println("Ошибка при изменении мастер-пароля: " + ex.getMessage());
-            logger.severe("Не удалось изменить мастер-пароль: " + ex.getMessage());
+            logger().severe("Не удалось изменить мастер-пароль: " + ex.getMessage());
+        } finally {
+            Arrays.fill(currentPass, '\0');
         }
     }
 
@@ -381,6 +721,14 @@ public class PasswordManagerUI {
         } else {
             System.out.println("Выход из программы.");
         }
+        // Перед выходом дописываются отложенные изменения и затираются расшифрованные пароли, ключ и мастер-пароль
+        if (persister != null) {
+            persister.close();
+        }
+        manager.lock();
+        if (masterPassword != null) {
+            Arrays.fill(masterPassword, '\0');
+        }
         scanner.close();
     }
 }
\ No newline at end of file
@@ -0,0 +1,188 @@
+package main.java.PasswordManager;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Поиск повторно используемых и похожих паролей. Пароль открывается один раз, и от него остаётся только отпечаток:
+// SHA3-256 (тот же хэш, что PasswordEntry.getHashPassword) и MinHash-подпись множества его триграмм.
+// Одинаковые пароли группируются по хэшу за O(N). Похожие ("summer2023" и "Summer2024") ищутся через LSH:
+// подпись делится на полосы, и кандидатами становятся пароли, у которых совпала хотя бы одна полоса.
+// Каждый пароль сравнивается только с первым паролем своей корзины, поэтому число сравнений растёт линейно,
+// а группы собираются объединением пар, похожих не меньше чем на REUSE_MIN_SIMILARITY.
+public final class PasswordReuse {
+    // Группа записей с одинаковыми (similarity = 1) или похожими паролями; similarity — наименьшая оценка
+    // сходства по Жаккару среди пар, которыми группа связана
+    public record Group(List<PasswordEntry> entries, double similarity) {}
+
+    public record Report(List<Group> reused, List<Group> similar) {
+        public boolean isEmpty() {
+            return reused.isEmpty() && similar.isEmpty();
+        }
+    }
+
+    // Отпечаток пароля; открытый пароль в нём не хранится
+    public record Fingerprint(byte[] hash, long[] signature) {}
+
+    private static final String HASH_ALGORITHM = "SHA3-256";
+    private static final ByteBuffer NO_PASSWORD = ByteBuffer.wrap(Constants.DEFAULT_PASSWORD.getBytes(StandardCharsets.UTF_8));
+    private static final int SIGNATURE_LENGTH = Constants.REUSE_MINHASH_BANDS * Constants.REUSE_MINHASH_ROWS;
+    private static final long[] SEEDS = new long[SIGNATURE_LENGTH];
+
+    static {
+        long seed = 0x5DEECE66DL;
+        for (int i = 0; i < SEEDS.length; i++) {
+            seed = mix(seed + 0x9E3779B97F4A7C15L);
+            SEEDS[i] = seed;
+        }
+    }
+
+    private PasswordReuse() {}
+
+    // Пароль пустой записи (DEFAULT_PASSWORD) не проверяется: это не пароль, а отметка об его отсутствии
+    public static Fingerprint fingerprint(ByteBuffer password) {
+        if (password.equals(NO_PASSWORD)) {
+            return null;
+        }
+        byte[] hash = CryptoEngine.digest(HASH_ALGORITHM, password.duplicate());
+
+        // Триграммы байтов UTF-8 без учёта регистра латиницы; пароль короче триграммы — одна "триграмма"
+        long[] signature = new long[SIGNATURE_LENGTH];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        int start = password.position();
+        int length = password.remaining();
+        int shingles = Math.max(1, length - Constants.REUSE_SHINGLE_LENGTH + 1);
+        for (int s = 0; s < shingles; s++) {
+            long shingle = 0;
+            for (int i = s; i < Math.min(length, s + Constants.REUSE_SHINGLE_LENGTH); i++) {
+                shingle = shingle << 8 | lowerAscii(password.get(start + i));
+            }
+            shingle = mix(shingle);
+            for (int h = 0; h < SIGNATURE_LENGTH; h++) {
+                long value = mix(shingle ^ SEEDS[h]);
+                if (value < signature[h]) signature[h] = value;
+            }
+        }
+        return new Fingerprint(hash, signature);
+    }
+
+    // entries и fingerprints идут параллельно; записи без отпечатка (null) пропускаются
+    public static Report analyze(List<PasswordEntry> entries, Fingerprint[] fingerprints) {
+        // Одинаковые пароли: группа по хэшу, её представитель — первая запись
+        Map<ByteBuffer, List<Integer>> byHash = new HashMap<>();
+        List<List<Integer>> distinct = new ArrayList<>();
+        for (int i = 0; i < fingerprints.length; i++) {
+            if (fingerprints[i] == null) continue;
+            List<Integer> members = byHash.computeIfAbsent(ByteBuffer.wrap(fingerprints[i].hash()), k -> {
+                List<Integer> list = new ArrayList<>();
+                distinct.add(list);
+                return list;
+            });
+            members.add(i);
+        }
+
+        List<Group> reused = new ArrayList<>();
+        for (List<Integer> members : distinct) {
+            if (members.size() > 1) {
+                reused.add(new Group(entriesOf(entries, members), 1.0));
+            }
+        }
+
+        // Похожие пароли: LSH по представителям разных паролей
+        int count = distinct.size();
+        long[][] signatures = new long[count][];
+        int[] parent = new int[count];
+        double[] weakest = new double[count];
+        for (int i = 0; i < count; i++) {
+            signatures[i] = fingerprints[distinct.get(i).get(0)].signature();
+            parent[i] = i;
+            weakest[i] = 1.0;
+        }
+        Map<Long, Integer> buckets = new HashMap<>(count * 2);
+        for (int band = 0; band < Constants.REUSE_MINHASH_BANDS; band++) {
+            buckets.clear();
+            for (int p = 0; p < count; p++) {
+                Integer first = buckets.putIfAbsent(bandKey(band, signatures[p]), p);
+                if (first == null || find(parent, first) == find(parent, p)) continue;
+
+                double similarity = similarity(signatures[first], signatures[p]);
+                if (similarity >= Constants.REUSE_MIN_SIMILARITY) {
+                    int a = find(parent, first);
+                    int b = find(parent, p);
+                    parent[b] = a;
+                    weakest[a] = Math.min(Math.min(weakest[a], weakest[b]), similarity);
+                }
+            }
+        }
+
+        Map<Integer, List<Integer>> clusters = new HashMap<>();
+        for (int p = 0; p < count; p++) {
+            int root = find(parent, p);
+            if (root != p) {
+                clusters.computeIfAbsent(root, k -> new ArrayList<>(distinct.get(k))).addAll(distinct.get(p));
+            }
+        }
+        List<Group> similar = new ArrayList<>();
+        for (Map.Entry<Integer, List<Integer>> cluster : clusters.entrySet()) {
+            List<Integer> members = cluster.getValue();
+            members.sort(null);
+            similar.add(new Group(entriesOf(entries, members), weakest[cluster.getKey()]));
+        }
+
+        // Сначала самые большие группы, среди похожих при равном размере — самые похожие
+        Comparator<Group> ranking = Comparator.<Group>comparingInt(group -> group.entries().size()).reversed()
+                .thenComparing(Comparator.comparingDouble(Group::similarity).reversed());
+        reused.sort(ranking);
+        similar.sort(ranking);
+        return new Report(reused, similar);
+    }
+
+    private static List<PasswordEntry> entriesOf(List<PasswordEntry> entries, List<Integer> indexes) {
+        List<PasswordEntry> result = new ArrayList<>(indexes.size());
+        for (int index : indexes) {
+            result.add(entries.get(index));
+        }
+        return result;
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private static long bandKey(int band, long[] signature) {
+        long key = band;
+        for (int r = band * Constants.REUSE_MINHASH_ROWS; r < (band + 1) * Constants.REUSE_MINHASH_ROWS; r++) {
+            key = mix(key ^ signature[r]);
+        }
+        return key;
+    }
+
+    // Доля совпавших минимумов — несмещённая оценка сходства множеств триграмм по Жаккару
+    private static double similarity(long[] a, long[] b) {
+        int equal = 0;
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] == b[i]) equal++;
+        }
+        return (double) equal / a.length;
+    }
+
+    private static int lowerAscii(byte b) {
+        return b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b & 0xFF;
+    }
+
+    // Финальное перемешивание SplitMix64
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
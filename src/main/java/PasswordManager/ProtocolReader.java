@@ -0,0 +1,124 @@
+package main.java.PasswordManager;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Чтение строк протокола демона (формат см. ProtocolWriter). Экранирование снимается на месте,
+// поля строки доступны до следующего вызова next(); прочитанные байты затираются.
+final class ProtocolReader {
+    private final ReadableByteChannel channel;
+    private final int maxLine;
+    private byte[] bytes = new byte[4096];
+    private ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    private int lineLength;
+    private int scanned;
+    private int[] starts = new int[4];
+    private int[] ends = new int[4];
+    private int size;
+
+    ProtocolReader(ReadableByteChannel channel, int maxLine) {
+        this.channel = channel;
+        this.maxLine = maxLine;
+    }
+
+    // false, если соединение закрыто между строками
+    boolean next() throws IOException {
+        discardLine();
+        while (true) {
+            for (; scanned < buffer.position(); scanned++) {
+                if (bytes[scanned] == '\n') {
+                    lineLength = scanned + 1;
+                    parse(scanned);
+                    return true;
+                }
+            }
+            if (!buffer.hasRemaining()) grow();
+            if (channel.read(buffer) < 0) {
+                if (buffer.position() > 0) {
+                    throw new IOException("Соединение закрыто посреди строки.");
+                }
+                return false;
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    String text(int field) {
+        return new String(bytes, starts[field], ends[field] - starts[field], StandardCharsets.UTF_8);
+    }
+
+    SecretBuffer secret(int field) {
+        return SecretBuffer.copyOf(bytes, starts[field], ends[field] - starts[field]);
+    }
+
+    void copyTo(int field, OutputStream out) throws IOException {
+        out.write(bytes, starts[field], ends[field] - starts[field]);
+    }
+
+    void wipe() {
+        Arrays.fill(bytes, (byte) 0);
+    }
+
+    private void grow() throws IOException {
+        if (bytes.length >= maxLine) {
+            throw new IOException("Строка протокола длиннее " + maxLine + " байт.");
+        }
+        byte[] grown = Arrays.copyOf(bytes, Math.min(bytes.length * 2, maxLine));
+        int position = buffer.position();
+        Arrays.fill(bytes, (byte) 0);
+        bytes = grown;
+        buffer = ByteBuffer.wrap(bytes).position(position);
+    }
+
+    // Строка и разобранные поля больше не нужны: остаток буфера сдвигается в начало
+    private void discardLine() {
+        if (lineLength == 0) return;
+        int end = buffer.position();
+        int rest = end - lineLength;
+        System.arraycopy(bytes, lineLength, bytes, 0, rest);
+        Arrays.fill(bytes, rest, end, (byte) 0);
+        buffer.position(rest);
+        lineLength = 0;
+        scanned = 0;
+        size = 0;
+    }
+
+    private void parse(int end) throws IOException {
+        int write = 0;
+        startField(0);
+        for (int read = 0; read < end; read++) {
+            byte b = bytes[read];
+            if (b == '\t') {
+                ends[size - 1] = write;
+                startField(write);
+            } else if (b == '\\') {
+                if (++read == end) throw new IOException("Неполная escape-последовательность.");
+                bytes[write++] = switch (bytes[read]) {
+                    case 't' -> '\t';
+                    case 'n' -> '\n';
+                    case 'r' -> '\r';
+                    case '\\' -> '\\';
+                    default -> throw new IOException("Неизвестная escape-последовательность: \\" + (char) bytes[read]);
+                };
+            } else {
+                bytes[write++] = b;
+            }
+        }
+        ends[size - 1] = write;
+    }
+
+    private void startField(int start) {
+        if (size == starts.length) {
+            starts = Arrays.copyOf(starts, size * 2);
+            ends = Arrays.copyOf(ends, size * 2);
+        }
+        starts[size++] = start;
+    }
+}
@@ -0,0 +1,81 @@
+package main.java.PasswordManager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Строки протокола демона: поля в UTF-8 через табуляцию, строка заканчивается \n.
+// Табуляция, переводы строк и обратная косая черта внутри поля экранируются: \t, \n, \r, \\.
+// Буфер может содержать пароли, поэтому после отправки затирается.
+final class ProtocolWriter {
+    private byte[] bytes = new byte[1024];
+    private int length;
+    private boolean lineStarted;
+
+    ProtocolWriter field(String value) {
+        return field(ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    ProtocolWriter field(long value) {
+        return field(Long.toString(value));
+    }
+
+    // Поле из байтов UTF-8, например из SecretBuffer.view(); позиция value сдвигается до конца
+    ProtocolWriter field(ByteBuffer value) {
+        if (lineStarted) put((byte) '\t');
+        lineStarted = true;
+        while (value.hasRemaining()) {
+            byte b = value.get();
+            switch (b) {
+                case '\t' -> escape((byte) 't');
+                case '\n' -> escape((byte) 'n');
+                case '\r' -> escape((byte) 'r');
+                case '\\' -> escape((byte) '\\');
+                default -> put(b);
+            }
+        }
+        return this;
+    }
+
+    void endLine() {
+        put((byte) '\n');
+        lineStarted = false;
+    }
+
+    int size() {
+        return length;
+    }
+
+    void flush(WritableByteChannel channel) throws IOException {
+        ByteBuffer out = ByteBuffer.wrap(bytes, 0, length);
+        try {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        } finally {
+            wipe();
+        }
+    }
+
+    void wipe() {
+        Arrays.fill(bytes, 0, length, (byte) 0);
+        length = 0;
+        lineStarted = false;
+    }
+
+    private void escape(byte code) {
+        put((byte) '\\');
+        put(code);
+    }
+
+    private void put(byte b) {
+        if (length == bytes.length) {
+            byte[] grown = Arrays.copyOf(bytes, bytes.length * 2);
+            Arrays.fill(bytes, (byte) 0);
+            bytes = grown;
+        }
+        bytes[length++] = b;
+    }
+}
@@ -0,0 +1,6 @@
+package main.java.PasswordManager;
+
+// Пароль записи в зашифрованном виде: ключ записи, обёрнутый ключом хранилища, и шифротекст пароля
+// (IV | данные | тег GCM). Хранится в памяти вместо открытого пароля до первого обращения.
+public record SealedSecret(byte[] wrappedKey, byte[] ciphertext) {
+}
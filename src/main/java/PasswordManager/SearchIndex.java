@@ -0,0 +1,407 @@
+package main.java.PasswordManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.LongFunction;
+
+// Индекс по месту и логину из неизменяемых сегментов. В сегменте — отсортированный массив терминов
+// (точное совпадение и префиксы находятся двоичным поиском) и инвертированный индекс триграмм для поиска
+// подстрок с опечатками. Добавленные записи образуют новый сегмент, удалённые помечаются в своём сегменте;
+// MERGE_FACTOR сегментов одного порядка размера сливаются в один, сегмент, где удалено больше половины, сжимается.
+// Снимок (snapshot) разделяет сегменты с индексом и не меняется при последующих изменениях, поэтому его
+// читают без блокировки. Индекс хранит только id, записи для результатов запрашиваются у хранилища.
+public class SearchIndex {
+    private static final double EXACT_SCORE = 3.0;
+    private static final double PREFIX_SCORE = 2.0;
+    // Каждая запись переписывается при слиянии не больше log8(N) раз, сегментов не больше 7 на порядок размера
+    private static final int MERGE_FACTOR = 8;
+    private static final long[] NO_IDS = new long[0];
+
+    private final LongFunction<PasswordEntry> documents;
+    private List<Segment> segments;
+
+    public SearchIndex(LongFunction<PasswordEntry> documents) {
+        this(documents, List.of());
+    }
+
+    private SearchIndex(LongFunction<PasswordEntry> documents, List<Segment> segments) {
+        this.documents = documents;
+        this.segments = segments;
+    }
+
+    // Неизменяемая копия за O(число сегментов); результаты запросов берутся из documents
+    public SearchIndex snapshot(LongFunction<PasswordEntry> documents) {
+        return new SearchIndex(documents, segments);
+    }
+
+    public void rebuild(Iterable<PasswordEntry> entries) {
+        List<PasswordEntry> all = new ArrayList<>();
+        for (PasswordEntry entry : entries) {
+            all.add(entry);
+        }
+        segments = all.isEmpty() ? List.of() : List.of(Segment.build(all));
+    }
+
+    public void clear() {
+        segments = List.of();
+    }
+
+    public void add(PasswordEntry entry) {
+        addAll(List.of(entry));
+    }
+
+    // Пачка записей (загрузка, импорт) становится одним сегментом
+    public void addAll(Collection<PasswordEntry> entries) {
+        if (entries.isEmpty()) return;
+
+        List<Segment> next = new ArrayList<>(segments);
+        next.add(Segment.build(entries));
+        mergeTiers(next);
+        segments = List.copyOf(next);
+    }
+
+    public void remove(PasswordEntry entry) {
+        long id = entry.getId();
+        for (int i = 0; i < segments.size(); i++) {
+            Segment segment = segments.get(i);
+            if (!segment.contains(id)) continue;
+
+            List<Segment> next = new ArrayList<>(segments);
+            Segment marked = segment.delete(id);
+            if (marked.live() == 0) {
+                next.remove(i);
+            } else if (marked.deleted.length > marked.live()) {
+                next.set(i, Segment.merge(List.of(marked)));
+            } else {
+                next.set(i, marked);
+            }
+            segments = List.copyOf(next);
+            return;
+        }
+    }
+
+    public List<PasswordEntry> findExact(String term) {
+        String normalized = normalize(term);
+        List<PasswordEntry> result = new ArrayList<>();
+        for (Segment segment : segments) {
+            for (long id : segment.posting(normalized)) {
+                if (segment.isLive(id)) {
+                    result.add(documents.apply(id));
+                }
+            }
+        }
+        return result;
+    }
+
+    public List<PasswordEntry> findByPrefix(String prefix, int limit) {
+        String normalized = normalize(prefix);
+        Set<Long> ids = new LinkedHashSet<>();
+        for (List<Long> posting : prefixRange(normalized, Integer.MAX_VALUE, limit).values()) {
+            ids.addAll(posting);
+            if (ids.size() >= limit) break;
+        }
+
+        List<PasswordEntry> result = new ArrayList<>(Math.min(limit, ids.size()));
+        for (long id : ids) {
+            if (result.size() == limit) break;
+            result.add(documents.apply(id));
+        }
+        return result;
+    }
+
+    // Ранжирование: точное совпадение, затем префикс (чем ближе длина, тем выше),
+    // затем доля триграмм запроса, найденных в месте или логине
+    public List<PasswordEntry> search(String query, int limit) {
+        String normalized = normalize(query);
+        if (normalized.isEmpty() || limit <= 0) return List.of();
+
+        Map<Long, Double> scores = new HashMap<>();
+        for (Segment segment : segments) {
+            for (long id : segment.posting(normalized)) {
+                if (segment.isLive(id)) {
+                    scores.put(id, EXACT_SCORE);
+                }
+            }
+        }
+
+        int scanned = 0;
+        for (Map.Entry<String, List<Long>> term
+                : prefixRange(normalized, Constants.SEARCH_PREFIX_SCAN, Integer.MAX_VALUE).entrySet()) {
+            if (++scanned > Constants.SEARCH_PREFIX_SCAN) break;
+            double score = PREFIX_SCORE + (double) normalized.length() / term.getKey().length() / 2;
+            for (long id : term.getValue()) {
+                scores.merge(id, score, Math::max);
+            }
+        }
+
+        // Триграммная оценка не превышает 1, поэтому при достаточном числе точных и префиксных совпадений не нужна
+        if (normalized.length() >= 3 && scores.size() < limit) {
+            Set<String> queryTrigrams = trigrams(normalized, false);
+            for (Segment segment : segments) {
+                scoreTrigrams(segment, queryTrigrams, scores);
+            }
+        }
+
+        List<Map.Entry<PasswordEntry, Double>> ranked = new ArrayList<>(scores.size());
+        for (Map.Entry<Long, Double> score : scores.entrySet()) {
+            ranked.add(Map.entry(documents.apply(score.getKey()), score.getValue()));
+        }
+        ranked.sort(Map.Entry.<PasswordEntry, Double>comparingByValue().reversed()
+                .thenComparing(e -> e.getKey().getPlace(), Comparator.naturalOrder()));
+
+        List<PasswordEntry> result = new ArrayList<>(Math.min(limit, ranked.size()));
+        for (Map.Entry<PasswordEntry, Double> entry : ranked) {
+            if (result.size() == limit) break;
+            result.add(entry.getKey());
+        }
+        return result;
+    }
+
+    // Кандидатов порождают только самые редкие триграммы: запись, не найденная ни в одной из них,
+    // уже не наберёт порог совпадений; остальные триграммы лишь проверяются у найденных кандидатов.
+    // Все триграммы записи лежат в одном сегменте, поэтому сегменты оцениваются независимо
+    private static void scoreTrigrams(Segment segment, Set<String> queryTrigrams, Map<Long, Double> scores) {
+        List<long[]> postings = new ArrayList<>(queryTrigrams.size());
+        for (String trigram : queryTrigrams) {
+            postings.add(segment.trigrams.getOrDefault(trigram, NO_IDS));
+        }
+        postings.sort(Comparator.comparingInt(posting -> posting.length));
+
+        int total = postings.size();
+        int required = Math.max(1, (int) Math.ceil(total * Constants.SEARCH_MIN_SIMILARITY));
+        int generating = total - required + 1;
+
+        Map<Long, Integer> hits = new HashMap<>();
+        for (int i = 0; i < generating; i++) {
+            for (long id : postings.get(i)) {
+                hits.merge(id, 1, Integer::sum);
+            }
+        }
+        for (int i = generating; i < total; i++) {
+            long[] posting = postings.get(i);
+            for (Map.Entry<Long, Integer> hit : hits.entrySet()) {
+                if (Arrays.binarySearch(posting, hit.getKey()) >= 0) {
+                    hit.setValue(hit.getValue() + 1);
+                }
+            }
+        }
+
+        for (Map.Entry<Long, Integer> hit : hits.entrySet()) {
+            if (hit.getValue() >= required && segment.isLive(hit.getKey())) {
+                scores.merge(hit.getKey(), (double) hit.getValue() / total, Math::max);
+            }
+        }
+    }
+
+    // Термины с префиксом prefix по всем сегментам в порядке сортировки и живые записи каждого.
+    // Из сегмента берутся первые maxTerms терминов с живыми записями, пока их записей меньше maxIds:
+    // первые maxTerms терминов (первые maxIds записей) объединения от этого не меняются
+    private TreeMap<String, List<Long>> prefixRange(String prefix, int maxTerms, int maxIds) {
+        TreeMap<String, List<Long>> range = new TreeMap<>();
+        if (prefix.isEmpty()) return range;
+
+        for (Segment segment : segments) {
+            int terms = 0;
+            int ids = 0;
+            for (int i = segment.lowerBound(prefix); i < segment.terms.length && terms < maxTerms && ids < maxIds; i++) {
+                if (!segment.terms[i].startsWith(prefix)) break;
+                List<Long> live = null;
+                for (long id : segment.postings[i]) {
+                    if (segment.isLive(id)) {
+                        if (live == null) live = range.computeIfAbsent(segment.terms[i], k -> new ArrayList<>());
+                        live.add(id);
+                        ids++;
+                    }
+                }
+                if (live != null) terms++;
+            }
+        }
+        return range;
+    }
+
+    // Сливает MERGE_FACTOR сегментов одного порядка размера (по основанию MERGE_FACTOR), пока такие есть
+    private static void mergeTiers(List<Segment> segments) {
+        boolean merged;
+        do {
+            merged = false;
+            Map<Integer, List<Integer>> tiers = new HashMap<>();
+            for (int i = 0; i < segments.size(); i++) {
+                List<Integer> tier = tiers.computeIfAbsent(tier(segments.get(i)), k -> new ArrayList<>());
+                tier.add(i);
+                if (tier.size() == MERGE_FACTOR) {
+                    List<Segment> group = new ArrayList<>(MERGE_FACTOR);
+                    for (int index : tier) {
+                        group.add(segments.get(index));
+                    }
+                    for (int k = tier.size() - 1; k > 0; k--) {
+                        segments.remove((int) tier.get(k));
+                    }
+                    segments.set(tier.get(0), Segment.merge(group));
+                    merged = true;
+                    break;
+                }
+            }
+        } while (merged);
+    }
+
+    private static int tier(Segment segment) {
+        int live = Math.max(1, segment.live());
+        return (31 - Integer.numberOfLeadingZeros(live)) / 3;
+    }
+
+    private static Set<String> terms(PasswordEntry entry) {
+        Set<String> terms = new HashSet<>(2);
+        terms.add(normalize(entry.getPlace()));
+        terms.add(normalize(entry.getLogin()));
+        return terms;
+    }
+
+    // Строки индекса дополняются пробелами, чтобы начало и конец слова давали свои триграммы;
+    // запрос не дополняется, чтобы подстрока целиком совпадала с частью записи
+    private static Set<String> trigrams(String term, boolean padded) {
+        String text = padded ? "  " + term + " " : term;
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            result.add(text.substring(i, i + 3));
+        }
+        return result;
+    }
+
+    // Форма, в которой термины хранятся и сравниваются: без пробелов по краям и без учёта регистра
+    static String normalize(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // Неизменяемый сегмент: id записей, отсортированные термины с их записями, триграммы с их записями
+    // (массивы id отсортированы) и удалённые записи. Удаление создаёт новый сегмент с общими массивами
+    private static final class Segment {
+        private final long[] ids;
+        private final String[] terms;
+        private final long[][] postings;
+        private final Map<String, long[]> trigrams;
+        private final long[] deleted;
+
+        private Segment(long[] ids, String[] terms, long[][] postings, Map<String, long[]> trigrams, long[] deleted) {
+            this.ids = ids;
+            this.terms = terms;
+            this.postings = postings;
+            this.trigrams = trigrams;
+            this.deleted = deleted;
+        }
+
+        static Segment build(Collection<PasswordEntry> entries) {
+            long[] ids = new long[entries.size()];
+            TreeMap<String, List<Long>> terms = new TreeMap<>();
+            int i = 0;
+            for (PasswordEntry entry : entries) {
+                long id = entry.getId();
+                ids[i++] = id;
+                for (String term : SearchIndex.terms(entry)) {
+                    terms.computeIfAbsent(term, k -> new ArrayList<>()).add(id);
+                }
+            }
+            return assemble(ids, terms);
+        }
+
+        // Живые записи сегментов в один сегмент; термины и триграммы берутся из самих сегментов
+        static Segment merge(List<Segment> segments) {
+            int count = 0;
+            for (Segment segment : segments) {
+                count += segment.live();
+            }
+            long[] ids = new long[count];
+            TreeMap<String, List<Long>> terms = new TreeMap<>();
+            int i = 0;
+            for (Segment segment : segments) {
+                for (long id : segment.ids) {
+                    if (segment.isLive(id)) ids[i++] = id;
+                }
+                for (int t = 0; t < segment.terms.length; t++) {
+                    for (long id : segment.postings[t]) {
+                        if (segment.isLive(id)) {
+                            terms.computeIfAbsent(segment.terms[t], k -> new ArrayList<>()).add(id);
+                        }
+                    }
+                }
+            }
+            return assemble(ids, terms);
+        }
+
+        private static Segment assemble(long[] ids, TreeMap<String, List<Long>> terms) {
+            Arrays.sort(ids);
+            String[] sortedTerms = new String[terms.size()];
+            long[][] postings = new long[terms.size()][];
+            Map<String, List<Long>> trigrams = new HashMap<>();
+            int t = 0;
+            for (Map.Entry<String, List<Long>> term : terms.entrySet()) {
+                sortedTerms[t] = term.getKey();
+                postings[t] = sortedIds(term.getValue());
+                for (String trigram : SearchIndex.trigrams(term.getKey(), true)) {
+                    trigrams.computeIfAbsent(trigram, k -> new ArrayList<>()).addAll(term.getValue());
+                }
+                t++;
+            }
+
+            Map<String, long[]> trigramPostings = new HashMap<>(trigrams.size() * 2);
+            for (Map.Entry<String, List<Long>> trigram : trigrams.entrySet()) {
+                trigramPostings.put(trigram.getKey(), sortedIds(trigram.getValue()));
+            }
+            return new Segment(ids, sortedTerms, postings, trigramPostings, NO_IDS);
+        }
+
+        // Запись с несколькими терминами, содержащими триграмму, попадает в её список один раз
+        private static long[] sortedIds(List<Long> ids) {
+            long[] result = new long[ids.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = ids.get(i);
+            }
+            Arrays.sort(result);
+            int unique = 0;
+            for (int i = 0; i < result.length; i++) {
+                if (i == 0 || result[i] != result[i - 1]) result[unique++] = result[i];
+            }
+            return unique == result.length ? result : Arrays.copyOf(result, unique);
+        }
+
+        Segment delete(long id) {
+            int at = -Arrays.binarySearch(deleted, id) - 1;
+            long[] marked = new long[deleted.length + 1];
+            System.arraycopy(deleted, 0, marked, 0, at);
+            marked[at] = id;
+            System.arraycopy(deleted, at, marked, at + 1, deleted.length - at);
+            return new Segment(ids, terms, postings, trigrams, marked);
+        }
+
+        int live() {
+            return ids.length - deleted.length;
+        }
+
+        boolean isLive(long id) {
+            return Arrays.binarySearch(deleted, id) < 0;
+        }
+
+        boolean contains(long id) {
+            return Arrays.binarySearch(ids, id) >= 0 && isLive(id);
+        }
+
+        long[] posting(String term) {
+            int i = Arrays.binarySearch(terms, term);
+            return i >= 0 ? postings[i] : NO_IDS;
+        }
+
+        int lowerBound(String term) {
+            int i = Arrays.binarySearch(terms, term);
+            return i >= 0 ? i : -i - 1;
+        }
+    }
+}
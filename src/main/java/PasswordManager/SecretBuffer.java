@@ -0,0 +1,144 @@
+package main.java.PasswordManager;
+
+import javax.security.auth.Destroyable;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Секрет в UTF-8 вне кучи (прямой ByteBuffer): не копируется сборщиком мусора и затирается явно
+// при блокировке хранилища, выходе из программы и удалении записи.
+public final class SecretBuffer implements Destroyable, AutoCloseable {
+    private final ByteBuffer buffer;
+    private boolean destroyed;
+
+    private SecretBuffer(int length) {
+        this.buffer = ByteBuffer.allocateDirect(length);
+    }
+
+    public static SecretBuffer allocate(int length) {
+        return new SecretBuffer(length);
+    }
+
+    // Массив символов вызывающий код затирает сам
+    public static SecretBuffer of(char[] chars) {
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        SecretBuffer secret = new SecretBuffer((int) (chars.length * (double) encoder.maxBytesPerChar()));
+        CharBuffer in = CharBuffer.wrap(chars);
+        CoderResult result = encoder.encode(in, secret.buffer, true);
+        if (result.isError()) {
+            secret.destroy();
+            throw new IllegalArgumentException("Некорректные символы в секрете.");
+        }
+        encoder.flush(secret.buffer);
+        secret.buffer.flip();
+        return secret;
+    }
+
+    // Строка в куче остаётся (ввод через Scanner, старые текстовые форматы); буфер — единственная долгоживущая копия
+    public static SecretBuffer of(String value) {
+        char[] chars = value.toCharArray();
+        try {
+            return of(chars);
+        } finally {
+            Arrays.fill(chars, '\0');
+        }
+    }
+
+    public static SecretBuffer copyOf(byte[] bytes, int offset, int length) {
+        SecretBuffer secret = new SecretBuffer(length);
+        secret.buffer.put(bytes, offset, length).flip();
+        return secret;
+    }
+
+    public int length() {
+        checkAlive();
+        return buffer.limit();
+    }
+
+    public boolean isEmpty() {
+        return length() == 0;
+    }
+
+    // Только для чтения, от начала до конца секрета; позиция исходного буфера не меняется
+    public ByteBuffer view() {
+        checkAlive();
+        return buffer.asReadOnlyBuffer().position(0);
+    }
+
+    // Буфер для записи расшифрованных данных; после записи вызывается seal()
+    ByteBuffer target() {
+        checkAlive();
+        return buffer.clear();
+    }
+
+    SecretBuffer seal() {
+        buffer.flip();
+        return this;
+    }
+
+    // Независимая копия, которая переживает затирание исходного буфера. Копирование и затирание взаимно
+    // исключены: читатель без блокировки получает либо полную копию, либо IllegalStateException
+    public synchronized SecretBuffer copy() {
+        SecretBuffer copy = new SecretBuffer(length());
+        copy.buffer.put(view()).flip();
+        return copy;
+    }
+
+    // Возвращённый массив вызывающий код затирает сам
+    public char[] toChars() {
+        return toChars(view());
+    }
+
+    // Символы пароля из байтов UTF-8 (например, из PasswordManager.readPassword); промежуточный буфер затирается
+    public static char[] toChars(ByteBuffer bytes) {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+        CharBuffer out = CharBuffer.allocate(bytes.remaining());
+        decoder.decode(bytes, out, true);
+        decoder.flush(out);
+        char[] chars = Arrays.copyOf(out.array(), out.position());
+        Arrays.fill(out.array(), '\0');
+        return chars;
+    }
+
+    // Сравнение за время, не зависящее от места первого расхождения
+    public boolean contentEquals(SecretBuffer other) {
+        ByteBuffer a = view();
+        ByteBuffer b = other.view();
+        int diff = a.remaining() ^ b.remaining();
+        for (int i = 0; i < Math.min(a.remaining(), b.remaining()); i++) {
+            diff |= a.get(i) ^ b.get(i);
+        }
+        return diff == 0;
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (destroyed) return;
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            buffer.put((byte) 0);
+        }
+        buffer.limit(0);
+        destroyed = true;
+    }
+
+    @Override
+    public synchronized boolean isDestroyed() {
+        return destroyed;
+    }
+
+    @Override
+    public void close() {
+        destroy();
+    }
+
+    private void checkAlive() {
+        if (destroyed) {
+            throw new IllegalStateException("Секрет уже уничтожен.");
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package main.java.PasswordManager;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+import java.io.PrintStream;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.security.Security;
+import java.util.Map;
+
+// Время запуска по этапам (--startup-report): старт JVM, вход в main, первое приглашение ввести пароль,
+// разблокировка хранилища и загрузка записей. Время, пока пользователь вводит пароль, в этапы не входит.
+// Отчёт печатается при выходе вместе с тем, от чего зависит запуск: используется ли архив общих классов (CDS),
+// сколько классов загружено, сколько заняла компиляция JIT, регистрировался ли провайдер Bouncy Castle.
+// Пока отчёт не включён, mark() сразу выходит; классы управления JVM загружаются только при печати отчёта.
+//   StartupReport.enable();                        // первым делом в main
+//   StartupReport.mark(StartupReport.Mark.PROMPT);
+//   StartupReport.report(System.err);              // при выходе
+public final class StartupReport {
+    public enum Mark {
+        MAIN("Старт JVM → main"),
+        PROMPT("main → приглашение ввести пароль"),
+        UNLOCK_STARTED(null),
+        UNLOCKED("Разблокировка (вывод ключа, проверка пароля)"),
+        LOADED("Расшифровка записей");
+
+        // Этап, который заканчивается этой отметкой; null — отметка только начинает следующий этап
+        private final String phase;
+
+        Mark(String phase) {
+            this.phase = phase;
+        }
+    }
+
+    private static final long[] marks = new long[Mark.values().length];
+    private static volatile boolean enabled;
+    private static long mainMillis;
+
+    private StartupReport() {}
+
+    public static void enable() {
+        mainMillis = System.currentTimeMillis();
+        enabled = true;
+        mark(Mark.MAIN);
+    }
+
+    // Повторная отметка заменяет прежнюю: при нескольких попытках ввода пароля учитывается последняя
+    public static void mark(Mark mark) {
+        if (!enabled) return;
+        synchronized (marks) {
+            marks[mark.ordinal()] = System.nanoTime();
+        }
+    }
+
+    public static void report(PrintStream out) {
+        if (!enabled) return;
+        long[] snapshot;
+        synchronized (marks) {
+            snapshot = marks.clone();
+        }
+
+        out.println("Отчёт о запуске (время в мс):");
+        long jvmStart = ManagementFactory.getRuntimeMXBean().getStartTime();
+        out.printf("  %-46s %8d%n", Mark.MAIN.phase, mainMillis - jvmStart);
+        printPhase(out, snapshot, Mark.MAIN, Mark.PROMPT);
+        if (snapshot[Mark.PROMPT.ordinal()] != 0) {
+            out.printf("  %-46s %8.1f%n", "Итого до приглашения",
+                    mainMillis - jvmStart + millis(snapshot[Mark.PROMPT.ordinal()] - snapshot[Mark.MAIN.ordinal()]));
+        }
+        printPhase(out, snapshot, Mark.UNLOCK_STARTED, Mark.UNLOCKED);
+        printPhase(out, snapshot, Mark.UNLOCKED, Mark.LOADED);
+        out.printf("  %-46s %8.1f%n", "Всего до выхода (с вводом пароля)",
+                mainMillis - jvmStart + millis(System.nanoTime() - snapshot[Mark.MAIN.ordinal()]));
+
+        String vmInfo = System.getProperty("java.vm.info", "");
+        String archive = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class)
+                .getVMOption("SharedArchiveFile").getValue();
+        // Архив, который не подошёл к jar или JDK, JVM отбрасывает с предупреждением при запуске
+        out.println("Архив общих классов (CDS): " + (!vmInfo.contains("sharing") ? "не используется"
+                : archive.isEmpty() ? "только архив JDK" : "архив JDK и " + archive));
+        out.println("Загружено классов: " + ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount());
+        CompilationMXBean compilation = ManagementFactory.getCompilationMXBean();
+        if (compilation != null && compilation.isCompilationTimeMonitoringSupported()) {
+            out.println("Компиляция JIT: " + compilation.getTotalCompilationTime() + " мс");
+        }
+        out.println("Провайдер Bouncy Castle (JCA): "
+                + (Security.getProvider("BC") != null ? "зарегистрирован" : "не регистрировался"));
+        // Без разблокировки криптография не использовалась, а обращение к CryptoProviders загрузило бы bcprov
+        if (snapshot[Mark.UNLOCK_STARTED.ordinal()] != 0) {
+            for (Map.Entry<CryptoProvider.Primitive, String> selected : CryptoProviders.selected().entrySet()) {
+                out.println("Криптография " + selected.getKey() + ": " + selected.getValue());
+            }
+        }
+        out.flush();
+    }
+
+    // Этап выводится, только если обе отметки поставлены (например, import не показывает меню)
+    private static void printPhase(PrintStream out, long[] snapshot, Mark from, Mark to) {
+        long start = snapshot[from.ordinal()];
+        long end = snapshot[to.ordinal()];
+        if (start != 0 && end != 0 && end >= start) {
+            out.printf("  %-46s %8.1f%n", to.phase, millis(end - start));
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
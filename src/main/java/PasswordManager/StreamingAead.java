@@ -0,0 +1,224 @@
+package main.java.PasswordManager;
+
+import javax.crypto.AEADBadTagException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+// Потоковое шифрование AES-GCM по сегментам (конструкция STREAM): открытый текст делится на сегменты
+// по segmentSize байт, каждый шифруется отдельно с IV «префикс (7) | номер сегмента (4) | признак последнего (1)».
+// Ключ и префикс у каждого потока свои, поэтому IV не повторяются; номер не даёт переставить или повторить
+// сегменты, признак последнего — незаметно обрезать поток по границе сегмента.
+// Шифротекст: сегменты подряд, каждый — данные | тег GCM; последний может быть неполным или пустым.
+// В памяти держится один сегмент, поэтому размер потока на память не влияет.
+final class StreamingAead {
+    static final int PREFIX_LENGTH = 7;
+    private static final long MAX_SEGMENTS = 1L << 32;
+
+    private StreamingAead() {}
+
+    static Encryptor encrypt(OutputStream out, byte[] key, byte[] prefix, byte[] aad, int segmentSize) {
+        return new Encryptor(out, key, prefix, aad, segmentSize);
+    }
+
+    static InputStream decrypt(InputStream in, byte[] key, byte[] prefix, byte[] aad, int segmentSize) {
+        return new Decryptor(in, key, prefix, aad, segmentSize);
+    }
+
+    // Длина открытого текста по длине шифротекста, без расшифровки; -1, если такой длины быть не может
+    static long plainLength(long sealedLength, int segmentSize) {
+        long sealedSegment = (long) segmentSize + CryptoEngine.TAG_LENGTH;
+        long segments = Math.max(1, (sealedLength + sealedSegment - 1) / sealedSegment);
+        long lastLength = sealedLength - (segments - 1) * sealedSegment;
+        return lastLength < CryptoEngine.TAG_LENGTH ? -1 : sealedLength - segments * CryptoEngine.TAG_LENGTH;
+    }
+
+    private static byte[] iv(byte[] prefix, long segment, boolean last) {
+        return ByteBuffer.allocate(Constants.IV_LENGTH).put(prefix).putInt((int) segment).put((byte) (last ? 1 : 0)).array();
+    }
+
+    // Заполненный сегмент шифруется, только когда приходят следующие данные: до этого неизвестно, последний ли он.
+    // finish() дописывает последний сегмент, не закрывая выходной поток (как DeflaterOutputStream.finish)
+    static final class Encryptor extends OutputStream {
+        private final OutputStream out;
+        private final byte[] key;
+        private final byte[] prefix;
+        private final byte[] aad;
+        private final byte[] plain;
+        private final byte[] sealed;
+        private int filled;
+        private long segment;
+        private boolean finished;
+
+        private Encryptor(OutputStream out, byte[] key, byte[] prefix, byte[] aad, int segmentSize) {
+            if (prefix.length != PREFIX_LENGTH || segmentSize <= 0) {
+                throw new IllegalArgumentException("Некорректные параметры потока.");
+            }
+            this.out = out;
+            this.key = key;
+            this.prefix = prefix;
+            this.aad = aad;
+            this.plain = new byte[segmentSize];
+            this.sealed = new byte[segmentSize + CryptoEngine.TAG_LENGTH];
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int offset, int length) throws IOException {
+            if (finished) {
+                throw new IOException("Поток уже завершён.");
+            }
+            while (length > 0) {
+                if (filled == plain.length) {
+                    writeSegment(false);
+                }
+                int chunk = Math.min(length, plain.length - filled);
+                System.arraycopy(b, offset, plain, filled, chunk);
+                filled += chunk;
+                offset += chunk;
+                length -= chunk;
+            }
+        }
+
+        // Неполный сегмент не шифруется: flush передаёт дальше только уже зашифрованные сегменты
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        public void finish() throws IOException {
+            if (finished) return;
+            try {
+                writeSegment(true);
+                out.flush();
+            } finally {
+                finished = true;
+                Arrays.fill(plain, (byte) 0);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                finish();
+            } finally {
+                out.close();
+            }
+        }
+
+        private void writeSegment(boolean last) throws IOException {
+            if (segment >= MAX_SEGMENTS) {
+                throw new IOException("Слишком длинный поток: больше " + MAX_SEGMENTS + " сегментов.");
+            }
+            try {
+                int length = CryptoEngine.encrypt(key, iv(prefix, segment, last), aad, plain, 0, filled, sealed, 0);
+                out.write(sealed, 0, length);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Ошибка шифрования сегмента " + segment + ": " + e.getMessage(), e);
+            }
+            Arrays.fill(plain, 0, filled, (byte) 0);
+            filled = 0;
+            segment++;
+        }
+    }
+
+    // Сегмент читается с одним байтом сверх полной длины: если байт есть, сегмент не последний.
+    // Данные сегмента отдаются только после проверки его тега
+    private static final class Decryptor extends InputStream {
+        private final InputStream in;
+        private final byte[] key;
+        private final byte[] prefix;
+        private final byte[] aad;
+        private final byte[] sealed;
+        private final byte[] plain;
+        private int held;
+        private int position;
+        private int limit;
+        private long segment;
+        private boolean finished;
+
+        private Decryptor(InputStream in, byte[] key, byte[] prefix, byte[] aad, int segmentSize) {
+            if (prefix.length != PREFIX_LENGTH || segmentSize <= 0) {
+                throw new IllegalArgumentException("Некорректные параметры потока.");
+            }
+            this.in = in;
+            this.key = key;
+            this.prefix = prefix;
+            this.aad = aad;
+            this.sealed = new byte[segmentSize + CryptoEngine.TAG_LENGTH + 1];
+            this.plain = new byte[segmentSize];
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : Byte.toUnsignedInt(one[0]);
+        }
+
+        @Override
+        public int read(byte[] b, int offset, int length) throws IOException {
+            if (length == 0) return 0;
+            while (position == limit) {
+                if (finished) return -1;
+                readSegment();
+            }
+            int chunk = Math.min(length, limit - position);
+            System.arraycopy(plain, position, b, offset, chunk);
+            position += chunk;
+            return chunk;
+        }
+
+        @Override
+        public int available() {
+            return limit - position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            Arrays.fill(plain, (byte) 0);
+            position = limit = 0;
+            finished = true;
+            in.close();
+        }
+
+        private void readSegment() throws IOException {
+            if (segment >= MAX_SEGMENTS) {
+                throw new IOException("Слишком длинный поток: больше " + MAX_SEGMENTS + " сегментов.");
+            }
+            int length = held;
+            while (length < sealed.length) {
+                int read = in.read(sealed, length, sealed.length - length);
+                if (read < 0) break;
+                length += read;
+            }
+            boolean last = length < sealed.length;
+            int sealedLength = last ? length : length - 1;
+            if (sealedLength < CryptoEngine.TAG_LENGTH) {
+                throw new IOException("Поток обрезан: сегмент " + segment + " неполный.");
+            }
+            try {
+                limit = CryptoEngine.decrypt(key, iv(prefix, segment, last), aad, sealed, 0, sealedLength, plain, 0);
+            } catch (AEADBadTagException e) {
+                throw new IOException("Сегмент " + segment + " повреждён, изменён или поток обрезан.", e);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Ошибка расшифровки сегмента " + segment + ": " + e.getMessage(), e);
+            }
+            position = 0;
+            if (last) {
+                held = 0;
+                finished = true;
+            } else {
+                sealed[0] = sealed[length - 1];
+                held = 1;
+            }
+            segment++;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package main.java.PasswordManager;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Locale;
+
+// Клиент демона для скриптов: не регистрирует Bouncy Castle и не трогает файл хранилища,
+// только передаёт запрос в сокет и печатает ответ.
+//   client [--socket путь] get <место> [логин]     пароль в stdout
+//   client [--socket путь] list
+//   client [--socket путь] search <запрос> [лимит]
+//   client [--socket путь] put <место> <логин>     пароль запрашивается, в аргументы не попадает
+public final class VaultClient {
+    private VaultClient() {}
+
+    // Код возврата: 0 — успех, 1 — демон вернул ошибку, 2 — запрос не выполнен
+    public static int run(String[] args) {
+        Path socketPath = Paths.get(Constants.DAEMON_SOCKET_NAME);
+        int first = 0;
+        if (args.length > 1 && args[0].equals("--socket")) {
+            socketPath = Paths.get(args[1]);
+            first = 2;
+        }
+        if (args.length == first) {
+            System.err.println("Использование: client [--socket путь] get|list|search|put ...");
+            return 2;
+        }
+
+        String command = args[first].toUpperCase(Locale.ROOT);
+        ProtocolWriter request = new ProtocolWriter();
+        request.field(command);
+        for (int i = first + 1; i < args.length; i++) {
+            request.field(args[i]);
+        }
+        if (command.equals("PUT")) {
+            char[] password = PasswordManagerUI.readSecret("Введите пароль: ");
+            try (SecretBuffer secret = SecretBuffer.of(password)) {
+                request.field(secret.view());
+            } finally {
+                Arrays.fill(password, '\0');
+            }
+        }
+        request.endLine();
+
+        ProtocolReader response = null;
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socketPath))) {
+            request.flush(channel);
+            response = new ProtocolReader(channel, Constants.DAEMON_MAX_LINE);
+            if (!response.next()) {
+                System.err.println("Демон закрыл соединение без ответа.");
+                return 2;
+            }
+            if (!response.text(0).equals("OK")) {
+                System.err.println(response.size() > 1 ? response.text(1) : "Ошибка демона.");
+                return 1;
+            }
+            print(command, response, System.out);
+            return 0;
+        } catch (IOException e) {
+            System.err.println("Демон недоступен (" + socketPath + "): " + e.getMessage());
+            return 2;
+        } finally {
+            request.wipe();
+            if (response != null) response.wipe();
+        }
+    }
+
+    private static void print(String command, ProtocolReader response, PrintStream out) throws IOException {
+        switch (command) {
+            case "GET" -> {
+                response.copyTo(1, out);
+                out.println();
+            }
+            case "LIST", "SEARCH" -> {
+                int count = Integer.parseInt(response.text(1));
+                for (int i = 0; i < count; i++) {
+                    if (!response.next()) {
+                        throw new IOException("Ответ демона оборвался.");
+                    }
+                    out.println(response.text(0) + "\t" + response.text(1) + "\t" + response.text(2));
+                }
+            }
+            default -> out.println(response.size() > 1 ? response.text(1) : "OK");
+        }
+        out.flush();
+    }
+}
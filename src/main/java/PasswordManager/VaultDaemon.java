@@ -0,0 +1,280 @@
+package main.java.PasswordManager;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import jdk.net.ExtendedSocketOptions;
+import jdk.net.UnixDomainPrincipal;
+
+// Фоновый режим: хранилище разблокируется один раз, запросы принимаются через Unix-сокет,
+// доступный только владельцу. Каждое соединение обслуживает свой поток и может передать любое число запросов.
+//   GET <место> [логин]           -> OK <пароль>
+//   LIST                          -> OK <n>, затем n строк <id> <место> <логин>
+//   SEARCH <запрос> [лимит]       -> OK <n>, затем n строк <id> <место> <логин>
+//   PUT <место> <логин> <пароль>  -> OK <id>
+// При ошибке ответ ERR <сообщение>, соединение остаётся открытым.
+public class VaultDaemon {
+    // Объём ответа, после которого длинный список отправляется по частям
+    private static final int FLUSH_THRESHOLD = 64 * 1024;
+
+    private final PasswordManager manager;
+    private final WriteBehindPersister persister;
+    private final Path socketPath;
+    private final Semaphore connections = new Semaphore(Constants.DAEMON_MAX_CONNECTIONS);
+    private volatile ServerSocketChannel server;
+
+    public VaultDaemon(PasswordManager manager, WriteBehindPersister persister, Path socketPath) {
+        this.manager = manager;
+        this.persister = persister;
+        this.socketPath = socketPath;
+    }
+
+    // Запуск из Main: daemon [--socket путь]; работает до SIGINT/SIGTERM
+    public static int run(String[] args) {
+        Path socketPath = Paths.get(Constants.DAEMON_SOCKET_NAME);
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--socket") && i + 1 < args.length) {
+                socketPath = Paths.get(args[++i]);
+            } else {
+                System.err.println("Неизвестный параметр: " + args[i]);
+                return 2;
+            }
+        }
+
+        PasswordManager manager = new PasswordManager();
+        char[] masterPassword = PasswordManagerUI.readSecret("Введите мастер-пароль: ");
+        if (!manager.loadEntries(masterPassword)) {
+            System.err.println("Неверный мастер-пароль или повреждённое хранилище.");
+            Arrays.fill(masterPassword, '\0');
+            return 2;
+        }
+
+        WriteBehindPersister persister = new WriteBehindPersister(manager, () -> masterPassword,
+                Constants.PERSIST_WINDOW_MILLIS);
+        VaultDaemon daemon = new VaultDaemon(manager, persister, socketPath);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            daemon.stop();
+            persister.close();
+            manager.lock();
+            Arrays.fill(masterPassword, '\0');
+        }));
+        try {
+            daemon.serve();
+            return 0;
+        } catch (IOException e) {
+            System.err.println("Ошибка демона: " + e.getMessage());
+            return 2;
+        }
+    }
+
+    public void serve() throws IOException {
+        prepareSocketFile();
+        UserPrincipal owner = FileSystems.getDefault().getUserPrincipalLookupService()
+                .lookupPrincipalByName(System.getProperty("user.name"));
+
+        // В Java 17 нет виртуальных потоков: соединения обслуживает кэширующий пул, число соединений ограничено
+        ExecutorService workers = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "vault-daemon-connection");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (ServerSocketChannel channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            channel.bind(UnixDomainSocketAddress.of(socketPath));
+            restrictToOwner();
+            server = channel;
+            System.out.println("Демон принимает запросы через " + socketPath);
+
+            while (true) {
+                SocketChannel client;
+                try {
+                    client = channel.accept();
+                } catch (ClosedChannelException e) {
+                    break;
+                }
+                if (!connections.tryAcquire()) {
+                    refuse(client, "Слишком много соединений.");
+                    continue;
+                }
+                workers.execute(() -> {
+                    try {
+                        handle(client, owner);
+                    } finally {
+                        connections.release();
+                    }
+                });
+            }
+        } finally {
+            workers.shutdownNow();
+            Files.deleteIfExists(socketPath);
+        }
+    }
+
+    public void stop() {
+        ServerSocketChannel channel = server;
+        try {
+            if (channel != null) channel.close();
+            Files.deleteIfExists(socketPath);
+        } catch (IOException e) {
+            System.err.println("Ошибка остановки демона: " + e.getMessage());
+        }
+    }
+
+    // Файл сокета от завершившегося демона удаляется; если демон ещё отвечает, второй не запускается
+    private void prepareSocketFile() throws IOException {
+        if (!Files.exists(socketPath)) return;
+        boolean running;
+        try {
+            SocketChannel.open(UnixDomainSocketAddress.of(socketPath)).close();
+            running = true;
+        } catch (IOException e) {
+            running = false;
+        }
+        if (running) {
+            throw new IOException("Демон уже запущен: " + socketPath);
+        }
+        Files.delete(socketPath);
+    }
+
+    private void restrictToOwner() throws IOException {
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.setPosixFilePermissions(socketPath, PosixFilePermissions.fromString("rw-------"));
+        }
+    }
+
+    private void handle(SocketChannel client, UserPrincipal owner) {
+        ProtocolReader reader = new ProtocolReader(client, Constants.DAEMON_MAX_LINE);
+        ProtocolWriter writer = new ProtocolWriter();
+        try (client) {
+            // Права на файл сокета выставляются после bind, поэтому пользователь собеседника проверяется отдельно
+            if (!isOwner(client, owner)) {
+                writer.field("ERR").field("Доступ запрещён.").endLine();
+                writer.flush(client);
+                return;
+            }
+            while (reader.next()) {
+                try {
+                    dispatch(reader, writer, client);
+                } catch (Exception e) {
+                    writer.wipe();
+                    writer.field("ERR").field(String.valueOf(e.getMessage())).endLine();
+                }
+                writer.flush(client);
+            }
+        } catch (IOException e) {
+            System.err.println("Ошибка соединения: " + e.getMessage());
+        } finally {
+            reader.wipe();
+            writer.wipe();
+        }
+    }
+
+    private static boolean isOwner(SocketChannel client, UserPrincipal owner) throws IOException {
+        if (!client.supportedOptions().contains(ExtendedSocketOptions.SO_PEERCRED)) return true;
+        UnixDomainPrincipal peer = client.getOption(ExtendedSocketOptions.SO_PEERCRED);
+        return peer.user().equals(owner);
+    }
+
+    private static void refuse(SocketChannel client, String message) {
+        ProtocolWriter writer = new ProtocolWriter();
+        try (client) {
+            writer.field("ERR").field(message).endLine();
+            writer.flush(client);
+        } catch (IOException ignored) {
+            // Клиент уже отключился
+        }
+    }
+
+    // PasswordManager потокобезопасен: чтения идут параллельно, изменения сериализует он сам
+    private void dispatch(ProtocolReader request, ProtocolWriter response, SocketChannel client) throws Exception {
+        String command = request.text(0);
+        switch (command) {
+            case "GET" -> {
+                requireFields(request, 2, 3);
+                get(request.text(1), request.size() > 2 ? request.text(2) : null, response);
+            }
+            case "LIST" -> {
+                requireFields(request, 1, 1);
+                List<PasswordEntry> all = manager.listEntries();
+                response.field("OK").field(all.size()).endLine();
+                for (PasswordEntry entry : all) {
+                    writeSummary(entry, response, client);
+                }
+            }
+            case "SEARCH" -> {
+                requireFields(request, 2, 3);
+                int limit = request.size() > 2 ? Integer.parseInt(request.text(2)) : Constants.SEARCH_RESULT_LIMIT;
+                List<PasswordEntry> found = manager.search(request.text(1), limit);
+                response.field("OK").field(found.size()).endLine();
+                for (PasswordEntry entry : found) {
+                    writeSummary(entry, response, client);
+                }
+            }
+            case "PUT" -> {
+                requireFields(request, 4, 4);
+                put(request, response);
+            }
+            default -> throw new IllegalArgumentException("Неизвестная команда: " + command);
+        }
+    }
+
+    // Место и логин сравниваются так же, как их ищет findExact: без пробелов по краям и без учёта регистра
+    private void get(String place, String login, ProtocolWriter response) throws Exception {
+        String wantedPlace = SearchIndex.normalize(place);
+        String wantedLogin = login == null ? null : SearchIndex.normalize(login);
+        for (PasswordEntry entry : manager.findExact(place)) {
+            if (SearchIndex.normalize(entry.getPlace()).equals(wantedPlace)
+                    && (wantedLogin == null || SearchIndex.normalize(entry.getLogin()).equals(wantedLogin))) {
+                // Пароль копируется в ответ без блокировки из опубликованной копии, параллельное изменение записи
+                // его не затрёт
+                manager.readPassword(entry.getId(), password -> response.field("OK").field(password));
+                response.endLine();
+                return;
+            }
+        }
+        throw new IllegalArgumentException("Запись не найдена.");
+    }
+
+    private void put(ProtocolReader request, ProtocolWriter response) throws Exception {
+        SecretBuffer password = request.secret(3);
+        if (password.isEmpty()) {
+            password.destroy();
+            throw new IllegalArgumentException("Пароль не может быть пустым.");
+        }
+        long id = manager.addEntry(request.text(1), request.text(2), password);
+        // Ответ отправляется после записи на диск; параллельные PUT записываются в журнал вместе
+        try {
+            persister.commit().get();
+        } catch (ExecutionException e) {
+            throw new IOException("Запись не сохранена: " + e.getCause().getMessage(), e.getCause());
+        }
+        response.field("OK").field(id).endLine();
+    }
+
+    private static void writeSummary(PasswordEntry entry, ProtocolWriter response, SocketChannel client) throws IOException {
+        response.field(entry.getId()).field(entry.getPlace()).field(entry.getLogin()).endLine();
+        if (response.size() >= FLUSH_THRESHOLD) {
+            response.flush(client);
+        }
+    }
+
+    private static void requireFields(ProtocolReader request, int min, int max) {
+        if (request.size() < min || request.size() > max) {
+            throw new IllegalArgumentException("Неверное число аргументов команды " + request.text(0) + ".");
+        }
+    }
+}
@@ -0,0 +1,396 @@
+package main.java.PasswordManager;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+// Бинарный контейнер хранилища:
+// "PMVB" | версия (1) | параметры вывода ключа (KdfParams, с солью) | длина контрольного значения (2) | контрольное значение |
+// число записей (4) | таблица смещений (8 * N) | слепой индекс (20 * N) | листья дерева Меркла (32 * N) | HMAC корня (32) |
+// записи: длина (4) + тело записи
+// Слепой индекс (BlindIndex) — строки «тег (16) | номер записи (4)», отсортированные по тегу.
+// Других версий контейнера не выпускалось: текстовые хранилища переводятся сразу в эту
+public class VaultFile implements Closeable {
+    private static final byte[] MAGIC = {'P', 'M', 'V', 'B'};
+    public static final byte VERSION = 7;
+    // Версия формата тела записи; входит в связанные данные AEAD
+    public static final byte RECORD_VERSION = 4;
+    public static final byte PART_METADATA = 'M';
+    public static final byte PART_SECRET = 'S';
+
+    private final byte version;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final KdfParams kdf;
+    private final byte[] keyCheck;
+    private final long[] offsets;
+    private final int indexOffset;
+    private final int leavesOffset;
+
+    private VaultFile(byte version, FileChannel channel, MappedByteBuffer buffer, KdfParams kdf, byte[] keyCheck,
+                      long[] offsets, int indexOffset, int leavesOffset) {
+        this.version = version;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.kdf = kdf;
+        this.keyCheck = keyCheck;
+        this.offsets = offsets;
+        this.indexOffset = indexOffset;
+        this.leavesOffset = leavesOffset;
+    }
+
+    public static VaultFile open(Path path) throws IOException {
+        long started = Metrics.start();
+        try {
+            return map(path);
+        } finally {
+            Metrics.stop(Metrics.Operation.VAULT_OPEN, started, 0);
+        }
+    }
+
+    private static VaultFile map(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Файл хранилища слишком велик: " + size + " байт.");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            byte version = buffer.get();
+            if (!Arrays.equals(magic, MAGIC) || version != VERSION) {
+                throw new IOException("Некорректный формат файла хранилища.");
+            }
+
+            KdfParams kdf = KdfParams.read(buffer);
+            byte[] keyCheck = new byte[Short.toUnsignedInt(buffer.getShort())];
+            buffer.get(keyCheck);
+
+            int count = buffer.getInt();
+            long[] offsets = new long[count];
+            for (int i = 0; i < count; i++) {
+                offsets[i] = buffer.getLong();
+            }
+            int indexOffset = buffer.position();
+            int leavesOffset = indexOffset + index(count);
+            buffer.position(leavesOffset + leaves(count) + MerkleTree.HASH_LENGTH);
+            for (int i = 0; i < count; i++) {
+                if (offsets[i] < buffer.position() || offsets[i] + Integer.BYTES > size) {
+                    throw new IOException("Некорректное смещение записи " + i + ".");
+                }
+            }
+            return new VaultFile(version, channel, buffer, kdf, keyCheck, offsets, indexOffset, leavesOffset);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public byte getVersion() { return version; }
+    public KdfParams getKdf() { return kdf; }
+    public byte[] getKeyCheck() { return keyCheck; }
+    public int getRecordCount() { return offsets.length; }
+
+    // Номера записей с заданным тегом: двоичный поиск по отсортированным строкам индекса,
+    // тег сравнивается как два беззнаковых long. Обычно одна запись; пусто, если тега нет
+    public int[] findRecords(byte[] tag) throws IOException {
+        long high = ByteBuffer.wrap(tag).getLong(0);
+        long low = ByteBuffer.wrap(tag).getLong(Long.BYTES);
+        int from = 0;
+        int to = offsets.length;
+        while (from < to) {
+            int middle = (from + to) >>> 1;
+            if (compareRow(middle, high, low) < 0) from = middle + 1;
+            else to = middle;
+        }
+        int end = from;
+        while (end < offsets.length && compareRow(end, high, low) == 0) {
+            end++;
+        }
+        int[] records = new int[end - from];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = buffer.getInt(indexOffset + (from + i) * BlindIndex.ROW_LENGTH + BlindIndex.TAG_LENGTH);
+            if (records[i] < 0 || records[i] >= offsets.length) {
+                throw new IOException("Некорректный номер записи в индексе: " + records[i] + ".");
+            }
+        }
+        return records;
+    }
+
+    private int compareRow(int row, long high, long low) {
+        int position = indexOffset + row * BlindIndex.ROW_LENGTH;
+        int result = Long.compareUnsigned(buffer.getLong(position), high);
+        return result != 0 ? result : Long.compareUnsigned(buffer.getLong(position + Long.BYTES), low);
+    }
+
+    // Теги в порядке записей (16 байт на запись), чтобы при пересохранении не расшифровывать неизменённые записи
+    public byte[] getTags() {
+        byte[] tags = new byte[BlindIndex.TAG_LENGTH * offsets.length];
+        for (int row = 0; row < offsets.length; row++) {
+            int position = indexOffset + row * BlindIndex.ROW_LENGTH;
+            int record = buffer.getInt(position + BlindIndex.TAG_LENGTH);
+            if (record >= 0 && record < offsets.length) {
+                buffer.get(position, tags, record * BlindIndex.TAG_LENGTH, BlindIndex.TAG_LENGTH);
+            }
+        }
+        return tags;
+    }
+
+    // Копия таблицы листьев дерева Меркла (32 байта на запись)
+    public byte[] getLeaves() {
+        byte[] leaves = new byte[MerkleTree.HASH_LENGTH * offsets.length];
+        buffer.get(leavesOffset, leaves);
+        return leaves;
+    }
+
+    public byte[] getRootMac() {
+        byte[] mac = new byte[MerkleTree.HASH_LENGTH];
+        buffer.get(leavesOffset + leaves(offsets.length), mac);
+        return mac;
+    }
+
+    private static int leaves(int count) {
+        return MerkleTree.HASH_LENGTH * count;
+    }
+
+    private static int index(int count) {
+        return BlindIndex.ROW_LENGTH * count;
+    }
+
+    // Срез отображённого файла без копирования; каждый вызов возвращает независимый буфер
+    public ByteBuffer record(int index) throws IOException {
+        int offset = (int) offsets[index];
+        int length = buffer.getInt(offset);
+        if (length < 0 || offset + Integer.BYTES + length > buffer.limit()) {
+            throw new IOException("Некорректная длина записи " + index + ".");
+        }
+        return buffer.slice(offset + Integer.BYTES, length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public int recordLength(int index) throws IOException {
+        return record(index).remaining();
+    }
+
+    // Пишет во временный файл и атомарно заменяет им целевой; возвращает дерево Меркла нового файла.
+    // tags — тег слепого индекса каждой записи (BlindIndex.tag)
+    public static MerkleTree write(Path path, KdfParams kdf, byte[] keyCheck, List<byte[]> records, List<byte[]> tags,
+                                   byte[] vaultKey, int parallelism) throws Exception {
+        long started = Metrics.start();
+        long bytes = 0;
+        int[] lengths = new int[records.size()];
+        for (int i = 0; i < lengths.length; i++) {
+            lengths[i] = records.get(i).length;
+            bytes += lengths[i];
+        }
+        try (Writer writer = Writer.create(path, path.resolveSibling(path.getFileName() + ".tmp"), kdf, keyCheck, lengths)) {
+            for (int i = 0; i < records.size(); i++) {
+                writer.append(records.get(i), tags.get(i));
+            }
+            return writer.commit(vaultKey, parallelism);
+        } finally {
+            Metrics.stop(Metrics.Operation.VAULT_WRITE, started, bytes);
+        }
+    }
+
+    // Потоковая запись хранилища: таблица смещений пишется сразу, поэтому длины записей известны заранее,
+    // а сами записи дописываются по одной и в памяти не накапливаются. Лист дерева Меркла и строка слепого
+    // индекса каждой записи сразу пишутся в заголовок (строки — в порядке записей, чтобы запись можно было
+    // продолжить после сбоя); при завершении строки индекса сортируются по тегу, затем пишется HMAC корня.
+    public static final class Writer implements Closeable {
+        private final Path path;
+        private final Path tempFile;
+        private final FileChannel out;
+        private final int[] lengths;
+        private final long indexOffset;
+        private final long leavesOffset;
+        private final byte[] tags;
+        private final byte[] leaves;
+        private final ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+        private int written;
+
+        private Writer(Path path, Path tempFile, FileChannel out, int[] lengths, long indexOffset, byte[] tags,
+                       byte[] leaves, int written) {
+            this.path = path;
+            this.tempFile = tempFile;
+            this.out = out;
+            this.lengths = lengths;
+            this.indexOffset = indexOffset;
+            this.leavesOffset = indexOffset + index(lengths.length);
+            this.tags = tags;
+            this.leaves = leaves;
+            this.written = written;
+        }
+
+        public static Writer create(Path path, Path tempFile, KdfParams kdf, byte[] keyCheck, int[] lengths) throws IOException {
+            int indexOffset = MAGIC.length + 1 + kdf.encodedLength() + Short.BYTES + keyCheck.length
+                    + Integer.BYTES + Long.BYTES * lengths.length;
+            int headerSize = indexOffset + index(lengths.length) + leaves(lengths.length) + MerkleTree.HASH_LENGTH;
+
+            ByteBuffer header = ByteBuffer.allocate(headerSize);
+            header.put(MAGIC).put(VERSION);
+            kdf.write(header);
+            header.putShort((short) keyCheck.length).put(keyCheck);
+            header.putInt(lengths.length);
+            long offset = headerSize;
+            for (int recordLength : lengths) {
+                header.putLong(offset);
+                offset += Integer.BYTES + recordLength;
+            }
+            // Индекс, листья и HMAC корня заполняются по мере записи
+            header.position(headerSize).flip();
+
+            FileChannel out = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            try {
+                writeFully(out, header);
+            } catch (IOException e) {
+                out.close();
+                throw e;
+            }
+            return new Writer(path, tempFile, out, lengths, indexOffset, new byte[BlindIndex.TAG_LENGTH * lengths.length],
+                    new byte[leaves(lengths.length)], 0);
+        }
+
+        // Продолжает прерванную запись: всё после сохранённой позиции отбрасывается,
+        // теги и листья уже записанных записей читаются из заголовка временного файла
+        public static Writer resume(Path path, Path tempFile, int[] lengths, int written, long position) throws IOException {
+            FileChannel out = FileChannel.open(tempFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                if (out.size() < position) {
+                    throw new IOException("Временный файл короче контрольной точки.");
+                }
+                ByteBuffer header = ByteBuffer.allocate(MAGIC.length + 1 + KdfParams.FIXED_LENGTH + 1);
+                readFully(out, header, 0);
+                int saltLength = Byte.toUnsignedInt(header.get(header.capacity() - 1));
+                ByteBuffer keyCheckLength = ByteBuffer.allocate(Short.BYTES);
+                readFully(out, keyCheckLength, header.capacity() + saltLength);
+                long indexOffset = header.capacity() + saltLength + Short.BYTES + Short.toUnsignedInt(keyCheckLength.getShort(0))
+                        + Integer.BYTES + (long) Long.BYTES * lengths.length;
+
+                ByteBuffer rows = ByteBuffer.allocate(index(written));
+                readFully(out, rows, indexOffset);
+                byte[] tags = new byte[BlindIndex.TAG_LENGTH * lengths.length];
+                for (int i = 0; i < written; i++) {
+                    rows.get(i * BlindIndex.ROW_LENGTH, tags, i * BlindIndex.TAG_LENGTH, BlindIndex.TAG_LENGTH);
+                }
+                byte[] leaves = new byte[leaves(lengths.length)];
+                readFully(out, ByteBuffer.wrap(leaves, 0, leaves(written)), indexOffset + index(lengths.length));
+
+                out.truncate(position);
+                out.position(position);
+                return new Writer(path, tempFile, out, lengths, indexOffset, tags, leaves, written);
+            } catch (IOException e) {
+                out.close();
+                throw e;
+            }
+        }
+
+        public int getWritten() { return written; }
+
+        public void append(byte[] record, byte[] tag) throws IOException {
+            if (written >= lengths.length || record.length != lengths[written]) {
+                throw new IOException("Длина записи " + written + " не совпадает с таблицей смещений.");
+            }
+            if (tag.length != BlindIndex.TAG_LENGTH) {
+                throw new IOException("Некорректная длина тега записи " + written + ".");
+            }
+            length.clear();
+            length.putInt(record.length).flip();
+            writeFully(out, length);
+            writeFully(out, ByteBuffer.wrap(record));
+
+            byte[] leaf = MerkleTree.leafHash(ByteBuffer.wrap(record));
+            System.arraycopy(leaf, 0, leaves, leaves(written), leaf.length);
+            writeFully(out, ByteBuffer.wrap(leaf), leavesOffset + leaves(written));
+            System.arraycopy(tag, 0, tags, written * BlindIndex.TAG_LENGTH, BlindIndex.TAG_LENGTH);
+            writeFully(out, row(tag, written), indexOffset + index(written));
+            written++;
+        }
+
+        // Сбрасывает записанное на диск и возвращает позицию для контрольной точки
+        public long sync() throws IOException {
+            out.force(false);
+            return out.position();
+        }
+
+        public MerkleTree commit(byte[] vaultKey, int parallelism) throws Exception {
+            if (written != lengths.length) {
+                throw new IOException("Записано " + written + " из " + lengths.length + " записей.");
+            }
+            writeFully(out, sortedIndex(), indexOffset);
+            MerkleTree tree = MerkleTree.build(leaves, parallelism);
+            writeFully(out, ByteBuffer.wrap(MerkleTree.rootMac(vaultKey, tree.root())), leavesOffset + leaves.length);
+            out.force(true);
+            out.close();
+            Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return tree;
+        }
+
+        private ByteBuffer sortedIndex() {
+            Integer[] order = new Integer[lengths.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Arrays.compareUnsigned(
+                    tags, a * BlindIndex.TAG_LENGTH, (a + 1) * BlindIndex.TAG_LENGTH,
+                    tags, b * BlindIndex.TAG_LENGTH, (b + 1) * BlindIndex.TAG_LENGTH));
+            ByteBuffer rows = ByteBuffer.allocate(index(lengths.length));
+            for (int record : order) {
+                rows.put(tags, record * BlindIndex.TAG_LENGTH, BlindIndex.TAG_LENGTH).putInt(record);
+            }
+            return rows.flip();
+        }
+
+        private static ByteBuffer row(byte[] tag, int record) {
+            return ByteBuffer.allocate(BlindIndex.ROW_LENGTH).put(tag).putInt(record).flip();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    // Связанные данные AEAD: формат файла, id записи и часть записи (метаданные или пароль),
+    // чтобы запись или её часть нельзя было подменить или переставить
+    public static byte[] associatedData(long id, byte part) {
+        return ByteBuffer.allocate(MAGIC.length + 1 + Long.BYTES + 1).put(MAGIC).put(RECORD_VERSION).putLong(id).put(part).array();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Неожиданный конец файла.");
+            }
+            position += read;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package main.java.PasswordManager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// Перешифрование хранилища новым ключом: записи читаются из отображённого файла, их ключи переобёртываются
+// в пуле с ограниченным окном и пишутся по порядку во временный файл, который затем атомарно заменяет хранилище.
+// Ключ слепого индекса выводится из ключа хранилища, поэтому теги записей считаются заново по расшифрованным
+// месту и логину. Контрольные точки позволяют продолжить прерванную смену мастер-пароля с того же места.
+public class VaultRotation {
+    // Контрольная точка: "PMRI" | размер исходного файла (8) | контрольное значение исходного файла (2 + N) |
+    // параметры вывода нового ключа (KdfParams) | контрольное значение нового ключа (2 + N) | записано записей (4) |
+    // позиция (8). Контрольные точки "PMRC" (без параметров вывода ключа) и "PMRK" (временный файл без слепого
+    // индекса) не читаются, смена начинается заново.
+    private static final byte[] MAGIC = {'P', 'M', 'R', 'I'};
+
+    private record Checkpoint(long sourceSize, byte[] sourceKeyCheck, KdfParams kdf, byte[] keyCheck,
+                              int written, long position) {}
+
+    private record Rewrapped(byte[] record, byte[] tag) {}
+
+    private final Path vaultPath;
+    private final Path tempFile;
+    private final Path checkpointPath;
+    private final int parallelism;
+
+    public VaultRotation(Path vaultPath, int parallelism) {
+        this.vaultPath = vaultPath;
+        this.tempFile = vaultPath.resolveSibling(vaultPath.getFileName() + ".rotation.vault");
+        this.checkpointPath = vaultPath.resolveSibling(vaultPath.getFileName() + ".rotation");
+        this.parallelism = parallelism;
+    }
+
+    // Параметры нового ключа из контрольной точки, если та относится к текущему файлу хранилища, иначе null
+    public KdfParams resumedKdf(VaultFile source) throws IOException {
+        Checkpoint checkpoint = readCheckpoint(source);
+        return checkpoint != null ? checkpoint.kdf() : null;
+    }
+
+    // Возвращает дерево Меркла перешифрованного файла
+    public MerkleTree run(byte[] currentKey, KdfParams newKdf, byte[] newKey) throws Exception {
+        VaultFile.Writer writer;
+        try (VaultFile source = VaultFile.open(vaultPath)) {
+            int count = source.getRecordCount();
+            int[] lengths = new int[count];
+            for (int i = 0; i < count; i++) {
+                lengths[i] = source.recordLength(i);
+            }
+
+            // Переобёрнутая запись той же длины, что и исходная, поэтому таблица смещений известна до начала записи
+            byte[] keyCheck;
+            Checkpoint checkpoint = readCheckpoint(source);
+            if (checkpoint != null && Arrays.equals(checkpoint.kdf().salt(), newKdf.salt())
+                    && AESEncryption.verifyKeyCheck(newKey, checkpoint.keyCheck()) && Files.exists(tempFile)) {
+                keyCheck = checkpoint.keyCheck();
+                writer = VaultFile.Writer.resume(vaultPath, tempFile, lengths, checkpoint.written(), checkpoint.position());
+                System.out.println("Продолжение смены мастер-пароля с записи " + (checkpoint.written() + 1) + " из " + count + ".");
+            } else {
+                keyCheck = AESEncryption.createKeyCheck(newKey);
+                writer = VaultFile.Writer.create(vaultPath, tempFile, newKdf, keyCheck, lengths);
+            }
+
+            try {
+                rewrapAll(source, writer, currentKey, newKey, new Checkpoint(
+                        Files.size(vaultPath), source.getKeyCheck(), newKdf, keyCheck, 0, 0));
+            } catch (Exception e) {
+                writer.close();
+                throw e;
+            }
+        }
+
+        MerkleTree tree = writer.commit(newKey, parallelism);
+        Files.deleteIfExists(checkpointPath);
+        return tree;
+    }
+
+    private void rewrapAll(VaultFile source, VaultFile.Writer writer, byte[] currentKey, byte[] newKey,
+                           Checkpoint state) throws Exception {
+        int count = source.getRecordCount();
+        int first = writer.getWritten();
+        long started = System.nanoTime();
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        byte[] indexKey = BlindIndex.key(newKey);
+        try {
+            // Окно ограничивает число записей в памяти независимо от размера хранилища
+            ArrayDeque<Future<Rewrapped>> window = new ArrayDeque<>(Constants.ROTATION_WINDOW);
+            int next = first;
+            while (writer.getWritten() < count) {
+                while (next < count && window.size() < Constants.ROTATION_WINDOW) {
+                    int index = next++;
+                    window.add(pool.submit(() -> rewrap(source, index, currentKey, newKey, indexKey)));
+                }
+                Rewrapped rewrapped = window.poll().get();
+                writer.append(rewrapped.record(), rewrapped.tag());
+
+                int written = writer.getWritten();
+                if (written % Constants.ROTATION_CHECKPOINT_INTERVAL == 0 || written == count) {
+                    writeCheckpoint(new Checkpoint(state.sourceSize(), state.sourceKeyCheck(), state.kdf(),
+                            state.keyCheck(), written, writer.sync()));
+                    double seconds = (System.nanoTime() - started) / 1e9;
+                    System.out.printf("Перешифровано %d из %d записей (%.0f записей/с)%n",
+                            written, count, (written - first) / Math.max(seconds, 1e-9));
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+            Arrays.fill(indexKey, (byte) 0);
+        }
+    }
+
+    // Пароль записи не расшифровывается: для тега достаточно метаданных
+    private static Rewrapped rewrap(VaultFile source, int index, byte[] currentKey, byte[] newKey, byte[] indexKey)
+            throws Exception {
+        PasswordEntry entry = AESEncryption.decryptRecord(currentKey, source.record(index));
+        try {
+            return new Rewrapped(AESEncryption.rewrapRecord(currentKey, newKey, source.record(index)),
+                    BlindIndex.tag(indexKey, entry));
+        } finally {
+            entry.destroy();
+        }
+    }
+
+    private Checkpoint readCheckpoint(VaultFile source) throws IOException {
+        if (!Files.exists(checkpointPath)) return null;
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(checkpointPath));
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) return null;
+
+            long sourceSize = buffer.getLong();
+            byte[] sourceKeyCheck = new byte[Short.toUnsignedInt(buffer.getShort())];
+            buffer.get(sourceKeyCheck);
+            KdfParams kdf = KdfParams.read(buffer);
+            byte[] keyCheck = new byte[Short.toUnsignedInt(buffer.getShort())];
+            buffer.get(keyCheck);
+            Checkpoint checkpoint = new Checkpoint(sourceSize, sourceKeyCheck, kdf, keyCheck, buffer.getInt(), buffer.getLong());
+
+            // Контрольное значение с новым IV пишется при каждом сохранении, поэтому вместе с размером
+            // отличает исходный файл от любого переписанного после контрольной точки
+            if (checkpoint.sourceSize() != Files.size(vaultPath)
+                    || !Arrays.equals(checkpoint.sourceKeyCheck(), source.getKeyCheck())
+                    || checkpoint.written() > source.getRecordCount()) {
+                return null;
+            }
+            return checkpoint;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Контрольная точка смены пароля повреждена и будет проигнорирована.");
+            return null;
+        }
+    }
+
+    private void writeCheckpoint(Checkpoint checkpoint) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(MAGIC.length + Long.BYTES
+                + Short.BYTES + checkpoint.sourceKeyCheck().length
+                + checkpoint.kdf().encodedLength()
+                + Short.BYTES + checkpoint.keyCheck().length
+                + Integer.BYTES + Long.BYTES);
+        buffer.put(MAGIC).putLong(checkpoint.sourceSize());
+        buffer.putShort((short) checkpoint.sourceKeyCheck().length).put(checkpoint.sourceKeyCheck());
+        checkpoint.kdf().write(buffer);
+        buffer.putShort((short) checkpoint.keyCheck().length).put(checkpoint.keyCheck());
+        buffer.putInt(checkpoint.written()).putLong(checkpoint.position());
+
+        Path temp = checkpointPath.resolveSibling(checkpointPath.getFileName() + ".tmp");
+        Files.write(temp, buffer.array());
+        Files.move(temp, checkpointPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
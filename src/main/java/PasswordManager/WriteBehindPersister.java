@@ -0,0 +1,111 @@
+package main.java.PasswordManager;
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Отложенное сохранение изменений в отдельном потоке. Изменения, сделанные в течение окна PERSIST_WINDOW_MILLIS
+// после первого, сохраняются одной записью в журнал (или одним снимком при его сворачивании), поэтому серия правок
+// стоит одну запись на диск, а вызывающий поток не ждёт диска.
+//   manager.addEntry(...);
+//   persister.changed();           // UI: вернуться сразу
+//   persister.commit().get();      // демон: дождаться записи, параллельные запросы сохраняются вместе
+public final class WriteBehindPersister implements Closeable {
+    private final PasswordManager manager;
+    private final Supplier<char[]> masterPassword;
+    private final long windowMillis;
+    private final ScheduledExecutorService executor;
+    // Изменения, ещё не переданные на запись; завершается после сохранения, которое их включает
+    private CompletableFuture<Void> pending;
+    // Предыдущая запись не удалась: изменения остались в очереди менеджера и ждут следующей
+    private boolean failed;
+    private boolean closed;
+
+    // Мастер-пароль читается при каждой записи: он нужен, только если ключ ещё не выведен, и может смениться
+    public WriteBehindPersister(PasswordManager manager, Supplier<char[]> masterPassword, long windowMillis) {
+        this.manager = manager;
+        this.masterPassword = masterPassword;
+        this.windowMillis = windowMillis;
+        this.executor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "vault-persister");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Отмечает несохранённые изменения; запись начнётся по истечении окна
+    public synchronized CompletableFuture<Void> changed() {
+        if (closed) {
+            throw new IllegalStateException("Сохранение уже остановлено.");
+        }
+        if (pending == null) {
+            pending = new CompletableFuture<>();
+            executor.schedule(this::writePending, windowMillis, TimeUnit.MILLISECONDS);
+        }
+        return pending;
+    }
+
+    // Как changed(), но запись начинается сразу после текущей; изменения, отмеченные за время текущей записи,
+    // сохраняются следующей вместе
+    public synchronized CompletableFuture<Void> commit() {
+        CompletableFuture<Void> result = changed();
+        executor.execute(this::writePending);
+        return result;
+    }
+
+    // Сохраняет отмеченные изменения и ждёт окончания записи
+    public void flush() throws Exception {
+        CompletableFuture<Void> result;
+        synchronized (this) {
+            if (pending == null && !failed) return;
+            result = commit();
+        }
+        try {
+            result.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        }
+    }
+
+    private void writePending() {
+        CompletableFuture<Void> batch;
+        synchronized (this) {
+            batch = pending;
+            pending = null;
+            if (batch == null && !failed) return;
+            failed = false;
+        }
+
+        try {
+            manager.saveChanges(masterPassword.get());
+            if (batch != null) batch.complete(null);
+        } catch (Exception e) {
+            System.err.println("Ошибка сохранения изменений: " + e.getMessage());
+            synchronized (this) {
+                failed = true;
+            }
+            if (batch != null) batch.completeExceptionally(e);
+        }
+    }
+
+    // Сохраняет оставшиеся изменения и останавливает поток записи; повторный вызов ничего не делает
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+        }
+        // Отложенные задачи выполняются и после shutdown, последняя запись идёт сразу
+        executor.execute(this::writePending);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
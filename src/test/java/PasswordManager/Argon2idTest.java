@@ -0,0 +1,62 @@
+package main.java.PasswordManager;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+import org.bouncycastle.crypto.generators.Argon2BytesGenerator;
+import org.bouncycastle.crypto.params.Argon2Parameters;
+import org.junit.jupiter.api.Test;
+
+// Параллельный Argon2id даёт тот же ключ, что и последовательный Argon2BytesGenerator из Bouncy Castle
+class Argon2idTest {
+    private static final byte[] PASSWORD = "correct horse battery staple".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SALT = HexFormat.of().parseHex("000102030405060708090a0b0c0d0e0f");
+
+    @Test
+    void matchesBouncyCastleForAnyLaneCount() throws Exception {
+        int[][] cases = {
+                // проходы, память (КиБ), полосы, длина ключа
+                {1, 8, 1, 32},
+                {1, 64, 1, 32},
+                {2, 256, 2, 32},
+                {3, 1024, 4, 32},
+                {2, 1000, 3, 32},
+                {1, 300, 4, 16},
+                {2, 512, 4, 100},
+                {4, 16, 4, 32},
+        };
+        for (int[] c : cases) {
+            assertArrayEquals(bouncyCastle(c[0], c[1], c[2], c[3]),
+                    Argon2id.derive(PASSWORD, SALT, c[0], c[1], c[2], c[3]),
+                    "проходы " + c[0] + ", память " + c[1] + ", полосы " + c[2] + ", ключ " + c[3]);
+        }
+    }
+
+    @Test
+    void matchesKeyDeriverParameters() throws Exception {
+        char[] password = "пароль".toCharArray();
+        KdfParams params = new KdfParams(KdfParams.ARGON2ID, 2, 2048, 4, 0, SALT);
+        byte[] utf8 = new String(password).getBytes(StandardCharsets.UTF_8);
+        assertArrayEquals(bouncyCastle(utf8, 2, 2048, 4, Constants.KEY_SIZE / 8),
+                KeyDeriver.deriveKey(password, params));
+    }
+
+    private static byte[] bouncyCastle(int passes, int memoryKiB, int lanes, int keyLength) {
+        return bouncyCastle(PASSWORD, passes, memoryKiB, lanes, keyLength);
+    }
+
+    private static byte[] bouncyCastle(byte[] password, int passes, int memoryKiB, int lanes, int keyLength) {
+        Argon2BytesGenerator generator = new Argon2BytesGenerator();
+        generator.init(new Argon2Parameters.Builder(Argon2Parameters.ARGON2_id)
+                .withVersion(Argon2Parameters.ARGON2_VERSION_13)
+                .withSalt(SALT)
+                .withIterations(passes)
+                .withMemoryAsKB(memoryKiB)
+                .withParallelism(lanes)
+                .build());
+        byte[] key = new byte[keyLength];
+        generator.generateBytes(password, key);
+        return key;
+    }
+}
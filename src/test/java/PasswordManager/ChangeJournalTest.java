@@ -0,0 +1,167 @@
+package main.java.PasswordManager;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32C;
+import main.java.PasswordManager.ChangeJournal.Change;
+import main.java.PasswordManager.ChangeJournal.Operation;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Журнал PMVJ: изменения читаются в порядке записи; оборванный или изменённый хвост отбрасывается,
+// предыдущие изменения сохраняются, и журнал можно дописывать дальше
+class ChangeJournalTest {
+    private static final int HEADER_LENGTH = 5;
+
+    @TempDir
+    Path directory;
+
+    private final byte[] key = random(Constants.KEY_SIZE / 8);
+    private final byte[] snapshotId = random(16);
+
+    @Test
+    void roundTrip() throws Exception {
+        Path path = directory.resolve("vault.journal");
+        ChangeJournal journal = new ChangeJournal(path);
+        assertThrows(IllegalStateException.class, () -> journal.append(key, List.of(add(1, "a"))));
+
+        journal.reset(snapshotId);
+        assertTrue(journal.isOpen());
+        journal.append(key, List.of(add(1, "a"), add(2, "b")));
+        journal.append(key, List.of(Change.of(Operation.UPDATE, entry(1, "c")), Change.delete(2)));
+
+        byte[] bytes = Files.readAllBytes(path);
+        assertEquals("PMVJ", new String(bytes, 0, 4, StandardCharsets.US_ASCII));
+        assertEquals(1, bytes[4]);
+
+        List<Change> changes = new ChangeJournal(path).replay(key, snapshotId);
+        assertEquals(4, changes.size());
+        assertChange(changes.get(0), Operation.ADD, 1, "a");
+        assertChange(changes.get(1), Operation.ADD, 2, "b");
+        assertChange(changes.get(2), Operation.UPDATE, 1, "c");
+        assertEquals(Operation.DELETE, changes.get(3).operation());
+        assertEquals(2, changes.get(3).id());
+        assertNull(changes.get(3).entry());
+
+        // Чтение без загрузки не меняет файл, открытие продолжает нумерацию
+        assertArrayEquals(bytes, Files.readAllBytes(path));
+        ChangeJournal reopened = new ChangeJournal(path);
+        assertEquals(4, reopened.open(key, snapshotId).size());
+        reopened.append(key, List.of(add(3, "d")));
+        List<Change> appended = reopened.replay(key, snapshotId);
+        assertEquals(5, appended.size());
+        assertChange(appended.get(4), Operation.ADD, 3, "d");
+
+        reopened.clear();
+        assertFalse(Files.exists(path));
+        assertFalse(reopened.isOpen());
+        assertTrue(reopened.replay(key, snapshotId).isEmpty());
+    }
+
+    @Test
+    void tornTailIsTruncatedOnOpen() throws Exception {
+        Path path = directory.resolve("vault.journal");
+        ChangeJournal journal = new ChangeJournal(path);
+        journal.reset(snapshotId);
+        journal.append(key, List.of(add(1, "a"), add(2, "b")));
+        long whole = Files.size(path);
+        journal.append(key, List.of(add(3, "c")));
+
+        // Запись оборвана посередине
+        byte[] bytes = Files.readAllBytes(path);
+        Files.write(path, Arrays.copyOf(bytes, bytes.length - 7));
+        ChangeJournal recovered = new ChangeJournal(path);
+        List<Change> changes = recovered.open(key, snapshotId);
+        assertEquals(2, changes.size());
+        assertEquals(whole, Files.size(path));
+
+        // Новая запись дописывается после последней целой
+        recovered.append(key, List.of(add(4, "d")));
+        changes = new ChangeJournal(path).replay(key, snapshotId);
+        assertEquals(3, changes.size());
+        assertChange(changes.get(2), Operation.ADD, 4, "d");
+
+        // Обрывок заголовка следующей записи
+        Files.write(path, new byte[] {0, 0, 1}, StandardOpenOption.APPEND);
+        assertEquals(3, new ChangeJournal(path).replay(key, snapshotId).size());
+    }
+
+    @Test
+    void tamperedFrameStopsReplay() throws Exception {
+        Path path = directory.resolve("vault.journal");
+        ChangeJournal journal = new ChangeJournal(path);
+        journal.reset(snapshotId);
+        journal.append(key, List.of(add(1, "a")));
+        long first = Files.size(path);
+        journal.append(key, List.of(add(2, "b"), add(3, "c")));
+
+        // Изменённый байт во второй записи: контрольная сумма не сходится
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[(int) first + 12] ^= 1;
+        Files.write(path, bytes);
+        assertEquals(1, new ChangeJournal(path).replay(key, snapshotId).size());
+
+        // Запись с пересчитанной контрольной суммой не проходит проверку AEAD
+        int length = ByteBuffer.wrap(bytes).getInt((int) first);
+        CRC32C checksum = new CRC32C();
+        checksum.update(bytes, (int) first + 8, length);
+        ByteBuffer.wrap(bytes).putInt((int) first + 4, (int) checksum.getValue());
+        Files.write(path, bytes);
+        assertEquals(1, new ChangeJournal(path).replay(key, snapshotId).size());
+
+        // Изменённый заголовок: журнал пропускается целиком
+        bytes[0] = 'X';
+        Files.write(path, bytes);
+        assertTrue(new ChangeJournal(path).replay(key, snapshotId).isEmpty());
+    }
+
+    @Test
+    void journalOfAnotherSnapshotIsIgnored() throws Exception {
+        Path path = directory.resolve("vault.journal");
+        ChangeJournal journal = new ChangeJournal(path);
+        journal.reset(snapshotId);
+        journal.append(key, List.of(add(1, "a"), add(2, "b")));
+
+        assertTrue(new ChangeJournal(path).replay(key, random(16)).isEmpty());
+        assertTrue(new ChangeJournal(path).replay(random(key.length), snapshotId).isEmpty());
+
+        // Открытие для другого снимка отбрасывает чужие записи, оставляя только заголовок
+        new ChangeJournal(path).open(key, random(16));
+        assertEquals(HEADER_LENGTH, Files.size(path));
+    }
+
+    private static Change add(long id, String password) {
+        return Change.of(Operation.ADD, entry(id, password));
+    }
+
+    private static PasswordEntry entry(long id, String password) {
+        return new PasswordEntry(id, "site-" + id + ".ru", "user" + id, SecretBuffer.of(password));
+    }
+
+    private static void assertChange(Change change, Operation operation, long id, String password) {
+        assertEquals(operation, change.operation());
+        assertEquals(id, change.id());
+        assertEquals("site-" + id + ".ru", change.entry().getPlace());
+        assertEquals("user" + id, change.entry().getLogin());
+        assertEquals(password, new String(change.entry().getPassword().toChars()));
+    }
+
+    private static byte[] random(int length) {
+        byte[] bytes = new byte[length];
+        new SecureRandom().nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,335 @@
+package main.java.PasswordManager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Field;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Линеаризуемость PasswordManager: писатели (addEntry, updateEntry, removeEntry) и читатели (getEntry, search,
+// listEntries, getEntriesCount) работают параллельно, каждая операция записывается в историю с результатом
+// и временем начала и конца. Для истории ищется последовательный порядок, согласованный с реальным временем,
+// в котором каждая операция на модели (упорядоченный список записей) даёт тот же результат.
+// Порядок ищется перебором Уинга — Гонга с запоминанием пройденных состояний.
+class PasswordManagerConcurrencyTest {
+    private static final int ROUNDS = 300;
+    private static final int WRITERS = 2;
+    private static final int READERS = 3;
+    private static final int OPERATIONS_PER_THREAD = 8;
+    private static final int INITIAL_ENTRIES = 6;
+    // Больше любого числа записей в раунде: поиск возвращает все совпадения, и результат не зависит от порядка равных
+    private static final int SEARCH_LIMIT = 1000;
+
+    private static final String[] PLACES = {"mail.ru", "gmail.com", "github.com", "gitlab.com", "bank", "ozon.ru"};
+    private static final String[] LOGINS = {"alice", "bob", "carol"};
+    private static final String[] QUERIES = {"mail", "git", "gitlab.com", "bank", "alice", "gmal", "ozon"};
+
+    private static final String DONE = "done";
+    private static final String INVALID = "invalid";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void concurrentReadersSeeLinearizableHistory() throws Exception {
+        ExecutorService threads = Executors.newFixedThreadPool(WRITERS + READERS);
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                PasswordManager manager = new PasswordManager(directory.resolve("vault.dat"));
+                for (int i = 0; i < INITIAL_ENTRIES; i++) {
+                    manager.addEntry(PLACES[i % PLACES.length], LOGINS[i % LOGINS.length], SecretBuffer.of("pw" + i));
+                }
+                Model initial = new Model(rows(manager.listEntries()), INITIAL_ENTRIES + 1);
+
+                CyclicBarrier start = new CyclicBarrier(WRITERS + READERS);
+                List<Future<List<Call>>> results = new ArrayList<>();
+                for (int w = 0; w < WRITERS; w++) {
+                    Random random = new Random(round * 31L + w);
+                    results.add(threads.submit(() -> {
+                        start.await();
+                        return write(manager, random);
+                    }));
+                }
+                for (int r = 0; r < READERS; r++) {
+                    Random random = new Random(round * 31L + WRITERS + r);
+                    results.add(threads.submit(() -> {
+                        start.await();
+                        return read(manager, random);
+                    }));
+                }
+
+                List<Call> history = new ArrayList<>();
+                for (Future<List<Call>> result : results) {
+                    history.addAll(result.get());
+                }
+                manager.lock();
+
+                int failedRound = round;
+                assertTrue(isLinearizable(initial, history),
+                        () -> "Раунд " + failedRound + ": история не линеаризуема\n" + describe(history));
+            }
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    // Читатели не ждут писателя: пока блокировка записи занята, все операции чтения завершаются
+    @Test
+    void readersFinishWhileWriterHoldsLock() throws Exception {
+        PasswordManager manager = new PasswordManager(directory.resolve("vault.dat"));
+        for (int i = 0; i < INITIAL_ENTRIES; i++) {
+            manager.addEntry(PLACES[i % PLACES.length], LOGINS[i % LOGINS.length], SecretBuffer.of("pw" + i));
+        }
+        Field field = PasswordManager.class.getDeclaredField("lock");
+        field.setAccessible(true);
+        StampedLock lock = (StampedLock) field.get(manager);
+
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        List<Object> expected = readAll(manager);
+        long stamp = lock.writeLock();
+        try {
+            assertEquals(expected, reader.submit(() -> readAll(manager)).get(5, TimeUnit.SECONDS));
+        } finally {
+            lock.unlockWrite(stamp);
+            reader.shutdownNow();
+            manager.lock();
+        }
+    }
+
+    private static List<Object> readAll(PasswordManager manager) throws Exception {
+        PasswordEntry first = manager.getEntry(0);
+        return List.of(
+                Row.of(first),
+                new HashSet<>(rows(manager.search("git", SEARCH_LIMIT))),
+                rows(manager.findExact("bank")),
+                rows(manager.findByPrefix("gi", SEARCH_LIMIT)),
+                rows(manager.listEntries()),
+                manager.indexOf(first),
+                manager.getEntriesCount(),
+                manager.readPassword(first.getId(), password -> password.remaining()));
+    }
+
+    // Проверка самой проверки: чтение, закончившееся до начала добавления, не может его увидеть
+    @Test
+    void staleAndFutureReadsAreRejected() {
+        Model initial = new Model(List.of(new Row(1, "bank", "alice")), 2);
+        List<Row> before = initial.rows();
+        List<Row> after = List.of(new Row(1, "bank", "alice"), new Row(2, "mail.ru", "bob"));
+        Operation add = model -> model.add("mail.ru", "bob");
+        Operation list = Model::list;
+
+        // Добавление [10, 20], чтение [0, 5] видит запись
+        assertFalse(isLinearizable(initial, List.of(
+                new Call("add", add, 2L, 10, 20),
+                new Call("list", list, after, 0, 5))));
+        // Добавление [0, 5], чтение [10, 20] не видит запись
+        assertFalse(isLinearizable(initial, List.of(
+                new Call("add", add, 2L, 0, 5),
+                new Call("list", list, before, 10, 20))));
+        // Пересекающиеся по времени операции допускают оба порядка
+        assertTrue(isLinearizable(initial, List.of(
+                new Call("add", add, 2L, 0, 20),
+                new Call("list", list, before, 5, 10))));
+        assertTrue(isLinearizable(initial, List.of(
+                new Call("add", add, 2L, 0, 20),
+                new Call("list", list, after, 5, 10))));
+    }
+
+    private static List<Call> write(PasswordManager manager, Random random) {
+        List<Call> calls = new ArrayList<>(OPERATIONS_PER_THREAD);
+        for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+            String place = PLACES[random.nextInt(PLACES.length)];
+            String login = LOGINS[random.nextInt(LOGINS.length)];
+            int index = random.nextInt(INITIAL_ENTRIES + 2);
+            switch (random.nextInt(3)) {
+                case 0 -> calls.add(call("addEntry(" + place + ", " + login + ")",
+                        model -> model.add(place, login),
+                        () -> manager.addEntry(place, login, SecretBuffer.of("new"))));
+                case 1 -> calls.add(call("updateEntry(" + index + ", " + place + ", " + login + ")",
+                        model -> model.update(index, place, login),
+                        () -> {
+                            manager.updateEntry(index, place, login, null);
+                            return DONE;
+                        }));
+                default -> calls.add(call("removeEntry(" + index + ")",
+                        model -> model.remove(index),
+                        () -> {
+                            manager.removeEntry(index);
+                            return DONE;
+                        }));
+            }
+        }
+        return calls;
+    }
+
+    private static List<Call> read(PasswordManager manager, Random random) {
+        List<Call> calls = new ArrayList<>(OPERATIONS_PER_THREAD);
+        for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+            int index = random.nextInt(INITIAL_ENTRIES + 2);
+            String query = QUERIES[random.nextInt(QUERIES.length)];
+            switch (random.nextInt(4)) {
+                case 0 -> calls.add(call("getEntry(" + index + ")",
+                        model -> model.get(index),
+                        () -> Row.of(manager.getEntry(index))));
+                case 1 -> calls.add(call("search(" + query + ")",
+                        model -> model.search(query),
+                        () -> new HashSet<>(rows(manager.search(query, SEARCH_LIMIT)))));
+                case 2 -> calls.add(call("listEntries()", Model::list, () -> rows(manager.listEntries())));
+                default -> calls.add(call("getEntriesCount()", Model::count, manager::getEntriesCount));
+            }
+        }
+        return calls;
+    }
+
+    private static Call call(String name, Operation operation, Action action) {
+        long invoked = System.nanoTime();
+        Object result;
+        try {
+            result = action.run();
+        } catch (IllegalArgumentException e) {
+            result = INVALID;
+        }
+        long returned = System.nanoTime();
+        return new Call(name, operation, result, invoked, returned);
+    }
+
+    // Операцию можно поставить следующей, если ни одна из оставшихся не завершилась до её начала
+    static boolean isLinearizable(Model initial, List<Call> history) {
+        if (history.size() > Long.SIZE) {
+            throw new IllegalArgumentException("История длиннее " + Long.SIZE + " операций.");
+        }
+        long all = history.size() == Long.SIZE ? -1L : (1L << history.size()) - 1;
+        return linearize(history, initial, 0L, all, new HashSet<>());
+    }
+
+    private static boolean linearize(List<Call> history, Model model, long done, long all, Set<Visit> visited) {
+        if (done == all) return true;
+        if (!visited.add(new Visit(done, model))) return false;
+
+        long earliestReturn = Long.MAX_VALUE;
+        for (int i = 0; i < history.size(); i++) {
+            if ((done & (1L << i)) == 0) {
+                earliestReturn = Math.min(earliestReturn, history.get(i).returned());
+            }
+        }
+        for (int i = 0; i < history.size(); i++) {
+            Call call = history.get(i);
+            if ((done & (1L << i)) != 0 || call.invoked() > earliestReturn) continue;
+            Step step = call.operation().apply(model);
+            if (Objects.equals(step.result(), call.result())
+                    && linearize(history, step.next(), done | (1L << i), all, visited)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String describe(List<Call> history) {
+        long origin = Long.MAX_VALUE;
+        for (Call call : history) {
+            origin = Math.min(origin, call.invoked());
+        }
+        List<Call> sorted = new ArrayList<>(history);
+        sorted.sort((a, b) -> Long.compare(a.invoked(), b.invoked()));
+        StringBuilder text = new StringBuilder();
+        for (Call call : sorted) {
+            text.append('[').append(call.invoked() - origin).append(", ").append(call.returned() - origin).append("] ")
+                    .append(call.name()).append(" -> ").append(call.result()).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static List<Row> rows(List<PasswordEntry> entries) {
+        List<Row> rows = new ArrayList<>(entries.size());
+        for (PasswordEntry entry : entries) {
+            rows.add(Row.of(entry));
+        }
+        return rows;
+    }
+
+    @FunctionalInterface
+    private interface Action {
+        Object run();
+    }
+
+    @FunctionalInterface
+    interface Operation {
+        Step apply(Model model);
+    }
+
+    record Call(String name, Operation operation, Object result, long invoked, long returned) {}
+
+    record Step(Model next, Object result) {}
+
+    private record Visit(long done, Model model) {}
+
+    record Row(long id, String place, String login) {
+        static Row of(PasswordEntry entry) {
+            return entry == null ? null : new Row(entry.getId(), entry.getPlace(), entry.getLogin());
+        }
+    }
+
+    // Последовательная спецификация: порядок записей как в меню, изменённая запись остаётся на своём месте
+    record Model(List<Row> rows, long nextId) {
+        Step add(String place, String login) {
+            List<Row> next = new ArrayList<>(rows);
+            next.add(new Row(nextId, place, login));
+            return new Step(new Model(List.copyOf(next), nextId + 1), nextId);
+        }
+
+        Step update(int index, String place, String login) {
+            if (index < 0 || index >= rows.size()) return new Step(this, INVALID);
+            List<Row> next = new ArrayList<>(rows);
+            next.set(index, new Row(rows.get(index).id(), place, login));
+            return new Step(new Model(List.copyOf(next), nextId), DONE);
+        }
+
+        Step remove(int index) {
+            if (index < 0 || index >= rows.size()) return new Step(this, DONE);
+            List<Row> next = new ArrayList<>(rows);
+            next.remove(index);
+            return new Step(new Model(List.copyOf(next), nextId), DONE);
+        }
+
+        Step get(int index) {
+            return new Step(this, index >= 0 && index < rows.size() ? rows.get(index) : null);
+        }
+
+        Step list() {
+            return new Step(this, rows);
+        }
+
+        Step count() {
+            return new Step(this, rows.size());
+        }
+
+        // Ожидаемые совпадения — ответ отдельного индекса, построенного по записям модели
+        Step search(String query) {
+            Map<Long, PasswordEntry> documents = new HashMap<>();
+            SearchIndex index = new SearchIndex(documents::get);
+            for (Row row : rows) {
+                PasswordEntry entry = new PasswordEntry(row.id(), row.place(), row.login(), null, null, null);
+                documents.put(row.id(), entry);
+                index.add(entry);
+            }
+            return new Step(this, new HashSet<>(PasswordManagerConcurrencyTest.rows(index.search(query, SEARCH_LIMIT))));
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package main.java.PasswordManager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// После сохранения новые и изменённые записи хранят пароль только зашифрованным, как загруженные
+class PasswordManagerPersistenceTest {
+    private static final char[] MASTER_PASSWORD = "master-password".toCharArray();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void savedEntriesKeepOnlySealedPasswords() throws Exception {
+        Path vault = directory.resolve("vault.dat");
+        PasswordManager manager = new PasswordManager(vault);
+        assertTrue(manager.loadEntries(MASTER_PASSWORD.clone()));
+        long id = manager.addEntry("mail.ru", "alice", SecretBuffer.of("first"));
+
+        PasswordEntry added = manager.getEntry(0);
+        assertTrue(added.isPasswordDecrypted());
+        assertNull(added.getSealedPassword());
+
+        // Снимок: открытый буфер затёрт, пароль расшифровывается из зашифрованного
+        manager.saveEntries(MASTER_PASSWORD.clone());
+        assertThrows(IllegalStateException.class, added::getPassword);
+        PasswordEntry saved = manager.getEntry(0);
+        assertNotNull(saved.getSealedPassword());
+        assertFalse(saved.isPasswordDecrypted());
+        assertEquals("first", password(manager, id));
+
+        // Журнал: то же после дописывания изменения
+        manager.updateEntry(0, "mail.ru", "alice", SecretBuffer.of("second"));
+        PasswordEntry updated = manager.getEntry(0);
+        assertNull(updated.getSealedPassword());
+        manager.saveChanges(MASTER_PASSWORD.clone());
+        assertThrows(IllegalStateException.class, updated::getPassword);
+        assertNotNull(manager.getEntry(0).getSealedPassword());
+        assertEquals("second", password(manager, id));
+
+        // Несохранённое изменение остаётся открытым
+        manager.addEntry("bank", "bob", SecretBuffer.of("third"));
+        assertNull(manager.getEntry(1).getSealedPassword());
+        manager.saveChanges(MASTER_PASSWORD.clone());
+        manager.lock();
+
+        PasswordManager reloaded = new PasswordManager(vault);
+        assertTrue(reloaded.loadEntries(MASTER_PASSWORD.clone()));
+        assertEquals(2, reloaded.getEntriesCount());
+        assertEquals("second", password(reloaded, id));
+        assertEquals("third", password(reloaded, reloaded.getEntry(1).getId()));
+        reloaded.lock();
+    }
+
+    private static String password(PasswordManager manager, long id) throws Exception {
+        char[] password = manager.readPassword(id, SecretBuffer::toChars);
+        return new String(password);
+    }
+}
@@ -0,0 +1,162 @@
+package main.java.PasswordManager;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Контейнер PMVB v7: заголовок с параметрами ключа, слепой индекс, листья дерева Меркла и HMAC корня
+// читаются так же, как записаны; изменённая запись или заголовок обнаруживаются
+class VaultFileTest {
+    private static final int COUNT = 50;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void roundTrip() throws Exception {
+        byte[] key = randomKey();
+        KdfParams kdf = pbkdf2();
+        byte[] keyCheck = AESEncryption.createKeyCheck(key);
+        Path vault = write(key, kdf, keyCheck);
+
+        try (VaultFile file = VaultFile.open(vault)) {
+            assertEquals(VaultFile.VERSION, file.getVersion());
+            assertEquals(kdf.algorithm(), file.getKdf().algorithm());
+            assertEquals(kdf.iterations(), file.getKdf().iterations());
+            assertArrayEquals(kdf.salt(), file.getKdf().salt());
+            assertArrayEquals(keyCheck, file.getKeyCheck());
+            assertTrue(AESEncryption.verifyKeyCheck(key, file.getKeyCheck()));
+            assertEquals(COUNT, file.getRecordCount());
+
+            byte[] leaves = file.getLeaves();
+            for (int i = 0; i < COUNT; i++) {
+                PasswordEntry entry = AESEncryption.decryptRecord(key, file.record(i));
+                assertEquals(i + 1, entry.getId());
+                assertEquals(place(i), entry.getPlace());
+                assertEquals(login(i), entry.getLogin());
+                assertEquals(password(i), new String(entry.getPassword().toChars()));
+                assertArrayEquals(MerkleTree.leafHash(file.record(i)),
+                        Arrays.copyOfRange(leaves, i * MerkleTree.HASH_LENGTH, (i + 1) * MerkleTree.HASH_LENGTH));
+            }
+
+            // Слепой индекс находит запись по нормализованным месту и логину
+            byte[] indexKey = BlindIndex.key(key);
+            for (int i = 0; i < COUNT; i++) {
+                assertArrayEquals(new int[] {i}, file.findRecords(BlindIndex.tag(indexKey, place(i), login(i))));
+            }
+            assertArrayEquals(new int[] {7}, file.findRecords(BlindIndex.tag(indexKey, " " + place(7).toUpperCase(), login(7))));
+            assertEquals(0, file.findRecords(BlindIndex.tag(indexKey, "нет такого", "никого")).length);
+
+            MerkleTree tree = MerkleTree.build(leaves, 2);
+            assertTrue(tree.verifyRoot(key, file.getRootMac()));
+            assertFalse(tree.verifyRoot(randomKey(), file.getRootMac()));
+        }
+    }
+
+    @Test
+    void tamperedRecordIsDetected() throws Exception {
+        byte[] key = randomKey();
+        Path vault = write(key, pbkdf2(), AESEncryption.createKeyCheck(key));
+
+        // Последний байт файла — конец шифротекста пароля последней записи
+        byte[] bytes = Files.readAllBytes(vault);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(vault, bytes);
+
+        try (VaultFile file = VaultFile.open(vault)) {
+            int last = COUNT - 1;
+            MerkleTree tree = MerkleTree.build(file.getLeaves(), 1);
+            assertTrue(tree.verifyRoot(key, file.getRootMac()));
+            assertTrue(tree.verify(0, MerkleTree.leafHash(file.record(0))));
+            assertFalse(tree.verify(last, MerkleTree.leafHash(file.record(last))));
+
+            PasswordEntry entry = AESEncryption.decryptRecord(key, file.record(last));
+            assertThrows(Exception.class, () -> AESEncryption.openSecret(key, entry.getId(), entry.getSealedPassword()));
+        }
+    }
+
+    @Test
+    void tamperedLeafOrRootMacIsDetected() throws Exception {
+        byte[] key = randomKey();
+        Path vault = write(key, pbkdf2(), AESEncryption.createKeyCheck(key));
+
+        try (VaultFile file = VaultFile.open(vault)) {
+            byte[] leaves = file.getLeaves();
+            leaves[3 * MerkleTree.HASH_LENGTH] ^= 1;
+            assertFalse(MerkleTree.build(leaves, 1).verifyRoot(key, file.getRootMac()));
+
+            byte[] mac = file.getRootMac();
+            mac[0] ^= 1;
+            assertFalse(MerkleTree.build(file.getLeaves(), 1).verifyRoot(key, mac));
+        }
+    }
+
+    @Test
+    void tamperedHeaderIsRejected() throws Exception {
+        byte[] key = randomKey();
+        Path vault = write(key, pbkdf2(), AESEncryption.createKeyCheck(key));
+        byte[] original = Files.readAllBytes(vault);
+
+        // Сигнатура и версия
+        for (int position : new int[] {0, 4}) {
+            byte[] bytes = original.clone();
+            bytes[position] ^= 1;
+            Files.write(vault, bytes);
+            IOException e = assertThrows(IOException.class, () -> VaultFile.open(vault).close());
+            assertEquals("Некорректный формат файла хранилища.", e.getMessage());
+        }
+
+        // Контрольное значение ключа
+        Files.write(vault, original);
+        try (VaultFile file = VaultFile.open(vault)) {
+            byte[] keyCheck = file.getKeyCheck();
+            keyCheck[keyCheck.length - 1] ^= 1;
+            assertFalse(AESEncryption.verifyKeyCheck(key, keyCheck));
+        }
+
+        // Обрезанный файл: смещения записей выходят за его конец
+        Files.write(vault, Arrays.copyOf(original, original.length - 200));
+        assertThrows(IOException.class, () -> VaultFile.open(vault).close());
+    }
+
+    private Path write(byte[] key, KdfParams kdf, byte[] keyCheck) throws Exception {
+        byte[] indexKey = BlindIndex.key(key);
+        List<byte[]> records = new ArrayList<>(COUNT);
+        List<byte[]> tags = new ArrayList<>(COUNT);
+        for (int i = 0; i < COUNT; i++) {
+            records.add(AESEncryption.encryptRecord(key, i + 1, place(i), login(i), SecretBuffer.of(password(i))));
+            tags.add(BlindIndex.tag(indexKey, place(i), login(i)));
+        }
+        Path vault = directory.resolve("vault.dat");
+        VaultFile.write(vault, kdf, keyCheck, records, tags, key, 2);
+        return vault;
+    }
+
+    private static KdfParams pbkdf2() {
+        byte[] salt = new byte[Constants.SALT_SIZE];
+        new SecureRandom().nextBytes(salt);
+        return new KdfParams(KdfParams.PBKDF2, 1000, 0, 1, 0, salt);
+    }
+
+    private static byte[] randomKey() {
+        byte[] key = new byte[Constants.KEY_SIZE / 8];
+        new SecureRandom().nextBytes(key);
+        return key;
+    }
+
+    private static String place(int i) { return "site-" + i + ".ru"; }
+    private static String login(int i) { return "user" + i; }
+    private static String password(int i) { return "пароль-" + i; }
+}
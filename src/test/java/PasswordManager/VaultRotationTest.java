@@ -0,0 +1,177 @@
+package main.java.PasswordManager;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Смена ключа хранилища: записи перешифровываются новым ключом вместе со слепым индексом и деревом Меркла;
+// прерванная смена продолжается с контрольной точки PMRI, если исходный файл не менялся
+class VaultRotationTest {
+    // Запись, на которой прерывается смена: после первой контрольной точки
+    private static final int BROKEN = Constants.ROTATION_CHECKPOINT_INTERVAL + 2;
+    private static final int COUNT = Constants.ROTATION_CHECKPOINT_INTERVAL + 10;
+
+    @TempDir
+    Path directory;
+
+    private final byte[] currentKey = random(Constants.KEY_SIZE / 8);
+    private final byte[] newKey = random(Constants.KEY_SIZE / 8);
+
+    @Test
+    void rotatesAllRecords() throws Exception {
+        Path vault = write(20);
+        KdfParams newKdf = pbkdf2();
+        MerkleTree tree = new VaultRotation(vault, 2).run(currentKey, newKdf, newKey);
+
+        assertRotated(vault, 20, newKdf, tree);
+        assertFalse(Files.exists(checkpoint(vault)));
+    }
+
+    @Test
+    void resumesFromCheckpoint() throws Exception {
+        Path vault = write(COUNT);
+        byte[] original = Files.readAllBytes(vault);
+        KdfParams newKdf = pbkdf2();
+
+        // Ключ записи BROKEN не разворачивается текущим ключом: смена прерывается после контрольной точки
+        byte[] broken = original.clone();
+        broken[wrappedKeyOffset(vault, BROKEN)] ^= 1;
+        Files.write(vault, broken);
+        assertThrows(Exception.class, () -> new VaultRotation(vault, 2).run(currentKey, newKdf, newKey));
+
+        assertTrue(Files.exists(checkpoint(vault)));
+        assertTrue(Files.exists(vault.resolveSibling(vault.getFileName() + ".rotation.vault")));
+        ByteBuffer checkpoint = ByteBuffer.wrap(Files.readAllBytes(checkpoint(vault)));
+        byte[] magic = new byte[4];
+        checkpoint.get(magic);
+        assertEquals("PMRI", new String(magic, StandardCharsets.US_ASCII));
+        assertEquals(broken.length, checkpoint.getLong());
+        byte[] sourceKeyCheck = new byte[Short.toUnsignedInt(checkpoint.getShort())];
+        checkpoint.get(sourceKeyCheck);
+        KdfParams savedKdf = KdfParams.read(checkpoint);
+        assertArrayEquals(newKdf.salt(), savedKdf.salt());
+        byte[] keyCheck = new byte[Short.toUnsignedInt(checkpoint.getShort())];
+        checkpoint.get(keyCheck);
+        assertEquals(Constants.ROTATION_CHECKPOINT_INTERVAL, checkpoint.getInt());
+
+        // Исходный файл восстановлен побайтно, поэтому контрольная точка к нему подходит
+        Files.write(vault, original);
+        VaultRotation rotation = new VaultRotation(vault, 2);
+        try (VaultFile source = VaultFile.open(vault)) {
+            assertNotNull(rotation.resumedKdf(source));
+        }
+        MerkleTree tree = rotation.run(currentKey, newKdf, newKey);
+
+        // При продолжении заголовок временного файла не переписывается: контрольное значение из контрольной точки
+        try (VaultFile rotated = VaultFile.open(vault)) {
+            assertArrayEquals(keyCheck, rotated.getKeyCheck());
+        }
+        assertRotated(vault, COUNT, newKdf, tree);
+        assertFalse(Files.exists(checkpoint(vault)));
+    }
+
+    @Test
+    void checkpointOfAnotherFileIsIgnored() throws Exception {
+        Path vault = write(COUNT);
+        byte[] original = Files.readAllBytes(vault);
+        KdfParams newKdf = pbkdf2();
+
+        byte[] broken = original.clone();
+        broken[wrappedKeyOffset(vault, BROKEN)] ^= 1;
+        Files.write(vault, broken);
+        assertThrows(Exception.class, () -> new VaultRotation(vault, 2).run(currentKey, newKdf, newKey));
+
+        // Хранилище пересохранено после прерывания: контрольная точка не подходит, смена начинается заново
+        write(COUNT);
+        try (VaultFile source = VaultFile.open(vault)) {
+            assertNull(new VaultRotation(vault, 2).resumedKdf(source));
+        }
+        MerkleTree tree = new VaultRotation(vault, 2).run(currentKey, newKdf, newKey);
+        assertRotated(vault, COUNT, newKdf, tree);
+
+        // Повреждённая контрольная точка тоже игнорируется
+        Path another = write(20);
+        Files.write(checkpoint(another), new byte[] {'P', 'M', 'R', 'I', 1, 2, 3});
+        try (VaultFile source = VaultFile.open(another)) {
+            assertNull(new VaultRotation(another, 2).resumedKdf(source));
+        }
+        assertRotated(another, 20, newKdf, new VaultRotation(another, 2).run(currentKey, newKdf, newKey));
+    }
+
+    private void assertRotated(Path vault, int count, KdfParams newKdf, MerkleTree tree) throws Exception {
+        byte[] indexKey = BlindIndex.key(newKey);
+        try (VaultFile file = VaultFile.open(vault)) {
+            assertEquals(count, file.getRecordCount());
+            assertArrayEquals(newKdf.salt(), file.getKdf().salt());
+            assertTrue(AESEncryption.verifyKeyCheck(newKey, file.getKeyCheck()));
+            assertTrue(tree.verifyRoot(newKey, file.getRootMac()));
+            assertTrue(MerkleTree.build(file.getLeaves(), 1).verifyRoot(newKey, file.getRootMac()));
+
+            for (int i = 0; i < count; i++) {
+                assertTrue(tree.verify(i, MerkleTree.leafHash(file.record(i))));
+                PasswordEntry entry = AESEncryption.decryptRecord(newKey, file.record(i));
+                assertEquals(i + 1, entry.getId());
+                assertEquals(place(i), entry.getPlace());
+                assertEquals("пароль-" + i, new String(entry.getPassword().toChars()));
+                assertArrayEquals(new int[] {i}, file.findRecords(BlindIndex.tag(indexKey, place(i), "user" + i)));
+            }
+            assertThrows(Exception.class, () -> AESEncryption.decryptRecord(currentKey, file.record(0)));
+        }
+    }
+
+    private Path write(int count) throws Exception {
+        byte[] indexKey = BlindIndex.key(currentKey);
+        List<byte[]> records = new ArrayList<>(count);
+        List<byte[]> tags = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            records.add(AESEncryption.encryptRecord(currentKey, i + 1, place(i), "user" + i, SecretBuffer.of("пароль-" + i)));
+            tags.add(BlindIndex.tag(indexKey, place(i), "user" + i));
+        }
+        Path vault = directory.resolve(count + ".dat");
+        VaultFile.write(vault, pbkdf2(), AESEncryption.createKeyCheck(currentKey), records, tags, currentKey, 2);
+        return vault;
+    }
+
+    // Записи лежат подряд в конце файла: длина (4) | id (8) | длина обёрнутого ключа (1) | обёрнутый ключ | ...
+    private static int wrappedKeyOffset(Path vault, int index) throws Exception {
+        try (VaultFile file = VaultFile.open(vault)) {
+            long offset = Files.size(vault);
+            for (int i = file.getRecordCount() - 1; i >= index; i--) {
+                offset -= Integer.BYTES + file.recordLength(i);
+            }
+            return (int) offset + Integer.BYTES + Long.BYTES + 1 + 2;
+        }
+    }
+
+    private static Path checkpoint(Path vault) {
+        return vault.resolveSibling(vault.getFileName() + ".rotation");
+    }
+
+    private static KdfParams pbkdf2() {
+        return new KdfParams(KdfParams.PBKDF2, 1000, 0, 1, 0, random(Constants.SALT_SIZE));
+    }
+
+    private static String place(int i) {
+        return "site-" + i + ".ru";
+    }
+
+    private static byte[] random(int length) {
+        byte[] bytes = new byte[length];
+        new SecureRandom().nextBytes(bytes);
+        return bytes;
+    }
+}